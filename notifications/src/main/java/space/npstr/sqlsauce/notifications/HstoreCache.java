@@ -0,0 +1,292 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.notifications;
+
+import org.json.JSONObject;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.DbUtils;
+import space.npstr.sqlsauce.converters.HstoreCodec;
+import space.npstr.sqlsauce.entities.Hstore;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Local, read only replica of the {@link Hstore} table, for hstores that are read much more often than they are
+ * written, like feature flags or configuration values.
+ * <p>
+ * Reads are served from an immutable in-memory snapshot without any locking, database access or allocations. Changed
+ * rows are reloaded when the database notifies about them. This requires the triggers of the hstore_watch.sql file
+ * shipped with this module to be installed on the hstorex table, sending notifications on the same channel this cache
+ * is listening to. Notifications can get lost, for example while the connection of the {@link NotificationService} is
+ * reconnecting, so the whole snapshot is additionally reloaded periodically.
+ * <p>
+ * Every load or reload creates a new snapshot which replaces the current one atomically. All loading happens on a
+ * single thread owned by this cache, so loads never race each other.
+ */
+public class HstoreCache {
+
+    private static final Logger log = LoggerFactory.getLogger(HstoreCache.class);
+
+    //language=PostgreSQL
+    private static final String LOAD_ALL = "SELECT name, cast(hstorex AS TEXT) FROM hstorex";
+    //language=PostgreSQL
+    private static final String LOAD_SOME = "SELECT name, cast(hstorex AS TEXT) FROM hstorex WHERE name IN (:names)";
+    //language=PostgreSQL
+    private static final String LOAD_ONE = "SELECT cast(hstorex AS TEXT) FROM hstorex WHERE name = :name";
+
+    private final DatabaseWrapper databaseWrapper;
+    private final NotificationService notificationService;
+    private final String channel;
+    @Nullable
+    private final Set<String> names;
+    private final NotificationListener listener = this::onNotification;
+    private final ScheduledExecutorService loader;
+
+    //never modified after being published, only replaced as a whole
+    private volatile Map<String, Map<String, String>> snapshot = Collections.emptyMap();
+
+    /**
+     * Create a cache of all hstores. The initial load happens before this constructor returns.
+     *
+     * @param channel      the channel that the hstorex table triggers notify on, see watch_hstorex() in
+     *                     hstore_watch.sql. Same as for any listener of the {@link NotificationService}, do not allow
+     *                     this to be set by any user values.
+     * @param resyncPeriod period between full reloads of the cache
+     *
+     * @throws DatabaseException
+     *         if the initial load fails
+     */
+    public HstoreCache(DatabaseWrapper databaseWrapper, NotificationService notificationService, String channel,
+                       long resyncPeriod, TimeUnit timeUnit) {
+        this(databaseWrapper, notificationService, channel, resyncPeriod, timeUnit, null);
+    }
+
+    /**
+     * Create a cache of the hstores with the provided names only. The initial load happens before this constructor
+     * returns.
+     *
+     * @param channel      the channel that the hstorex table triggers notify on, see watch_hstorex() in
+     *                     hstore_watch.sql. Same as for any listener of the {@link NotificationService}, do not allow
+     *                     this to be set by any user values.
+     * @param resyncPeriod period between full reloads of the cache
+     * @param names        names of the hstores to cache. Null to cache all of them.
+     *
+     * @throws DatabaseException
+     *         if the initial load fails
+     */
+    public HstoreCache(DatabaseWrapper databaseWrapper, NotificationService notificationService, String channel,
+                       long resyncPeriod, TimeUnit timeUnit, @Nullable Collection<String> names) {
+        if (resyncPeriod <= 0) {
+            throw new IllegalArgumentException("Resync period needs to be a positive value.");
+        }
+        if (names != null && names.isEmpty()) {
+            throw new IllegalArgumentException("Provide at least one hstore name to cache, or null for all of them");
+        }
+        this.databaseWrapper = databaseWrapper;
+        this.notificationService = notificationService;
+        this.channel = channel;
+        this.names = names != null ? Collections.unmodifiableSet(new HashSet<>(names)) : null;
+        this.loader = Executors.newSingleThreadScheduledExecutor(
+                r -> {
+                    Thread thread = new Thread(r, HstoreCache.class.getSimpleName() + "-loader-" + channel);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+
+        //listen first, so that we don't miss changes that happen during the initial load
+        notificationService.addListener(this.listener, channel);
+        try {
+            resync();
+        } catch (DatabaseException e) {
+            shutdown();
+            throw e;
+        }
+        this.loader.scheduleAtFixedRate(this::resyncSafely, resyncPeriod, resyncPeriod, timeUnit);
+    }
+
+    // ################################################################################
+    // ##                               Reading
+    // ################################################################################
+
+    /**
+     * @return the cached value, or null if either the hstore or the key don't exist
+     */
+    @Nullable
+    @CheckReturnValue
+    public String get(String name, String key) {
+        Map<String, String> hstore = this.snapshot.get(name);
+        if (hstore == null) {
+            return null;
+        }
+        return hstore.get(key);
+    }
+
+    /**
+     * @return the cached value, or the default value if either the hstore or the key don't exist
+     */
+    @CheckReturnValue
+    public String get(String name, String key, String defaultValue) {
+        String value = get(name, key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @return an unmodifiable view of the cached hstore, empty if it does not exist
+     */
+    @CheckReturnValue
+    public Map<String, String> getAll(String name) {
+        Map<String, String> hstore = this.snapshot.get(name);
+        return hstore != null ? hstore : Collections.emptyMap();
+    }
+
+    // ################################################################################
+    // ##                               Loading
+    // ################################################################################
+
+    /**
+     * Reload all cached hstores and replace the snapshot. Blocks until the reload is done.
+     *
+     * @throws DatabaseException
+     *         Wraps any exceptions thrown while loading
+     */
+    public void resync() {
+        try {
+            this.loader.submit(this::loadAll).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while resyncing hstore cache on channel " + this.channel, e);
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof DatabaseException) {
+                throw (DatabaseException) cause;
+            }
+            throw new DatabaseException("Failed to resync hstore cache on channel " + this.channel, cause);
+        }
+    }
+
+    /**
+     * Stop listening to notifications and resyncing. The last snapshot will keep being served.
+     */
+    public void shutdown() {
+        this.notificationService.removeListener(this.listener, this.channel);
+        this.loader.shutdown();
+    }
+
+    private void resyncSafely() {
+        try {
+            loadAll();
+        } catch (Exception e) {
+            log.error("Failed to resync hstore cache on channel {}", this.channel, e);
+        }
+    }
+
+    //runs on the notification service thread, so hand everything off to our loader thread asap
+    private void onNotification(PGNotification notification) {
+        JSONObject payload = new JSONObject(notification.getParameter());
+        String operation = payload.optString("operation");
+        if ("TRUNCATE".equals(operation)) {
+            submit(this::loadAll);
+            return;
+        }
+        String name = payload.optString("name", null);
+        String oldName = payload.optString("old_name", null);
+        if (name != null) {
+            submit(() -> loadOne(name));
+        }
+        if (oldName != null && !oldName.equals(name)) {
+            submit(() -> loadOne(oldName));
+        }
+    }
+
+    private void submit(Runnable load) {
+        try {
+            this.loader.execute(() -> {
+                try {
+                    load.run();
+                } catch (Exception e) {
+                    log.error("Failed to reload hstore cache on channel {}", this.channel, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Hstore cache on channel {} is shut down, ignoring notification", this.channel);
+        }
+    }
+
+    private void loadAll() {
+        List<Object[]> rows;
+        if (this.names == null) {
+            rows = this.databaseWrapper.selectSqlQuery(LOAD_ALL, null);
+        } else {
+            rows = this.databaseWrapper.selectSqlQuery(LOAD_SOME, DbUtils.paramsOf("names", this.names));
+        }
+
+        Map<String, Map<String, String>> loaded = new HashMap<>(rows.size() * 4 / 3 + 1);
+        for (Object[] row : rows) {
+            loaded.put((String) row[0], parse((String) row[1]));
+        }
+        this.snapshot = Collections.unmodifiableMap(loaded);
+    }
+
+    private void loadOne(String name) {
+        if (this.names != null && !this.names.contains(name)) {
+            return;
+        }
+        List<String> rows = this.databaseWrapper.selectSqlQuery(LOAD_ONE, DbUtils.paramsOf("name", name));
+
+        Map<String, Map<String, String>> loaded = new HashMap<>(this.snapshot);
+        if (rows.isEmpty()) {
+            loaded.remove(name);
+        } else {
+            loaded.put(name, parse(rows.get(0)));
+        }
+        this.snapshot = Collections.unmodifiableMap(loaded);
+    }
+
+    private static Map<String, String> parse(@Nullable String hstore) {
+        if (hstore == null) {
+            return Collections.emptyMap();
+        }
+        return HstoreCodec.decodeCompact(hstore);
+    }
+}
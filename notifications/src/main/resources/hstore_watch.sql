@@ -0,0 +1,79 @@
+-- Usage:
+-- Create the functions of this file via migration / manually. Calling the sql of this file is repeatable.
+-- Execute watch_hstorex('channel') via migration / manually to start sending notifications about changed rows of the
+--  hstorex table on a channel of your choice ("hstorex_changes" for example)
+-- Create an HstoreCache listening to the same channel whenever your app starts.
+
+-- Unlike the changefeed of watch.sql, the payload only contains the names of the changed hstores and not their content,
+-- so large hstores never hit the 8000 bytes payload limit of NOTIFY. Receivers are expected to reload the named rows.
+
+-- Requires Postgres 9.5+
+
+CREATE OR REPLACE FUNCTION hstorex_notify_func()
+  RETURNS TRIGGER AS $$
+DECLARE
+  channel  TEXT;
+  payload  JSONB;
+BEGIN
+  IF TG_WHEN <> 'AFTER'
+  THEN
+    RAISE EXCEPTION 'hstorex_notify_func() may only run as an AFTER trigger';
+  END IF;
+
+  IF (TG_OP = 'UPDATE' AND TG_LEVEL = 'ROW')
+  THEN
+    payload = jsonb_build_object('operation', TG_OP, 'name', NEW.name, 'old_name', OLD.name);
+  ELSIF (TG_OP = 'DELETE' AND TG_LEVEL = 'ROW')
+    THEN
+      payload = jsonb_build_object('operation', TG_OP, 'name', OLD.name);
+  ELSIF (TG_OP = 'INSERT' AND TG_LEVEL = 'ROW')
+    THEN
+      payload = jsonb_build_object('operation', TG_OP, 'name', NEW.name);
+  ELSIF (TG_OP = 'TRUNCATE' AND TG_LEVEL = 'STATEMENT')
+    THEN
+      payload = jsonb_build_object('operation', TG_OP);
+  ELSE
+    RAISE EXCEPTION '[hstorex_notify_func] - Trigger func added as trigger for unhandled case: %, %', TG_OP, TG_LEVEL;
+    RETURN NULL;
+  END IF;
+
+  channel = TG_ARGV [0];
+
+  PERFORM pg_notify(channel, cast(payload AS TEXT));
+
+  RETURN NULL;
+END;
+$$
+LANGUAGE plpgsql;
+
+-- Create triggers that will notify about any change to the hstorex table.
+CREATE OR REPLACE FUNCTION watch_hstorex(channel TEXT)
+  RETURNS VOID AS $$
+DECLARE
+  stmt TEXT;
+BEGIN
+  -- Drop existing triggers if they exist.
+  EXECUTE unwatch_hstorex();
+
+  stmt = 'CREATE TRIGGER hstorex_watch_trigger_row AFTER INSERT OR UPDATE OR DELETE ON hstorex ' ||
+         'FOR EACH ROW EXECUTE PROCEDURE hstorex_notify_func(' || quote_literal(channel) || ');';
+  RAISE NOTICE '%', stmt;
+  EXECUTE stmt;
+
+  stmt = 'CREATE TRIGGER hstorex_watch_trigger_stmt AFTER TRUNCATE ON hstorex ' ||
+         'FOR EACH STATEMENT EXECUTE PROCEDURE hstorex_notify_func(' || quote_literal(channel) || ');';
+  RAISE NOTICE '%', stmt;
+  EXECUTE stmt;
+END;
+$$
+LANGUAGE plpgsql;
+
+-- Stop notifying about changes to the hstorex table.
+CREATE OR REPLACE FUNCTION unwatch_hstorex()
+  RETURNS VOID AS $$
+BEGIN
+  EXECUTE 'DROP TRIGGER IF EXISTS hstorex_watch_trigger_row ON hstorex';
+  EXECUTE 'DROP TRIGGER IF EXISTS hstorex_watch_trigger_stmt ON hstorex';
+END;
+$$
+LANGUAGE plpgsql;
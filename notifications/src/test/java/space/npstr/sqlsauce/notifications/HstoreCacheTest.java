@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.notifications;
+
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.Hstore;
+import space.npstr.sqlsauce.notifications.exceptions.SimpleNsExceptionHandler;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class HstoreCacheTest extends BaseTest {
+
+    private static final String CHANNEL = "hstore_cache_test";
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_HSTOREX
+            = "CREATE TABLE hstorex "
+            + "( "
+            + "    name    TEXT COLLATE pg_catalog.\"default\" NOT NULL, "
+            + "    hstorex HSTORE, "
+            + "    CONSTRAINT hstorex_pkey PRIMARY KEY (name) "
+            + ");";
+
+    @Test
+    public void cacheFollowsChanges() throws IOException, InterruptedException {
+        int interval = 100;
+
+        List<Exception> exceptions = Collections.synchronizedList(new ArrayList<>());
+        NotificationService ns = new NotificationService(getTestJdbcUrl(), HstoreCacheTest.class.getSimpleName(),
+                interval, (SimpleNsExceptionHandler) exceptions::add);
+
+        DatabaseWrapper wrapper = new DatabaseWrapper(requireConnection());
+        URL resource = HstoreCacheTest.class.getClassLoader().getResource("hstore_watch.sql");
+        assertNotNull(resource, "Couldnt find hstore_watch.sql file");
+        String initWatch = new String(Files.readAllBytes(Paths.get(resource.getPath())), Charset.defaultCharset());
+
+        //prepare the table
+        wrapper.executeSqlQuery("CREATE EXTENSION IF NOT EXISTS hstore;");
+        wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "hstorex"));
+        wrapper.executeSqlQuery(CREATE_TABLE_HSTOREX);
+        wrapper.executeSqlQuery(initWatch);
+        List<Object> ignored = wrapper.selectSqlQuery("SELECT cast(watch_hstorex(:channel) AS TEXT);",
+                Collections.singletonMap("channel", CHANNEL));
+        assertNotNull(ignored);//just spotbugs things
+
+        Hstore.HstoreKey flags = Hstore.HstoreKey.of("flags");
+        Hstore.sqlSet(wrapper, flags, "existing", "before");
+
+        HstoreCache cache = new HstoreCache(wrapper, ns, CHANNEL, 1, TimeUnit.HOURS);
+        try {
+            assertEquals("before", cache.get("flags", "existing"), "initial load is missing a value");
+            assertNull(cache.get("flags", "missing"));
+            assertEquals("default", cache.get("nope", "missing", "default"));
+
+            Thread.sleep(interval * 2); //make sure listener is set up
+            Hstore.sqlSet(wrapper, flags, "existing", "after");
+            Hstore.sqlSet(wrapper, Hstore.HstoreKey.of("config"), "foo", "bar");
+            awaitEquals("after", () -> cache.get("flags", "existing"));
+            awaitEquals("bar", () -> cache.get("config", "foo"));
+
+            wrapper.deleteEntity(flags);
+            awaitEquals(null, () -> cache.get("flags", "existing"));
+
+            //changes that the cache did not get notified about are picked up by a resync
+            ignored = wrapper.selectSqlQuery("SELECT cast(unwatch_hstorex() AS TEXT);", null);
+            assertNotNull(ignored);
+            Hstore.sqlSet(wrapper, flags, "silent", "change");
+            assertNull(cache.get("flags", "silent"));
+            cache.resync();
+            assertEquals("change", cache.get("flags", "silent"));
+        } finally {
+            cache.shutdown();
+            ns.shutdown();
+        }
+
+        for (Exception e : exceptions) {
+            log.error("NotificationService threw exception", e);
+        }
+        assertTrue(exceptions.isEmpty(), "NotificationService threw exceptions");
+    }
+
+    private static void awaitEquals(String expected, Supplier<String> actual) throws InterruptedException {
+        long started = System.currentTimeMillis();
+        while (!Objects.equals(expected, actual.get())
+                && System.currentTimeMillis() - started < TimeUnit.SECONDS.toMillis(5)) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, actual.get());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import space.npstr.sqlsauce.DatabaseConnection;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Latency of a point read by id: in an ordinary transaction, in a read only transaction (the default of the wrapper),
+ * and without a transaction on an autocommit connection. Needs a database, see TEST_DB_JDBC. The difference grows
+ * with the round trip time to the database, which is next to nothing for a local one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AutoCommitReadsBenchmark {
+
+    private static final int ROWS = 10000;
+
+    @Nullable
+    private DatabaseConnection connection;
+    @Nullable
+    private DatabaseWrapper transactional;
+    @Nullable
+    private DatabaseWrapper autoCommit;
+
+    @Setup
+    public void setup() {
+        final String jdbcUrl = System.getenv("TEST_DB_JDBC");
+        if (jdbcUrl == null) {
+            throw new IllegalStateException("Set the TEST_DB_JDBC environment variable to run this benchmark");
+        }
+        this.connection = new DatabaseConnection.Builder(AutoCommitReadsBenchmark.class.getSimpleName(), jdbcUrl)
+                .addEntityPackage("space.npstr.sqlsauce.benchmarks")
+                .setHibernateProperty("hibernate.hbm2ddl.auto", "none")
+                .build();
+        this.transactional = new DatabaseWrapper(this.connection);
+        this.autoCommit = new DatabaseWrapper(this.connection, true);
+
+        this.transactional.executeSqlQuery("DROP TABLE IF EXISTS read_only_benchmark;");
+        this.transactional.executeSqlQuery("CREATE TABLE read_only_benchmark (id BIGINT PRIMARY KEY, name TEXT NOT NULL, "
+                + "description TEXT NOT NULL, score BIGINT NOT NULL);");
+        this.transactional.executeSqlQuery("INSERT INTO read_only_benchmark (id, name, description, score) "
+                + "SELECT i, 'row ' || i, repeat('x', 100), i * 31 FROM generate_series(1, " + ROWS + ") i;");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.transactional != null) {
+            this.transactional.executeSqlQuery("DROP TABLE IF EXISTS read_only_benchmark;");
+        }
+        if (this.connection != null) {
+            this.connection.shutdown();
+        }
+    }
+
+    @Benchmark
+    @Nullable
+    public ReadOnlyBenchmark.Row readWriteTransaction() {
+        final long id = randomId();
+        return require(this.transactional).doInPersistenceContext(em -> em.find(ReadOnlyBenchmark.Row.class, id));
+    }
+
+    @Benchmark
+    @Nullable
+    public ReadOnlyBenchmark.Row readOnlyTransaction() {
+        return require(this.transactional).getEntity(EntityKey.of(randomId(), ReadOnlyBenchmark.Row.class));
+    }
+
+    @Benchmark
+    @Nullable
+    public ReadOnlyBenchmark.Row autoCommit() {
+        return require(this.autoCommit).getEntity(EntityKey.of(randomId(), ReadOnlyBenchmark.Row.class));
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, ROWS + 1);
+    }
+
+    private static DatabaseWrapper require(@Nullable final DatabaseWrapper wrapper) {
+        if (wrapper == null) {
+            throw new IllegalStateException("Benchmark has not been set up");
+        }
+        return wrapper;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.postgresql.core.Oid;
+import space.npstr.sqlsauce.collections.LongArrayList;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Compares the text representation and the binary format of large bigint[] and text[] arrays, for what our array
+ * types do on the client side when loading and saving them. The binary format also saves the server from formatting
+ * and parsing the text representation, which this does not measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinaryArrayBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private LongArrayList longs = new LongArrayList();
+    private List<String> strings = new ArrayList<>();
+    private byte[] longsText = new byte[0];
+    private byte[] longsBinary = new byte[0];
+    private byte[] stringsText = new byte[0];
+    private byte[] stringsBinary = new byte[0];
+
+    @Setup
+    public void setup() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.longs = new LongArrayList(this.size);
+        this.strings = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            this.longs.add(random.nextLong(100000000000000000L, 999999999999999999L));
+            this.strings.add(i % 20 == 0 ? "a \"quoted\" name " + i : "name" + i);
+        }
+        this.longsText = ArrayCodec.encodeLongs(this.size, this.longs::forEachLong).getBytes(StandardCharsets.UTF_8);
+        this.longsBinary = ArrayCodec.encodeLongsBinary(this.size, this.longs::forEachLong, Oid.INT8);
+        this.stringsText = ArrayCodec.encodeStrings(this.strings).getBytes(StandardCharsets.UTF_8);
+        this.stringsBinary = ArrayCodec.encodeStringsBinary(this.strings, Oid.TEXT);
+    }
+
+    @Benchmark
+    public byte[] encodeLongsText() {
+        return ArrayCodec.encodeLongs(this.size, this.longs::forEachLong).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeLongsBinary() {
+        return ArrayCodec.encodeLongsBinary(this.size, this.longs::forEachLong, Oid.INT8);
+    }
+
+    @Benchmark
+    public LongArrayList decodeLongsText() {
+        final LongArrayList result = new LongArrayList(this.size);
+        ArrayCodec.decodeLongs(this.longsText, result::add);
+        return result;
+    }
+
+    @Benchmark
+    public LongArrayList decodeLongsBinary() {
+        final LongArrayList result = new LongArrayList(this.size);
+        ArrayCodec.decodeLongs(this.longsBinary, result::add);
+        return result;
+    }
+
+    @Benchmark
+    public byte[] encodeStringsText() {
+        return ArrayCodec.encodeStrings(this.strings).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeStringsBinary() {
+        return ArrayCodec.encodeStringsBinary(this.strings, Oid.TEXT);
+    }
+
+    @Benchmark
+    public List<String> decodeStringsText() {
+        final List<String> result = new ArrayList<>(this.size);
+        ArrayCodec.decodeStrings(this.stringsText, result::add);
+        return result;
+    }
+
+    @Benchmark
+    public List<String> decodeStringsBinary() {
+        final List<String> result = new ArrayList<>(this.size);
+        ArrayCodec.decodeStrings(this.stringsBinary, result::add);
+        return result;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.postgresql.core.Oid;
+import space.npstr.sqlsauce.collections.CompressedLongSet;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import java.util.HashSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Compares loading and querying a set of snowflakes stored as a binary bigint[] and decoded into a HashSet, like
+ * {@link space.npstr.sqlsauce.hibernate.types.HashSetBasicType} does, with a {@link CompressedLongSet} stored as bytea.
+ * The encoded sizes are compared in {@code CompressedLongSetTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressedLongSetBenchmark {
+
+    //discord epoch in milliseconds, shifted into a snowflake
+    private static final long SNOWFLAKE_2018 = (1514764800000L - 1420070400000L) << 22;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private byte[] array = new byte[0];
+    private byte[] compressed = new byte[0];
+    private long[] probes = new long[0];
+    private HashSet<Long> hashSet = new HashSet<>();
+    private CompressedLongSet compressedSet = CompressedLongSet.empty();
+
+    @Setup
+    public void setup() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long[] ids = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            //ids created over roughly a year
+            final long millis = random.nextLong(365L * 24 * 60 * 60 * 1000);
+            ids[i] = SNOWFLAKE_2018 + (millis << 22) + random.nextInt(1 << 22);
+        }
+        this.compressedSet = CompressedLongSet.of(ids);
+        this.compressed = this.compressedSet.toBytes();
+        this.array = ArrayCodec.encodeLongsBinary(this.compressedSet.size(), this.compressedSet::forEachLong, Oid.INT8);
+        this.hashSet = new HashSet<>(this.compressedSet);
+
+        //half of them contained
+        this.probes = new long[1000];
+        for (int i = 0; i < this.probes.length; i++) {
+            this.probes[i] = i % 2 == 0 ? ids[random.nextInt(ids.length)] : random.nextLong();
+        }
+    }
+
+    @Benchmark
+    public HashSet<Long> loadHashSet() {
+        final HashSet<Long> result = new HashSet<>((int) (ArrayCodec.countElements(this.array) / 0.75f) + 1);
+        ArrayCodec.decodeLongs(this.array, result::add);
+        return result;
+    }
+
+    @Benchmark
+    public CompressedLongSet loadCompressed() {
+        return CompressedLongSet.fromBytes(this.compressed);
+    }
+
+    @Benchmark
+    public int containsHashSet() {
+        int found = 0;
+        for (final long probe : this.probes) {
+            if (this.hashSet.contains(probe)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int containsCompressed() {
+        int found = 0;
+        for (final long probe : this.probes) {
+            if (this.compressedSet.contains(probe)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public long iterateCompressed() {
+        final long[] sum = {0};
+        this.compressedSet.forEachLong(value -> sum[0] += value);
+        return sum[0];
+    }
+}
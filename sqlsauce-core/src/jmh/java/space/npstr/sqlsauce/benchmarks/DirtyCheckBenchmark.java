@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import space.npstr.sqlsauce.hibernate.types.HashSetBasicType;
+
+import java.util.HashSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * What Hibernate does with a mutable array column of an unmodified entity: copy the loaded value when the entity is
+ * loaded or merged, and compare it to that copy on flush. A plain HashSet is cloned and compared element by element,
+ * the copy on write set returned by our types is shared and compared by identity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DirtyCheckBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private final HashSetBasicType type = new HashSetBasicType();
+    private HashSet<Long> plain = new HashSet<>();
+    private HashSet<Long> copyOnWrite = new HashSet<>();
+
+    @Setup
+    public void setup() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.plain = new HashSet<>();
+        for (int i = 0; i < this.size; i++) {
+            this.plain.add(random.nextLong());
+        }
+        @SuppressWarnings("unchecked") final HashSet<Long> copy = (HashSet<Long>) this.type.deepCopy(this.plain);
+        this.copyOnWrite = copy;
+    }
+
+    @Benchmark
+    public boolean plainHashSet() {
+        @SuppressWarnings("unchecked") final HashSet<Long> snapshot = (HashSet<Long>) this.plain.clone();
+        return this.type.equals(snapshot, this.plain);
+    }
+
+    @Benchmark
+    public boolean copyOnWriteHashSet() {
+        final Object snapshot = this.type.deepCopy(this.copyOnWrite);
+        return this.type.equals(snapshot, this.copyOnWrite);
+    }
+}
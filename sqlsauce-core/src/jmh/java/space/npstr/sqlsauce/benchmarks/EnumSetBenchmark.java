@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.postgresql.core.Oid;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+import space.npstr.sqlsauce.hibernate.types.BinaryArrayParameter;
+import space.npstr.sqlsauce.hibernate.types.EnumNameTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Compares what the HashSet based enum array type does per row with the EnumSet based one: resolving the elements of
+ * a loaded enum array, and encoding a set for saving.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnumSetBenchmark {
+
+    public enum Permission {
+        READ_MESSAGES, SEND_MESSAGES, SEND_TTS, MANAGE_MESSAGES, EMBED_LINKS, ATTACH_FILES, READ_HISTORY,
+        MENTION_EVERYONE, EXTERNAL_EMOJIS, ADD_REACTIONS, CONNECT, SPEAK, MUTE_MEMBERS, DEAFEN_MEMBERS, MOVE_MEMBERS,
+        KICK_MEMBERS, BAN_MEMBERS, ADMINISTRATOR, MANAGE_CHANNELS, MANAGE_SERVER,
+    }
+
+    private final EnumNameTable<Permission> nameTable = new EnumNameTable<>(Permission.class);
+    private final EnumSet<Permission> enumSet = EnumSet.of(Permission.READ_MESSAGES, Permission.SEND_MESSAGES,
+            Permission.EMBED_LINKS, Permission.ATTACH_FILES, Permission.READ_HISTORY, Permission.ADD_REACTIONS,
+            Permission.CONNECT, Permission.SPEAK);
+    private final HashSet<Permission> hashSet = new HashSet<>(this.enumSet);
+    private final String arrayTypeName = Permission.class.getSimpleName() + "[]";
+    private byte[] array = new byte[0];
+
+    @Setup
+    public void setup() {
+        final List<String> names = new ArrayList<>();
+        this.enumSet.forEach(permission -> names.add(permission.name()));
+        this.array = ArrayCodec.encodeStrings(names).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public HashSet<Enum> decodeHashSet() {
+        //what HashSetPostgreSQLEnumUserType did with the String[] of the array
+        final List<String> strings = new ArrayList<>();
+        ArrayCodec.decodeStrings(this.array, strings::add);
+        final Class<? extends Enum> enumClass = Permission.class;
+        return Arrays.stream(strings.toArray(new String[0]))
+                .map(value -> stringToEnum(enumClass, value.trim()))
+                .<HashSet<Enum>>collect(HashSet::new, HashSet::add, HashSet::addAll);
+    }
+
+    private static Enum stringToEnum(final Class<? extends Enum> enumClass, final String value) {
+        @SuppressWarnings("unchecked") final Enum anEnum = Enum.valueOf(enumClass, value.trim());
+        return anEnum;
+    }
+
+    @Benchmark
+    public EnumSet<Permission> decodeEnumSet() {
+        return this.nameTable.decode(this.array);
+    }
+
+    @Benchmark
+    public BinaryArrayParameter encodeHashSet() {
+        final List<String> names = new ArrayList<>(this.hashSet.size());
+        for (final Enum anEnum : this.hashSet.toArray(new Enum[0])) {
+            names.add(anEnum.name());
+        }
+        final String type = Permission.class.getSimpleName();
+        return BinaryArrayParameter.ofStrings(names, type, Oid.UNSPECIFIED);
+    }
+
+    @Benchmark
+    public BinaryArrayParameter encodeEnumSet() {
+        return new BinaryArrayParameter(this.arrayTypeName, this.nameTable.encodeBinary(this.enumSet, Oid.UNSPECIFIED));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.postgresql.util.HStoreConverter;
+import space.npstr.sqlsauce.converters.HstoreCodec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Compares our hstore codec with pgjdbc's HStoreConverter. The maps are shaped like DiscordUser#nicks: snowflake guild
+ * ids mapped to nicknames, a few of which need escaping.
+ * <p>
+ * Run with -prof gc to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HstoreCodecBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int entries;
+
+    private Map<String, String> map = new HashMap<>();
+    private String hstore = "";
+
+    @Setup
+    public void setup() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.map = new HashMap<>();
+        for (int i = 0; i < this.entries; i++) {
+            final String guildId = Long.toString(random.nextLong(100000000000000000L, 999999999999999999L));
+            final String nick = i % 20 == 0 ? "\"quoted\" nick " + i : "nick " + i;
+            this.map.put(guildId, nick);
+        }
+        this.hstore = HStoreConverter.toString(this.map);
+    }
+
+    @Benchmark
+    public String encodePgjdbc() {
+        return HStoreConverter.toString(this.map);
+    }
+
+    @Benchmark
+    public String encodeCodec() {
+        return HstoreCodec.encode(this.map);
+    }
+
+    @Benchmark
+    public Map<String, String> decodePgjdbc() {
+        return HStoreConverter.fromString(this.hstore);
+    }
+
+    @Benchmark
+    public Map<String, String> decodeCodec() {
+        return HstoreCodec.decode(this.hstore);
+    }
+
+    @Benchmark
+    public Map<String, String> decodeCodecCompact() {
+        return HstoreCodec.decodeCompact(this.hstore);
+    }
+}
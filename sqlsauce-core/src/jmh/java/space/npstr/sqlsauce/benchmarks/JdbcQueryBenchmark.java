@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import space.npstr.sqlsauce.DatabaseConnection;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.jdbc.ParameterBinder;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Selecting rows into plain objects through Hibernate's native query path versus the plain JDBC path of the wrapper,
+ * with a generated and a hand written row mapper. Needs a database, see TEST_DB_JDBC. Run with -prof gc to see the
+ * memory allocated per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JdbcQueryBenchmark {
+
+    //language=PostgreSQL
+    private static final String SELECT_NAMED = "SELECT id, name, description, score FROM jdbc_query_benchmark "
+            + "ORDER BY id LIMIT :limit";
+    //language=PostgreSQL
+    private static final String SELECT_POSITIONAL = "SELECT id, name, description, score FROM jdbc_query_benchmark "
+            + "ORDER BY id LIMIT ?";
+
+    @Param({"10", "1000"})
+    public int rows;
+
+    @Nullable
+    private DatabaseConnection connection;
+    @Nullable
+    private DatabaseWrapper wrapper;
+
+    @Setup
+    public void setup() {
+        final String jdbcUrl = System.getenv("TEST_DB_JDBC");
+        if (jdbcUrl == null) {
+            throw new IllegalStateException("Set the TEST_DB_JDBC environment variable to run this benchmark");
+        }
+        this.connection = new DatabaseConnection.Builder(JdbcQueryBenchmark.class.getSimpleName(), jdbcUrl)
+                .addEntityPackage("space.npstr.sqlsauce.benchmarks")
+                .setHibernateProperty("hibernate.hbm2ddl.auto", "none")
+                .build();
+        this.wrapper = new DatabaseWrapper(this.connection);
+
+        this.wrapper.executeSqlQuery("DROP TABLE IF EXISTS jdbc_query_benchmark;");
+        this.wrapper.executeSqlQuery("CREATE TABLE jdbc_query_benchmark (id BIGINT PRIMARY KEY, name TEXT NOT NULL, "
+                + "description TEXT NOT NULL, score INT NOT NULL);");
+        this.wrapper.executeSqlQuery("INSERT INTO jdbc_query_benchmark (id, name, description, score) "
+                + "SELECT i, 'row ' || i, repeat('x', 100), i % 1000 FROM generate_series(1, 1000) i;");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.wrapper != null) {
+            this.wrapper.executeSqlQuery("DROP TABLE IF EXISTS jdbc_query_benchmark;");
+        }
+        if (this.connection != null) {
+            this.connection.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<Row> hibernateNativeQuery() {
+        final List<Object[]> result = require(this.wrapper).selectSqlQuery(SELECT_NAMED,
+                Collections.singletonMap("limit", this.rows));
+        final List<Row> rows = new ArrayList<>(result.size());
+        for (final Object[] row : result) {
+            rows.add(new Row(((Number) row[0]).longValue(), (String) row[1], (String) row[2],
+                    ((Number) row[3]).intValue()));
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public List<Row> jdbcGeneratedMapper() {
+        return require(this.wrapper).query(SELECT_POSITIONAL, ParameterBinder.of(this.rows), Row.class);
+    }
+
+    @Benchmark
+    public List<Row> jdbcHandWrittenMapper() {
+        return require(this.wrapper).query(SELECT_POSITIONAL, statement -> statement.setInt(1, this.rows),
+                resultSet -> new Row(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3),
+                        resultSet.getInt(4)));
+    }
+
+    private static DatabaseWrapper require(@Nullable final DatabaseWrapper wrapper) {
+        if (wrapper == null) {
+            throw new IllegalStateException("Benchmark has not been set up");
+        }
+        return wrapper;
+    }
+
+    public static class Row {
+        private final long id;
+        private final String name;
+        private final String description;
+        private final int score;
+
+        public Row(final long id, final String name, final String description, final int score) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.score = score;
+        }
+
+        public long getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        public int getScore() {
+            return this.score;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import space.npstr.sqlsauce.hibernate.types.LazyJsonMap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * What loading an entity with a settings document costs when a single setting is read: the jsonb types parse the
+ * document into a tree, and Hibernate copies and compares the tree for dirty checking. The lazy type only wraps the
+ * raw json and extracts the setting by streaming over it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LazyJsonBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    //amount of top level settings objects
+    @Param({"10", "1000"})
+    public int settings;
+
+    private byte[] json = new byte[0];
+
+    @Setup
+    public void setup() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < this.settings; i++) {
+            sb.append(String.format("\"setting%d\": {\"enabled\": true, \"channel\": %d, \"roles\": [1, 2, 3], "
+                    + "\"message\": \"Welcome to the server, have fun!\"}, ", i, 400000000000000000L + i));
+        }
+        //last, so the lazy map has to skip over all other settings
+        sb.append("\"prefix\": \"!\"}");
+        this.json = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public boolean eagerTree() throws IOException {
+        final JsonNode loaded = MAPPER.readTree(this.json);
+        final JsonNode snapshot = loaded.deepCopy();
+        final String prefix = loaded.get("prefix").asText();
+        return prefix.isEmpty() || snapshot.equals(loaded);
+    }
+
+    @Benchmark
+    public boolean lazyMap() {
+        final LazyJsonMap loaded = LazyJsonMap.wrap(this.json);
+        final LazyJsonMap snapshot = loaded.snapshot();
+        final Object prefix = loaded.getPath("prefix");
+        return prefix == null || snapshot.equals(loaded);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import space.npstr.sqlsauce.collections.LongArrayList;
+import space.npstr.sqlsauce.collections.LongHashSet;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Compares the primitive long collection types with the boxed HashSet/ArrayList types for snowflake id columns.
+ * <p>
+ * The boxed load path mirrors what pgjdbc and our boxed types do: cut every element out of the text representation,
+ * box it, and copy the Long[] into the collection. Run with -prof gc to compare allocation rates; the retained size of
+ * the collections is roughly 8 bytes per element table slot for the primitive ones, versus 16 bytes per Long plus
+ * 32 bytes per node and 4 to 8 bytes per bucket for a HashSet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LongCollectionsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private String array = "{}";
+    private long[] ids = new long[0];
+    private HashSet<Long> boxedSet = new HashSet<>();
+    private ArrayList<Long> boxedList = new ArrayList<>();
+    private LongHashSet primitiveSet = new LongHashSet();
+    private LongArrayList primitiveList = new LongArrayList();
+
+    @Setup
+    public void setup() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.ids = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.ids[i] = random.nextLong(100000000000000000L, 999999999999999999L);
+        }
+        this.primitiveList = LongArrayList.of(this.ids);
+        this.primitiveSet = LongHashSet.of(this.ids);
+        this.boxedList = new ArrayList<>(this.primitiveList);
+        this.boxedSet = new HashSet<>(this.boxedList);
+        this.array = ArrayCodec.encodeLongs(this.size, this.primitiveList::forEachLong);
+    }
+
+    private Long[] parseBoxed() {
+        final String[] elements = this.array.substring(1, this.array.length() - 1).split(",");
+        final Long[] result = new Long[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            result[i] = Long.valueOf(elements[i]);
+        }
+        return result;
+    }
+
+    private static String encodeBoxed(final Long[] longs) {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < longs.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(longs[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    //################################################################################
+    //                                   Loading
+    //################################################################################
+
+    @Benchmark
+    public HashSet<Long> loadBoxedSet() {
+        return new HashSet<>(Arrays.asList(parseBoxed()));
+    }
+
+    @Benchmark
+    public LongHashSet loadPrimitiveSet() {
+        final LongHashSet result = new LongHashSet(ArrayCodec.countElements(this.array));
+        ArrayCodec.decodeLongs(this.array, result::add);
+        return result;
+    }
+
+    @Benchmark
+    public ArrayList<Long> loadBoxedList() {
+        final ArrayList<Long> result = new ArrayList<>();
+        Collections.addAll(result, parseBoxed());
+        return result;
+    }
+
+    @Benchmark
+    public LongArrayList loadPrimitiveList() {
+        final LongArrayList result = new LongArrayList(ArrayCodec.countElements(this.array));
+        ArrayCodec.decodeLongs(this.array, result::add);
+        return result;
+    }
+
+    //################################################################################
+    //                                   Saving
+    //################################################################################
+
+    @Benchmark
+    public String saveBoxedSet() {
+        return encodeBoxed(this.boxedSet.toArray(new Long[0]));
+    }
+
+    @Benchmark
+    public String savePrimitiveSet() {
+        return ArrayCodec.encodeLongs(this.primitiveSet.size(), this.primitiveSet::forEachLong);
+    }
+
+    //################################################################################
+    //                                   Lookups
+    //################################################################################
+
+    @Benchmark
+    public int containsBoxedSet() {
+        int found = 0;
+        for (final long id : this.ids) {
+            if (this.boxedSet.contains(id)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int containsPrimitiveSet() {
+        int found = 0;
+        for (final long id : this.ids) {
+            if (this.primitiveSet.contains(id)) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import space.npstr.sqlsauce.DatabaseConnection;
+import space.npstr.sqlsauce.DatabaseWrapper;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Batched updates of random rows of a big table, with the ids sent in random order versus sorted, as the batched write
+ * paths of the wrapper do. Needs a database, see TEST_DB_JDBC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderedWritesBenchmark {
+
+    private static final int TABLE_ROWS = 1_000_000;
+
+    //language=PostgreSQL
+    private static final String UPDATE = "UPDATE ordered_writes_benchmark SET counter = counter + 1 WHERE id = ?";
+
+    @Param({"1000", "10000"})
+    public int batch;
+
+    @Nullable
+    private DatabaseConnection connection;
+    @Nullable
+    private DatabaseWrapper wrapper;
+
+    private long[] shuffled = new long[0];
+    private long[] sorted = new long[0];
+
+    @Setup
+    public void setup() {
+        final String jdbcUrl = System.getenv("TEST_DB_JDBC");
+        if (jdbcUrl == null) {
+            throw new IllegalStateException("Set the TEST_DB_JDBC environment variable to run this benchmark");
+        }
+        this.connection = new DatabaseConnection.Builder(OrderedWritesBenchmark.class.getSimpleName(), jdbcUrl)
+                .addEntityPackage("space.npstr.sqlsauce.benchmarks")
+                .setHibernateProperty("hibernate.hbm2ddl.auto", "none")
+                .build();
+        this.wrapper = new DatabaseWrapper(this.connection);
+
+        this.wrapper.executeSqlQuery("DROP TABLE IF EXISTS ordered_writes_benchmark;");
+        this.wrapper.executeSqlQuery("CREATE TABLE ordered_writes_benchmark (id BIGINT PRIMARY KEY, "
+                + "counter BIGINT NOT NULL, padding TEXT NOT NULL);");
+        //insert in random order, so the heap order does not follow the index order
+        this.wrapper.executeSqlQuery("INSERT INTO ordered_writes_benchmark (id, counter, padding) "
+                + "SELECT i, 0, repeat('x', 100) FROM generate_series(1, " + TABLE_ROWS + ") i ORDER BY random();");
+        this.wrapper.executeSqlQuery("ANALYZE ordered_writes_benchmark;");
+    }
+
+    @Setup(Level.Invocation)
+    public void pickIds() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.shuffled = random.longs(this.batch, 1, TABLE_ROWS + 1).distinct().toArray();
+        this.sorted = this.shuffled.clone();
+        Arrays.sort(this.sorted);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.wrapper != null) {
+            this.wrapper.executeSqlQuery("DROP TABLE IF EXISTS ordered_writes_benchmark;");
+        }
+        if (this.connection != null) {
+            this.connection.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int shuffledIds() throws SQLException {
+        return update(this.shuffled);
+    }
+
+    @Benchmark
+    public int sortedIds() throws SQLException {
+        return update(this.sorted);
+    }
+
+    private int update(final long[] ids) throws SQLException {
+        if (this.connection == null) {
+            throw new IllegalStateException("Benchmark has not been set up");
+        }
+        try (Connection connection = this.connection.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+            for (final long id : ids) {
+                statement.setLong(1, id);
+                statement.addBatch();
+            }
+            final int updated = Arrays.stream(statement.executeBatch()).sum();
+            connection.commit();
+            return updated;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import space.npstr.sqlsauce.DatabaseConnection;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Loading a large result of entities in an ordinary transaction versus a read only one, which skips the snapshots for
+ * dirty checking and the flush on commit. Needs a database, see TEST_DB_JDBC. Run with -prof gc to see the memory
+ * allocated per load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadOnlyBenchmark {
+
+    private static final String SELECT_ALL = "SELECT r FROM ReadOnlyBenchmarkRow r";
+
+    @Param({"1000", "50000"})
+    public int rows;
+
+    @Nullable
+    private DatabaseConnection connection;
+    @Nullable
+    private DatabaseWrapper wrapper;
+
+    @Setup
+    public void setup() throws Exception {
+        final String jdbcUrl = System.getenv("TEST_DB_JDBC");
+        if (jdbcUrl == null) {
+            throw new IllegalStateException("Set the TEST_DB_JDBC environment variable to run this benchmark");
+        }
+        this.connection = new DatabaseConnection.Builder(ReadOnlyBenchmark.class.getSimpleName(), jdbcUrl)
+                .addEntityPackage("space.npstr.sqlsauce.benchmarks")
+                .setHibernateProperty("hibernate.hbm2ddl.auto", "none")
+                .build();
+        this.wrapper = new DatabaseWrapper(this.connection);
+
+        this.wrapper.executeSqlQuery("DROP TABLE IF EXISTS read_only_benchmark;");
+        this.wrapper.executeSqlQuery("CREATE TABLE read_only_benchmark (id BIGINT PRIMARY KEY, name TEXT NOT NULL, "
+                + "description TEXT NOT NULL, score BIGINT NOT NULL);");
+        this.wrapper.executeSqlQuery("INSERT INTO read_only_benchmark (id, name, description, score) "
+                + "SELECT i, 'row ' || i, repeat('x', 100), i * 31 FROM generate_series(1, :rows) i;",
+                Collections.singletonMap("rows", this.rows));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.wrapper != null) {
+            this.wrapper.executeSqlQuery("DROP TABLE IF EXISTS read_only_benchmark;");
+        }
+        if (this.connection != null) {
+            this.connection.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<Row> readWrite() {
+        return wrapper().selectJpqlQuery(SELECT_ALL, null, Row.class, false);
+    }
+
+    @Benchmark
+    public List<Row> readOnly() {
+        return wrapper().selectJpqlQuery(SELECT_ALL, null, Row.class, true);
+    }
+
+    private DatabaseWrapper wrapper() {
+        if (this.wrapper == null) {
+            throw new IllegalStateException("Benchmark has not been set up");
+        }
+        return this.wrapper;
+    }
+
+    @Entity(name = "ReadOnlyBenchmarkRow")
+    @Table(name = "read_only_benchmark")
+    public static class Row extends SaucedEntity<Long, Row> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "name", nullable = false)
+        private String name = "";
+
+        @Column(name = "description", nullable = false)
+        private String description = "";
+
+        @Column(name = "score", nullable = false)
+        private long score;
+
+        //for jpa / wrapper
+        public Row() {
+        }
+
+        @Override
+        public Row setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        public long getScore() {
+            return this.score;
+        }
+    }
+}
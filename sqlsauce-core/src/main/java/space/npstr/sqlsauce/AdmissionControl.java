@@ -0,0 +1,277 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import javax.annotation.CheckReturnValue;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Created by napster on 19.10.26.
+ * <p>
+ * Limits the amount of concurrent operations of each {@link OperationClass}, and rejects operations over the limit
+ * right away with an {@link OverloadedException}, instead of letting them queue up for a connection of the pool until
+ * it times out.
+ * <p>
+ * The limits adapt to the observed latency of the operations, like TCP Vegas: the lowest latency seen is taken as the
+ * latency of an unloaded database, and the ratio of it to the latency of each operation estimates how many of the
+ * running operations are just waiting in a queue. The limit grows while that queue is short, and shrinks when it grows
+ * long, or when operations fail because the pool ran out of connections, or statements were cancelled. Every once in a
+ * while, the lowest latency is measured anew, in case the database got slower for good.
+ * <p>
+ * The {@link DatabaseWrapper} uses the admission control of its {@link DatabaseConnection}, if there is one, whenever
+ * it takes a connection from the pool. Operations inside of a unit of work have been admitted with the unit of work.
+ * See {@link #getLimit(OperationClass)} and {@link #getRejections(OperationClass)} for metrics, or
+ * {@link AdmissionControlCollector} to export them to Prometheus.
+ */
+public class AdmissionControl {
+
+    public enum OperationClass {
+        /**
+         * Read only transactions, reads in autocommit mode, and plain JDBC queries.
+         */
+        READ,
+        /**
+         * Read write transactions, and units of work.
+         */
+        WRITE
+    }
+
+    private final Map<OperationClass, Limit> limits = new EnumMap<>(OperationClass.class);
+
+    private AdmissionControl(final Builder builder) {
+        for (final OperationClass operationClass : OperationClass.values()) {
+            final int[] limit = builder.limits.get(operationClass);
+            this.limits.put(operationClass, new Limit(limit[0], limit[1], limit[2], builder.probeInterval));
+        }
+    }
+
+    /**
+     * Run the action if fewer operations of its class than the current limit are running, and adjust the limit to the
+     * latency of the action.
+     *
+     * @throws OverloadedException
+     *         if the limit has been reached
+     */
+    public <R> R execute(final OperationClass operationClass, final Supplier<R> action) {
+        final Limit limit = this.limits.get(operationClass);
+        if (!limit.tryAcquire()) {
+            throw new OverloadedException("Rejected " + operationClass + " operation, the limit of "
+                    + limit.getLimit() + " concurrent operations is reached");
+        }
+        final long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return action.get();
+        } catch (final RuntimeException e) {
+            overloaded = isOverload(e);
+            throw e;
+        } finally {
+            limit.release(System.nanoTime() - start, overloaded);
+        }
+    }
+
+    /**
+     * @return the current limit of concurrent operations of the class
+     */
+    @CheckReturnValue
+    public int getLimit(final OperationClass operationClass) {
+        return this.limits.get(operationClass).getLimit();
+    }
+
+    /**
+     * @return the amount of operations of the class that are currently running
+     */
+    @CheckReturnValue
+    public int getInFlight(final OperationClass operationClass) {
+        return this.limits.get(operationClass).inFlight.get();
+    }
+
+    /**
+     * @return the amount of operations of the class that have been rejected so far
+     */
+    @CheckReturnValue
+    public long getRejections(final OperationClass operationClass) {
+        return this.limits.get(operationClass).rejections.sum();
+    }
+
+    /**
+     * @return true if the failure shows that the database or the pool could not keep up: no connection was available
+     * from the pool in time, a statement was cancelled, or the database ran out of resources
+     */
+    @CheckReturnValue
+    public static boolean isOverload(final Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                final String sqlState = ((SQLException) t).getSQLState();
+                if (sqlState != null && (sqlState.equals("57014") //query_canceled, including statement timeouts
+                        || sqlState.startsWith("53"))) { //insufficient resources
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //adaptive limit of one operation class
+    private static final class Limit {
+        private final int minLimit;
+        private final int maxLimit;
+        private final int probeInterval;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder rejections = new LongAdder();
+        private volatile int limit;
+        //guarded by this
+        private long minLatencyNanos = 0;
+        private int samplesSinceProbe = 0;
+
+        private Limit(final int initialLimit, final int minLimit, final int maxLimit, final int probeInterval) {
+            this.limit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.probeInterval = probeInterval;
+        }
+
+        private int getLimit() {
+            return this.limit;
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                final int current = this.inFlight.get();
+                if (current >= this.limit) {
+                    this.rejections.increment();
+                    return false;
+                }
+                if (this.inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release(final long latencyNanos, final boolean overloaded) {
+            final int inFlight = this.inFlight.getAndDecrement();
+            update(Math.max(1, latencyNanos), overloaded, inFlight);
+        }
+
+        private synchronized void update(final long latencyNanos, final boolean overloaded, final int inFlight) {
+            final int limit = this.limit;
+            //grows slowly for large limits, and at least by one
+            final int step = Math.max(1, (int) Math.log10(limit));
+            if (overloaded) {
+                setLimit(limit - step);
+                return;
+            }
+            if (++this.samplesSinceProbe >= this.probeInterval * limit) {
+                //forget the lowest latency, the next samples establish it again
+                this.samplesSinceProbe = 0;
+                this.minLatencyNanos = latencyNanos;
+                return;
+            }
+            if (this.minLatencyNanos == 0 || latencyNanos < this.minLatencyNanos) {
+                this.minLatencyNanos = latencyNanos;
+                return;
+            }
+            //estimated amount of the running operations that are waiting instead of being worked on
+            final int queue = (int) Math.ceil(limit * (1 - (double) this.minLatencyNanos / latencyNanos));
+            if (queue > 6 * step) {
+                setLimit(limit - step);
+            } else if (inFlight * 2 < limit) {
+                //the limit is not what holds the operations back, there is no point in raising it
+                return;
+            } else if (queue <= step) {
+                setLimit(limit + 6 * step);
+            } else if (queue < 3 * step) {
+                setLimit(limit + step);
+            }
+        }
+
+        private void setLimit(final int limit) {
+            this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, limit));
+        }
+    }
+
+    public static class Builder {
+
+        private final Map<OperationClass, int[]> limits = new EnumMap<>(OperationClass.class);
+        private int probeInterval = 30;
+
+        public Builder() {
+            for (final OperationClass operationClass : OperationClass.values()) {
+                this.limits.put(operationClass, new int[]{20, 1, 200});
+            }
+        }
+
+        /**
+         * Set the limits of all operation classes, see {@link #setLimit(OperationClass, int, int, int)}.
+         */
+        @CheckReturnValue
+        public Builder setLimit(final int initial, final int min, final int max) {
+            for (final OperationClass operationClass : OperationClass.values()) {
+                setLimit(operationClass, initial, min, max);
+            }
+            return this;
+        }
+
+        /**
+         * The limit of concurrent operations of the class starts out at the initial value, and adapts within the min
+         * and max values. Default is 20, adapting between 1 and 200, for each class. Keep in mind that each admitted
+         * operation needs a connection of the pool.
+         */
+        @CheckReturnValue
+        public Builder setLimit(final OperationClass operationClass, final int initial, final int min, final int max) {
+            if (min < 1 || initial < min || max < initial) {
+                throw new IllegalArgumentException("Invalid limit of " + initial + " between " + min + " and " + max);
+            }
+            this.limits.put(operationClass, new int[]{initial, min, max});
+            return this;
+        }
+
+        /**
+         * The lowest latency is measured anew after this many operations per unit of the current limit. Default is
+         * 30.
+         */
+        @CheckReturnValue
+        public Builder setProbeInterval(final int probeInterval) {
+            if (probeInterval < 1) {
+                throw new IllegalArgumentException("Probe interval must be at least 1, but is " + probeInterval);
+            }
+            this.probeInterval = probeInterval;
+            return this;
+        }
+
+        @CheckReturnValue
+        public AdmissionControl build() {
+            return new AdmissionControl(this);
+        }
+    }
+}
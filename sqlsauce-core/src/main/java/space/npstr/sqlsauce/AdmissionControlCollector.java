@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+
+import javax.annotation.CheckReturnValue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by napster on 19.10.26.
+ * <p>
+ * Exports the limits, operations in flight, and rejections of {@link AdmissionControl}s to Prometheus. Requires the
+ * optional Prometheus simpleclient dependency.
+ * <p>
+ * Add the admission controls of your connections, then register the collector:
+ * <pre>{@code
+ * new AdmissionControlCollector()
+ *         .add(admissionControl, databaseConnection.getName())
+ *         .register();
+ * }</pre>
+ */
+public class AdmissionControlCollector extends Collector {
+
+    private static final List<String> LABEL_NAMES = Arrays.asList("connection", "operation_class");
+
+    private final Map<String, AdmissionControl> admissionControls = new ConcurrentHashMap<>();
+
+    /**
+     * @param name
+     *         value of the connection label of the metrics of this admission control
+     */
+    @CheckReturnValue
+    public AdmissionControlCollector add(final AdmissionControl admissionControl, final String name) {
+        this.admissionControls.put(name, admissionControl);
+        return this;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        final GaugeMetricFamily limit = new GaugeMetricFamily("sqlsauce_admission_limit",
+                "Current limit of concurrent operations", LABEL_NAMES);
+        final GaugeMetricFamily inFlight = new GaugeMetricFamily("sqlsauce_admission_in_flight",
+                "Operations currently running", LABEL_NAMES);
+        final CounterMetricFamily rejections = new CounterMetricFamily("sqlsauce_admission_rejections_total",
+                "Operations rejected over the limit", LABEL_NAMES);
+        this.admissionControls.forEach((name, admissionControl) -> {
+            for (final AdmissionControl.OperationClass operationClass : AdmissionControl.OperationClass.values()) {
+                final List<String> labels = Arrays.asList(name, operationClass.name().toLowerCase());
+                limit.addMetric(labels, admissionControl.getLimit(operationClass));
+                inFlight.addMetric(labels, admissionControl.getInFlight(operationClass));
+                rejections.addMetric(labels, admissionControl.getRejections(operationClass));
+            }
+        });
+        final List<MetricFamilySamples> samples = new ArrayList<>();
+        samples.add(limit);
+        samples.add(inFlight);
+        samples.add(rejections);
+        return samples;
+    }
+}
@@ -25,6 +25,7 @@
 package space.npstr.sqlsauce;
 
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -41,4 +42,17 @@ import java.util.function.Function;
 public interface AsyncDatabaseWrapper {
 
     <E> CompletionStage<E> execute(Function<DatabaseWrapper, E> databaseOperation);
+
+    /**
+     * Execute the operation under a deadline, see {@link DatabaseWrapper#withDeadline(Deadline, Function)}. The
+     * deadline starts counting when this method is called, so time spent waiting for a thread counts against it.
+     * <p>
+     * Implementations may complete the returned stage exceptionally with a {@link DeadlineExceededException} as soon as
+     * the deadline expires, without waiting for the operation to notice.
+     */
+    default <E> CompletionStage<E> execute(Function<DatabaseWrapper, E> databaseOperation, long timeout,
+                                           TimeUnit timeUnit) {
+        final Deadline deadline = Deadline.after(timeout, timeUnit);
+        return execute(wrapper -> wrapper.withDeadline(deadline, databaseOperation));
+    }
 }
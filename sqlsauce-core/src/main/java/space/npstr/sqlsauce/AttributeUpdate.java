@@ -0,0 +1,271 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Statements that update a single attribute of an entity directly in its table, generated from Hibernate's mapping of
+ * the entity. Values are bound with the Hibernate types of the id and the attribute, so custom types work as usual.
+ */
+final class AttributeUpdate {
+
+    //alias of the returned column, so it can be read regardless of quoting of the column name
+    private static final String RETURNED = "updated_value";
+
+    private final String attribute;
+    private final Type idType;
+    private final Type attributeType;
+    private final String updateSql;
+    private final String incrementSql;
+    //null if the id or the attribute can't be sent as an array
+    @Nullable
+    private final String unnestSql;
+    @Nullable
+    private final String idArrayType;
+    @Nullable
+    private final String attributeArrayType;
+
+    AttributeUpdate(final EntityMetadata<?> metadata, final String attribute) {
+        final SessionFactoryImplementor sessionFactory = metadata.getSessionFactory();
+        final Class<?> clazz = metadata.getClazz();
+        final AbstractEntityPersister persister = metadata.requireTablePersister();
+        this.attribute = attribute;
+        try {
+            this.attributeType = persister.getPropertyType(attribute);
+        } catch (final HibernateException e) {
+            throw new IllegalArgumentException("Unknown attribute " + attribute + " of entity class " + clazz.getName(), e);
+        }
+        if (this.attributeType.isAssociationType() || this.attributeType.isComponentType()) {
+            throw new IllegalArgumentException("Attribute " + attribute + " of entity class " + clazz.getName()
+                    + " is not a basic attribute");
+        }
+        final String table = persister.getTableName();
+        if (!table.equals(persister.getPropertyTableName(attribute))) {
+            throw new IllegalArgumentException("Attribute " + attribute + " of entity class " + clazz.getName()
+                    + " is not mapped to its main table " + table);
+        }
+        final String[] columns = persister.getPropertyColumnNames(attribute);
+        if (columns.length != 1) {
+            throw new IllegalArgumentException("Attribute " + attribute + " of entity class " + clazz.getName()
+                    + " is mapped to " + columns.length + " columns instead of one");
+        }
+        final String column = columns[0];
+        this.idType = persister.getIdentifierType();
+        final String[] idColumns = persister.getIdentifierColumnNames();
+        final String where = String.join(" = ? AND ", idColumns) + " = ?";
+
+        this.updateSql = "UPDATE " + table + " SET " + column + " = ? WHERE " + where;
+        this.incrementSql = "UPDATE " + table + " SET " + column + " = " + column + " + ? WHERE " + where
+                + " RETURNING " + column + " AS " + RETURNED;
+
+        this.idArrayType = arrayElementType(sessionFactory, this.idType);
+        this.attributeArrayType = arrayElementType(sessionFactory, this.attributeType);
+        if (idColumns.length == 1 && this.idArrayType != null && this.attributeArrayType != null) {
+            this.unnestSql = "UPDATE " + table + " AS t SET " + column + " = t." + column + " + d.delta "
+                    + "FROM unnest(?, ?) AS d(id, delta) WHERE t." + idColumns[0] + " = d.id RETURNING d.id AS " + RETURNED;
+        } else {
+            this.unnestSql = null;
+        }
+    }
+
+    /**
+     * @return the amount of updated rows
+     */
+    int update(final SharedSessionContractImplementor session, final Connection connection, final Object id,
+               @Nullable final Object value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(this.updateSql)) {
+            bind(session, statement, id, value);
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the amount of updated rows of each id
+     */
+    int[] updateBatch(final SharedSessionContractImplementor session, final Connection connection,
+                      final List<?> ids, @Nullable final Object value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(this.updateSql)) {
+            for (final Object id : ids) {
+                bind(session, statement, id, value);
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+    }
+
+    /**
+     * @return the new value of the attribute, or null if there is no row for the id
+     */
+    @Nullable
+    Number increment(final SharedSessionContractImplementor session, final Connection connection, final Object id,
+                     final Number delta) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(this.incrementSql)) {
+            bind(session, statement, id, toAttributeType(delta));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                return (Number) this.attributeType.nullSafeGet(resultSet, new String[]{RETURNED}, session, null);
+            }
+        }
+    }
+
+    /**
+     * Batched statements can't return results, so this does not return the new values.
+     *
+     * @return the amount of updated rows of each id
+     */
+    int[] incrementBatch(final SharedSessionContractImplementor session, final Connection connection,
+                         final List<?> ids, final List<? extends Number> deltas) throws SQLException {
+        //RETURNING is left out, as the driver does not allow results in a batch
+        final String sql = this.incrementSql.substring(0, this.incrementSql.lastIndexOf(" RETURNING "));
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                bind(session, statement, ids.get(i), toAttributeType(deltas.get(i)));
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+    }
+
+    /**
+     * @return true if {@link #incrementUnnest} can be used
+     */
+    boolean supportsUnnest() {
+        return this.unnestSql != null;
+    }
+
+    /**
+     * Increment the attribute of all ids with a single UPDATE ... FROM unnest(ids, deltas) statement. The ids need to
+     * be distinct.
+     *
+     * @return the ids whose rows were updated
+     */
+    Set<Object> incrementUnnest(final SharedSessionContractImplementor session, final Connection connection,
+                                final List<?> ids, final List<? extends Number> deltas) throws SQLException {
+        if (this.unnestSql == null || this.idArrayType == null || this.attributeArrayType == null) {
+            throw new IllegalStateException("Ids or values of this attribute can't be sent as arrays");
+        }
+        final Object[] deltaArray = new Object[deltas.size()];
+        for (int i = 0; i < deltaArray.length; i++) {
+            deltaArray[i] = toAttributeType(deltas.get(i));
+        }
+        try (PreparedStatement statement = connection.prepareStatement(this.unnestSql)) {
+            statement.setArray(1, connection.createArrayOf(this.idArrayType, ids.toArray()));
+            statement.setArray(2, connection.createArrayOf(this.attributeArrayType, deltaArray));
+            final Set<Object> updated = new HashSet<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    updated.add(this.idType.nullSafeGet(resultSet, new String[]{RETURNED}, session, null));
+                }
+            }
+            return updated;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *         if the attribute is not numeric
+     */
+    void requireNumeric() {
+        if (!Number.class.isAssignableFrom(this.attributeType.getReturnedClass())) {
+            throw new IllegalArgumentException("Attribute " + this.attribute + " of type "
+                    + this.attributeType.getReturnedClass().getName() + " can not be incremented");
+        }
+    }
+
+    private void bind(final SharedSessionContractImplementor session, final PreparedStatement statement,
+                      final Object id, @Nullable final Object value) throws SQLException {
+        this.attributeType.nullSafeSet(statement, value, 1, session);
+        this.idType.nullSafeSet(statement, id, 2, session);
+    }
+
+    //database type name of single column types, without any length or precision
+    @Nullable
+    @CheckReturnValue
+    static String arrayElementType(final SessionFactoryImplementor sessionFactory, final Type type) {
+        final int[] sqlTypes = type.sqlTypes(sessionFactory);
+        if (sqlTypes.length != 1) {
+            return null;
+        }
+        try {
+            return sessionFactory.getJdbcServices().getDialect().getTypeName(sqlTypes[0])
+                    .replaceAll("\\(.*\\)", "");
+        } catch (final HibernateException e) {
+            return null;
+        }
+    }
+
+    @CheckReturnValue
+    private Number toAttributeType(final Number delta) {
+        return convert(delta, this.attributeType.getReturnedClass());
+    }
+
+    /**
+     * Convert a number into another (boxed) number class, so deltas can be passed as any kind of number, and the
+     * results be returned as the kind of the delta.
+     */
+    @CheckReturnValue
+    static Number convert(final Number number, final Class<?> numberClass) {
+        if (numberClass.isInstance(number)) {
+            return number;
+        } else if (numberClass == Long.class) {
+            return number.longValue();
+        } else if (numberClass == Integer.class) {
+            return number.intValue();
+        } else if (numberClass == Short.class) {
+            return number.shortValue();
+        } else if (numberClass == Byte.class) {
+            return number.byteValue();
+        } else if (numberClass == Double.class) {
+            return number.doubleValue();
+        } else if (numberClass == Float.class) {
+            return number.floatValue();
+        } else if (numberClass == BigDecimal.class) {
+            return new BigDecimal(number.toString());
+        } else if (numberClass == BigInteger.class) {
+            return new BigInteger(number.toString());
+        }
+        throw new IllegalArgumentException("Unsupported number class " + numberClass.getName());
+    }
+}
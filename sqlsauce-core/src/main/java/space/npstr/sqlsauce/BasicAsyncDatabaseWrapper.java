@@ -29,6 +29,8 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
@@ -36,25 +38,95 @@ import java.util.function.Function;
  * Created by napster on 15.07.18.
  * <p>
  * Very basic example implementation of {@link AsyncDatabaseWrapper}.
+ * <p>
+ * Cancelling or timing out a returned future cancels the queries the operation is running, so the pooled connection
+ * and the thread of the operation are released right away.
+ * <p>
+ * Optionally, the backlog of operations waiting for a thread can be bounded: operations submitted while the backlog is
+ * full are rejected right away with an {@link OverloadedException}, instead of queueing up in front of the threads.
  */
 public class BasicAsyncDatabaseWrapper implements AsyncDatabaseWrapper {
 
     private final DatabaseWrapper databaseWrapper;
     private final ScheduledExecutorService executor;
+    //times out futures, never runs database operations, so it keeps running when all threads of the executor are busy
+    private final ScheduledExecutorService timer;
+    private final int maxPending;
+    //operations that are queued or running
+    private final AtomicInteger pending = new AtomicInteger();
 
     public BasicAsyncDatabaseWrapper(DatabaseWrapper databaseWrapper, int poolSize) {
+        this(databaseWrapper, poolSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param backlog
+     *         the amount of operations that may wait for one of the threads of the pool, on top of the operations
+     *         running on them. Further operations are rejected with an {@link OverloadedException}.
+     */
+    public BasicAsyncDatabaseWrapper(DatabaseWrapper databaseWrapper, int poolSize, int backlog) {
+        if (backlog < 0) {
+            throw new IllegalArgumentException("Backlog must not be negative, but is " + backlog);
+        }
         this.databaseWrapper = databaseWrapper;
+        this.maxPending = (int) Math.min(Integer.MAX_VALUE, (long) poolSize + backlog);
         final AtomicInteger threadCounter = new AtomicInteger();
         this.executor = Executors.newScheduledThreadPool(poolSize,
                 r -> new Thread(r, "async-database-executor-t" + threadCounter.getAndIncrement()));
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "async-database-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     @CheckReturnValue
     public <E> CompletionStage<E> execute(Function<DatabaseWrapper, E> databaseOperation) {
-        return CompletableFuture.supplyAsync(
-                () -> databaseOperation.apply(this.databaseWrapper),
-                this.executor
+        return execute(databaseOperation, Deadline.none());
+    }
+
+    @Override
+    @CheckReturnValue
+    public <E> CompletionStage<E> execute(Function<DatabaseWrapper, E> databaseOperation, long timeout,
+                                          TimeUnit timeUnit) {
+        final Deadline deadline = Deadline.after(timeout, timeUnit);
+        final CompletableFuture<E> future = execute(databaseOperation, deadline);
+        //don't wait for the operation to notice, it may still be queued
+        final ScheduledFuture<?> timer = this.timer.schedule(
+                () -> future.completeExceptionally(new DeadlineExceededException("Deadline expired")),
+                timeout, timeUnit
         );
+        future.whenComplete((result, t) -> timer.cancel(false));
+        return future;
+    }
+
+    private <E> CompletableFuture<E> execute(Function<DatabaseWrapper, E> databaseOperation, Deadline deadline) {
+        final CompletableFuture<E> future = new CompletableFuture<>();
+        if (this.pending.incrementAndGet() > this.maxPending) {
+            this.pending.decrementAndGet();
+            future.completeExceptionally(new OverloadedException("Rejected operation, " + this.maxPending
+                    + " operations are pending already"));
+            return future;
+        }
+        //the task always runs, even for futures that were cancelled or timed out while queued, so it can count them
+        this.executor.execute(() -> {
+            try {
+                if (!future.isDone()) {
+                    future.complete(this.databaseWrapper.withDeadline(deadline, databaseOperation));
+                }
+            } catch (final Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                this.pending.decrementAndGet();
+            }
+        });
+        //a future that was cancelled or timed out does not stop the operation if it is already running
+        future.whenComplete((result, t) -> {
+            if (t != null) {
+                deadline.cancel();
+            }
+        });
+        return future;
     }
 }
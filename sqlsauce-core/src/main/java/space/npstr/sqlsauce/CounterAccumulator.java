@@ -0,0 +1,388 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.annotation.CheckReturnValue;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Write behind accumulator for numeric counters of entities, like usage statistics. Deltas are summed up in memory,
+ * and written periodically, or whenever a threshold of pending counters is reached, with one
+ * {@link DatabaseWrapper#incrementAll(Map, String)} statement per entity class and attribute. Missing entities are
+ * created with their default values, as usual.
+ * <p>
+ * Deltas are only removed from memory after they have been written, so failed flushes are retried with the next flush.
+ * The deltas of an entity class and attribute are written in a single transaction, so a failed write, for example
+ * because a missing entity can't be created, has not added any of them, and retrying it does not add them twice.
+ * When a flush fails after the database committed it (for example when the connection drops before the commit is
+ * acknowledged), its deltas are written again: counters are written at least once.
+ * <p>
+ * Call {@link #close()} on shutdown to write the remaining deltas.
+ */
+public class CounterAccumulator implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterAccumulator.class);
+
+    private static final int CLOSE_FLUSH_ATTEMPTS = 3;
+
+    private final DatabaseWrapper wrapper;
+    private final int flushThreshold;
+    private final ConcurrentHashMap<Counter, Cell> cells = new ConcurrentHashMap<>();
+    //evicted cells that may still have received deltas from writers racing their eviction
+    private final Map<Counter, List<Cell>> retired = new HashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final AtomicLong failedFlushes = new AtomicLong(0);
+    private volatile long lastCompleteFlush = System.nanoTime();
+    private volatile boolean closed = false;
+
+    /**
+     * @param flushInterval
+     *         how often pending deltas are written
+     * @param flushThreshold
+     *         amount of counters with pending deltas that triggers an early flush
+     */
+    public CounterAccumulator(final DatabaseWrapper wrapper, final long flushInterval, final TimeUnit timeUnit,
+                              final int flushThreshold) {
+        this.wrapper = wrapper;
+        this.flushThreshold = flushThreshold;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "counter-accumulator-" + wrapper.getName());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler((t, e) -> log.error("Uncaught exception in counter flusher thread {}", t.getName(), e));
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, timeUnit);
+    }
+
+    /**
+     * Add a delta to a numeric attribute of an entity.
+     *
+     * @throws IllegalStateException
+     *         if this accumulator has been closed
+     */
+    public <E extends SaucedEntity<I, E>, I extends Serializable> void add(final EntityKey<I, E> entityKey,
+                                                                          final String attribute, final long delta) {
+        if (this.closed) {
+            throw new IllegalStateException("Counter accumulator of DB " + this.wrapper.getName() + " has been closed");
+        }
+        if (delta == 0) {
+            return;
+        }
+        final Counter counter = new Counter(entityKey, attribute);
+        while (true) {
+            Cell cell = this.cells.get(counter);
+            if (cell == null) {
+                cell = this.cells.computeIfAbsent(counter, k -> new Cell());
+            }
+            cell.adder.add(delta);
+            if (!cell.retired) {
+                break;
+            }
+            //the cell has been evicted concurrently, move the delta to a fresh one
+            cell.adder.add(-delta);
+        }
+        if (this.cells.size() >= this.flushThreshold && this.flushRequested.compareAndSet(false, true)) {
+            this.flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Add one to a numeric attribute of an entity.
+     *
+     * @throws IllegalStateException
+     *         if this accumulator has been closed
+     */
+    public <E extends SaucedEntity<I, E>, I extends Serializable> void increment(final EntityKey<I, E> entityKey,
+                                                                                final String attribute) {
+        add(entityKey, attribute, 1);
+    }
+
+    /**
+     * Write all pending deltas.
+     *
+     * @throws DatabaseException
+     *         if writing any of the entity classes and attributes failed, their deltas stay pending
+     */
+    public synchronized void flush() {
+        this.flushRequested.set(false);
+        final Map<Batch, List<Pending>> batches = new HashMap<>();
+        collectLive(batches);
+        collectRetired(batches);
+
+        DatabaseException failure = null;
+        for (final Map.Entry<Batch, List<Pending>> batch : batches.entrySet()) {
+            try {
+                write(batch.getKey(), batch.getValue());
+            } catch (final DatabaseException e) {
+                this.failedFlushes.incrementAndGet();
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        this.lastCompleteFlush = System.nanoTime();
+    }
+
+    /**
+     * Stop flushing periodically and write all pending deltas, retrying a few times.
+     *
+     * @throws DatabaseException
+     *         if the pending deltas could not be written
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.flusher.shutdown();
+        try {
+            this.flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                flush();
+                //catch deltas of writers that raced the close
+                if (getPendingDelta() == 0 && getPendingCounters() == 0) {
+                    return;
+                }
+            } catch (final DatabaseException e) {
+                if (attempt >= CLOSE_FLUSH_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Failed to flush {} pending counters on close, attempt {} of {}",
+                        getPendingCounters(), attempt, CLOSE_FLUSH_ATTEMPTS, e);
+            }
+        }
+    }
+
+    /**
+     * @return amount of counters with pending deltas
+     */
+    @CheckReturnValue
+    public int getPendingCounters() {
+        int pending = 0;
+        for (final Cell cell : this.cells.values()) {
+            if (cell.adder.sum() != 0) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return sum of all pending deltas
+     */
+    @CheckReturnValue
+    public long getPendingDelta() {
+        long pending = 0;
+        for (final Cell cell : this.cells.values()) {
+            pending += cell.adder.sum();
+        }
+        return pending;
+    }
+
+    /**
+     * @return how long the oldest pending delta may have been waiting: the time since the last flush that wrote all
+     * pending deltas, or zero if nothing is pending
+     */
+    @CheckReturnValue
+    public long getFlushLag(final TimeUnit timeUnit) {
+        if (getPendingCounters() == 0) {
+            return 0;
+        }
+        return timeUnit.convert(System.nanoTime() - this.lastCompleteFlush, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return amount of failed writes of an entity class and attribute since creation of this accumulator
+     */
+    @CheckReturnValue
+    public long getFailedFlushes() {
+        return this.failedFlushes.get();
+    }
+
+    //################################################################################
+    //                                  Internals
+    //################################################################################
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final Exception e) {
+            log.error("Failed to flush counters on DB {}, will retry with the next flush", this.wrapper.getName(), e);
+        }
+    }
+
+    private void collectLive(final Map<Batch, List<Pending>> batches) {
+        for (final Iterator<Map.Entry<Counter, Cell>> it = this.cells.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<Counter, Cell> entry = it.next();
+            final Counter counter = entry.getKey();
+            final Cell cell = entry.getValue();
+            final long delta = cell.adder.sum();
+            if (delta != 0) {
+                cell.idleFlushes = 0;
+                batch(batches, counter).add(new Pending(counter, cell, delta));
+            } else if (++cell.idleFlushes > 1) {
+                //idle for a whole flush interval, evict it to keep the memory bounded by the active counters
+                cell.retired = true;
+                if (this.cells.remove(counter, cell)) {
+                    this.retired.computeIfAbsent(counter, k -> new ArrayList<>()).add(cell);
+                }
+            }
+        }
+    }
+
+    //writers that saw a cell before it was retired may have added to it after its last flush
+    private void collectRetired(final Map<Batch, List<Pending>> batches) {
+        for (final Iterator<Map.Entry<Counter, List<Cell>>> it = this.retired.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<Counter, List<Cell>> entry = it.next();
+            final Counter counter = entry.getKey();
+            for (final Iterator<Cell> cellIt = entry.getValue().iterator(); cellIt.hasNext(); ) {
+                final Cell cell = cellIt.next();
+                final long delta = cell.adder.sum();
+                if (delta != 0) {
+                    cell.idleFlushes = 0;
+                    batch(batches, counter).add(new Pending(counter, cell, delta));
+                } else if (++cell.idleFlushes > 2) {
+                    cellIt.remove();
+                }
+            }
+            if (entry.getValue().isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static List<Pending> batch(final Map<Batch, List<Pending>> batches, final Counter counter) {
+        return batches.computeIfAbsent(new Batch(counter.key.clazz, counter.attribute), k -> new ArrayList<>());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void write(final Batch batch, final List<Pending> pending) {
+        final Map<EntityKey, Long> deltas = new HashMap<>();
+        for (final Pending p : pending) {
+            deltas.merge(p.counter.key, p.delta, Long::sum);
+        }
+        //either adds all of the deltas, or throws without having added any of them
+        this.wrapper.incrementAll((Map) deltas, batch.attribute);
+        //only now that they are written, remove the deltas. anything added meanwhile stays pending
+        for (final Pending p : pending) {
+            p.cell.adder.add(-p.delta);
+        }
+    }
+
+    private static class Counter {
+        private final EntityKey<?, ?> key;
+        private final String attribute;
+
+        private Counter(final EntityKey<?, ?> key, final String attribute) {
+            this.key = key;
+            this.attribute = attribute;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Counter)) {
+                return false;
+            }
+            final Counter other = (Counter) obj;
+            return this.key.equals(other.key) && this.attribute.equals(other.attribute);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.key.hashCode() + this.attribute.hashCode();
+        }
+    }
+
+    private static class Cell {
+        private final LongAdder adder = new LongAdder();
+        private volatile boolean retired = false;
+        //only touched by the flushing thread
+        private int idleFlushes = 0;
+    }
+
+    //deltas of one entity class and attribute are written together
+    private static class Batch {
+        private final Class<?> clazz;
+        private final String attribute;
+
+        private Batch(final Class<?> clazz, final String attribute) {
+            this.clazz = clazz;
+            this.attribute = attribute;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Batch)) {
+                return false;
+            }
+            final Batch other = (Batch) obj;
+            return this.clazz.equals(other.clazz) && this.attribute.equals(other.attribute);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.clazz, this.attribute);
+        }
+    }
+
+    private static class Pending {
+        private final Counter counter;
+        private final Cell cell;
+        private final long delta;
+
+        private Pending(final Counter counter, final Cell cell, final long delta) {
+            this.counter = counter;
+            this.cell = cell;
+            this.delta = delta;
+        }
+    }
+}
@@ -62,6 +62,10 @@ public class DatabaseConnection {
     private static final long DEFAULT_HEALTHCHECK_PERIOD = TimeUnit.SECONDS.toNanos(5);
 
     private final EntityManagerFactory emf;
+    private final EntityMetadataRegistry entityMetadata;
+    private final RetryPolicy retryPolicy;
+    @Nullable
+    private final AdmissionControl admissionControl;
     private final HikariDataSource hikariDataSource;
     @Nullable
     private final ProxyDataSource proxiedDataSource;
@@ -98,6 +102,9 @@ public class DatabaseConnection {
      *                         the datasource over to the datasource proxy and hibernate. If you need tighter control
      *                         over the handling of migrations, consider running them manually before creating the
      *                         DatabaseConnection, Flyway supports the use of a jdbcUrl instead of a datasource.
+     * @param retryPolicy      retry policy for the operations of the {@link DatabaseWrapper}s of this connection
+     * @param admissionControl optional admission control for the operations of the {@link DatabaseWrapper}s of this
+     *                         connection
      *
      * @throws DatabaseException if the connection could not be created due to [reasons]
      */
@@ -114,8 +121,12 @@ public class DatabaseConnection {
                                final boolean checkConnection,
                                long healthCheckPeriod,
                                @Nullable final ProxyDataSourceBuilder proxyDataSourceBuilder,
-                               @Nullable final Flyway flyway) {
+                               @Nullable final Flyway flyway,
+                               final RetryPolicy retryPolicy,
+                               @Nullable final AdmissionControl admissionControl) {
         this.connectionName = connectionName;
+        this.retryPolicy = retryPolicy;
+        this.admissionControl = admissionControl;
         this.state = DatabaseState.INITIALIZING;
 
         try {
@@ -160,6 +171,7 @@ public class DatabaseConnection {
             }
 
             this.emf = entityManagerFactoryBuilder.build(connectionName, dataSource, hibernateProps, entityPackages);
+            this.entityMetadata = new EntityMetadataRegistry(this.emf);
             if (hibernateStats != null) {
                 hibernateStats.add(this.emf.unwrap(SessionFactoryImpl.class), connectionName);
             }
@@ -205,6 +217,22 @@ public class DatabaseConnection {
         return this.emf;
     }
 
+    //metadata of the entities of the entity manager factory, shared by the wrappers of this connection
+    EntityMetadataRegistry getEntityMetadata() {
+        return this.entityMetadata;
+    }
+
+    @CheckReturnValue
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    @Nullable
+    @CheckReturnValue
+    public AdmissionControl getAdmissionControl() {
+        return this.admissionControl;
+    }
+
     /**
      * @return An EntityManager that can be used to do EntityManager things.
      *
@@ -346,6 +374,9 @@ public class DatabaseConnection {
         private ProxyDataSourceBuilder proxyDataSourceBuilder;
         @Nullable
         private Flyway flyway;
+        private RetryPolicy retryPolicy = new RetryPolicy.Builder().build();
+        @Nullable
+        private AdmissionControl admissionControl;
 
 
         public static Properties getDefaultDataSourceProps() {
@@ -398,6 +429,10 @@ public class DatabaseConnection {
             //sane batch sizes
             hibernateProps.put("hibernate.default_batch_fetch_size", 100);
             hibernateProps.put("hibernate.jdbc.batch_size", 100);
+            //flush inserts and updates grouped by entity and ordered by id: better batching, concurrent flushes lock rows
+            // in the same order and don't deadlock each other, and the id index is written front to back
+            hibernateProps.put("hibernate.order_inserts", Boolean.TRUE.toString());
+            hibernateProps.put("hibernate.order_updates", Boolean.TRUE.toString());
 
             //disable autocommit, it is not recommended for our use cases, and interferes with some of them
             // see https://vladmihalcea.com/2017/05/17/why-you-should-always-use-hibernate-connection-provider_disables_autocommit-for-resource-local-jpa-transactions/
@@ -573,6 +608,27 @@ public class DatabaseConnection {
             return this;
         }
 
+        /**
+         * Retry policy for transient failures of the operations of the {@link DatabaseWrapper}s of the connection.
+         * Defaults to a policy built by a {@link RetryPolicy.Builder} with default values.
+         */
+        @CheckReturnValue
+        public Builder setRetryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Admission control for the operations of the {@link DatabaseWrapper}s of the connection, which rejects
+         * operations right away when the database can't keep up, instead of letting them wait for a connection of the
+         * pool. Defaults to none.
+         */
+        @CheckReturnValue
+        public Builder setAdmissionControl(@Nullable final AdmissionControl admissionControl) {
+            this.admissionControl = admissionControl;
+            return this;
+        }
+
         //misc
         @CheckReturnValue
         public Builder setCheckConnection(final boolean checkConnection) {
@@ -617,7 +673,9 @@ public class DatabaseConnection {
                     this.checkConnection,
                     this.healthcheckPeriod,
                     this.proxyDataSourceBuilder,
-                    this.flyway
+                    this.flyway,
+                    this.retryPolicy,
+                    this.admissionControl
             );
         }
     }
@@ -24,32 +24,68 @@
 
 package space.npstr.sqlsauce;
 
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.internal.SessionImpl;
-import org.hibernate.internal.util.ReflectHelper;
+import org.hibernate.jpa.QueryHints;
 import org.hibernate.query.spi.QueryImplementor;
+import space.npstr.sqlsauce.AdmissionControl.OperationClass;
 import space.npstr.sqlsauce.entities.IEntity;
 import space.npstr.sqlsauce.entities.SaucedEntity;
 import space.npstr.sqlsauce.fp.types.EntityKey;
+import space.npstr.sqlsauce.fp.types.MultiTransfiguration;
 import space.npstr.sqlsauce.fp.types.NonnullFunction;
 import space.npstr.sqlsauce.fp.types.Transfiguration;
+import space.npstr.sqlsauce.fp.types.TransfiguredEntities;
+import space.npstr.sqlsauce.jdbc.ParameterBinder;
+import space.npstr.sqlsauce.jdbc.RowMapper;
+import space.npstr.sqlsauce.jdbc.RowMappers;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import java.io.Serializable;
-import java.lang.reflect.Constructor;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -60,20 +96,95 @@ import java.util.stream.Stream;
  */
 public class DatabaseWrapper {
 
+    //rows fetched per round trip when streaming ids
+    private static final int ID_FETCH_SIZE = 10000;
+    //concurrent chunk queries of a single bulk load
+    private static final int BULK_LOAD_PARALLELISM = 4;
+    private static final int BULK_LOAD_MIN_CHUNK = 500;
+    private static final int BULK_LOAD_MAX_CHUNK = 5000;
+    //SQLState of a unique_violation
+    private static final String UNIQUE_VIOLATION = "23505";
+
     private final EntityManagerFactory emf;
     private final String name;
+    private final boolean autoCommitReads;
+    private final EntityMetadataRegistry entityMetadata;
+    private final RetryPolicy retryPolicy;
+    @Nullable
+    private final AdmissionControl admissionControl;
+    //entity manager of the unit of work running on the current thread
+    private final ThreadLocal<EntityManager> unitOfWork = new ThreadLocal<>();
+    //deadlines of the calls running on the current thread
+    private final ThreadLocal<DeadlineScope> deadlines = new ThreadLocal<>();
 
     /**
      * @param name
      *         a name to be used for logs
      */
     public DatabaseWrapper(EntityManagerFactory entityManagerFactory, String name) {
-        this.emf = entityManagerFactory;
-        this.name = name;
+        this(entityManagerFactory, name, false);
+    }
+
+    /**
+     * @param name
+     *         a name to be used for logs
+     * @param autoCommitReads
+     *         Run single statement reads ({@link #getEntity(EntityKey)}, {@link #loadAll(Class)} and the JPQL
+     *         selectors) without a transaction, on a connection switched to autocommit, so they cost a single round
+     *         trip instead of three (BEGIN, query, COMMIT). Loaded entities are read only as usual. Reads of several
+     *         statements, like lazy or secondary selects of associations, don't see a consistent snapshot in this
+     *         mode. Does not apply inside of a {@link #unitOfWork(Consumer)}.
+     */
+    public DatabaseWrapper(EntityManagerFactory entityManagerFactory, String name, boolean autoCommitReads) {
+        this(entityManagerFactory, name, autoCommitReads, new RetryPolicy.Builder().build());
+    }
+
+    /**
+     * @param retryPolicy
+     *         Retry policy for transient failures of the operations of this wrapper. Wrappers created from a
+     *         {@link DatabaseConnection} use the policy of the connection.
+     *
+     * @see #DatabaseWrapper(EntityManagerFactory, String, boolean)
+     */
+    public DatabaseWrapper(EntityManagerFactory entityManagerFactory, String name, boolean autoCommitReads,
+                           RetryPolicy retryPolicy) {
+        this(entityManagerFactory, name, autoCommitReads, retryPolicy, null);
+    }
+
+    /**
+     * @param admissionControl
+     *         Optional admission control for the operations of this wrapper. Wrappers created from a
+     *         {@link DatabaseConnection} use the admission control of the connection.
+     *
+     * @see #DatabaseWrapper(EntityManagerFactory, String, boolean, RetryPolicy)
+     */
+    public DatabaseWrapper(EntityManagerFactory entityManagerFactory, String name, boolean autoCommitReads,
+                           RetryPolicy retryPolicy, @Nullable AdmissionControl admissionControl) {
+        this(entityManagerFactory, name, autoCommitReads, new EntityMetadataRegistry(entityManagerFactory), retryPolicy,
+                admissionControl);
     }
 
     public DatabaseWrapper(DatabaseConnection connection) {
-        this(connection.getEntityManagerFactory(), connection.getName());
+        this(connection, false);
+    }
+
+    /**
+     * @see #DatabaseWrapper(EntityManagerFactory, String, boolean)
+     */
+    public DatabaseWrapper(DatabaseConnection connection, boolean autoCommitReads) {
+        this(connection.getEntityManagerFactory(), connection.getName(), autoCommitReads, connection.getEntityMetadata(),
+                connection.getRetryPolicy(), connection.getAdmissionControl());
+    }
+
+    private DatabaseWrapper(EntityManagerFactory entityManagerFactory, String name, boolean autoCommitReads,
+                            EntityMetadataRegistry entityMetadata, RetryPolicy retryPolicy,
+                            @Nullable AdmissionControl admissionControl) {
+        this.emf = entityManagerFactory;
+        this.name = name;
+        this.autoCommitReads = autoCommitReads;
+        this.entityMetadata = entityMetadata;
+        this.retryPolicy = retryPolicy;
+        this.admissionControl = admissionControl;
     }
 
     public EntityManagerFactory getEntityManagerFactory() {
@@ -84,6 +195,25 @@ public class DatabaseWrapper {
         return name;
     }
 
+    public boolean isAutoCommitReads() {
+        return this.autoCommitReads;
+    }
+
+    /**
+     * @return The retry policy of this wrapper, which also counts the retries of its operations by method name.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    /**
+     * @return The admission control of this wrapper, if there is one.
+     */
+    @Nullable
+    public AdmissionControl getAdmissionControl() {
+        return this.admissionControl;
+    }
+
     //################################################################################
     //                                   Reading
     //################################################################################
@@ -102,6 +232,74 @@ public class DatabaseWrapper {
         return entity != null ? entity : newInstance(entityKey);
     }
 
+    /**
+     * Bulk version of {@link #getOrCreate(EntityKey)}. Existing entities are loaded with a single multiLoad, missing
+     * ones are default constructed.
+     *
+     * @return The entities of the distinct keys, in the order of their first occurrence in the provided keys. Entities
+     * that did not exist are not persisted.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <E extends SaucedEntity<I, E>, I extends Serializable> List<E> getOrCreateAll(final Collection<EntityKey<I, E>> entityKeys) {
+        return getOrCreateAll(entityKeys, false);
+    }
+
+    /**
+     * Bulk version of {@link #getOrCreate(EntityKey)}. Existing entities are loaded with a single multiLoad, missing
+     * ones are default constructed.
+     *
+     * @param persistMissing
+     *         Persist the entities that did not exist, in one transaction with batched inserts, in the
+     *         {@link EntityKey#GLOBAL_ORDER}. The entity locks of the missing entities are held while doing so.
+     *
+     * @return The entities of the distinct keys, in the order of their first occurrence in the provided keys.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <E extends SaucedEntity<I, E>, I extends Serializable> List<E> getOrCreateAll(final Collection<EntityKey<I, E>> entityKeys,
+                                                                                         final boolean persistMissing) {
+        final List<EntityKey<I, E>> keys = new ArrayList<>(new LinkedHashSet<>(entityKeys));
+        final List<E> entities = new ArrayList<>(getEntities(keys));
+        final List<EntityKey<I, E>> missing = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (entities.get(i) == null) {
+                missing.add(keys.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return entities;
+        }
+
+        final Map<EntityKey<I, E>, E> created;
+        if (persistMissing) {
+            missing.sort(EntityKey.GLOBAL_ORDER);
+            try {
+                created = synchronizedOn(SaucedEntity.getEntityLocks(missing), 0,
+                        () -> retry("getOrCreateAll", true, () -> executeTransaction(em -> findOrPersist(em, missing))));
+            } catch (final PersistenceException e) {
+                final String message = String.format("Failed to persist %s missing entities of class %s on DB %s",
+                        missing.size(), missing.get(0).clazz.getName(), this.name);
+                throw new DatabaseException(message, e);
+            }
+        } else {
+            created = new HashMap<>();
+            for (final EntityKey<I, E> key : missing) {
+                created.put(key, newInstance(key));
+            }
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            if (entities.get(i) == null) {
+                entities.set(i, created.get(keys.get(i)));
+            }
+        }
+        return entities;
+    }
+
     /**
      * @return An entity if it exists in the database or null if it doesn't exist. If the entity is a SaucedEntity the
      * sauce will be set.
@@ -113,7 +311,7 @@ public class DatabaseWrapper {
     @CheckReturnValue
     public <E extends IEntity<I, E>, I extends Serializable> E getEntity(final EntityKey<I, E> entityKey) {
         try {
-            return executeNullableTransaction(em -> em.find(entityKey.clazz, entityKey.id));
+            return retry("getEntity", true, () -> executeNullableRead(em -> em.find(entityKey.clazz, entityKey.id)));
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to find entity of class %s for id %s on DB %s",
                     entityKey.clazz.getName(), entityKey.id.toString(), name);
@@ -131,10 +329,10 @@ public class DatabaseWrapper {
     @CheckReturnValue
     //returns a list of sauced entities
     public <E extends SaucedEntity<I, E>, I extends Serializable> List<E> loadAll(final Class<E> clazz) {
-        final String query = "SELECT c FROM " + clazz.getSimpleName() + " c";
+        final String query = metadata(clazz).getSelectAllQuery();
         try {
-            return executeTransaction(em -> em.createQuery(query, clazz)
-                    .getResultList());
+            return retry("loadAll", true, () -> executeRead(em -> em.createQuery(query, clazz)
+                    .getResultList()));
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to load all %s entities on DB %s",
                     clazz.getName(), this.name);
@@ -159,7 +357,10 @@ public class DatabaseWrapper {
     }
 
     /**
-     * @return The result list will be ordered by the order of the provided id list, but may contain null for unknown
+     * Bulk load entities. The ids of each entity class are loaded in chunks with WHERE id = ANY(?) queries, which
+     * outside of a unit of work run in parallel on several connections of the pool.
+     *
+     * @return The result list will be ordered by the order of the provided key list, and contains null for unknown
      * entities
      *
      * @throws DatabaseException
@@ -167,22 +368,166 @@ public class DatabaseWrapper {
      */
     @CheckReturnValue
     //returns a list of sauced entities that may contain null elements
+    @SuppressWarnings("unchecked")
     public <E extends SaucedEntity<I, E>, I extends Serializable> List<E> getEntities(final List<EntityKey<I, E>> entityKeys) {
+        return (List<E>) (List<?>) bulkLoad(entityKeys);
+    }
+
+    /**
+     * Bulk load entities of several classes, see {@link #getEntities(List)}.
+     *
+     * @return The result list will be ordered by the order of the provided key list, and contains null for unknown
+     * entities
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    //returns a list of entities that may contain null elements
+    public List<Object> getMixedEntities(final List<? extends EntityKey<?, ?>> entityKeys) {
+        return bulkLoad(entityKeys);
+    }
+
+
+    private List<Object> bulkLoad(final List<? extends EntityKey<?, ?>> entityKeys) {
         if (entityKeys.isEmpty()) {
             return Collections.emptyList();
         }
-        final Class<E> clazz = entityKeys.get(0).clazz;
+        final Map<Class<?>, Set<Object>> idsByClass = new LinkedHashMap<>();
+        for (final EntityKey<?, ?> key : entityKeys) {
+            idsByClass.computeIfAbsent(key.clazz, c -> new LinkedHashSet<>()).add(key.id);
+        }
+        final int distinct = idsByClass.values().stream().mapToInt(Set::size).sum();
+        //aim for a few chunks per worker, so they finish at about the same time
+        final int chunkSize = Math.max(BULK_LOAD_MIN_CHUNK,
+                Math.min(BULK_LOAD_MAX_CHUNK, (distinct + BULK_LOAD_PARALLELISM * 4 - 1) / (BULK_LOAD_PARALLELISM * 4)));
+        final List<BulkLoadChunk> chunks = new ArrayList<>();
+        idsByClass.forEach((clazz, ids) -> {
+            final List<Object> idList = new ArrayList<>(ids);
+            for (int i = 0; i < idList.size(); i += chunkSize) {
+                chunks.add(new BulkLoadChunk(metadata(clazz), idList.subList(i, Math.min(i + chunkSize, idList.size()))));
+            }
+        });
+
+        final Map<Class<?>, Map<Object, Object>> found = new ConcurrentHashMap<>();
         try {
-            return executeTransaction(em -> em.unwrap(Session.class)
-                    .byMultipleIds(clazz)
-                    .multiLoad(entityKeys.stream().map(key -> key.id).collect(Collectors.toList())));
+            if (chunks.size() == 1 || isInUnitOfWork()) {
+                retry("getEntities", true, () -> executeNullableRead(em -> {
+                    chunks.forEach(chunk -> loadChunk(em, chunk, found));
+                    return null;
+                }));
+            } else {
+                loadChunksInParallel(chunks, found);
+            }
         } catch (final PersistenceException e) {
-            final String message = String.format("Failed to bulk load %s entities of class %s on DB %s",
-                    entityKeys.size(), clazz.getName(), this.name);
+            final String message = String.format("Failed to bulk load %s entities of %s classes on DB %s",
+                    entityKeys.size(), idsByClass.size(), this.name);
             throw new DatabaseException(message, e);
         }
+
+        final List<Object> result = new ArrayList<>(entityKeys.size());
+        for (final EntityKey<?, ?> key : entityKeys) {
+            final Map<Object, Object> entities = found.get(key.clazz);
+            result.add(entities != null ? entities.get(key.id) : null);
+        }
+        return result;
+    }
+
+    //the caller and up to BULK_LOAD_PARALLELISM - 1 helpers take chunks until all are loaded, each on its own connection
+    private void loadChunksInParallel(final List<BulkLoadChunk> chunks, final Map<Class<?>, Map<Object, Object>> found) {
+        final AtomicInteger next = new AtomicInteger();
+        final Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < chunks.size()) {
+                final BulkLoadChunk chunk = chunks.get(index);
+                try {
+                    retry("getEntities", true, () -> executeNullableRead(em -> {
+                        loadChunk(em, chunk, found);
+                        return null;
+                    }));
+                } catch (final RuntimeException e) {
+                    //stop the other workers
+                    next.set(chunks.size());
+                    throw e;
+                }
+            }
+        };
+        //the helpers run under the deadline of the caller
+        final DeadlineScope deadline = this.deadlines.get();
+        final Runnable helper = () -> {
+            //the executor runs helpers on the calling thread when it is busy, keep the scope of that thread
+            final DeadlineScope previous = this.deadlines.get();
+            this.deadlines.set(deadline);
+            try {
+                worker.run();
+            } finally {
+                if (previous != null) {
+                    this.deadlines.set(previous);
+                } else {
+                    this.deadlines.remove();
+                }
+            }
+        };
+        final List<CompletableFuture<Void>> helpers = new ArrayList<>();
+        for (int i = 1; i < Math.min(BULK_LOAD_PARALLELISM, chunks.size()); i++) {
+            helpers.add(CompletableFuture.runAsync(helper, BulkLoadExecutor.INSTANCE));
+        }
+        worker.run();
+        try {
+            CompletableFuture.allOf(helpers.toArray(new CompletableFuture<?>[0])).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void loadChunk(final EntityManager entityManager, final BulkLoadChunk chunk,
+                                  final Map<Class<?>, Map<Object, Object>> found) {
+        final EntityMetadata<?> metadata = chunk.metadata;
+        final String sql = metadata.getSelectByIdArraySql();
+        final List<?> entities;
+        if (sql != null) {
+            entities = entityManager.createNativeQuery(sql, metadata.getClazz())
+                    .setParameter("ids", metadata.idArray(chunk.ids))
+                    .getResultList();
+        } else {
+            entities = entityManager.unwrap(Session.class)
+                    .byMultipleIds(metadata.getClazz())
+                    .multiLoad(chunk.ids.toArray(new Serializable[0]));
+        }
+        final Map<Object, Object> byId = found.computeIfAbsent(metadata.getClazz(), c -> new ConcurrentHashMap<>());
+        for (final Object entity : entities) {
+            if (entity != null) {
+                byId.put(((IEntity<?, ?>) entity).getId(), entity);
+            }
+        }
     }
 
+    private static final class BulkLoadChunk {
+        private final EntityMetadata<?> metadata;
+        private final List<Object> ids;
+
+        private BulkLoadChunk(final EntityMetadata<?> metadata, final List<Object> ids) {
+            this.metadata = metadata;
+            this.ids = ids;
+        }
+    }
+
+    //shared by all wrappers, threads are only started by parallel bulk loads, and die when idle
+    private static final class BulkLoadExecutor {
+        private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+        private static final ExecutorService INSTANCE = new ThreadPoolExecutor(0, 16, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "sqlsauce-bulk-load-" + THREAD_COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                //when all threads are busy, the calling thread loads its chunks on its own
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
 
     //################################################################################
     //                                  Writing
@@ -199,7 +544,7 @@ public class DatabaseWrapper {
     public <E extends SaucedEntity<I, E>, I extends Serializable> E merge(final E entity) {
         try {
             synchronized (entity.getEntityLock()) {
-                return executeTransaction(em -> em.merge(entity));
+                return retry("merge", true, () -> executeTransaction(em -> em.merge(entity)));
             }
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to merge entity %s on DB %s",
@@ -220,10 +565,10 @@ public class DatabaseWrapper {
     //returns whatever was passed in, with a sauce if it was a sauced entity
     public <E> E persist(final E entity) {
         try {
-            return executeTransaction(em -> {
+            return retry("persist", false, () -> executeTransaction(em -> {
                 em.persist(entity);
                 return entity;
-            });
+            }));
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to persist entity %s on DB %s",
                     entity.toString(), this.name);
@@ -242,21 +587,26 @@ public class DatabaseWrapper {
      * on the entity.
      * <p>
      * NOTE that this will create a new instance of the entity if it does not exist yet.
+     * <p>
+     * If the transaction is aborted without committing anything, for example by a deadlock or serialization failure,
+     * it is retried with a fresh load of the entity, so the transformation may be applied more than once. Failures with
+     * an unknown outcome, like a connection that broke while committing, are not retried, since the transformation may
+     * have been committed already.
      *
      * @throws DatabaseException
      *         Wraps any {@link PersistenceException} that may be thrown.
      */
     public <E extends SaucedEntity<I, E>, I extends Serializable> E findApplyAndMerge(final Transfiguration<I, E> transfiguration) {
-        final EntityManager em = this.emf.createEntityManager();
+        final Function<EntityManager, E> transformFunc = transformFunc(transfiguration);
         try {
-            return this.lockedWrappedTransformFunc(transfiguration).apply(em);
+            synchronized (SaucedEntity.getEntityLock(transfiguration.key)) {
+                return retry("findApplyAndMerge", false, () -> executeTransaction(transformFunc::apply));
+            }
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to find, apply and merge entity id %s of class %s on DB %s",
                     transfiguration.key.id.toString(), transfiguration.key.clazz.getName(),
                     this.name);
             throw new DatabaseException(message, e);
-        } finally {
-            em.close();
         }
     }
 
@@ -273,6 +623,10 @@ public class DatabaseWrapper {
 
     /**
      * A bulk method for applying transformations to a stream of data.
+     * <p>
+     * The stream is collected first, and the transfigurations are applied in the {@link EntityKey#GLOBAL_ORDER} of
+     * their keys, so concurrent bulk writers touch the rows in the same order, and the id index is walked front to back.
+     * Transfigurations of the same key are applied in the order of the stream.
      *
      * @return Exceptions thrown while processing the input stream
      */
@@ -280,19 +634,12 @@ public class DatabaseWrapper {
             final Stream<Transfiguration<I, E>> transfigurations) {
         final List<DatabaseException> exceptions = new ArrayList<>();
 
-        transfigurations.forEach(transfiguration -> {
+        final List<Transfiguration<I, E>> sorted = transfigurations.collect(Collectors.toList());
+        //stable, keeps the order of transfigurations of the same key
+        sorted.sort(Comparator.comparing(transfiguration -> transfiguration.key, EntityKey.GLOBAL_ORDER));
+        sorted.forEach(transfiguration -> {
             try {
-                final EntityManager em = this.emf.createEntityManager();
-                try {
-                    this.lockedWrappedTransformFunc(transfiguration).apply(em);
-                } catch (final PersistenceException e) {
-                    final String message = String.format("Failed to find, apply and merge entity id %s of class %s on DB %s",
-                            transfiguration.key.id.toString(), transfiguration.key.clazz.getName(),
-                            this.name);
-                    exceptions.add(new DatabaseException(message, e));
-                } finally {
-                    em.close();
-                }
+                findApplyAndMerge(transfiguration);
             } catch (final DatabaseException e) {
                 exceptions.add(e);
             }
@@ -301,6 +648,42 @@ public class DatabaseWrapper {
         return exceptions;
     }
 
+    /**
+     * Atomically transform several entities: find (or create) all entities of the transfiguration, apply the
+     * transformation to them, and merge them back, all in one transaction.
+     * <p>
+     * The entity locks of all keys are acquired in a globally consistent order before the transaction starts, see
+     * {@link SaucedEntity#getEntityLocks(java.util.Collection)}. Inside the transaction, the existing rows are loaded and locked
+     * with one SELECT ... ORDER BY id FOR UPDATE per entity class, ordered by class name, so concurrent
+     * transfigurations lock their rows in the same order and don't deadlock each other in the database either.
+     * <p>
+     * Like {@link #findApplyAndMerge(Transfiguration)}, the transaction is only retried if it was aborted without
+     * committing anything.
+     *
+     * @return the merged entities
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public TransfiguredEntities findApplyAndMerge(final MultiTransfiguration transfiguration) {
+        try {
+            return synchronizedOn(SaucedEntity.getEntityLocks(transfiguration.keys), 0,
+                    () -> retry("findApplyAndMerge", false, () -> executeTransaction(em -> {
+                        final TransfiguredEntities entities = lockAndFindOrCreate(em, transfiguration.keys);
+                        transfiguration.tf.accept(entities);
+                        final Map<EntityKey<?, ?>, Object> merged = new LinkedHashMap<>();
+                        for (final EntityKey<?, ?> key : transfiguration.keys) {
+                            merged.put(key, em.merge(entities.get(key)));
+                        }
+                        return new TransfiguredEntities(merged);
+                    })));
+        } catch (final PersistenceException e) {
+            final String message = String.format("Failed to find, apply and merge entities %s on DB %s",
+                    transfiguration.keys, this.name);
+            throw new DatabaseException(message, e);
+        }
+    }
+
     /**
      * Transform the entity described by the provided entity key with the provided transformation. The returned
      * transaction is wrapped in begin() commit().
@@ -375,6 +758,49 @@ public class DatabaseWrapper {
         };
     }
 
+    //the entities of the keys, with their rows locked in the order of class names, then ids
+    private TransfiguredEntities lockAndFindOrCreate(final EntityManager entityManager,
+                                                     final List<EntityKey<?, ?>> keys) {
+        final Map<Class<?>, List<EntityKey<?, ?>>> keysByClass = new TreeMap<>(Comparator.comparing(Class::getName));
+        for (final EntityKey<?, ?> key : keys) {
+            keysByClass.computeIfAbsent(key.clazz, clazz -> new ArrayList<>()).add(key);
+        }
+
+        final Map<EntityKey<?, ?>, Object> found = new HashMap<>();
+        keysByClass.forEach((clazz, classKeys) -> {
+            final List<?> entities = entityManager.createQuery(metadata(clazz).getSelectByIdsForUpdateQuery(), clazz)
+                    .setParameter("ids", classKeys.stream().map(key -> key.id).collect(Collectors.toList()))
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getResultList();
+            for (final Object entity : entities) {
+                final IEntity<?, ?> iEntity = (IEntity<?, ?>) entity;
+                found.put(EntityKey.of(iEntity), entity);
+            }
+        });
+
+        final Map<EntityKey<?, ?>, Object> result = new LinkedHashMap<>();
+        for (final EntityKey<?, ?> key : keys) {
+            final Object entity = found.get(key);
+            result.put(key, entity != null ? entity : newSaucedInstance(key));
+        }
+        return new TransfiguredEntities(result);
+    }
+
+    //the key has been checked to describe a sauced entity when creating the transfiguration
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object newSaucedInstance(final EntityKey<?, ?> key) {
+        return newInstance((EntityKey) key);
+    }
+
+    private static <R> R synchronizedOn(final List<Object> locks, final int index, final Supplier<R> action) {
+        if (index >= locks.size()) {
+            return action.get();
+        }
+        synchronized (locks.get(index)) {
+            return synchronizedOn(locks, index + 1, action);
+        }
+    }
+
     /**
      * @return A merge function.
      * The applied EntityManager needs to have an open transaction, and commit it some time afterwards.
@@ -392,14 +818,18 @@ public class DatabaseWrapper {
      */
     public <E extends SaucedEntity<I, E>, I extends Serializable> int applyAndMergeAll(final Class<E> clazz,
                                                                                        final Function<E, E> transformation) {
-        return applyAndMergeAll("SELECT c FROM " + clazz.getSimpleName() + " c", false, clazz, transformation);
+        return applyAndMergeAll(metadata(clazz).getSelectAllQuery(), false, clazz, transformation);
     }
 
     /**
      * Apply a transformation to all entities returned from a query
      * <p>
      * This is somewhat memory/resources efficient as it uses the stream api to retrieve and apply the transformation to
-     * results
+     * results. The updates are flushed ordered by entity and id, see hibernate.order_updates in
+     * {@link DatabaseConnection.Builder#getDefaultHibernateProps()}.
+     * <p>
+     * Like {@link #findApplyAndMerge(Transfiguration)}, the transaction is only retried if it was aborted without
+     * committing anything.
      *
      * @return the amount of entities that were returned by the query and the transformation applied to
      *
@@ -408,37 +838,33 @@ public class DatabaseWrapper {
      */
     public <E> int applyAndMergeAll(final String query, final boolean isNative, final Class<E> clazz,
                                     final Function<E, E> transformation) {
-        final EntityManager em = this.emf.createEntityManager();
-        final AtomicInteger i = new AtomicInteger(0);
         try {
-            //take advantage of stream API for results which is part of Hibernate 5.2, and will come to JPA with 2.2
-            //the disadvantage is that I havent come up with a correct way to use locks for this yet, as the stream
-            //serves the entities without their ids, and doing an additional lookup afterwards sucks
-            final SessionImpl session = em.unwrap(SessionImpl.class);
-            session.getTransaction().begin();
-
-            final QueryImplementor<E> q;
-            if (isNative) {
-                @SuppressWarnings("unchecked") final QueryImplementor<E> nq = session.createNativeQuery(query, clazz);
-                q = nq;
-            } else {
-                q = session.createQuery(query, clazz);
-            }
-            q.stream().forEach(entity -> {
-                E e = entity;
-                e = transformation.apply(e);
-                session.merge(e);
-                i.incrementAndGet();
-            });
-
-            session.getTransaction().commit();
-            return i.get();
+            return retry("applyAndMergeAll", false, () -> executeTransaction(em -> {
+                //take advantage of stream API for results which is part of Hibernate 5.2, and will come to JPA with 2.2
+                //the disadvantage is that I havent come up with a correct way to use locks for this yet, as the stream
+                //serves the entities without their ids, and doing an additional lookup afterwards sucks
+                final SessionImpl session = em.unwrap(SessionImpl.class);
+                final AtomicInteger i = new AtomicInteger(0);
+
+                final QueryImplementor<E> q;
+                if (isNative) {
+                    @SuppressWarnings("unchecked") final QueryImplementor<E> nq = session.createNativeQuery(query, clazz);
+                    q = nq;
+                } else {
+                    q = session.createQuery(query, clazz);
+                }
+                q.stream().forEach(entity -> {
+                    E e = entity;
+                    e = transformation.apply(e);
+                    session.merge(e);
+                    i.incrementAndGet();
+                });
+                return i.get();
+            }));
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to transform entities of clazz %s from query %s on DB %s",
                     clazz.getName(), query, this.name);
             throw new DatabaseException(message, e);
-        } finally {
-            em.close();
         }
     }
 
@@ -482,13 +908,13 @@ public class DatabaseWrapper {
     @Nullable
     public <E extends IEntity<I, E>, I extends Serializable> E deleteEntity(final EntityKey<I, E> entityKey) {
         try {
-            return executeNullableTransaction(em -> {
+            return retry("deleteEntity", true, () -> executeNullableTransaction(em -> {
                 final E entity = em.find(entityKey.clazz, entityKey.id);
                 if (entity != null) {
                     em.remove(entity);
                 }
                 return entity;
-            });
+            }));
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to delete entity id %s of class %s on DB %s",
                     entityKey.id.toString(), entityKey.clazz.getName(), this.name);
@@ -510,14 +936,30 @@ public class DatabaseWrapper {
      *         Wraps any {@link PersistenceException} that may be thrown.
      */
     public int executeJpqlQuery(final String queryString, @Nullable final Map<String, Object> parameters) {
+        return executeJpqlQuery(queryString, parameters, false);
+    }
+
+    /**
+     * @param retry
+     *         Run the query again on transient failures, see {@link RetryPolicy}. Only pass true for queries that have
+     *         the same effect when they run more than once.
+     *
+     * @return the number of entities updated or deleted
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public int executeJpqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
+                                final boolean retry) {
+        final Supplier<Integer> execution = () -> executeTransaction(em -> {
+            final Query query = em.createQuery(queryString);
+            if (parameters != null) {
+                parameters.forEach(query::setParameter);
+            }
+            return query.executeUpdate();
+        });
         try {
-            return executeTransaction(em -> {
-                final Query query = em.createQuery(queryString);
-                if (parameters != null) {
-                    parameters.forEach(query::setParameter);
-                }
-                return query.executeUpdate();
-            });
+            return retry ? retry("executeJpqlQuery", true, execution) : execution.get();
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to execute JPQL query %s with %s parameters on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", this.name);
@@ -535,13 +977,13 @@ public class DatabaseWrapper {
     public <T> T selectJpqlQuerySingleResult(final String queryString, @Nullable final Map<String, Object> parameters,
                                              final Class<T> resultClass) {
         try {
-            return executeTransaction(em -> {
+            return retry("selectJpqlQuerySingleResult", true, () -> executeRead(em -> {
                 final Query q = em.createQuery(queryString);
                 if (parameters != null) {
                     parameters.forEach(q::setParameter);
                 }
                 return resultClass.cast(q.getSingleResult());
-            });
+            }));
         } catch (final PersistenceException | ClassCastException e) {
             final String message = String.format("Failed to select single result JPQL query %s with %s parameters for class %s on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", resultClass.getName(), this.name);
@@ -562,6 +1004,9 @@ public class DatabaseWrapper {
      *         set to -1 or lower for no offset
      * @param limit
      *         set to -1 or lower for no limit
+     * @param readOnly
+     *         load the results as read only, see {@link #selectSqlQuery(String, Map, Class, boolean)}. Defaults to
+     *         true, unless called inside of a {@link #unitOfWork(Consumer)}.
      *
      * @throws DatabaseException
      *         Wraps any {@link PersistenceException} that may be thrown.
@@ -569,9 +1014,10 @@ public class DatabaseWrapper {
     //limited and offset results
     @CheckReturnValue
     public <T> List<T> selectJpqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
-                                       final Class<T> resultClass, final int offset, final int limit) {
+                                       final Class<T> resultClass, final int offset, final int limit,
+                                       final boolean readOnly) {
         try {
-            return executeTransaction(em -> {
+            final NonnullFunction<EntityManager, List<T>> query = em -> {
                 final TypedQuery<T> q = em.createQuery(queryString, resultClass);
                 if (parameters != null) {
                     parameters.forEach(q::setParameter);
@@ -582,9 +1028,14 @@ public class DatabaseWrapper {
                 if (limit > -1) {
                     q.setMaxResults(limit);
                 }
+                if (readOnly) {
+                    q.setHint(QueryHints.HINT_READONLY, true);
+                }
 
                 return q.getResultList();
-            });
+            };
+            //a JPQL select does not write, so it is safe to run again
+            return retry("selectJpqlQuery", true, () -> readOnly ? executeRead(query) : executeTransaction(query));
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to select JPQL query %s with %s parameters, offset %s, limit %s, on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", offset, limit, this.name);
@@ -592,6 +1043,17 @@ public class DatabaseWrapper {
         }
     }
 
+    /**
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    //limited and offset results
+    @CheckReturnValue
+    public <T> List<T> selectJpqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
+                                       final Class<T> resultClass, final int offset, final int limit) {
+        return selectJpqlQuery(queryString, parameters, resultClass, offset, limit, !isInUnitOfWork());
+    }
+
     /**
      * @throws DatabaseException
      *         Wraps any {@link PersistenceException} that may be thrown.
@@ -624,6 +1086,17 @@ public class DatabaseWrapper {
         return selectJpqlQuery(queryString, parameters, resultClass, -1);
     }
 
+    /**
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    //no limit and no offset
+    @CheckReturnValue
+    public <T> List<T> selectJpqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
+                                       final Class<T> resultClass, final boolean readOnly) {
+        return selectJpqlQuery(queryString, parameters, resultClass, -1, -1, readOnly);
+    }
+
     /**
      * @throws DatabaseException
      *         Wraps any {@link PersistenceException} that may be thrown.
@@ -648,14 +1121,32 @@ public class DatabaseWrapper {
      *         Wraps any {@link PersistenceException} that may be thrown.
      */
     public int executeSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters) {
+        return executeSqlQuery(queryString, parameters, false);
+    }
+
+    /**
+     * Run a good old SQL query
+     *
+     * @param retry
+     *         Run the query again on transient failures, see {@link RetryPolicy}. Only pass true for queries that have
+     *         the same effect when they run more than once, like an UPSERT setting fixed values.
+     *
+     * @return the number of entities updated or deleted
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public int executeSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
+                               final boolean retry) {
+        final Supplier<Integer> execution = () -> executeTransaction(em -> {
+            final Query q = em.createNativeQuery(queryString);
+            if (parameters != null) {
+                parameters.forEach(q::setParameter);
+            }
+            return q.executeUpdate();
+        });
         try {
-            return executeTransaction(em -> {
-                final Query q = em.createNativeQuery(queryString);
-                if (parameters != null) {
-                    parameters.forEach(q::setParameter);
-                }
-                return q.executeUpdate();
-            });
+            return retry ? retry("executeSqlQuery", true, execution) : execution.get();
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to execute plain SQL query %s with %s parameters on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", this.name);
@@ -689,8 +1180,31 @@ public class DatabaseWrapper {
     @CheckReturnValue
     public <T> List<T> selectSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
                                       final Class<T> resultEntityClass) {
+        return selectSqlQuery(queryString, parameters, resultEntityClass, false);
+    }
+
+    /**
+     * Results will be sauced if they are SaucedEntites
+     *
+     * @param resultEntityClass
+     *         The result class needs to be an entity class, not a single property value like
+     *         java.lang.String for example. Use {@link DatabaseWrapper#selectSqlQuery(String, Map, boolean)}
+     *         for that instead.
+     * @param readOnly
+     *         Load the results as read only entities, and run the query in a read only transaction. Hibernate skips
+     *         taking the snapshots for dirty checking of read only entities, and does not flush them, which saves memory
+     *         and time on large results. Any writes of the query will fail. Inside of a
+     *         {@link #unitOfWork(Consumer)}, only the returned entities are read only, while the transaction stays
+     *         untouched.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <T> List<T> selectSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
+                                      final Class<T> resultEntityClass, final boolean readOnly) {
         try {
-            return selectSqlQuery(em -> em.createNativeQuery(queryString, resultEntityClass), parameters);
+            return selectSqlQuery(em -> em.createNativeQuery(queryString, resultEntityClass), parameters, readOnly);
         } catch (final PersistenceException | ClassCastException e) {
             final String message = String.format("Failed to select list result plain SQL query %s with %s parameters for class %s on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", resultEntityClass.getName(), this.name);
@@ -712,8 +1226,27 @@ public class DatabaseWrapper {
     @CheckReturnValue
     public <T> List<T> selectSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
                                       final String resultEntityMapping) {
+        return selectSqlQuery(queryString, parameters, resultEntityMapping, false);
+    }
+
+    /**
+     * Results will be sauced if they are SaucedEntites
+     *
+     * @param resultEntityMapping
+     *         The result mapping needs to be for an entity class, not a single property value like
+     *         java.lang.String for example. Use {@link DatabaseWrapper#selectSqlQuery(String, Map, boolean)}
+     *         for that instead.
+     * @param readOnly
+     *         see {@link #selectSqlQuery(String, Map, Class, boolean)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <T> List<T> selectSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
+                                      final String resultEntityMapping, final boolean readOnly) {
         try {
-            return selectSqlQuery(em -> em.createNativeQuery(queryString, resultEntityMapping), parameters);
+            return selectSqlQuery(em -> em.createNativeQuery(queryString, resultEntityMapping), parameters, readOnly);
         } catch (final PersistenceException | ClassCastException e) {
             final String message = String.format("Failed to select list result plain SQL query %s with %s parameters for result mapping %s on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", resultEntityMapping, this.name);
@@ -731,8 +1264,25 @@ public class DatabaseWrapper {
      */
     @CheckReturnValue
     public <T> List<T> selectSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters) {
+        return selectSqlQuery(queryString, parameters, false);
+    }
+
+    /**
+     * Results will be sauced if they are SaucedEntites
+     * <p>
+     * This method doesnt set any kind of result class so it can be used to retrieve Strings or Longs for example.
+     *
+     * @param readOnly
+     *         see {@link #selectSqlQuery(String, Map, Class, boolean)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <T> List<T> selectSqlQuery(final String queryString, @Nullable final Map<String, Object> parameters,
+                                      final boolean readOnly) {
         try {
-            return selectSqlQuery(em -> em.createNativeQuery(queryString), parameters);
+            return selectSqlQuery(em -> em.createNativeQuery(queryString), parameters, readOnly);
         } catch (final PersistenceException | ClassCastException e) {
             final String message = String.format("Failed to select list result plain SQL query %s with %s parameters on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", this.name);
@@ -755,14 +1305,19 @@ public class DatabaseWrapper {
     //callers of this should catch PersistenceExceptions and ClassCastExceptions and rethrow them as DatabaseExceptions
     @CheckReturnValue
     private <T> List<T> selectSqlQuery(final Function<EntityManager, Query> queryFunc,
-                                       @Nullable final Map<String, Object> parameters) {
-        return executeTransaction(em -> {
+                                       @Nullable final Map<String, Object> parameters, final boolean readOnly) {
+        final Supplier<List<T>> selection = () -> executeTransaction(em -> {
             final Query q = queryFunc.apply(em);
             if (parameters != null) {
                 parameters.forEach(q::setParameter);
             }
+            if (readOnly) {
+                q.setHint(QueryHints.HINT_READONLY, true);
+            }
             return selectNativeSqlQuery(q);
-        });
+        }, readOnly);
+        //plain SQL may write, unless it runs in a read only transaction
+        return readOnly ? retry("selectSqlQuery", true, selection) : selection.get();
     }
 
     @CheckReturnValue
@@ -780,22 +1335,34 @@ public class DatabaseWrapper {
     @CheckReturnValue
     public <T> T selectSqlQuerySingleResult(final String queryString, @Nullable final Map<String, Object> parameters,
                                             final Class<T> resultClass) {
-        final EntityManager em = this.emf.createEntityManager();
-        try {
+        return selectSqlQuerySingleResult(queryString, parameters, resultClass, false);
+    }
+
+    /**
+     * Use this for COUNT() and similar sql queries which are guaranteed to return a result
+     *
+     * @param readOnly
+     *         run the query in a read only transaction, see {@link #selectSqlQuery(String, Map, Class, boolean)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <T> T selectSqlQuerySingleResult(final String queryString, @Nullable final Map<String, Object> parameters,
+                                            final Class<T> resultClass, final boolean readOnly) {
+        final Supplier<T> selection = () -> executeTransaction(em -> {
             final Query q = em.createNativeQuery(queryString);
             if (parameters != null) {
                 parameters.forEach(q::setParameter);
             }
-            em.getTransaction().begin();
-            final T result = resultClass.cast(q.getSingleResult());
-            em.getTransaction().commit();
-            return result;
+            return resultClass.cast(q.getSingleResult());
+        }, readOnly);
+        try {
+            return readOnly ? retry("selectSqlQuerySingleResult", true, selection) : selection.get();
         } catch (final PersistenceException | ClassCastException e) {
             final String message = String.format("Failed to select single result plain SQL query %s with %s parameters for class %s on DB %s",
                     queryString, parameters != null ? parameters.size() : "null", resultClass.getName(), this.name);
             throw new DatabaseException(message, e);
-        } finally {
-            em.close();
         }
     }
 
@@ -810,43 +1377,914 @@ public class DatabaseWrapper {
      * See the notification module for a listener implementation
      */
     public void notif(String channel, @Nullable String payload) {
-        final EntityManager em = this.emf.createEntityManager();
         try {
-            em.getTransaction().begin();
             //the cast is necessary otherwise hibernate chokes on the void return type
             //noinspection SqlResolve
             String sql = "SELECT cast(pg_notify(:channel, :payload) AS TEXT);";
-            em.createNativeQuery(sql)
+            retry("notif", false, () -> executeTransaction(em -> em.createNativeQuery(sql)
                     .setParameter("channel", channel)
                     .setParameter("payload", payload != null ? payload : "")
-                    .getSingleResult();
-            em.getTransaction().commit();
+                    .getSingleResult()));
         } catch (final PersistenceException e) {
             final String message = String.format("Failed to execute notification for channel %s with payload %s on DB %s",
                     channel, payload, this.name);
             throw new DatabaseException(message, e);
+        }
+    }
+
+
+    //################################################################################
+    //                              Attribute updates
+    //################################################################################
+
+    /**
+     * Set a single attribute of an entity with one UPDATE statement, without loading the entity first, and without
+     * taking its entity lock. If the entity does not exist yet, a default constructed one is created under its entity
+     * lock, and the attribute is set on it in the same transaction. An entity that is created concurrently by someone
+     * not holding its entity lock fails the creation with a unique violation, after which the attribute is set on that
+     * entity instead.
+     * <p>
+     * This bypasses the persistence context. Inside of a {@link #unitOfWork(Consumer)}, pending changes are flushed
+     * before the update, and managed instances of the entity do not reflect the new value.
+     *
+     * @param attribute
+     *         name of the attribute (field) of the entity, which needs to be mapped to a single column
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public <E extends SaucedEntity<I, E>, I extends Serializable> void update(final EntityKey<I, E> entityKey,
+                                                                             final String attribute,
+                                                                             @Nullable final Object value) {
+        updateAll(Collections.singletonList(entityKey), attribute, value);
+    }
+
+    /**
+     * Set a single attribute of many entities of a class to the same value with batched UPDATE statements, sent in the
+     * {@link EntityKey#GLOBAL_ORDER} of the keys. See {@link #update(EntityKey, String, Object)}
+     * <p>
+     * All entities, including the missing ones that need to be created, are updated in a single transaction: if this
+     * throws, none of them have been updated, unless the outcome of the commit is unknown.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public <E extends SaucedEntity<I, E>, I extends Serializable> void updateAll(final Collection<EntityKey<I, E>> entityKeys,
+                                                                                final String attribute,
+                                                                                @Nullable final Object value) {
+        if (entityKeys.isEmpty()) {
+            return;
+        }
+        final Class<E> clazz = entityKeys.iterator().next().clazz;
+        final AttributeUpdate update = attributeUpdate(clazz, attribute);
+        final List<EntityKey<I, E>> keys = new ArrayList<>(entityKeys);
+        keys.sort(EntityKey.GLOBAL_ORDER);
+        try {
+            writeAll("updateAll", true, keys, (session, connection, batch) -> missingKeys(batch, batch.size() == 1
+                    ? new int[]{update.update(session, connection, batch.get(0).id, value)}
+                    : update.updateBatch(session, connection, ids(batch), value)));
+        } catch (final PersistenceException e) {
+            final String message = String.format("Failed to update attribute %s of %s entities of class %s on DB %s",
+                    attribute, keys.size(), clazz.getName(), this.name);
+            throw new DatabaseException(message, e);
+        }
+    }
+
+    /**
+     * Add a delta to a numeric attribute of an entity with one UPDATE ... RETURNING statement, without loading the
+     * entity first, and without taking its entity lock. Concurrent increments are serialized by the row lock of the
+     * database, so none of them get lost. If the entity does not exist yet, a default constructed one is created under
+     * its entity lock, and the delta is added to its default value in the same transaction.
+     * <p>
+     * See {@link #update(EntityKey, String, Object)} about the persistence context.
+     *
+     * @param attribute
+     *         name of the numeric attribute (field) of the entity, which needs to be mapped to a single column
+     *
+     * @return the new value of the attribute, as the same kind of number as the delta
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends SaucedEntity<I, E>, I extends Serializable, N extends Number> N increment(final EntityKey<I, E> entityKey,
+                                                                                               final String attribute,
+                                                                                               final N delta) {
+        final AttributeUpdate update = attributeUpdate(entityKey.clazz, attribute);
+        update.requireNumeric();
+        try {
+            Number result = retry("increment", false, () -> executeNullableTransaction(em -> withConnection(em,
+                    (session, connection) -> update.increment(session, connection, entityKey.id, delta))));
+            if (result == null) {
+                try {
+                    synchronized (SaucedEntity.getEntityLock(entityKey)) {
+                        result = retry("increment", false, () -> executeTransaction(em ->
+                                withConnection(em, (session, connection) -> {
+                            final Number incremented = update.increment(session, connection, entityKey.id, delta);
+                            if (incremented != null) {
+                                return incremented;
+                            }
+                            createDefaults(em, Collections.singletonList(entityKey));
+                            return Objects.requireNonNull(update.increment(session, connection, entityKey.id, delta));
+                        })));
+                    }
+                } catch (final PersistenceException e) {
+                    if (isInUnitOfWork() || !isUniqueViolation(e)) {
+                        throw e;
+                    }
+                    //created concurrently by someone not holding the entity lock, it exists now
+                    result = retry("increment", false, () -> executeTransaction(em -> withConnection(em,
+                            (session, connection) -> Objects.requireNonNull(
+                                    update.increment(session, connection, entityKey.id, delta)))));
+                }
+            }
+            return (N) AttributeUpdate.convert(result, delta.getClass());
+        } catch (final PersistenceException e) {
+            final String message = String.format("Failed to increment attribute %s of entity %s by %s on DB %s",
+                    attribute, entityKey, delta, this.name);
+            throw new DatabaseException(message, e);
+        }
+    }
+
+    /**
+     * Add deltas to a numeric attribute of many entities of a class with a single UPDATE ... FROM unnest(ids, deltas)
+     * statement, or batched UPDATE statements if the id or attribute can not be sent as an array. The ids are sent in
+     * the {@link EntityKey#GLOBAL_ORDER} of the keys. See {@link #increment(EntityKey, String, Number)}
+     * <p>
+     * All deltas, including those of the missing entities that need to be created, are added in a single transaction:
+     * if this throws, none of them have been added, unless the outcome of the commit is unknown.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public <E extends SaucedEntity<I, E>, I extends Serializable> void incrementAll(final Map<EntityKey<I, E>, ? extends Number> deltas,
+                                                                                   final String attribute) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        final Class<E> clazz = deltas.keySet().iterator().next().clazz;
+        final AttributeUpdate update = attributeUpdate(clazz, attribute);
+        update.requireNumeric();
+        final List<EntityKey<I, E>> keys = new ArrayList<>(deltas.keySet());
+        keys.sort(EntityKey.GLOBAL_ORDER);
+        try {
+            writeAll("incrementAll", false, keys,
+                    (session, connection, batch) -> incrementExisting(update, session, connection, batch, deltas));
+        } catch (final PersistenceException e) {
+            final String message = String.format("Failed to increment attribute %s of %s entities of class %s on DB %s",
+                    attribute, keys.size(), clazz.getName(), this.name);
+            throw new DatabaseException(message, e);
+        }
+    }
+
+    /**
+     * Write to the rows of all keys in a single transaction. If some of the rows are missing, the transaction is rolled
+     * back and run again under the entity locks of the missing keys, creating default entities for them before writing
+     * to them, so either all keys are written or none. Rows that are created concurrently by someone not holding
+     * the entity locks, like another application, fail the creation with a unique violation, which runs the
+     * transaction again, writing to those rows instead. Inside of a unit of work, the missing entities are created
+     * right away, as the unit of work is atomic as a whole; a unique violation fails it.
+     */
+    private <E extends SaucedEntity<I, E>, I extends Serializable> void writeAll(final String operation,
+                                                                                final boolean idempotent,
+                                                                                final List<EntityKey<I, E>> keys,
+                                                                                final BatchWrite<I, E> write) {
+        final List<EntityKey<I, E>> locked = new ArrayList<>();
+        int uniqueViolations = 0;
+        while (true) {
+            final Set<EntityKey<I, E>> lockedKeys = new HashSet<>(locked);
+            final List<EntityKey<I, E>> unlocked;
+            try {
+                unlocked = synchronizedOn(SaucedEntity.getEntityLocks(locked), 0, () -> retry(operation, idempotent,
+                        () -> executeTransaction(em -> {
+                    final List<EntityKey<I, E>> missing = withConnection(em,
+                            (session, connection) -> write.write(session, connection, keys));
+                    if (missing.isEmpty()) {
+                        return missing;
+                    }
+                    if (isInUnitOfWork()) {
+                        return synchronizedOn(SaucedEntity.getEntityLocks(missing), 0,
+                                () -> createAndWrite(em, missing, write));
+                    }
+                    final List<EntityKey<I, E>> notLocked = missing.stream()
+                            .filter(key -> !lockedKeys.contains(key))
+                            .collect(Collectors.toList());
+                    if (!notLocked.isEmpty()) {
+                        //nothing may be committed before the missing rows are created, start over holding their locks
+                        em.getTransaction().rollback();
+                        return notLocked;
+                    }
+                    return createAndWrite(em, missing, write);
+                })));
+            } catch (final PersistenceException e) {
+                //each concurrently created row can fail the creation at most once, after that it exists
+                if (isInUnitOfWork() || !isUniqueViolation(e) || ++uniqueViolations > locked.size()) {
+                    throw e;
+                }
+                continue;
+            }
+            if (unlocked.isEmpty()) {
+                return;
+            }
+            locked.addAll(unlocked);
+            locked.sort(EntityKey.GLOBAL_ORDER);
+        }
+    }
+
+    //the caller needs to hold the entity locks of the keys
+    private <E extends SaucedEntity<I, E>, I extends Serializable> List<EntityKey<I, E>> createAndWrite(
+            final EntityManager entityManager, final List<EntityKey<I, E>> missing, final BatchWrite<I, E> write) {
+        createDefaults(entityManager, missing);
+        withConnection(entityManager, (session, connection) -> write.write(session, connection, missing));
+        return Collections.emptyList();
+    }
+
+    @FunctionalInterface
+    private interface BatchWrite<I, E> {
+        //writes to the rows of the keys that exist, and returns the keys that don't
+        List<EntityKey<I, E>> write(SessionImplementor session, Connection connection, List<EntityKey<I, E>> keys)
+                throws SQLException;
+    }
+
+    //a concurrent insert of the same row
+    private static boolean isUniqueViolation(final Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (!(t instanceof SQLException)) {
+                continue;
+            }
+            for (SQLException e = (SQLException) t; e != null; e = e.getNextException()) {
+                if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private AttributeUpdate attributeUpdate(final Class<?> clazz, final String attribute) {
+        return metadata(clazz).attributeUpdate(attribute);
+    }
+
+    //run jdbc work on the connection of the transaction of the entity manager
+    private <R> R withConnection(final EntityManager entityManager, final ConnectionWork<R> work) {
+        final SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        if (isInUnitOfWork()) {
+            //write pending changes first, as they would overwrite ours when flushed later
+            session.flush();
+        }
+        return session.doReturningWork(connection -> work.execute(session, connection));
+    }
+
+    @FunctionalInterface
+    private interface ConnectionWork<R> {
+        R execute(SessionImplementor session, Connection connection) throws SQLException;
+    }
+
+    private static <I, E> List<I> ids(final List<EntityKey<I, E>> keys) {
+        return keys.stream().map(key -> key.id).collect(Collectors.toList());
+    }
+
+    private static <I, E> List<Number> deltas(final List<EntityKey<I, E>> keys,
+                                              final Map<EntityKey<I, E>, ? extends Number> deltas) {
+        return keys.stream().map(deltas::get).collect(Collectors.toList());
+    }
+
+    //increments the rows of the keys that exist, and returns the keys that don't
+    private static <I, E> List<EntityKey<I, E>> incrementExisting(final AttributeUpdate update,
+                                                                 final SessionImplementor session,
+                                                                 final Connection connection,
+                                                                 final List<EntityKey<I, E>> keys,
+                                                                 final Map<EntityKey<I, E>, ? extends Number> deltas)
+            throws SQLException {
+        if (update.supportsUnnest()) {
+            final Set<Object> updated = update.incrementUnnest(session, connection, ids(keys), deltas(keys, deltas));
+            return keys.stream()
+                    .filter(key -> !updated.contains(key.id))
+                    .collect(Collectors.toList());
+        }
+        return missingKeys(keys, update.incrementBatch(session, connection, ids(keys), deltas(keys, deltas)));
+    }
+
+    //keys whose update did not update any row
+    private static <K> List<K> missingKeys(final List<K> keys, final int[] updateCounts) {
+        final List<K> missing = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                missing.add(keys.get(i));
+            }
+        }
+        return missing;
+    }
+
+    //insert default constructed entities, the caller needs to hold their entity locks
+    private <E extends SaucedEntity<I, E>, I extends Serializable> void createDefaults(final EntityManager entityManager,
+                                                                                      final List<EntityKey<I, E>> keys) {
+        final List<E> created = new ArrayList<>();
+        for (final EntityKey<I, E> key : keys) {
+            final E entity = newInstance(key);
+            entityManager.persist(entity);
+            created.add(entity);
+        }
+        entityManager.flush();
+        //the attribute is about to be changed behind the back of the persistence context
+        created.forEach(entityManager::detach);
+    }
+
+    //################################################################################
+    //                                 Key queries
+    //################################################################################
+
+    /**
+     * Check the existence of an entity with a plain JDBC query, without loading it.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <E extends IEntity<I, E>, I extends Serializable> boolean exists(final EntityKey<I, E> entityKey) {
+        final KeyQuery keyQuery = keyQuery(entityKey.clazz);
+        return retry("exists", true, () -> doWithConnection(false,
+                () -> String.format("Failed to check existence of entity %s", entityKey),
+                connection -> keyQuery.exists(connection, entityKey.id)));
+    }
+
+    /**
+     * Check the existence of several entities with a single plain JDBC query per entity class, without loading them.
+     *
+     * @return A bitset with the bit of each index of the provided keys (in iteration order) set if its entity exists
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public BitSet existsAll(final Collection<? extends EntityKey<?, ?>> entityKeys) {
+        final Map<Class<?>, List<Object>> ids = new LinkedHashMap<>();
+        final Map<Class<?>, List<Integer>> offsets = new HashMap<>();
+        int index = 0;
+        for (final EntityKey<?, ?> key : entityKeys) {
+            ids.computeIfAbsent(key.clazz, c -> new ArrayList<>()).add(key.id);
+            offsets.computeIfAbsent(key.clazz, c -> new ArrayList<>()).add(index++);
+        }
+        final BitSet result = new BitSet(index);
+        if (ids.isEmpty()) {
+            return result;
+        }
+        final int size = index;
+        final Supplier<String> message = () -> String.format("Failed to check existence of %s entities", size);
+        return retry("existsAll", true, () -> doWithConnection(false, message, connection -> {
+            for (final Map.Entry<Class<?>, List<Object>> entry : ids.entrySet()) {
+                final int[] classOffsets = offsets.get(entry.getKey()).stream().mapToInt(Integer::intValue).toArray();
+                keyQuery(entry.getKey()).existsAll(connection, entry.getValue(), classOffsets, result);
+            }
+            return result;
+        }));
+    }
+
+    /**
+     * @return The amount of rows in the table of the entity class
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <E extends IEntity<I, E>, I extends Serializable> long count(final Class<E> clazz) {
+        return count(clazz, null);
+    }
+
+    /**
+     * @param where
+     *         Optional plain SQL condition on the columns of the table of the entity class, with positional ?
+     *         parameters.
+     * @param parameters
+     *         Values of the positional parameters of the condition
+     *
+     * @return The amount of rows in the table of the entity class that match the condition
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <E extends IEntity<I, E>, I extends Serializable> long count(final Class<E> clazz, @Nullable final String where,
+                                                                       final Object... parameters) {
+        final KeyQuery keyQuery = keyQuery(clazz);
+        final Supplier<String> message = () -> String.format("Failed to count entities of class %s", clazz.getName());
+        return retry("count", true, () -> doWithConnection(false, message,
+                connection -> keyQuery.count(connection, where, parameters)));
+    }
+
+    /**
+     * Select the ids of all rows of the table of the entity class. The entity needs to have an integral id.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <E extends IEntity<I, E>, I extends Serializable> long[] selectIds(final Class<E> clazz) {
+        return selectIds(clazz, null);
+    }
+
+    /**
+     * Select ids of the table of the entity class into a primitive array, without creating entities or boxed values.
+     * The rows are fetched from the database in chunks. The entity needs to have an integral id.
+     *
+     * @param where
+     *         Optional plain SQL condition on the columns of the table of the entity class, with positional ?
+     *         parameters.
+     * @param parameters
+     *         Values of the positional parameters of the condition
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <E extends IEntity<I, E>, I extends Serializable> long[] selectIds(final Class<E> clazz,
+                                                                             @Nullable final String where,
+                                                                             final Object... parameters) {
+        final KeyQuery keyQuery = keyQuery(clazz);
+        keyQuery.requireIntegralId();
+        final Supplier<String> message = () -> String.format("Failed to select ids of entity class %s", clazz.getName());
+        return retry("selectIds", true, () -> doWithConnection(true, message,
+                connection -> keyQuery.selectIds(connection, ID_FETCH_SIZE, where, parameters)));
+    }
+
+    /**
+     * Streaming version of {@link #selectIds(Class, String, Object...)}. The ids are handed to the consumer while they
+     * are fetched from the database in chunks, so not even the primitive array of all of them is held in memory. The
+     * connection is held until all ids have been consumed.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    public <E extends IEntity<I, E>, I extends Serializable> void forEachId(final Class<E> clazz,
+                                                                           final LongConsumer consumer,
+                                                                           @Nullable final String where,
+                                                                           final Object... parameters) {
+        final KeyQuery keyQuery = keyQuery(clazz);
+        keyQuery.requireIntegralId();
+        final Supplier<String> message = () -> String.format("Failed to stream ids of entity class %s", clazz.getName());
+        doWithConnection(true, message, connection -> {
+            keyQuery.forEachId(connection, ID_FETCH_SIZE, consumer, where, parameters);
+            return null;
+        });
+    }
+
+    private KeyQuery keyQuery(final Class<?> clazz) {
+        return metadata(clazz).keyQuery();
+    }
+
+    //################################################################################
+    //                                 Plain JDBC
+    //################################################################################
+
+    /**
+     * Run a query with plain JDBC, bypassing Hibernate's persistence context, result transformers and Object[] rows.
+     * Meant for hot read only queries. Outside of a unit of work the query runs on its own on an autocommit connection,
+     * inside of one it runs in the transaction of the unit of work, after flushing its pending changes. Like other
+     * reads, it is run again on transient failures, see {@link RetryPolicy}.
+     *
+     * @param binder
+     *         Optional binder of the parameters of the statement, see {@link ParameterBinder#of(Object...)}
+     * @param rowMapper
+     *         Maps each row of the result, see {@link RowMappers}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link SQLException} or {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public <T> List<T> query(final String sql, @Nullable final ParameterBinder binder, final RowMapper<T> rowMapper) {
+        final Supplier<String> message = () -> String.format("Failed to run query %s", sql);
+        return retry("query", true, () -> doWithConnection(false, message, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                if (binder != null) {
+                    binder.bind(statement);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    final List<T> result = new ArrayList<>();
+                    while (resultSet.next()) {
+                        result.add(rowMapper.map(resultSet));
+                    }
+                    return result;
+                }
+            }
+        }));
+    }
+
+    /**
+     * Run a query with plain JDBC, mapping the rows with the generated mapper of the result class, see
+     * {@link RowMappers#of(Class)}.
+     *
+     * @see #query(String, ParameterBinder, RowMapper)
+     */
+    @CheckReturnValue
+    public <T> List<T> query(final String sql, @Nullable final ParameterBinder binder, final Class<T> resultClass) {
+        return query(sql, binder, RowMappers.of(resultClass));
+    }
+
+    //################################################################################
+    //                                  Deadlines
+    //################################################################################
+
+    /**
+     * See {@link #withDeadline(Deadline, Function)}
+     *
+     * @throws DeadlineExceededException
+     *         if the operation ran past the deadline
+     */
+    public <R> R withDeadline(final long timeout, final TimeUnit timeUnit, final Function<DatabaseWrapper, R> operation) {
+        return withDeadline(Deadline.after(timeout, timeUnit), operation);
+    }
+
+    /**
+     * Run operations of this wrapper under a deadline. Calls to this wrapper made by the provided operation on the
+     * current thread check the deadline before starting a transaction, and each transaction sets a
+     * {@code statement_timeout} of the time remaining, so the database cancels statements that would run past the
+     * deadline, and their connections go back to the pool. Cancelling the deadline cancels the running statements. No
+     * retries are started past the deadline.
+     * <p>
+     * Calls of this wrapper that would run without a transaction, like the reads in autocommit mode, run in a
+     * transaction instead while there is a deadline that expires. Deadlines may be nested, the earliest one applies. Inside of a
+     * unit of work, the deadline of the unit of work applies to its statements, and nested deadlines are only checked
+     * before each call.
+     *
+     * @throws DeadlineExceededException
+     *         if the operation ran past the deadline, or the deadline was cancelled. The cause is the failure of the
+     *         call that ran into the deadline, if any.
+     */
+    public <R> R withDeadline(final Deadline deadline, final Function<DatabaseWrapper, R> operation) {
+        final DeadlineScope outer = this.deadlines.get();
+        this.deadlines.set(new DeadlineScope(deadline, outer));
+        try {
+            return operation.apply(this);
+        } catch (final DatabaseException e) {
+            if (!(e instanceof DeadlineExceededException) && (deadline.isExpired() || deadline.isCancelled())) {
+                throw new DeadlineExceededException("Call on DB " + this.name + " ran into its deadline", e);
+            }
+            throw e;
         } finally {
-            em.close();
+            if (outer != null) {
+                this.deadlines.set(outer);
+            } else {
+                this.deadlines.remove();
+            }
+        }
+    }
+
+    //the deadline of a call, and the deadlines of the calls enclosing it
+    private static final class DeadlineScope {
+        private final Deadline deadline;
+        @Nullable
+        private final DeadlineScope outer;
+
+        private DeadlineScope(final Deadline deadline, @Nullable final DeadlineScope outer) {
+            this.deadline = deadline;
+            this.outer = outer;
+        }
+
+        private Deadline earliest() {
+            Deadline earliest = this.deadline;
+            for (DeadlineScope scope = this.outer; scope != null; scope = scope.outer) {
+                if (scope.deadline.remaining(TimeUnit.NANOSECONDS) < earliest.remaining(TimeUnit.NANOSECONDS)) {
+                    earliest = scope.deadline;
+                }
+            }
+            return earliest;
+        }
+
+        private boolean isBounded() {
+            return earliest().remaining(TimeUnit.NANOSECONDS) != Long.MAX_VALUE;
         }
+
+        private void check() {
+            for (DeadlineScope scope = this; scope != null; scope = scope.outer) {
+                scope.deadline.check();
+            }
+        }
+
+        //attach the connection of a starting transaction to the deadlines, and limit its statements to the time left
+        //the statement timeout needs a transaction, a connection in autocommit mode can only be cancelled
+        private void start(final Connection connection) throws SQLException {
+            for (DeadlineScope scope = this; scope != null; scope = scope.outer) {
+                scope.deadline.attach(connection);
+            }
+            final long remaining = earliest().remaining(TimeUnit.MILLISECONDS);
+            if (remaining != Long.MAX_VALUE) {
+                try (Statement statement = connection.createStatement()) {
+                    //zero would disable the timeout
+                    statement.execute("SET LOCAL statement_timeout = " + Math.max(1, remaining));
+                }
+            }
+        }
+
+        private void end(final Connection connection) {
+            for (DeadlineScope scope = this; scope != null; scope = scope.outer) {
+                scope.deadline.detach(connection);
+            }
+        }
+    }
+
+    //################################################################################
+    //                                Unit of work
+    //################################################################################
+
+    /**
+     * Run several operations of this wrapper in a single transaction. Calls to this wrapper made by the provided work
+     * on the current thread share one EntityManager, and therefore one connection, one transaction, and one first level
+     * cache. The transaction is committed after the work returns, and rolled back if it throws.
+     * <p>
+     * Units of work may be nested. A nested unit runs inside a savepoint: if it throws, the changes it made are rolled
+     * back, the persistence context is cleared, and the exception is rethrown to the enclosing unit, which may catch it
+     * and carry on. This does not work for failed database operations though: Hibernate marks the whole transaction
+     * for rollback when any of its operations fail, and the outermost unit then fails with a {@link DatabaseException}
+     * instead of committing.
+     * <p>
+     * Operations that manage their own transaction on the EntityManager they are given, like
+     * {@link #lockedWrappedTransformFunc(Transfiguration)} passed to {@link #doInPersistenceContext(Function)}, cannot
+     * be used inside a unit of work.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public void unitOfWork(final Consumer<DatabaseWrapper> work) {
+        final EntityManager current = this.unitOfWork.get();
+        if (current != null) {
+            nestedUnitOfWork(current, work);
+            return;
+        }
+        admit(OperationClass.WRITE, () -> {
+            runUnitOfWork(work);
+            return null;
+        });
+    }
+
+    private void runUnitOfWork(final Consumer<DatabaseWrapper> work) {
+        final DeadlineScope deadline = this.deadlines.get();
+        final EntityManager entityManager = this.emf.createEntityManager();
+        this.unitOfWork.set(entityManager);
+        try {
+            final EntityTransaction transaction = entityManager.getTransaction();
+            Connection deadlineConnection = null;
+            try {
+                transaction.begin();
+                if (deadline != null) {
+                    deadlineConnection = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                        deadline.start(connection);
+                        return connection;
+                    });
+                }
+                work.accept(this);
+                if (transaction.getRollbackOnly()) {
+                    throw new DatabaseException("Unit of work on DB " + this.name
+                            + " was marked for rollback by a failed operation");
+                }
+                transaction.commit();
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                if (deadline != null && deadlineConnection != null) {
+                    deadline.end(deadlineConnection);
+                }
+            }
+        } catch (final PersistenceException e) {
+            throw new DatabaseException("Failed to execute unit of work on DB " + this.name, e);
+        } finally {
+            this.unitOfWork.remove();
+            entityManager.close();
+        }
+    }
+
+    /**
+     * @return true if the current thread is running a {@link #unitOfWork(Consumer)} of this wrapper
+     */
+    public boolean isInUnitOfWork() {
+        return this.unitOfWork.get() != null;
     }
 
+    private void nestedUnitOfWork(final EntityManager entityManager, final Consumer<DatabaseWrapper> work) {
+        final Session session = entityManager.unwrap(Session.class);
+        try {
+            //write pending changes of the enclosing unit, so a rollback to the savepoint keeps them
+            session.flush();
+            final Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+            try {
+                work.accept(this);
+            } catch (final RuntimeException e) {
+                session.doWork(connection -> connection.rollback(savepoint));
+                //managed entities may hold changes that were just rolled back
+                session.clear();
+                throw e;
+            }
+            session.doWork(connection -> connection.releaseSavepoint(savepoint));
+        } catch (final PersistenceException e) {
+            throw new DatabaseException("Failed to execute nested unit of work on DB " + this.name, e);
+        }
+    }
 
     //################################################################################
     //                                  Internals
     //################################################################################
 
+    /**
+     * Run plain JDBC work on a connection of the pool, or on the connection of the running unit of work.
+     *
+     * @param cursor
+     *         Keep the connection out of autocommit mode while running the work, so the driver fetches the results of
+     *         queries with a fetch size in chunks instead of all at once.
+     */
+    private <R> R doWithConnection(final boolean cursor, final Supplier<String> message, final JdbcWork<R> work) {
+        final EntityManager current = this.unitOfWork.get();
+        if (current == null) {
+            return admit(OperationClass.READ, () -> doWithPooledConnection(cursor, message, work));
+        }
+        try {
+            return withConnection(current, (session, connection) -> work.execute(connection));
+        } catch (final PersistenceException e) {
+            throw new DatabaseException(message.get() + " on DB " + this.name, e);
+        }
+    }
+
+    private <R> R doWithPooledConnection(final boolean cursor, final Supplier<String> message, final JdbcWork<R> work) {
+        try {
+            final ConnectionProvider connectionProvider = this.emf.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry().getService(ConnectionProvider.class);
+            final DeadlineScope deadline = this.deadlines.get();
+            //a deadline that expires needs a transaction for its statement timeout
+            final boolean transaction = cursor || (deadline != null && deadline.isBounded());
+            final Connection connection = connectionProvider.getConnection();
+            try {
+                //as in the autocommit reads, toggling autocommit on an idle connection does not go over the wire
+                final boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(!transaction);
+                try {
+                    if (deadline != null) {
+                        deadline.start(connection);
+                    }
+                    final R result = work.execute(connection);
+                    if (transaction && !cursor) {
+                        connection.commit();
+                    }
+                    return result;
+                } finally {
+                    //the pool closes connections that failed with a connection error, don't hide that error
+                    if (!connection.isClosed()) {
+                        if (transaction) {
+                            //nothing to keep, or committed already
+                            connection.rollback();
+                        }
+                        connection.setAutoCommit(autoCommit);
+                    }
+                    if (deadline != null) {
+                        deadline.end(connection);
+                    }
+                }
+            } finally {
+                connectionProvider.closeConnection(connection);
+            }
+        } catch (final SQLException | PersistenceException e) {
+            throw new DatabaseException(message.get() + " on DB " + this.name, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JdbcWork<R> {
+        R execute(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Run the action, and run it again on transient failures as decided by the retry policy. Inside of a unit of work,
+     * the transaction belongs to the unit of work, and the action is not retried.
+     *
+     * @param idempotent
+     *         the action has the same effect when run more than once, see {@link RetryPolicy#execute}
+     */
+    private <R> R retry(final String operation, final boolean idempotent, final Supplier<R> action) {
+        if (isInUnitOfWork()) {
+            return action.get();
+        }
+        final DeadlineScope deadline = this.deadlines.get();
+        return this.retryPolicy.execute(operation, idempotent, deadline != null ? deadline.earliest() : null, action);
+    }
+
+    /**
+     * Run the action once the admission control, if any, admits it.
+     *
+     * @throws OverloadedException
+     *         if the admission control rejects the action
+     */
+    private <R> R admit(final OperationClass operationClass, final Supplier<R> action) {
+        if (this.admissionControl == null) {
+            return action.get();
+        }
+        return this.admissionControl.execute(operationClass, action);
+    }
+
     private <R> R executeTransaction(NonnullFunction<EntityManager, R> closure) {
+        return executeTransaction(closure, false);
+    }
+
+    private <R> R executeTransaction(NonnullFunction<EntityManager, R> closure, boolean readOnly) {
         //noinspection ConstantConditions
-        return executeNullableTransaction(closure);
+        return executeNullableTransaction(closure, readOnly);
     }
 
     @Nullable
     private <R> R executeNullableTransaction(Function<EntityManager, R> closure) {
+        return executeNullableTransaction(closure, false);
+    }
+
+    //read only, in autocommit mode if enabled, or joining the current unit of work
+    private <R> R executeRead(NonnullFunction<EntityManager, R> closure) {
+        //noinspection ConstantConditions
+        return executeNullableRead(closure);
+    }
+
+    @Nullable
+    private <R> R executeNullableRead(Function<EntityManager, R> closure) {
+        final DeadlineScope deadline = this.deadlines.get();
+        //a deadline that expires needs a transaction for its statement timeout
+        if (!this.autoCommitReads || isInUnitOfWork() || (deadline != null && deadline.isBounded())) {
+            return executeNullableTransaction(closure, !isInUnitOfWork());
+        }
+        return admit(OperationClass.READ, () -> executeNullableAutoCommitRead(closure, deadline));
+    }
+
+    @Nullable
+    private <R> R executeNullableAutoCommitRead(Function<EntityManager, R> closure, @Nullable DeadlineScope deadline) {
         EntityManager entityManager = emf.createEntityManager();
         try {
+            final Session session = entityManager.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            //without an open transaction, the driver sends the query on its own, no BEGIN and no COMMIT needed
+            //toggling autocommit on an idle connection is local to the driver and does not go over the wire
+            final boolean autoCommit = session.doReturningWork(Connection::getAutoCommit);
+            session.doWork(connection -> connection.setAutoCommit(true));
+            try {
+                if (deadline != null) {
+                    //can still be cancelled
+                    session.doWork(deadline::start);
+                }
+                return closure.apply(entityManager);
+            } finally {
+                session.doWork(connection -> {
+                    //the pool closes connections that failed with a connection error, don't hide that error
+                    if (!connection.isClosed()) {
+                        connection.setAutoCommit(autoCommit);
+                    }
+                    if (deadline != null) {
+                        deadline.end(connection);
+                    }
+                });
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * @param readOnly
+     *         Run the closure in a read only session and transaction. Ignored inside of a unit of work, which manages
+     *         its own transaction.
+     */
+    @Nullable
+    private <R> R executeNullableTransaction(Function<EntityManager, R> closure, boolean readOnly) {
+        final DeadlineScope deadline = this.deadlines.get();
+        final EntityManager current = this.unitOfWork.get();
+        if (current != null) {
+            if (deadline != null) {
+                deadline.check();
+            }
+            //the unit of work manages the transaction
+            return closure.apply(current);
+        }
+        return admit(readOnly ? OperationClass.READ : OperationClass.WRITE,
+                () -> executeNullableNewTransaction(closure, readOnly, deadline));
+    }
+
+    @Nullable
+    private <R> R executeNullableNewTransaction(Function<EntityManager, R> closure, boolean readOnly,
+                                               @Nullable DeadlineScope deadline) {
+        EntityManager entityManager = emf.createEntityManager();
+        try {
+            if (readOnly) {
+                //no snapshots of loaded entities for dirty checking, and nothing to flush on commit
+                final Session session = entityManager.unwrap(Session.class);
+                session.setDefaultReadOnly(true);
+                session.setHibernateFlushMode(FlushMode.MANUAL);
+            }
             EntityTransaction transaction = entityManager.getTransaction();
+            Connection deadlineConnection = null;
             try {
                 transaction.begin();
+                if (readOnly) {
+                    entityManager.unwrap(Session.class).doWork(DatabaseWrapper::setTransactionReadOnly);
+                }
+                if (deadline != null) {
+                    deadlineConnection = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                        deadline.start(connection);
+                        return connection;
+                    });
+                }
                 R result = closure.apply(entityManager);
                 if (transaction.isActive()) {
                     transaction.commit();
@@ -856,30 +2294,54 @@ public class DatabaseWrapper {
                 if (transaction.isActive()) {
                     transaction.rollback();
                 }
+                if (deadline != null && deadlineConnection != null) {
+                    deadline.end(deadlineConnection);
+                }
             }
         } finally {
             entityManager.close();
         }
     }
 
+    //the driver sends this in one round trip together with the lazy BEGIN of the transaction
+    private static void setTransactionReadOnly(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            //language=PostgreSQL
+            statement.execute("SET TRANSACTION READ ONLY");
+        }
+    }
+
+    //the caller needs to hold the entity locks of the keys
+    private <E extends SaucedEntity<I, E>, I extends Serializable> Map<EntityKey<I, E>, E> findOrPersist(
+            final EntityManager entityManager, final List<EntityKey<I, E>> keys) {
+
+        //the entities may have been created while we were waiting for the locks
+        final List<E> found = entityManager.unwrap(Session.class)
+                .byMultipleIds(keys.get(0).clazz)
+                .multiLoad(ids(keys));
+        final Map<EntityKey<I, E>, E> result = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            final EntityKey<I, E> key = keys.get(i);
+            E entity = found.get(i);
+            if (entity == null) {
+                entity = newInstance(key);
+                entityManager.persist(entity);
+            }
+            result.put(key, entity);
+        }
+        //the inserts are sent in jdbc batches
+        entityManager.flush();
+        return result;
+    }
+
+    private <E> EntityMetadata<E> metadata(final Class<E> clazz) {
+        return this.entityMetadata.get(clazz);
+    }
+
     //IEntities are required to have a default constructor that sets them up with sensible defaults
     @CheckReturnValue
     //returns a sauced entity
     private <E extends SaucedEntity<I, E>, I extends Serializable> E newInstance(final EntityKey<I, E> id) {
-        return newInstance(this, id);
-    }
-
-    @CheckReturnValue
-    private static <E extends SaucedEntity<I, E>, I extends Serializable> E newInstance(final DatabaseWrapper dbWrapper,
-                                                                                        final EntityKey<I, E> id) {
-        try {
-            Constructor<E> constructor = ReflectHelper.getDefaultConstructor(id.clazz);
-            final E entity = constructor.newInstance((Object[]) null);
-            return entity.setId(id.id);
-        } catch (final ReflectiveOperationException e) {
-            final String message = String.format("Could not construct an entity of class %s with id %s",
-                    id.clazz.getName(), id.toString());
-            throw new DatabaseException(message, e);
-        }
+        return metadata(id.clazz).newInstance().setId(id.id);
     }
 }
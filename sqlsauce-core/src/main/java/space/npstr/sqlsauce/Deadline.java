@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckReturnValue;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Created by napster on 19.10.26.
+ * <p>
+ * Deadline of a call to the {@link DatabaseWrapper}, see {@link DatabaseWrapper#withDeadline(Deadline, Function)}.
+ * <p>
+ * A deadline can also be cancelled before it expires: the queries that are running under it are cancelled on the
+ * database, so their connections go back to the pool right away, and no further transactions start under it.
+ */
+public final class Deadline {
+
+    private static final Logger log = LoggerFactory.getLogger(Deadline.class);
+
+    private final long expiresAt; //nano time
+    private final boolean bounded;
+    private volatile boolean cancelled = false;
+    //connections of the transactions running under this deadline
+    private final List<Connection> connections = new ArrayList<>(1);
+
+    private Deadline(final long expiresAt, final boolean bounded) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+    }
+
+    /**
+     * @return A deadline that expires after the timeout, counted from now
+     */
+    @CheckReturnValue
+    public static Deadline after(final long timeout, final TimeUnit timeUnit) {
+        return new Deadline(System.nanoTime() + timeUnit.toNanos(timeout), true);
+    }
+
+    /**
+     * @return A deadline that never expires, but can be cancelled
+     */
+    @CheckReturnValue
+    public static Deadline none() {
+        return new Deadline(0, false);
+    }
+
+    /**
+     * @return the time left until the deadline expires, zero if it has expired, or {@link Long#MAX_VALUE} if it never
+     * expires
+     */
+    @CheckReturnValue
+    public long remaining(final TimeUnit timeUnit) {
+        if (!this.bounded) {
+            return Long.MAX_VALUE;
+        }
+        return timeUnit.convert(Math.max(0, this.expiresAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    @CheckReturnValue
+    public boolean isExpired() {
+        return this.bounded && this.expiresAt - System.nanoTime() <= 0;
+    }
+
+    @CheckReturnValue
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Cancel the queries running under this deadline, and prevent further transactions from starting under it.
+     * Cancelling a query that is just about to finish is harmless, the database ignores cancel requests for idle
+     * connections.
+     */
+    public synchronized void cancel() {
+        this.cancelled = true;
+        for (final Connection connection : this.connections) {
+            try {
+                connection.unwrap(BaseConnection.class).cancelQuery();
+            } catch (final SQLException e) {
+                log.warn("Failed to cancel query", e);
+            }
+        }
+    }
+
+    /**
+     * @throws DeadlineExceededException
+     *         if the deadline has expired or was cancelled
+     */
+    void check() {
+        if (this.cancelled) {
+            throw new DeadlineExceededException("Deadline was cancelled");
+        }
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline expired");
+        }
+    }
+
+    //the connection will be cancelled by cancel() until it is detached
+    synchronized void attach(final Connection connection) {
+        check();
+        this.connections.add(connection);
+    }
+
+    synchronized void detach(final Connection connection) {
+        this.connections.remove(connection);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.type.Type;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Everything the wrapper needs to know about an entity class, computed once: a generated instantiator for its default
+ * constructor, its persister with the table and column names, its standard queries, and the lazily built plain SQL
+ * statements on its table.
+ */
+final class EntityMetadata<E> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<E> clazz;
+    private final SessionFactoryImplementor sessionFactory;
+    private final EntityPersister persister;
+    @Nullable
+    private final Supplier<E> instantiator;
+
+    private final String selectAllQuery;
+    private final String selectByIdsForUpdateQuery;
+    //null if the ids can't be sent as an array
+    @Nullable
+    private final String selectByIdArraySql;
+    private final boolean integralId;
+
+    @Nullable
+    private volatile KeyQuery keyQuery;
+    private final Map<String, AttributeUpdate> attributeUpdates = new ConcurrentHashMap<>();
+
+    /**
+     * @throws org.hibernate.HibernateException
+     *         if the class is not a managed entity
+     */
+    EntityMetadata(final SessionFactoryImplementor sessionFactory, final Class<E> clazz) {
+        this.clazz = clazz;
+        this.sessionFactory = sessionFactory;
+        this.persister = sessionFactory.getMetamodel().entityPersister(clazz);
+        this.instantiator = instantiator(clazz);
+
+        //the jpa entity name, which differs from the simple class name for nested classes
+        final String entityName = sessionFactory.getMetamodel().entity(clazz).getName();
+        //hql resolves "id" to the identifier of entities without an identifier attribute, like embedded composite ids
+        final String identifierPropertyName = this.persister.getIdentifierPropertyName();
+        final String idAttribute = identifierPropertyName != null ? identifierPropertyName : "id";
+        this.selectAllQuery = "SELECT e FROM " + entityName + " e";
+        //the row locks are taken after sorting, so they are acquired in the order of the ids
+        this.selectByIdsForUpdateQuery = this.selectAllQuery + " WHERE e." + idAttribute + " IN :ids"
+                + " ORDER BY e." + idAttribute;
+
+        final Type idType = this.persister.getIdentifierType();
+        final Class<?> idClass = idType.getReturnedClass();
+        this.integralId = idClass == Long.class || idClass == Integer.class || idClass == Short.class;
+        final String idArrayType = AttributeUpdate.arrayElementType(sessionFactory, idType);
+        if (this.persister instanceof SingleTableEntityPersister && idArrayType != null) {
+            final SingleTableEntityPersister singleTable = (SingleTableEntityPersister) this.persister;
+            //the array is sent in its text representation, the cast parses it on the database
+            this.selectByIdArraySql = "SELECT * FROM " + singleTable.getTableName() + " WHERE "
+                    + singleTable.getIdentifierColumnNames()[0] + " = ANY(CAST(:ids AS " + idArrayType + "[]))";
+        } else {
+            this.selectByIdArraySql = null;
+        }
+    }
+
+    Class<E> getClazz() {
+        return this.clazz;
+    }
+
+    SessionFactoryImplementor getSessionFactory() {
+        return this.sessionFactory;
+    }
+
+    /**
+     * @return JPQL query selecting all entities of the class
+     */
+    String getSelectAllQuery() {
+        return this.selectAllQuery;
+    }
+
+    /**
+     * @return JPQL query selecting the entities of the :ids parameter ordered by their ids, to be run with a pessimistic
+     * write lock
+     */
+    String getSelectByIdsForUpdateQuery() {
+        return this.selectByIdsForUpdateQuery;
+    }
+
+    /**
+     * @return native SQL query selecting the rows of the ids of the :ids parameter, to be bound with
+     * {@link #idArray(Collection)}. Null if the entity is not mapped to a single table with a single id column of a
+     * type that can be sent as an array.
+     */
+    @Nullable
+    String getSelectByIdArraySql() {
+        return this.selectByIdArraySql;
+    }
+
+    /**
+     * @return the text representation of an array of the ids
+     */
+    String idArray(final Collection<?> ids) {
+        if (this.integralId) {
+            return ArrayCodec.encodeLongs(ids.size(), consumer -> ids.forEach(id -> consumer.accept(((Number) id).longValue())));
+        }
+        final List<String> strings = new ArrayList<>(ids.size());
+        ids.forEach(id -> strings.add(String.valueOf(id)));
+        return ArrayCodec.encodeStrings(strings);
+    }
+
+    /**
+     * @return a new default constructed instance of the entity class
+     *
+     * @throws DatabaseException
+     *         if the class has no default constructor, or the constructor failed
+     */
+    @CheckReturnValue
+    E newInstance() {
+        if (this.instantiator == null) {
+            throw new DatabaseException("Entity class " + this.clazz.getName() + " has no default constructor");
+        }
+        try {
+            return this.instantiator.get();
+        } catch (final RuntimeException e) {
+            throw new DatabaseException("Could not construct an entity of class " + this.clazz.getName(), e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *         if the entity is not mapped by a persister that exposes its table and columns
+     */
+    AbstractEntityPersister requireTablePersister() {
+        if (!(this.persister instanceof AbstractEntityPersister)) {
+            throw new IllegalArgumentException("Unsupported persister " + this.persister.getClass().getName()
+                    + " for entity class " + this.clazz.getName());
+        }
+        return (AbstractEntityPersister) this.persister;
+    }
+
+    KeyQuery keyQuery() {
+        KeyQuery result = this.keyQuery;
+        if (result == null) {
+            //racing threads build equal instances, any of them may win
+            result = new KeyQuery(this);
+            this.keyQuery = result;
+        }
+        return result;
+    }
+
+    AttributeUpdate attributeUpdate(final String attribute) {
+        return this.attributeUpdates.computeIfAbsent(attribute, a -> new AttributeUpdate(this, a));
+    }
+
+    /**
+     * A Supplier spun by the LambdaMetafactory for a public default constructor, calling it as fast as a hand written
+     * lambda would. Constructors that the metafactory may not call, like protected ones, are called through a method
+     * handle instead.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static <E> Supplier<E> instantiator(final Class<E> clazz) {
+        final MethodHandle constructor;
+        try {
+            constructor = LOOKUP.findConstructor(clazz, MethodType.methodType(void.class));
+            final CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, "get",
+                    MethodType.methodType(Supplier.class), MethodType.methodType(Object.class),
+                    constructor, MethodType.methodType(clazz));
+            return (Supplier<E>) callSite.getTarget().invokeExact();
+        } catch (final Throwable ignored) {
+            //not accessible from here, or the class is not visible to the class loader of the metafactory
+        }
+        try {
+            final Constructor<E> declared = clazz.getDeclaredConstructor();
+            declared.setAccessible(true);
+            final MethodHandle handle = LOOKUP.unreflectConstructor(declared)
+                    .asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return (E) handle.invokeExact();
+                } catch (final RuntimeException | Error e) {
+                    throw e;
+                } catch (final Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            };
+        } catch (final NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.metamodel.EntityType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * The {@link EntityMetadata} of the entities of an entity manager factory. The metadata of all managed sauced entities
+ * is built up front, when the database connection boots. Other entity classes are added on first use.
+ */
+final class EntityMetadataRegistry {
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final Map<Class<?>, EntityMetadata<?>> metadata = new ConcurrentHashMap<>();
+
+    EntityMetadataRegistry(final EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        for (final EntityType<?> entityType : entityManagerFactory.getMetamodel().getEntities()) {
+            final Class<?> clazz = entityType.getJavaType();
+            if (clazz != null && SaucedEntity.class.isAssignableFrom(clazz)) {
+                this.metadata.put(clazz, new EntityMetadata<>(this.sessionFactory, clazz));
+            }
+        }
+    }
+
+    /**
+     * @throws DatabaseException
+     *         if the class is not a managed entity
+     */
+    @SuppressWarnings("unchecked")
+    <E> EntityMetadata<E> get(final Class<E> clazz) {
+        final EntityMetadata<?> result = this.metadata.get(clazz);
+        if (result != null) {
+            return (EntityMetadata<E>) result;
+        }
+        try {
+            return (EntityMetadata<E>) this.metadata.computeIfAbsent(clazz,
+                    c -> new EntityMetadata<>(this.sessionFactory, c));
+        } catch (final PersistenceException e) {
+            throw new DatabaseException("Class " + clazz.getName() + " is not a managed entity", e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import space.npstr.sqlsauce.collections.LongArrayList;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Plain JDBC queries on the ids of an entity table, generated from Hibernate's mapping of the entity. Ids of integral
+ * types are read straight into primitives, without creating entities or boxed values.
+ */
+final class KeyQuery {
+
+    private final Class<?> clazz;
+    private final String table;
+    private final String idColumn;
+    private final boolean integralId;
+    //null if the id can't be sent as an array
+    @Nullable
+    private final String idArrayType;
+    private final String existsSql;
+    @Nullable
+    private final String existsAllSql;
+
+    KeyQuery(final EntityMetadata<?> metadata) {
+        final Class<?> clazz = metadata.getClazz();
+        final AbstractEntityPersister persister = metadata.requireTablePersister();
+        final String[] idColumns = persister.getIdentifierColumnNames();
+        if (idColumns.length != 1) {
+            throw new IllegalArgumentException("Entity class " + clazz.getName() + " has an id of "
+                    + idColumns.length + " columns instead of one");
+        }
+        this.clazz = clazz;
+        this.table = persister.getTableName();
+        this.idColumn = idColumns[0];
+        final Type idType = persister.getIdentifierType();
+        final Class<?> idClass = idType.getReturnedClass();
+        this.integralId = idClass == Long.class || idClass == Integer.class || idClass == Short.class
+                || idClass == long.class || idClass == int.class || idClass == short.class;
+        this.idArrayType = AttributeUpdate.arrayElementType(metadata.getSessionFactory(), idType);
+
+        this.existsSql = "SELECT 1 FROM " + this.table + " WHERE " + this.idColumn + " = ?";
+        if (this.idArrayType != null) {
+            this.existsAllSql = "SELECT k.i FROM unnest(?) WITH ORDINALITY AS k(id, i) "
+                    + "WHERE EXISTS (SELECT 1 FROM " + this.table + " AS t WHERE t." + this.idColumn + " = k.id)";
+        } else {
+            this.existsAllSql = null;
+        }
+    }
+
+    @CheckReturnValue
+    boolean exists(final Connection connection, final Object id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(this.existsSql)) {
+            statement.setObject(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * Sets the bits at the given offsets of the ids that exist. Uses a single query if the ids can be sent as an
+     * array, one query per id otherwise.
+     *
+     * @param offsets
+     *         bit index for each of the ids
+     */
+    void existsAll(final Connection connection, final List<?> ids, final int[] offsets, final BitSet result)
+            throws SQLException {
+        if (this.existsAllSql == null || this.idArrayType == null) {
+            for (int i = 0; i < ids.size(); i++) {
+                if (exists(connection, ids.get(i))) {
+                    result.set(offsets[i]);
+                }
+            }
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(this.existsAllSql)) {
+            statement.setArray(1, connection.createArrayOf(this.idArrayType, ids.toArray()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    //ordinality is 1-based
+                    result.set(offsets[(int) resultSet.getLong(1) - 1]);
+                }
+            }
+        }
+    }
+
+    @CheckReturnValue
+    long count(final Connection connection, @Nullable final String where, final Object... parameters)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(select("count(*)", where))) {
+            bind(statement, parameters);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Streams the ids to the consumer. The rows are fetched in chunks of the fetch size, which the driver only does
+     * when the connection is not in autocommit mode.
+     */
+    void forEachId(final Connection connection, final int fetchSize, final LongConsumer consumer,
+                   @Nullable final String where, final Object... parameters) throws SQLException {
+        requireIntegralId();
+        try (PreparedStatement statement = connection.prepareStatement(select(this.idColumn, where))) {
+            statement.setFetchSize(fetchSize);
+            bind(statement, parameters);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(resultSet.getLong(1));
+                }
+            }
+        }
+    }
+
+    @CheckReturnValue
+    long[] selectIds(final Connection connection, final int fetchSize, @Nullable final String where,
+                     final Object... parameters) throws SQLException {
+        final LongArrayList ids = new LongArrayList();
+        forEachId(connection, fetchSize, ids::add, where, parameters);
+        return ids.toLongArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *         if the id of the entity can't be read as a long
+     */
+    void requireIntegralId() {
+        if (!this.integralId) {
+            throw new IllegalArgumentException("Entity class " + this.clazz.getName()
+                    + " does not have an integral id");
+        }
+    }
+
+    private String select(final String what, @Nullable final String where) {
+        final String sql = "SELECT " + what + " FROM " + this.table;
+        return where == null || where.isEmpty() ? sql : sql + " WHERE " + where;
+    }
+
+    private static void bind(final PreparedStatement statement, final Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Created by napster on 19.10.26.
+ * <p>
+ * Decides which failures of database operations are transient, and runs operations again after such failures, with
+ * an exponentially growing, randomized backoff, until they succeed, run out of attempts, or would overrun the deadline.
+ * <p>
+ * Failures are classified by the SQLState of the {@link SQLException}s in their causes, see {@link Failure}. Failures
+ * after which the database did not commit anything, like deadlocks, serialization failures, or no connection being
+ * available from the pool, are retried for every operation. Failures with an unknown outcome, like a connection that
+ * broke while committing, are only retried for idempotent operations.
+ * <p>
+ * The {@link DatabaseWrapper} uses the policy of its {@link DatabaseConnection}, and counts the retries of each of its
+ * operations by method name, see {@link #getRetryCounts()}. Operations inside of a unit of work are never retried,
+ * since the transaction belongs to the unit of work.
+ */
+public class RetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+    public enum Failure {
+        /**
+         * The database did not commit anything, running the operation again is safe.
+         */
+        ABORTED,
+        /**
+         * The operation may or may not have been committed, only idempotent operations can be run again.
+         */
+        UNKNOWN_OUTCOME,
+        /**
+         * Running the operation again will fail again.
+         */
+        PERMANENT
+    }
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long deadlineNanos;
+    private final Map<String, Failure> sqlStates;
+    private final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+
+    private RetryPolicy(final Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffNanos = builder.initialBackoffNanos;
+        this.maxBackoffNanos = builder.maxBackoffNanos;
+        this.deadlineNanos = builder.deadlineNanos;
+        this.sqlStates = new HashMap<>(builder.sqlStates);
+    }
+
+    /**
+     * Run the operation, and run it again after transient failures, see {@link RetryPolicy}.
+     *
+     * @param operation
+     *         name of the operation to count its retries
+     * @param idempotent
+     *         the operation has the same effect when it runs more than once, so it may be retried even if the outcome
+     *         of the failed attempt is unknown
+     *
+     * @return the result of the first successful attempt
+     *
+     * @throws RuntimeException
+     *         the failure of the last attempt. If the thread is interrupted while waiting, the failure of the attempt
+     *         before the wait, with the interrupt flag set.
+     */
+    public <R> R execute(final String operation, final boolean idempotent, final Supplier<R> action) {
+        return execute(operation, idempotent, null, action);
+    }
+
+    /**
+     * Run the operation like {@link #execute(String, boolean, Supplier)}, but don't retry it after the deadline of the
+     * call expires or is cancelled, if that is earlier than the deadline of this policy.
+     */
+    public <R> R execute(final String operation, final boolean idempotent, @Nullable final Deadline deadline,
+                         final Supplier<R> action) {
+        final long start = System.nanoTime();
+        final long deadlineNanos = deadline != null
+                ? Math.min(this.deadlineNanos, deadline.remaining(TimeUnit.NANOSECONDS))
+                : this.deadlineNanos;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (final RuntimeException e) {
+                final Failure failure = classify(e);
+                final boolean retryable = failure == Failure.ABORTED
+                        || (failure == Failure.UNKNOWN_OUTCOME && idempotent);
+                if (!retryable || attempt >= this.maxAttempts || (deadline != null && deadline.isCancelled())) {
+                    throw e;
+                }
+                final long pause = backoff(attempt);
+                if (System.nanoTime() - start + pause > deadlineNanos) {
+                    throw e;
+                }
+                this.retries.computeIfAbsent(operation, k -> new LongAdder()).increment();
+                log.debug("Attempt {} of {} failed with {}, retrying in {}ms", attempt, operation, failure,
+                        TimeUnit.NANOSECONDS.toMillis(pause), e);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(pause);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the most severe classification of the SQLStates of the {@link SQLException}s among the causes of the
+     * throwable, or {@link Failure#PERMANENT} if there are none that are known to be transient
+     */
+    @CheckReturnValue
+    public Failure classify(final Throwable throwable) {
+        Failure result = Failure.PERMANENT;
+        for (Throwable t = throwable; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (!(t instanceof SQLException)) {
+                continue;
+            }
+            for (SQLException e = (SQLException) t; e != null; e = e.getNextException()) {
+                //hikari times out waiting for a free connection, nothing has been sent
+                final Failure failure = e instanceof SQLTransientConnectionException
+                        ? Failure.ABORTED
+                        : classify(e.getSQLState());
+                if (failure == Failure.UNKNOWN_OUTCOME) {
+                    return failure;
+                }
+                if (failure == Failure.ABORTED) {
+                    result = failure;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the classification of the exact SQLState if configured, otherwise of its class (the first two
+     * characters), otherwise {@link Failure#PERMANENT}
+     */
+    @CheckReturnValue
+    public Failure classify(@Nullable final String sqlState) {
+        if (sqlState == null) {
+            return Failure.PERMANENT;
+        }
+        Failure failure = this.sqlStates.get(sqlState);
+        if (failure == null && sqlState.length() > 2) {
+            failure = this.sqlStates.get(sqlState.substring(0, 2));
+        }
+        return failure != null ? failure : Failure.PERMANENT;
+    }
+
+    /**
+     * @return the amount of retries of each operation so far, by operation name
+     */
+    @CheckReturnValue
+    public Map<String, Long> getRetryCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        this.retries.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    @CheckReturnValue
+    public long getRetryCount(final String operation) {
+        final LongAdder count = this.retries.get(operation);
+        return count != null ? count.sum() : 0;
+    }
+
+    //half of the backoff is fixed, the other half random, so concurrent retries drift apart
+    private long backoff(final int attempt) {
+        final long backoff = Math.min(this.maxBackoffNanos, this.initialBackoffNanos << Math.min(attempt - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    public static class Builder {
+
+        private int maxAttempts = 4;
+        private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(20);
+        private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+        private long deadlineNanos = TimeUnit.SECONDS.toNanos(10);
+        private final Map<String, Failure> sqlStates = getDefaultSqlStates();
+
+        /**
+         * See https://www.postgresql.org/docs/current/static/errcodes-appendix.html
+         *
+         * @return The transient SQLStates and SQLState classes of PostgreSQL.
+         */
+        public static Map<String, Failure> getDefaultSqlStates() {
+            final Map<String, Failure> sqlStates = new HashMap<>();
+            //transaction rollback: the database gave up on the transaction, none of it is committed
+            sqlStates.put("40", Failure.ABORTED);
+            //no connection could be established, nothing has been sent
+            sqlStates.put("08001", Failure.ABORTED); //sqlclient_unable_to_establish_sqlconnection
+            sqlStates.put("08004", Failure.ABORTED); //sqlserver_rejected_establishment_of_sqlconnection
+            sqlStates.put("53300", Failure.ABORTED); //too_many_connections
+            sqlStates.put("57P03", Failure.ABORTED); //cannot_connect_now
+            //the connection broke, possibly in the middle of a commit, for example during a failover
+            sqlStates.put("08", Failure.UNKNOWN_OUTCOME);
+            sqlStates.put("57P01", Failure.UNKNOWN_OUTCOME); //admin_shutdown
+            sqlStates.put("57P02", Failure.UNKNOWN_OUTCOME); //crash_shutdown
+            //the only transaction rollback state that does not mean the transaction was rolled back
+            sqlStates.put("40003", Failure.UNKNOWN_OUTCOME); //statement_completion_unknown
+            return sqlStates;
+        }
+
+        /**
+         * Set to 1 to disable retries. Default is 4.
+         */
+        @CheckReturnValue
+        public Builder setMaxAttempts(final int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("Max attempts must be at least 1, but is " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * The backoff starts at the initial value and doubles with each retry, up to the max value. Half of each pause
+         * is random. Default is 20 milliseconds up to 1 second.
+         */
+        @CheckReturnValue
+        public Builder setBackoff(final long initial, final long max, final TimeUnit timeUnit) {
+            if (initial < 0 || max < initial) {
+                throw new IllegalArgumentException("Invalid backoff of " + initial + " to " + max);
+            }
+            this.initialBackoffNanos = timeUnit.toNanos(initial);
+            this.maxBackoffNanos = timeUnit.toNanos(max);
+            return this;
+        }
+
+        /**
+         * No retry is started if its pause would end after the deadline, counted from the start of the first attempt.
+         * Default is 10 seconds.
+         */
+        @CheckReturnValue
+        public Builder setDeadline(final long deadline, final TimeUnit timeUnit) {
+            this.deadlineNanos = timeUnit.toNanos(deadline);
+            return this;
+        }
+
+        /**
+         * Classify a SQLState, or a SQLState class of two characters. Exact SQLStates take precedence over classes.
+         * See {@link #getDefaultSqlStates()} for the defaults.
+         */
+        @CheckReturnValue
+        public Builder setSqlState(final String sqlState, final Failure failure) {
+            this.sqlStates.put(sqlState, failure);
+            return this;
+        }
+
+        @CheckReturnValue
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * An immutable, sorted set of longs kept in a compact binary encoding, meant for very large id sets like blacklists or
+ * the member ids of a guild. Sorted snowflakes are close to each other, so their deltas take 5 to 6 bytes instead of 8.
+ * <p>
+ * Encoding, all integers big endian:
+ * <pre>
+ * version  (1 byte)
+ * size     (4 bytes)
+ * index    (12 bytes per block of up to 128 values: first value (8 bytes), offset of the block's data (4 bytes))
+ * data     (per block: bit width (1 byte), then the deltas of all but the first value to the first value, bit packed
+ *           with that width)
+ * </pre>
+ * Deltas to the first value of a block instead of to the previous value take a few more bits, but can be accessed
+ * without decoding the ones before them, so lookups binary search the block index and then the block, like
+ * {@link java.util.Arrays#binarySearch(long[], long)} on a plain array.
+ * <p>
+ * Wrapping bytes with {@link #fromBytes(byte[])} does not decode anything. The first values of the blocks are decoded
+ * on the first {@link #contains(long)} lookup, the blocks themselves never are.
+ * <p>
+ * Create modified copies with {@link #with(long...)} and {@link #without(long...)}.
+ */
+public final class CompressedLongSet extends AbstractSet<Long> implements Serializable {
+
+    private static final long serialVersionUID = -5305848283958580575L;
+
+    public static final byte VERSION = 1;
+    public static final int BLOCK_SIZE = 128;
+
+    private static final int HEADER_LENGTH = 5;
+    private static final int INDEX_ENTRY_LENGTH = 12;
+
+    private static final CompressedLongSet EMPTY = new CompressedLongSet(encodeSortedDistinct(new long[0], 0));
+
+    private final byte[] bytes;
+    private final int size;
+    private final int blocks;
+    private final int dataStart;
+    private transient int hash;
+    //first value of each block, decoded on the first lookup
+    @Nullable
+    private transient long[] firsts;
+
+    private CompressedLongSet(final byte[] bytes) {
+        this.bytes = bytes;
+        this.size = readInt(bytes, 1);
+        this.blocks = blockCount(this.size);
+        this.dataStart = HEADER_LENGTH + this.blocks * INDEX_ENTRY_LENGTH;
+    }
+
+    public static CompressedLongSet empty() {
+        return EMPTY;
+    }
+
+    @CheckReturnValue
+    public static CompressedLongSet of(final long... values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return new CompressedLongSet(encodeSortedDistinct(sorted, distinct));
+    }
+
+    @CheckReturnValue
+    public static CompressedLongSet copyOf(final Collection<Long> values) {
+        if (values instanceof CompressedLongSet) {
+            return (CompressedLongSet) values;
+        }
+        if (values instanceof LongHashSet) {
+            return of(((LongHashSet) values).toLongArray());
+        }
+        final long[] array = new long[values.size()];
+        int i = 0;
+        for (final Long value : values) {
+            array[i++] = value;
+        }
+        return of(array);
+    }
+
+    /**
+     * Wraps the provided bytes, as returned by {@link #toBytes()}, without decoding them. The bytes must not be
+     * modified afterwards.
+     *
+     * @throws IllegalArgumentException
+     *         if the bytes are not an encoded set
+     */
+    @CheckReturnValue
+    public static CompressedLongSet fromBytes(final byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Not a compressed long set of version " + VERSION);
+        }
+        final int size = readInt(bytes, 1);
+        if (size < 0 || bytes.length < HEADER_LENGTH + blockCount(size) * INDEX_ENTRY_LENGTH) {
+            throw new IllegalArgumentException("Truncated compressed long set of size " + size);
+        }
+        return new CompressedLongSet(bytes);
+    }
+
+    /**
+     * @return a copy of the encoded set
+     */
+    @CheckReturnValue
+    public byte[] toBytes() {
+        return this.bytes.clone();
+    }
+
+    /**
+     * @return length of the encoded set in bytes
+     */
+    public int byteLength() {
+        return this.bytes.length;
+    }
+
+    //################################################################################
+    //                               Primitive methods
+    //################################################################################
+
+    public boolean contains(final long value) {
+        long[] blockFirsts = this.firsts;
+        if (blockFirsts == null) {
+            blockFirsts = new long[this.blocks];
+            for (int i = 0; i < blockFirsts.length; i++) {
+                blockFirsts[i] = blockFirst(i);
+            }
+            this.firsts = blockFirsts;
+        }
+        final int found = Arrays.binarySearch(blockFirsts, value);
+        int low;
+        int high;
+        if (found >= 0) {
+            return true;
+        }
+        //last block whose first value is smaller than the searched one
+        final int block = -found - 2;
+        if (block < 0) {
+            return false;
+        }
+
+        //the offsets of the values to the first one of their block ascend too
+        final long target = value - blockFirsts[block];
+        final int start = blockDataStart(block);
+        final int width = this.bytes[start];
+        low = 0;
+        high = blockLength(block) - 2;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int comparison = Long.compareUnsigned(readPacked(this.bytes, start + 1, mid, width), target);
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calls the action with all values in ascending order.
+     */
+    public void forEachLong(final LongConsumer action) {
+        final PrimitiveIterator.OfLong iterator = iterator();
+        while (iterator.hasNext()) {
+            action.accept(iterator.nextLong());
+        }
+    }
+
+    /**
+     * @return all values in ascending order
+     */
+    public long[] toLongArray() {
+        final long[] result = new long[this.size];
+        final PrimitiveIterator.OfLong iterator = iterator();
+        for (int i = 0; i < result.length; i++) {
+            result[i] = iterator.nextLong();
+        }
+        return result;
+    }
+
+    public LongStream longStream() {
+        return Arrays.stream(toLongArray());
+    }
+
+    /**
+     * @return a set containing the values of this one and the provided ones
+     */
+    @CheckReturnValue
+    public CompressedLongSet with(final long... values) {
+        if (values.length == 0) {
+            return this;
+        }
+        final long[] combined = Arrays.copyOf(toLongArray(), this.size + values.length);
+        System.arraycopy(values, 0, combined, this.size, values.length);
+        return of(combined);
+    }
+
+    /**
+     * @return a set containing the values of this one except the provided ones
+     */
+    @CheckReturnValue
+    public CompressedLongSet without(final long... values) {
+        final LongHashSet toRemove = LongHashSet.of(values);
+        final long[] remaining = new long[this.size];
+        int count = 0;
+        final PrimitiveIterator.OfLong iterator = iterator();
+        while (iterator.hasNext()) {
+            final long value = iterator.nextLong();
+            if (!toRemove.contains(value)) {
+                remaining[count++] = value;
+            }
+        }
+        return count == this.size ? this : new CompressedLongSet(encodeSortedDistinct(remaining, count));
+    }
+
+    //################################################################################
+    //                                Set methods
+    //################################################################################
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public boolean contains(@Nullable final Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    /**
+     * Iterates the values in ascending order.
+     */
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int index = 0;
+            private int start;
+            private long first;
+            private long current;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < CompressedLongSet.this.size;
+            }
+
+            @Override
+            public long nextLong() {
+                if (this.index >= CompressedLongSet.this.size) {
+                    throw new NoSuchElementException();
+                }
+                final int block = this.index / BLOCK_SIZE;
+                final int inBlock = this.index % BLOCK_SIZE;
+                if (inBlock == 0) {
+                    this.first = blockFirst(block);
+                    this.start = blockDataStart(block);
+                    this.current = this.first;
+                } else {
+                    final byte[] data = CompressedLongSet.this.bytes;
+                    this.current = this.first + readPacked(data, this.start + 1, inBlock - 1, data[this.start]);
+                }
+                this.index++;
+                return this.current;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        //same as the hashCode of any other set of Longs
+        int h = this.hash;
+        if (h == 0 && this.size > 0) {
+            final PrimitiveIterator.OfLong iterator = iterator();
+            while (iterator.hasNext()) {
+                h += Long.hashCode(iterator.nextLong());
+            }
+            this.hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof CompressedLongSet) {
+            //the encoding of a set is canonical
+            return Arrays.equals(this.bytes, ((CompressedLongSet) o).bytes);
+        }
+        return super.equals(o);
+    }
+
+    //################################################################################
+    //                                  Encoding
+    //################################################################################
+
+    private long blockFirst(final int block) {
+        return readLong(this.bytes, HEADER_LENGTH + block * INDEX_ENTRY_LENGTH);
+    }
+
+    private int blockDataStart(final int block) {
+        return this.dataStart + readInt(this.bytes, HEADER_LENGTH + block * INDEX_ENTRY_LENGTH + 8);
+    }
+
+    private int blockLength(final int block) {
+        return Math.min(BLOCK_SIZE, this.size - block * BLOCK_SIZE);
+    }
+
+    private static int blockCount(final int size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    private static byte[] encodeSortedDistinct(final long[] values, final int count) {
+        final int blocks = blockCount(count);
+        final int dataStart = HEADER_LENGTH + blocks * INDEX_ENTRY_LENGTH;
+        final byte[] buffer = new byte[dataStart + blocks + packedLength(count - blocks, Long.SIZE)];
+        buffer[0] = VERSION;
+        writeInt(buffer, 1, count);
+
+        int position = dataStart;
+        for (int block = 0; block < blocks; block++) {
+            final int start = block * BLOCK_SIZE;
+            final int end = Math.min(count, start + BLOCK_SIZE);
+            final long first = values[start];
+            final int indexEntry = HEADER_LENGTH + block * INDEX_ENTRY_LENGTH;
+            writeLong(buffer, indexEntry, first);
+            writeInt(buffer, indexEntry + 8, position - dataStart);
+            //the difference of two sorted longs always fits into an unsigned long
+            final int width = Long.SIZE - Long.numberOfLeadingZeros(values[end - 1] - first);
+            buffer[position] = (byte) width;
+            for (int i = start + 1; i < end; i++) {
+                writePacked(buffer, position + 1, i - start - 1, width, values[i] - first);
+            }
+            position += 1 + packedLength(end - start - 1, width);
+        }
+        return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+    }
+
+    private static int packedLength(final int values, final int width) {
+        return (values * width + 7) / 8;
+    }
+
+    /**
+     * @return the index-th value of the given bit width packed at start, least significant bits first
+     */
+    private static long readPacked(final byte[] bytes, final int start, final int index, final int width) {
+        final int bit = index * width;
+        int position = start + (bit >>> 3);
+        final int shift = bit & 7;
+        long result = (bytes[position++] & 0xFF) >>> shift;
+        int read = 8 - shift;
+        while (read < width) {
+            result |= (long) (bytes[position++] & 0xFF) << read;
+            read += 8;
+        }
+        return width == Long.SIZE ? result : result & ((1L << width) - 1);
+    }
+
+    private static void writePacked(final byte[] bytes, final int start, final int index, final int width,
+                                    final long value) {
+        final int bit = index * width;
+        int position = start + (bit >>> 3);
+        final int shift = bit & 7;
+        bytes[position] |= (byte) (value << shift);
+        int written = 8 - shift;
+        while (written < width) {
+            bytes[++position] = (byte) (value >>> written);
+            written += 8;
+        }
+    }
+
+    private static long readLong(final byte[] bytes, final int offset) {
+        return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] << 24)
+                | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8)
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeLong(final byte[] bytes, final int offset, final long value) {
+        writeInt(bytes, offset, (int) (value >>> 32));
+        writeInt(bytes, offset + 4, (int) value);
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
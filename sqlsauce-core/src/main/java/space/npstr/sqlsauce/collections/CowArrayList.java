@@ -0,0 +1,365 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import javax.annotation.Nullable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * An {@link ArrayList} whose {@link #snapshot()} (and {@link #clone()}) is O(1): the snapshot shares the backing list
+ * with this one, and whichever of them is modified first copies it.
+ * <p>
+ * Two instances sharing the same backing list are equal without comparing their elements, which makes the dirty checks
+ * of Hibernate against the snapshot it keeps of a loaded value cheap as long as the value has not been modified.
+ * <p>
+ * Extends ArrayList only to be assignable to ArrayList fields, the storage inherited from it stays empty. Iterators
+ * and sub lists are views that write through the methods of this list. Not thread safe.
+ */
+public class CowArrayList<E> extends ArrayList<E> {
+
+    private static final long serialVersionUID = 6203925329734431868L;
+
+    private ArrayList<E> delegate;
+    //whether the delegate may be referenced by another instance, in which case it must be copied before writing to it
+    private boolean shared;
+    @Nullable
+    private transient View view;
+
+    public CowArrayList() {
+        super(0);
+        this.delegate = new ArrayList<>();
+    }
+
+    public CowArrayList(final int initialCapacity) {
+        super(0);
+        this.delegate = new ArrayList<>(initialCapacity);
+    }
+
+    public CowArrayList(final Collection<? extends E> values) {
+        super(0);
+        this.delegate = new ArrayList<>(values);
+    }
+
+    private CowArrayList(final ArrayList<E> delegate, final boolean shared) {
+        super(0);
+        this.delegate = delegate;
+        this.shared = shared;
+    }
+
+    /**
+     * @return a copy of this list in O(1)
+     */
+    public CowArrayList<E> snapshot() {
+        this.shared = true;
+        return new CowArrayList<>(this.delegate, true);
+    }
+
+    /**
+     * @return true if both lists are backed by the same storage, which means they are equal
+     */
+    public boolean sharesStorageWith(final CowArrayList<?> other) {
+        return this.delegate == other.delegate;
+    }
+
+    private ArrayList<E> writable() {
+        if (this.shared) {
+            this.delegate = new ArrayList<>(this.delegate);
+            this.shared = false;
+        }
+        return this.delegate;
+    }
+
+    private ArrayList<E> structurallyWritable() {
+        view().modified();
+        return writable();
+    }
+
+    private View view() {
+        View v = this.view;
+        if (v == null) {
+            v = new View();
+            this.view = v;
+        }
+        return v;
+    }
+
+    //################################################################################
+    //                                  Reading
+    //################################################################################
+
+    @Override
+    public int size() {
+        return this.delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.delegate.isEmpty();
+    }
+
+    @Override
+    public E get(final int index) {
+        return this.delegate.get(index);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return this.delegate.contains(o);
+    }
+
+    @Override
+    public boolean containsAll(final Collection<?> c) {
+        return this.delegate.containsAll(c);
+    }
+
+    @Override
+    public int indexOf(final Object o) {
+        return this.delegate.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(final Object o) {
+        return this.delegate.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return this.delegate.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(final T[] a) {
+        return this.delegate.toArray(a);
+    }
+
+    @Override
+    public void forEach(final Consumer<? super E> action) {
+        this.delegate.forEach(action);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return this.delegate.spliterator();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return view().listIterator();
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return view().listIterator();
+    }
+
+    @Override
+    public ListIterator<E> listIterator(final int index) {
+        return view().listIterator(index);
+    }
+
+    @Override
+    public List<E> subList(final int fromIndex, final int toIndex) {
+        return view().subList(fromIndex, toIndex);
+    }
+
+    //################################################################################
+    //                                  Writing
+    //################################################################################
+
+    @Override
+    public E set(final int index, final E element) {
+        return writable().set(index, element);
+    }
+
+    @Override
+    public boolean add(final E e) {
+        return structurallyWritable().add(e);
+    }
+
+    @Override
+    public void add(final int index, final E element) {
+        structurallyWritable().add(index, element);
+    }
+
+    @Override
+    public E remove(final int index) {
+        return structurallyWritable().remove(index);
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (this.shared && !this.delegate.contains(o)) {
+            return false;
+        }
+        return structurallyWritable().remove(o);
+    }
+
+    @Override
+    public void clear() {
+        view().modified();
+        if (this.shared) {
+            this.delegate = new ArrayList<>();
+            this.shared = false;
+        } else {
+            this.delegate.clear();
+        }
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends E> c) {
+        return structurallyWritable().addAll(c);
+    }
+
+    @Override
+    public boolean addAll(final int index, final Collection<? extends E> c) {
+        return structurallyWritable().addAll(index, c);
+    }
+
+    @Override
+    protected void removeRange(final int fromIndex, final int toIndex) {
+        structurallyWritable().subList(fromIndex, toIndex).clear();
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        return structurallyWritable().removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        return structurallyWritable().retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(final Predicate<? super E> filter) {
+        return structurallyWritable().removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(final UnaryOperator<E> operator) {
+        writable().replaceAll(operator);
+    }
+
+    @Override
+    public void sort(@Nullable final Comparator<? super E> c) {
+        writable().sort(c);
+    }
+
+    @Override
+    public void ensureCapacity(final int minCapacity) {
+        writable().ensureCapacity(minCapacity);
+    }
+
+    @Override
+    public void trimToSize() {
+        if (!this.shared) {
+            this.delegate.trimToSize();
+        }
+    }
+
+    //################################################################################
+    //                                  Object
+    //################################################################################
+
+    @Override
+    public Object clone() {
+        return snapshot();
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof CowArrayList && sharesStorageWith((CowArrayList<?>) o)) {
+            return true;
+        }
+        return this.delegate.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.delegate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.delegate.toString();
+    }
+
+    /**
+     * Provides iterators and sub lists through the implementations of {@link AbstractList}, which only use the methods
+     * of the list that copy the backing list when needed.
+     */
+    private class View extends AbstractList<E> implements RandomAccess {
+
+        private void modified() {
+            this.modCount++;
+        }
+
+        @Override
+        public E get(final int index) {
+            return CowArrayList.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return CowArrayList.this.size();
+        }
+
+        @Override
+        public E set(final int index, final E element) {
+            return CowArrayList.this.set(index, element);
+        }
+
+        @Override
+        public void add(final int index, final E element) {
+            CowArrayList.this.add(index, element);
+        }
+
+        @Override
+        public E remove(final int index) {
+            return CowArrayList.this.remove(index);
+        }
+
+        @Override
+        protected void removeRange(final int fromIndex, final int toIndex) {
+            CowArrayList.this.removeRange(fromIndex, toIndex);
+        }
+    }
+}
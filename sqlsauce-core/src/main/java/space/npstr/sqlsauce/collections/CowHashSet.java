@@ -0,0 +1,271 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * A {@link HashSet} whose {@link #snapshot()} (and {@link #clone()}) is O(1): the snapshot shares the backing set with
+ * this one, and whichever of them is modified first copies it.
+ * <p>
+ * Two instances sharing the same backing set are equal without comparing their elements, which makes the dirty checks
+ * of Hibernate against the snapshot it keeps of a loaded value cheap as long as the value has not been modified.
+ * <p>
+ * Extends HashSet only to be assignable to HashSet fields, the storage inherited from it stays empty. Not thread safe.
+ */
+public class CowHashSet<E> extends HashSet<E> {
+
+    private static final long serialVersionUID = -2270245003474232549L;
+
+    private HashSet<E> delegate;
+    //whether the delegate may be referenced by another instance, in which case it must be copied before writing to it
+    private boolean shared;
+
+    public CowHashSet() {
+        super(0);
+        this.delegate = new HashSet<>();
+    }
+
+    public CowHashSet(final int initialCapacity) {
+        super(0);
+        this.delegate = new HashSet<>(initialCapacity);
+    }
+
+    public CowHashSet(final Collection<? extends E> values) {
+        super(0);
+        this.delegate = new HashSet<>(values);
+    }
+
+    private CowHashSet(final HashSet<E> delegate, final boolean shared) {
+        super(0);
+        this.delegate = delegate;
+        this.shared = shared;
+    }
+
+    /**
+     * @return a copy of this set in O(1)
+     */
+    public CowHashSet<E> snapshot() {
+        this.shared = true;
+        return new CowHashSet<>(this.delegate, true);
+    }
+
+    /**
+     * @return true if both sets are backed by the same storage, which means they are equal
+     */
+    public boolean sharesStorageWith(final CowHashSet<?> other) {
+        return this.delegate == other.delegate;
+    }
+
+    private HashSet<E> writable() {
+        if (this.shared) {
+            this.delegate = new HashSet<>(this.delegate);
+            this.shared = false;
+        }
+        return this.delegate;
+    }
+
+    //################################################################################
+    //                                  Reading
+    //################################################################################
+
+    @Override
+    public int size() {
+        return this.delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.delegate.isEmpty();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return this.delegate.contains(o);
+    }
+
+    @Override
+    public boolean containsAll(final Collection<?> c) {
+        return this.delegate.containsAll(c);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return this.delegate.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(final T[] a) {
+        return this.delegate.toArray(a);
+    }
+
+    @Override
+    public void forEach(final Consumer<? super E> action) {
+        this.delegate.forEach(action);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return this.delegate.spliterator();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    //################################################################################
+    //                                  Writing
+    //################################################################################
+
+    @Override
+    public boolean add(final E e) {
+        if (this.shared && this.delegate.contains(e)) {
+            return false;
+        }
+        return writable().add(e);
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (this.shared && !this.delegate.contains(o)) {
+            return false;
+        }
+        return writable().remove(o);
+    }
+
+    @Override
+    public void clear() {
+        if (this.shared) {
+            this.delegate = new HashSet<>();
+            this.shared = false;
+        } else {
+            this.delegate.clear();
+        }
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends E> c) {
+        if (this.shared && this.delegate.containsAll(c)) {
+            return false;
+        }
+        return writable().addAll(c);
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        return writable().removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        return writable().retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(final Predicate<? super E> filter) {
+        return writable().removeIf(filter);
+    }
+
+    //################################################################################
+    //                                  Object
+    //################################################################################
+
+    @Override
+    public Object clone() {
+        return snapshot();
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof CowHashSet && sharesStorageWith((CowHashSet<?>) o)) {
+            return true;
+        }
+        return this.delegate.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.delegate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.delegate.toString();
+    }
+
+    /**
+     * Iterates the backing set it was created on. Removing an element copies the backing set first if it is shared,
+     * the iteration then continues on the unchanged original.
+     */
+    private class Itr implements Iterator<E> {
+
+        private final HashSet<E> source = CowHashSet.this.delegate;
+        private final Iterator<E> iterator = this.source.iterator();
+        @Nullable
+        private E last;
+        private boolean canRemove = false;
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public E next() {
+            if (!this.iterator.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.iterator.next();
+            this.canRemove = true;
+            return this.last;
+        }
+
+        @Override
+        public void remove() {
+            if (!this.canRemove) {
+                throw new IllegalStateException();
+            }
+            this.canRemove = false;
+            if (this.source == CowHashSet.this.delegate && !CowHashSet.this.shared) {
+                this.iterator.remove();
+            } else {
+                CowHashSet.this.remove(this.last);
+            }
+        }
+    }
+}
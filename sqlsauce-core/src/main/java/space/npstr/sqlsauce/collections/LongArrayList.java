@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * A growable list of primitive longs. Compared to an {@link java.util.ArrayList} of Longs it needs no Long object per
+ * element.
+ * <p>
+ * Implements {@link java.util.List} of Longs for compatibility, prefer the primitive methods like {@link #add(long)},
+ * {@link #getLong(int)}, {@link #set(int, long)} and {@link #forEachLong(LongConsumer)} to avoid boxing. Not thread
+ * safe.
+ */
+public class LongArrayList extends AbstractList<Long> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 4405931137398216226L;
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] elements;
+    private int size = 0;
+
+    public LongArrayList() {
+        this.elements = EMPTY;
+    }
+
+    public LongArrayList(final int initialCapacity) {
+        this.elements = initialCapacity == 0 ? EMPTY : new long[initialCapacity];
+    }
+
+    public LongArrayList(final LongArrayList other) {
+        this.elements = Arrays.copyOf(other.elements, other.size);
+        this.size = other.size;
+    }
+
+    public LongArrayList(final Collection<Long> values) {
+        this(values.size());
+        addAll(values);
+    }
+
+    public static LongArrayList of(final long... values) {
+        final LongArrayList result = new LongArrayList(values.length);
+        System.arraycopy(values, 0, result.elements, 0, values.length);
+        result.size = values.length;
+        return result;
+    }
+
+    //################################################################################
+    //                               Primitive methods
+    //################################################################################
+
+    public boolean add(final long value) {
+        ensureCapacity(this.size + 1);
+        this.elements[this.size++] = value;
+        this.modCount++;
+        return true;
+    }
+
+    public long getLong(final int index) {
+        checkIndex(index);
+        return this.elements[index];
+    }
+
+    /**
+     * @return the previous value at the index
+     */
+    public long set(final int index, final long value) {
+        checkIndex(index);
+        final long previous = this.elements[index];
+        this.elements[index] = value;
+        return previous;
+    }
+
+    /**
+     * @return the removed value
+     */
+    public long removeLongAt(final int index) {
+        checkIndex(index);
+        final long removed = this.elements[index];
+        System.arraycopy(this.elements, index + 1, this.elements, index, this.size - index - 1);
+        this.size--;
+        this.modCount++;
+        return removed;
+    }
+
+    public int indexOf(final long value) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.elements[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(final long value) {
+        return indexOf(value) >= 0;
+    }
+
+    public void forEachLong(final LongConsumer action) {
+        for (int i = 0; i < this.size; i++) {
+            action.accept(this.elements[i]);
+        }
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOf(this.elements, this.size);
+    }
+
+    public LongStream longStream() {
+        return Arrays.stream(this.elements, 0, this.size);
+    }
+
+    public void ensureCapacity(final int minCapacity) {
+        if (minCapacity > this.elements.length) {
+            final int grown = this.elements.length + (this.elements.length >> 1);
+            this.elements = Arrays.copyOf(this.elements, Math.max(Math.max(grown, minCapacity), 10));
+        }
+    }
+
+    public void trimToSize() {
+        if (this.size < this.elements.length) {
+            this.elements = this.size == 0 ? EMPTY : Arrays.copyOf(this.elements, this.size);
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+    }
+
+    //################################################################################
+    //                                List methods
+    //################################################################################
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Long get(final int index) {
+        return getLong(index);
+    }
+
+    @Override
+    public Long set(final int index, final Long value) {
+        return set(index, value.longValue());
+    }
+
+    @Override
+    public boolean add(final Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public void add(final int index, final Long value) {
+        if (index < 0 || index > this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        ensureCapacity(this.size + 1);
+        System.arraycopy(this.elements, index, this.elements, index + 1, this.size - index);
+        this.elements[index] = value;
+        this.size++;
+        this.modCount++;
+    }
+
+    @Override
+    public Long remove(final int index) {
+        return removeLongAt(index);
+    }
+
+    @Override
+    public boolean contains(@Nullable final Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public int indexOf(@Nullable final Object o) {
+        return o instanceof Long ? indexOf(((Long) o).longValue()) : -1;
+    }
+
+    @Override
+    public void clear() {
+        this.size = 0;
+        this.modCount++;
+    }
+
+    @Override
+    public int hashCode() {
+        //same as the hashCode of any other list of Longs
+        int hash = 1;
+        for (int i = 0; i < this.size; i++) {
+            hash = 31 * hash + Long.hashCode(this.elements[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof LongArrayList)) {
+            return super.equals(o);
+        }
+        final LongArrayList other = (LongArrayList) o;
+        if (other.size != this.size) {
+            return false;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.elements[i] != other.elements[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * A set of primitive longs, implemented as an open addressing hash table with linear probing. Compared to a
+ * {@link java.util.HashSet} of Longs it needs no Long and no node objects per element, so large sets of snowflake ids
+ * take roughly a third of the memory and produce no garbage when loading them.
+ * <p>
+ * Implements {@link java.util.Set} of Longs for compatibility, prefer the primitive methods like {@link #add(long)},
+ * {@link #contains(long)}, {@link #removeLong(long)} and {@link #forEachLong(LongConsumer)} to avoid boxing.
+ * <p>
+ * The iterator does not support removal, use {@link #removeLong(long)}, {@link #removeIf(Predicate)},
+ * {@link #removeAll(Collection)} or {@link #retainAll(Collection)} instead. Not thread safe.
+ */
+public class LongHashSet extends AbstractSet<Long> implements Serializable {
+
+    private static final long serialVersionUID = -2868305745314418405L;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    //0 marks an empty slot, so the value 0 itself is tracked separately
+    private long[] table;
+    private boolean containsZero = false;
+    //amount of non zero values in the table
+    private int tableSize = 0;
+    private int resizeThreshold;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize amount of values that can be added before the table has to be resized
+     */
+    public LongHashSet(final int expectedSize) {
+        this.table = new long[tableLengthFor(expectedSize)];
+        this.resizeThreshold = (int) (this.table.length * LOAD_FACTOR);
+    }
+
+    public LongHashSet(final LongHashSet other) {
+        this.table = other.table.clone();
+        this.containsZero = other.containsZero;
+        this.tableSize = other.tableSize;
+        this.resizeThreshold = other.resizeThreshold;
+    }
+
+    public LongHashSet(final Collection<Long> values) {
+        this(values.size());
+        addAll(values);
+    }
+
+    public static LongHashSet of(final long... values) {
+        final LongHashSet result = new LongHashSet(values.length);
+        for (final long value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private static int tableLengthFor(final int expectedSize) {
+        final int minLength = (int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+        int length = 2;
+        while (length < minLength) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    private static int hash(final long value) {
+        final long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the slot containing the value, or the empty slot where it would be inserted
+     */
+    private int slotOf(final long value) {
+        final int mask = this.table.length - 1;
+        int slot = hash(value) & mask;
+        long current;
+        while ((current = this.table[slot]) != 0 && current != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    //################################################################################
+    //                               Primitive methods
+    //################################################################################
+
+    /**
+     * @return true if the value was not contained in this set yet
+     */
+    public boolean add(final long value) {
+        if (value == 0) {
+            final boolean added = !this.containsZero;
+            this.containsZero = true;
+            return added;
+        }
+        final int slot = slotOf(value);
+        if (this.table[slot] != 0) {
+            return false;
+        }
+        this.table[slot] = value;
+        if (++this.tableSize > this.resizeThreshold) {
+            rehash(this.table.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(final long value) {
+        if (value == 0) {
+            return this.containsZero;
+        }
+        return this.table[slotOf(value)] != 0;
+    }
+
+    /**
+     * @return true if the value was contained in this set
+     */
+    public boolean removeLong(final long value) {
+        if (value == 0) {
+            final boolean removed = this.containsZero;
+            this.containsZero = false;
+            return removed;
+        }
+        int slot = slotOf(value);
+        if (this.table[slot] == 0) {
+            return false;
+        }
+        //backward shift deletion: move following values of the same probe chain into the hole
+        final int mask = this.table.length - 1;
+        int next = (slot + 1) & mask;
+        long current;
+        while ((current = this.table[next]) != 0) {
+            final int home = hash(current) & mask;
+            //move the value if its home slot does not lie cyclically in (slot, next]
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                this.table[slot] = current;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.table[slot] = 0;
+        this.tableSize--;
+        return true;
+    }
+
+    public void forEachLong(final LongConsumer action) {
+        if (this.containsZero) {
+            action.accept(0);
+        }
+        for (final long value : this.table) {
+            if (value != 0) {
+                action.accept(value);
+            }
+        }
+    }
+
+    public long[] toLongArray() {
+        final long[] result = new long[size()];
+        int i = 0;
+        if (this.containsZero) {
+            result[i++] = 0;
+        }
+        for (final long value : this.table) {
+            if (value != 0) {
+                result[i++] = value;
+            }
+        }
+        return result;
+    }
+
+    public LongStream longStream() {
+        return Arrays.stream(toLongArray());
+    }
+
+    private void rehash(final int newLength) {
+        final long[] old = this.table;
+        this.table = new long[newLength];
+        this.resizeThreshold = (int) (newLength * LOAD_FACTOR);
+        for (final long value : old) {
+            if (value != 0) {
+                this.table[slotOf(value)] = value;
+            }
+        }
+    }
+
+    //################################################################################
+    //                                Set methods
+    //################################################################################
+
+    @Override
+    public int size() {
+        return this.tableSize + (this.containsZero ? 1 : 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean add(final Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public boolean contains(@Nullable final Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public boolean remove(@Nullable final Object o) {
+        return o instanceof Long && removeLong((Long) o);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.table, 0);
+        this.tableSize = 0;
+        this.containsZero = false;
+    }
+
+    @Override
+    public boolean removeIf(final Predicate<? super Long> filter) {
+        final LongArrayList toRemove = new LongArrayList();
+        forEachLong(value -> {
+            if (filter.test(value)) {
+                toRemove.add(value);
+            }
+        });
+        toRemove.forEachLong(this::removeLong);
+        return !toRemove.isEmpty();
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        return removeIf(value -> !c.contains(value));
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private boolean zeroPending = LongHashSet.this.containsZero;
+            private int next = advance(0);
+
+            private int advance(int slot) {
+                final long[] table = LongHashSet.this.table;
+                while (slot < table.length && table[slot] == 0) {
+                    slot++;
+                }
+                return slot;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.zeroPending || this.next < LongHashSet.this.table.length;
+            }
+
+            @Override
+            public long nextLong() {
+                if (this.zeroPending) {
+                    this.zeroPending = false;
+                    return 0;
+                }
+                if (this.next >= LongHashSet.this.table.length) {
+                    throw new NoSuchElementException();
+                }
+                final long value = LongHashSet.this.table[this.next];
+                this.next = advance(this.next + 1);
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        //same as the hashCode of any other set of Longs
+        int hash = 0;
+        for (final long value : this.table) {
+            hash += Long.hashCode(value);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof LongHashSet)) {
+            return super.equals(o);
+        }
+        final LongHashSet other = (LongHashSet) o;
+        if (other.size() != size() || other.containsZero != this.containsZero) {
+            return false;
+        }
+        for (final long value : this.table) {
+            if (value != 0 && !other.contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,605 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.converters;
+
+import org.postgresql.core.Oid;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Encodes and decodes one dimensional postgres arrays of integers (smallint[], integer[], bigint[]) and of strings
+ * (text[], varchar[], enum arrays), in both the text representation like <code>{1,-2,3}</code> and the binary wire
+ * format. Integers are decoded straight into primitive longs, without boxing and without substrings.
+ * <p>
+ * The decoders accept the raw bytes of a column as returned by {@link java.sql.ResultSet#getBytes(String)}, which are
+ * either the text representation or the binary format, depending on whether the driver received the column in binary.
+ */
+public final class ArrayCodec {
+
+    //ndim, flags, element oid, and size and lower bound of the single dimension
+    private static final int BINARY_HEADER_LENGTH = 20;
+
+    private ArrayCodec() {
+    }
+
+    //################################################################################
+    //                                Text encoding
+    //################################################################################
+
+    /**
+     * @return the text representation of an array of the longs passed to the consumer by the forEach function
+     */
+    @CheckReturnValue
+    public static String encodeLongs(final int size, final Consumer<LongConsumer> forEach) {
+        //most of our longs are snowflakes with 18 or 19 digits
+        final StringBuilder sb = new StringBuilder(2 + size * 20);
+        sb.append('{');
+        forEach.accept(value -> {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * @return the text representation of an array of the provided strings, which may contain nulls
+     */
+    @CheckReturnValue
+    public static String encodeStrings(final Collection<String> strings) {
+        int capacity = 2;
+        for (final String string : strings) {
+            capacity += (string != null ? string.length() : 4) + 3;
+        }
+        final StringBuilder sb = new StringBuilder(capacity + (capacity >> 4));
+        sb.append('{');
+        boolean first = true;
+        for (final String string : strings) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            if (string == null) {
+                sb.append("NULL");
+                continue;
+            }
+            sb.append('"');
+            for (int i = 0; i < string.length(); i++) {
+                final char c = string.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    //################################################################################
+    //                               Binary encoding
+    //################################################################################
+
+    /**
+     * @param elementOid
+     *         one of {@link Oid#INT2}, {@link Oid#INT4}, {@link Oid#INT8}
+     *
+     * @return the binary format of an array of the longs passed to the consumer by the forEach function
+     *
+     * @throws IllegalArgumentException
+     *         if a value does not fit into the element type
+     */
+    @CheckReturnValue
+    public static byte[] encodeLongsBinary(final int size, final Consumer<LongConsumer> forEach, final int elementOid) {
+        final int width = widthOf(elementOid);
+        final ByteBuffer buffer = header(size, false, elementOid, size * (4 + width));
+        forEach.accept(value -> {
+            buffer.putInt(width);
+            if (width == 8) {
+                buffer.putLong(value);
+            } else if (width == 4) {
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Value " + value + " does not fit into an integer");
+                }
+                buffer.putInt((int) value);
+            } else {
+                if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("Value " + value + " does not fit into a smallint");
+                }
+                buffer.putShort((short) value);
+            }
+        });
+        return buffer.array();
+    }
+
+    /**
+     * @param elementOid
+     *         oid of the element type, for example {@link Oid#TEXT}, {@link Oid#VARCHAR} or the oid of an enum type
+     *
+     * @return the binary format of an array of the provided strings, which may contain nulls
+     */
+    @CheckReturnValue
+    public static byte[] encodeStringsBinary(final Collection<String> strings, final int elementOid) {
+        final byte[][] encoded = new byte[strings.size()][];
+        int i = 0;
+        for (final String string : strings) {
+            encoded[i++] = string != null ? string.getBytes(StandardCharsets.UTF_8) : null;
+        }
+        return encodeElementsBinary(encoded, encoded.length, elementOid);
+    }
+
+    /**
+     * @param elements
+     *         already encoded elements, like UTF-8 bytes of strings, null for NULL elements
+     * @param count
+     *         amount of elements to encode, starting with the first one
+     * @param elementOid
+     *         oid of the element type
+     *
+     * @return the binary format of an array of the provided elements
+     */
+    @CheckReturnValue
+    public static byte[] encodeElementsBinary(final byte[][] elements, final int count, final int elementOid) {
+        boolean hasNull = false;
+        int dataLength = 0;
+        for (int i = 0; i < count; i++) {
+            if (elements[i] == null) {
+                hasNull = true;
+            } else {
+                dataLength += elements[i].length;
+            }
+            dataLength += 4;
+        }
+        final ByteBuffer buffer = header(count, hasNull, elementOid, dataLength);
+        for (int i = 0; i < count; i++) {
+            final byte[] element = elements[i];
+            if (element == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(element.length);
+                buffer.put(element);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static ByteBuffer header(final int size, final boolean hasNull, final int elementOid, final int dataLength) {
+        if (size == 0) {
+            //empty arrays have no dimensions
+            return ByteBuffer.allocate(12).putInt(0).putInt(0).putInt(elementOid);
+        }
+        return ByteBuffer.allocate(BINARY_HEADER_LENGTH + dataLength)
+                .putInt(1)
+                .putInt(hasNull ? 1 : 0)
+                .putInt(elementOid)
+                .putInt(size)
+                .putInt(1);
+    }
+
+    private static int widthOf(final int elementOid) {
+        switch (elementOid) {
+            case Oid.INT2:
+                return 2;
+            case Oid.INT4:
+                return 4;
+            case Oid.INT8:
+                return 8;
+            default:
+                throw new IllegalArgumentException("Not an integer type oid: " + elementOid);
+        }
+    }
+
+    //################################################################################
+    //                                  Decoding
+    //################################################################################
+
+    /**
+     * @return true if the raw array is in the binary format, false if it is in the text representation
+     */
+    @CheckReturnValue
+    public static boolean isBinary(final byte[] array) {
+        //the text representation starts with a '{' or with the dimensions '[', the binary one with the
+        //big endian amount of dimensions, so a zero byte
+        return array.length >= 12 && array[0] == 0;
+    }
+
+    /**
+     * @return an upper bound of the amount of elements in the text representation of an array
+     */
+    @CheckReturnValue
+    public static int countElements(final String array) {
+        return countElements(array.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return an upper bound of the amount of elements in the raw text representation or binary format of an array
+     */
+    @CheckReturnValue
+    public static int countElements(final byte[] array) {
+        if (isBinary(array)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(array);
+            return buffer.getInt(0) == 0 ? 0 : buffer.getInt(12);
+        }
+        int count = 1;
+        boolean empty = true;
+        for (final byte b : array) {
+            if (b == ',') {
+                count++;
+            } else if (b != '{' && b != '}' && !isWhitespace(b)) {
+                empty = false;
+            }
+        }
+        return empty ? 0 : count;
+    }
+
+    /**
+     * Pass all elements of the text representation of a one dimensional integer array to the consumer.
+     *
+     * @throws IllegalArgumentException
+     *         if the input is not a valid one dimensional integer array, or contains NULL elements
+     */
+    public static void decodeLongs(final String array, final LongConsumer consumer) {
+        decodeLongs(array.getBytes(StandardCharsets.UTF_8), consumer);
+    }
+
+    /**
+     * Pass all elements of the raw text representation or binary format of a one dimensional integer array to the
+     * consumer.
+     *
+     * @throws IllegalArgumentException
+     *         if the input is not a valid one dimensional integer array, or contains NULL elements
+     */
+    public static void decodeLongs(final byte[] array, final LongConsumer consumer) {
+        if (isBinary(array)) {
+            decodeLongsBinary(array, consumer);
+        } else {
+            decodeLongsText(array, consumer);
+        }
+    }
+
+    /**
+     * Pass all elements of the text representation of a one dimensional string array to the consumer. NULL elements
+     * are passed as null.
+     *
+     * @throws IllegalArgumentException
+     *         if the input is not a valid one dimensional array
+     */
+    public static void decodeStrings(final String array, final Consumer<String> consumer) {
+        decodeStrings(array.getBytes(StandardCharsets.UTF_8), consumer);
+    }
+
+    /**
+     * Pass all elements of the raw text representation or binary format of a one dimensional string array to the
+     * consumer. NULL elements are passed as null.
+     *
+     * @throws IllegalArgumentException
+     *         if the input is not a valid one dimensional array
+     */
+    public static void decodeStrings(final byte[] array, final Consumer<String> consumer) {
+        if (isBinary(array)) {
+            decodeRawElementsBinary(array, toStrings(consumer));
+        } else {
+            decodeRawElementsText(array, toStrings(consumer));
+        }
+    }
+
+    /**
+     * Receives the raw elements of an array, without creating any objects for them.
+     */
+    @FunctionalInterface
+    public interface RawElementConsumer {
+        /**
+         * The bytes of the element are only valid for the duration of the call.
+         *
+         * @param bytes
+         *         buffer containing the element, or null for NULL elements
+         * @param offset
+         *         start of the element in the buffer
+         * @param length
+         *         length of the element in bytes
+         */
+        void accept(@Nullable byte[] bytes, int offset, int length);
+    }
+
+    /**
+     * Pass the unescaped bytes of all elements of the raw text representation or binary format of a one dimensional
+     * array to the consumer.
+     *
+     * @throws IllegalArgumentException
+     *         if the input is not a valid one dimensional array
+     */
+    public static void decodeRawElements(final byte[] array, final RawElementConsumer consumer) {
+        if (isBinary(array)) {
+            decodeRawElementsBinary(array, consumer);
+        } else {
+            decodeRawElementsText(array, consumer);
+        }
+    }
+
+    private static RawElementConsumer toStrings(final Consumer<String> consumer) {
+        return (bytes, offset, length) -> consumer.accept(bytes == null ? null
+                : new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the text representation of an array in the binary format
+     */
+    @CheckReturnValue
+    public static String binaryToText(final byte[] array) {
+        final int elementOid = ByteBuffer.wrap(array).getInt(8);
+        if (elementOid == Oid.INT2 || elementOid == Oid.INT4 || elementOid == Oid.INT8) {
+            return encodeLongs(countElements(array), consumer -> decodeLongsBinary(array, consumer));
+        }
+        final List<String> strings = new ArrayList<>(countElements(array));
+        decodeRawElementsBinary(array, toStrings(strings::add));
+        return encodeStrings(strings);
+    }
+
+    //################################################################################
+    //                               Binary decoding
+    //################################################################################
+
+    /**
+     * @return the amount of elements, with the buffer positioned at the first element
+     */
+    private static int readHeader(final ByteBuffer buffer) {
+        final int dimensions = buffer.getInt();
+        buffer.getInt(); //flags
+        buffer.getInt(); //element oid
+        if (dimensions == 0) {
+            return 0;
+        }
+        if (dimensions != 1) {
+            throw new IllegalArgumentException("Only one dimensional arrays are supported, got " + dimensions);
+        }
+        final int size = buffer.getInt();
+        buffer.getInt(); //lower bound
+        return size;
+    }
+
+    private static void decodeLongsBinary(final byte[] array, final LongConsumer consumer) {
+        final ByteBuffer buffer = ByteBuffer.wrap(array);
+        final int size = readHeader(buffer);
+        for (int i = 0; i < size; i++) {
+            final int length = buffer.getInt();
+            switch (length) {
+                case 8:
+                    consumer.accept(buffer.getLong());
+                    break;
+                case 4:
+                    consumer.accept(buffer.getInt());
+                    break;
+                case 2:
+                    consumer.accept(buffer.getShort());
+                    break;
+                case -1:
+                    throw new IllegalArgumentException("NULL elements are not supported");
+                default:
+                    throw new IllegalArgumentException("Not an integer array, element length " + length);
+            }
+        }
+    }
+
+    private static void decodeRawElementsBinary(final byte[] array, final RawElementConsumer consumer) {
+        final ByteBuffer buffer = ByteBuffer.wrap(array);
+        final int size = readHeader(buffer);
+        for (int i = 0; i < size; i++) {
+            final int length = buffer.getInt();
+            if (length == -1) {
+                consumer.accept(null, 0, 0);
+            } else {
+                final int position = buffer.position();
+                consumer.accept(array, position, length);
+                buffer.position(position + length);
+            }
+        }
+    }
+
+    //################################################################################
+    //                                Text decoding
+    //################################################################################
+
+    /**
+     * @return position of the first element, or -1 if the array is empty
+     */
+    private static int openText(final byte[] array) {
+        int pos = skipWhitespace(array, 0);
+        //arrays with custom lower bounds are prefixed with their dimensions, like [0:2]={1,2,3}
+        if (pos < array.length && array[pos] == '[') {
+            while (pos < array.length && array[pos] != '=') {
+                pos++;
+            }
+            pos++;
+        }
+        if (pos >= array.length || array[pos] != '{') {
+            throw error(pos, "expected '{'");
+        }
+        pos = skipWhitespace(array, pos + 1);
+        if (pos < array.length && array[pos] == '}') {
+            return -1;
+        }
+        return pos;
+    }
+
+    /**
+     * @return position after the separator, or -1 if the closing brace was reached
+     */
+    private static int nextElement(final byte[] array, int pos) {
+        pos = skipWhitespace(array, pos);
+        if (pos >= array.length) {
+            throw error(pos, "unexpected end of input");
+        }
+        final byte b = array[pos];
+        if (b == '}') {
+            return -1;
+        }
+        if (b != ',') {
+            throw error(pos, "expected ',' or '}'");
+        }
+        return pos + 1;
+    }
+
+    private static void decodeLongsText(final byte[] array, final LongConsumer consumer) {
+        int pos = openText(array);
+        while (pos >= 0) {
+            pos = skipWhitespace(array, pos);
+            if (pos >= array.length) {
+                throw error(pos, "unexpected end of input");
+            }
+            final byte first = array[pos];
+            if (first == 'N' || first == 'n' || first == '{' || first == '"') {
+                throw error(pos, "only one dimensional arrays without NULL elements are supported");
+            }
+            final boolean negative = first == '-';
+            if (negative || first == '+') {
+                pos++;
+            }
+            //accumulate negatively to be able to represent Long.MIN_VALUE, like Long.parseLong does
+            final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+            final long multiplyLimit = limit / 10;
+            long result = 0;
+            final int start = pos;
+            while (pos < array.length) {
+                final int digit = array[pos] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (result < multiplyLimit) {
+                    throw error(pos, "value out of range");
+                }
+                result *= 10;
+                if (result < limit + digit) {
+                    throw error(pos, "value out of range");
+                }
+                result -= digit;
+                pos++;
+            }
+            if (pos == start) {
+                throw error(pos, "expected a digit");
+            }
+            consumer.accept(negative ? result : -result);
+            pos = nextElement(array, pos);
+        }
+    }
+
+    private static void decodeRawElementsText(final byte[] array, final RawElementConsumer consumer) {
+        int pos = openText(array);
+        while (pos >= 0) {
+            pos = skipWhitespace(array, pos);
+            if (pos >= array.length) {
+                throw error(pos, "unexpected end of input");
+            }
+            final byte first = array[pos];
+            if (first == '{') {
+                throw error(pos, "only one dimensional arrays are supported");
+            }
+            final boolean quoted = first == '"';
+            if (quoted) {
+                pos++;
+            }
+            final int start = pos;
+            @Nullable ByteArrayOutputStream escaped = null;
+            while (true) {
+                if (pos >= array.length) {
+                    throw error(pos, "unexpected end of input");
+                }
+                final byte b = array[pos];
+                if (quoted ? b == '"' : (b == ',' || b == '}')) {
+                    break;
+                }
+                if (b == '\\') {
+                    if (escaped == null) {
+                        escaped = new ByteArrayOutputStream(pos - start + 16);
+                        escaped.write(array, start, pos - start);
+                    }
+                    pos++;
+                    if (pos >= array.length) {
+                        throw error(pos, "unexpected end of input");
+                    }
+                }
+                if (escaped != null) {
+                    escaped.write(array[pos]);
+                }
+                pos++;
+            }
+            if (escaped != null) {
+                final byte[] unescaped = escaped.toByteArray();
+                consumer.accept(unescaped, 0, unescaped.length);
+            } else if (quoted) {
+                consumer.accept(array, start, pos - start);
+            } else {
+                //unquoted elements never have significant surrounding whitespace
+                int end = pos;
+                while (end > start && isWhitespace(array[end - 1])) {
+                    end--;
+                }
+                if (isNull(array, start, end)) {
+                    consumer.accept(null, 0, 0);
+                } else {
+                    consumer.accept(array, start, end - start);
+                }
+            }
+            if (quoted) {
+                pos++;
+            }
+            pos = nextElement(array, pos);
+        }
+    }
+
+    private static boolean isNull(final byte[] array, final int start, final int end) {
+        return end - start == 4
+                && (array[start] | 0x20) == 'n'
+                && (array[start + 1] | 0x20) == 'u'
+                && (array[start + 2] | 0x20) == 'l'
+                && (array[start + 3] | 0x20) == 'l';
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static int skipWhitespace(final byte[] array, int pos) {
+        while (pos < array.length && isWhitespace(array[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static IllegalArgumentException error(final int pos, final String message) {
+        return new IllegalArgumentException(String.format("Invalid array at position %s: %s", pos, message));
+    }
+}
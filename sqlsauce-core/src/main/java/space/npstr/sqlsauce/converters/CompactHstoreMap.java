@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.converters;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * An unmodifiable map of hstore keys to values, backed by two parallel arrays that form an open addressing hash table.
+ * Compared to a {@link java.util.HashMap} there are no entry objects, which makes it considerably smaller and cheaper
+ * to build. Meant for read mostly hstores, see {@link PostgresHStoreCompactConverter}.
+ * <p>
+ * Iteration order is unspecified. Null values are supported, null keys are not (neither are they in hstores).
+ */
+public final class CompactHstoreMap extends AbstractMap<String, String> implements Serializable {
+
+    private static final long serialVersionUID = 1809452815329178839L;
+
+    private static final CompactHstoreMap EMPTY = new CompactHstoreMap(new String[0], new String[0], 0);
+
+    //slots of the hash table, a null key marks an empty slot
+    private final String[] keys;
+    private final String[] values;
+    private final int size;
+
+    @Nullable
+    private transient Set<Entry<String, String>> entrySet;
+
+    public static CompactHstoreMap empty() {
+        return EMPTY;
+    }
+
+    public static CompactHstoreMap copyOf(final Map<String, String> map) {
+        if (map instanceof CompactHstoreMap) {
+            return (CompactHstoreMap) map;
+        }
+        final String[] keys = new String[map.size()];
+        final String[] values = new String[map.size()];
+        int i = 0;
+        for (final Entry<String, String> entry : map.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        return new CompactHstoreMap(keys, values, i);
+    }
+
+    /**
+     * Later keys overwrite the values of earlier equal keys.
+     */
+    CompactHstoreMap(final String[] pairKeys, final String[] pairValues, final int pairs) {
+        int tableSize = 1;
+        while (tableSize < pairs * 2) {
+            tableSize <<= 1;
+        }
+        this.keys = new String[tableSize];
+        this.values = new String[tableSize];
+        int size = 0;
+        for (int i = 0; i < pairs; i++) {
+            final String key = pairKeys[i];
+            if (key == null) {
+                throw new NullPointerException("hstore keys must not be null");
+            }
+            final int slot = slotOf(key);
+            if (this.keys[slot] == null) {
+                this.keys[slot] = key;
+                size++;
+            }
+            this.values[slot] = pairValues[i];
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return the slot containing the key, or the empty slot where it would be inserted
+     */
+    private int slotOf(final Object key) {
+        final int mask = this.keys.length - 1;
+        final int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (this.keys[slot] != null && !this.keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable final Object key) {
+        return key != null && this.size > 0 && this.keys[slotOf(key)] != null;
+    }
+
+    @Override
+    @Nullable
+    public String get(@Nullable final Object key) {
+        if (key == null || this.size == 0) {
+            return null;
+        }
+        return this.values[slotOf(key)];
+    }
+
+    @Override
+    @Nullable
+    public String getOrDefault(@Nullable final Object key, @Nullable final String defaultValue) {
+        if (key == null || this.size == 0) {
+            return defaultValue;
+        }
+        final int slot = slotOf(key);
+        return this.keys[slot] != null ? this.values[slot] : defaultValue;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        Set<Entry<String, String>> result = this.entrySet;
+        if (result == null) {
+            result = new EntrySet();
+            this.entrySet = result;
+        }
+        return result;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, String>> {
+
+        @Override
+        public int size() {
+            return CompactHstoreMap.this.size;
+        }
+
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+            return new Iterator<Entry<String, String>>() {
+                private int next = advance(0);
+
+                private int advance(int slot) {
+                    while (slot < CompactHstoreMap.this.keys.length && CompactHstoreMap.this.keys[slot] == null) {
+                        slot++;
+                    }
+                    return slot;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return this.next < CompactHstoreMap.this.keys.length;
+                }
+
+                @Override
+                public Entry<String, String> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final int slot = this.next;
+                    this.next = advance(slot + 1);
+                    return new SimpleImmutableEntry<>(CompactHstoreMap.this.keys[slot], CompactHstoreMap.this.values[slot]);
+                }
+            };
+        }
+    }
+}
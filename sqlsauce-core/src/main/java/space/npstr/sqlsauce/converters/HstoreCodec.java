@@ -0,0 +1,291 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.converters;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Encodes and decodes the text representation of postgres hstores, like {@code "key"=>"value", "other"=>NULL}.
+ * <p>
+ * This is a replacement for pgjdbc's {@link org.postgresql.util.HStoreConverter} that avoids most of its per character
+ * work: output buffers are presized, keys and values are only escaped character by character when they actually
+ * contain a quote or a backslash, unescaped tokens are cut out of the input with a single substring, and decoded maps
+ * are created with the right capacity. Read mostly data can be decoded into a {@link CompactHstoreMap} instead of a
+ * {@link HashMap}.
+ */
+public final class HstoreCodec {
+
+    private static final String NULL = "NULL";
+
+    private HstoreCodec() {
+    }
+
+    //################################################################################
+    //                                  Encoding
+    //################################################################################
+
+    /**
+     * @return the hstore text representation of the provided map
+     */
+    @CheckReturnValue
+    public static String encode(final Map<String, String> map) {
+        if (map.isEmpty()) {
+            return "";
+        }
+        int capacity = 0;
+        for (final Map.Entry<String, String> entry : map.entrySet()) {
+            final String value = entry.getValue();
+            //quotes, arrow and separator: "k"=>"v",<space>
+            capacity += entry.getKey().length() + (value != null ? value.length() : NULL.length()) + 8;
+        }
+        final StringBuilder sb = new StringBuilder(capacity + (capacity >> 4));
+        boolean first = true;
+        for (final Map.Entry<String, String> entry : map.entrySet()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            appendQuoted(sb, entry.getKey());
+            sb.append("=>");
+            final String value = entry.getValue();
+            if (value == null) {
+                sb.append(NULL);
+            } else {
+                appendQuoted(sb, value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendQuoted(final StringBuilder sb, final String s) {
+        sb.append('"');
+        if (needsEscaping(s)) {
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+        } else {
+            sb.append(s);
+        }
+        sb.append('"');
+    }
+
+    private static boolean needsEscaping(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //################################################################################
+    //                                  Decoding
+    //################################################################################
+
+    /**
+     * @return a mutable, right sized {@link HashMap} with the content of the provided hstore text representation
+     *
+     * @throws IllegalArgumentException
+     *         if the input is not a valid hstore text representation
+     */
+    @CheckReturnValue
+    public static HashMap<String, String> decode(final String hstore) {
+        final HashMap<String, String> result = new HashMap<>(capacityFor(countArrows(hstore)));
+        parse(hstore, result::put);
+        return result;
+    }
+
+    /**
+     * @return an unmodifiable, compact map with the content of the provided hstore text representation
+     *
+     * @throws IllegalArgumentException
+     *         if the input is not a valid hstore text representation
+     */
+    @CheckReturnValue
+    public static CompactHstoreMap decodeCompact(final String hstore) {
+        final int expectedPairs = countArrows(hstore);
+        final String[] keys = new String[expectedPairs];
+        final String[] values = new String[expectedPairs];
+        final int pairs = parse(hstore, new PairConsumer() {
+            private int i = 0;
+
+            @Override
+            public void accept(final String key, @Nullable final String value) {
+                keys[this.i] = key;
+                values[this.i] = value;
+                this.i++;
+            }
+        });
+        return new CompactHstoreMap(keys, values, pairs);
+    }
+
+    static int capacityFor(final int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1.0f);
+    }
+
+    @FunctionalInterface
+    private interface PairConsumer {
+        void accept(String key, @Nullable String value);
+    }
+
+    /**
+     * @return amount of parsed pairs
+     */
+    private static int parse(final String hstore, final PairConsumer consumer) {
+        int pairs = 0;
+        final Cursor cursor = new Cursor(hstore);
+        cursor.skipWhitespace();
+        while (cursor.hasMore()) {
+            final String key = cursor.readToken();
+            if (key == null) {
+                throw cursor.error("hstore keys must not be NULL");
+            }
+            cursor.skipWhitespace();
+            cursor.expect('=');
+            cursor.expect('>');
+            cursor.skipWhitespace();
+            final String value = cursor.readToken();
+            cursor.skipWhitespace();
+            if (cursor.hasMore()) {
+                cursor.expect(',');
+                cursor.skipWhitespace();
+            }
+            consumer.accept(key, value);
+            pairs++;
+        }
+        return pairs;
+    }
+
+    /**
+     * Every pair contains one arrow, so this is an upper bound of the amount of pairs. It only overestimates when
+     * keys or values contain arrows themselves.
+     */
+    private static int countArrows(final String hstore) {
+        int count = 0;
+        int index = hstore.indexOf("=>");
+        while (index >= 0) {
+            count++;
+            index = hstore.indexOf("=>", index + 2);
+        }
+        return count;
+    }
+
+    private static final class Cursor {
+        private final String input;
+        private int pos = 0;
+
+        private Cursor(final String input) {
+            this.input = input;
+        }
+
+        private boolean hasMore() {
+            return this.pos < this.input.length();
+        }
+
+        private void skipWhitespace() {
+            while (hasMore() && Character.isWhitespace(this.input.charAt(this.pos))) {
+                this.pos++;
+            }
+        }
+
+        private void expect(final char c) {
+            if (!hasMore() || this.input.charAt(this.pos) != c) {
+                throw error("expected '" + c + "'");
+            }
+            this.pos++;
+        }
+
+        /**
+         * @return the next quoted or unquoted token, or null if it is an unquoted NULL
+         */
+        @Nullable
+        private String readToken() {
+            if (!hasMore()) {
+                throw error("unexpected end of input");
+            }
+            if (this.input.charAt(this.pos) == '"') {
+                return readQuoted();
+            }
+            final int start = this.pos;
+            while (hasMore()) {
+                final char c = this.input.charAt(this.pos);
+                if (c == '=' || c == ',' || Character.isWhitespace(c)) {
+                    break;
+                }
+                this.pos++;
+            }
+            if (start == this.pos) {
+                throw error("expected a key or value");
+            }
+            final String token = this.input.substring(start, this.pos);
+            return NULL.equalsIgnoreCase(token) ? null : token;
+        }
+
+        private String readQuoted() {
+            final int start = ++this.pos;
+            //fast path: no escapes, one substring
+            while (hasMore()) {
+                final char c = this.input.charAt(this.pos);
+                if (c == '"') {
+                    return this.input.substring(start, this.pos++);
+                }
+                if (c == '\\') {
+                    break;
+                }
+                this.pos++;
+            }
+            final StringBuilder sb = new StringBuilder(this.pos - start + 16);
+            sb.append(this.input, start, this.pos);
+            while (hasMore()) {
+                char c = this.input.charAt(this.pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c == '\\') {
+                    if (!hasMore()) {
+                        break;
+                    }
+                    c = this.input.charAt(this.pos++);
+                }
+                sb.append(c);
+            }
+            throw error("unterminated quoted string");
+        }
+
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(String.format("Invalid hstore at position %s: %s", this.pos, message));
+        }
+    }
+}
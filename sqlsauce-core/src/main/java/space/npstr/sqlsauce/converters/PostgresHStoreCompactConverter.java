@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.converters;
+
+import javax.annotation.Nullable;
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Like the PostgresHStoreConverter, but loads hstores into unmodifiable {@link CompactHstoreMap}s, which are smaller
+ * and faster to build than HashMaps. Meant for read mostly data: to change a value, the entity's map has to be
+ * replaced as a whole, for example with a modified {@link java.util.HashMap} copy.
+ * <p>
+ * Never returns null, missing hstores are loaded as empty maps.
+ */
+@Converter
+public class PostgresHStoreCompactConverter implements AttributeConverter<Map<String, String>, String>, Serializable {
+
+    private static final long serialVersionUID = -1185693385017469519L;
+
+    @Override
+    public String convertToDatabaseColumn(@Nullable final Map<String, String> attribute) {
+        if (attribute == null) {
+            return "";
+        }
+        return HstoreCodec.encode(attribute);
+    }
+
+    @Override
+    public Map<String, String> convertToEntityAttribute(@Nullable final String dbData) {
+        if (dbData == null) {
+            return CompactHstoreMap.empty();
+        }
+        return HstoreCodec.decodeCompact(dbData);
+    }
+}
@@ -24,8 +24,6 @@
 
 package space.npstr.sqlsauce.converters;
 
-import org.postgresql.util.HStoreConverter;
-
 import javax.annotation.Nullable;
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
@@ -53,7 +51,7 @@ public class PostgresHStoreConverter implements AttributeConverter<Map<String, S
 
     @Override
     public String convertToDatabaseColumn(@Nullable final Map<String, String> attribute) {
-        return HStoreConverter.toString(attribute != null ? attribute : new HashMap<>());
+        return HstoreCodec.encode(attribute != null ? attribute : new HashMap<>());
     }
 
     @Override
@@ -61,6 +59,6 @@ public class PostgresHStoreConverter implements AttributeConverter<Map<String, S
         if (dbData == null) {
             return new HashMap<>();
         }
-        return HStoreConverter.fromString(dbData);
+        return HstoreCodec.decode(dbData);
     }
 }
@@ -24,8 +24,6 @@
 
 package space.npstr.sqlsauce.converters;
 
-import org.postgresql.util.HStoreConverter;
-
 import javax.annotation.Nullable;
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
@@ -48,7 +46,7 @@ public class PostgresHStoreNullableConverter implements AttributeConverter<Map<S
         if (attribute == null) {
             return null;
         }
-        return HStoreConverter.toString(attribute);
+        return HstoreCodec.encode(attribute);
     }
 
     @Override
@@ -57,6 +55,6 @@ public class PostgresHStoreNullableConverter implements AttributeConverter<Map<S
         if (dbData == null) {
             return null;
         }
-        return HStoreConverter.fromString(dbData);
+        return HstoreCodec.decode(dbData);
     }
 }
@@ -26,6 +26,8 @@ package space.npstr.sqlsauce.entities;
 
 import space.npstr.sqlsauce.DatabaseException;
 import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.DbUtils;
+import space.npstr.sqlsauce.converters.HstoreCodec;
 import space.npstr.sqlsauce.converters.PostgresHStoreConverter;
 import space.npstr.sqlsauce.fp.types.EntityKey;
 
@@ -38,7 +40,10 @@ import javax.persistence.Id;
 import javax.persistence.PersistenceException;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -200,6 +205,204 @@ public class Hstore extends SaucedEntity<String, Hstore> {
     }
 
 
+    //################################################################################
+    //                      Server side operations on single keys
+    //################################################################################
+    //These run as single SQL statements on the database and never load or write the whole hstore. They do not require
+    //any entity locks, as the database applies the changes atomically to the current row. Mixing these with the
+    //load/merge based methods above on the same hstore is fine, as long as no stale Hstore objects are merged back
+    //afterwards, which would overwrite the server side changes.
+
+    //language=PostgreSQL
+    private static final String SQL_SET = "INSERT INTO hstorex (name, hstorex) "
+            + "VALUES (:name, cast(:pairs AS HSTORE)) "
+            + "ON CONFLICT (name) DO UPDATE SET hstorex = coalesce(hstorex.hstorex, '') || EXCLUDED.hstorex;";
+
+    //language=PostgreSQL
+    private static final String SQL_DELETE = "UPDATE hstorex SET hstorex = delete(hstorex, cast(:key AS TEXT)) "
+            + "WHERE name = :name";
+
+    //the keys to delete are passed as the keys of an hstore, so that we get away without binding an array parameter
+    //language=PostgreSQL
+    private static final String SQL_DELETE_ALL = "UPDATE hstorex SET hstorex = delete(hstorex, akeys(cast(:keys AS HSTORE))) "
+            + "WHERE name = :name";
+
+    //language=PostgreSQL
+    private static final String SQL_INCREMENT = "INSERT INTO hstorex (name, hstorex) "
+            + "VALUES (:name, hstore(cast(:key AS TEXT), cast(cast(:delta AS BIGINT) AS TEXT))) "
+            + "ON CONFLICT (name) DO UPDATE SET hstorex = coalesce(hstorex.hstorex, '') || hstore(cast(:key AS TEXT), "
+            + "    cast(coalesce(cast(hstorex.hstorex -> cast(:key AS TEXT) AS BIGINT), 0) + cast(:delta AS BIGINT) AS TEXT)) "
+            + "RETURNING cast(hstorex.hstorex -> cast(:key AS TEXT) AS BIGINT);";
+
+    //language=PostgreSQL
+    private static final String SQL_GET = "SELECT hstorex -> cast(:key AS TEXT) FROM hstorex WHERE name = :name";
+
+    //language=PostgreSQL
+    private static final String SQL_GET_ALL = "SELECT cast(slice(hstorex, akeys(cast(:keys AS HSTORE))) AS TEXT) "
+            + "FROM hstorex WHERE name = :name";
+
+    /**
+     * Set a single value on the named hstore, creating the hstore if it does not exist yet. Only the provided pair is
+     * sent to the database.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static void sqlSet(final DatabaseWrapper databaseWrapper, final HstoreKey entityKey,
+                              final String key, final String value) {
+        sqlSetAll(databaseWrapper, entityKey, Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Set a single value on the default hstore, see {@link Hstore#sqlSet(DatabaseWrapper, HstoreKey, String, String)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static void sqlSet(final DatabaseWrapper databaseWrapper, final String key, final String value) {
+        sqlSet(databaseWrapper, HstoreKey.DEFAULT, key, value);
+    }
+
+    /**
+     * Set many values on the named hstore in a single statement, creating the hstore if it does not exist yet.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static void sqlSetAll(final DatabaseWrapper databaseWrapper, final HstoreKey entityKey,
+                                 final Map<String, String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        databaseWrapper.executeSqlQuery(SQL_SET, DbUtils.paramsOf(
+                "name", entityKey.id,
+                "pairs", HstoreCodec.encode(values)
+        ));
+    }
+
+    /**
+     * Remove a single key from the named hstore.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static void sqlDelete(final DatabaseWrapper databaseWrapper, final HstoreKey entityKey, final String key) {
+        databaseWrapper.executeSqlQuery(SQL_DELETE, DbUtils.paramsOf(
+                "name", entityKey.id,
+                "key", key
+        ));
+    }
+
+    /**
+     * Remove many keys from the named hstore in a single statement.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static void sqlDeleteAll(final DatabaseWrapper databaseWrapper, final HstoreKey entityKey,
+                                    final Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        databaseWrapper.executeSqlQuery(SQL_DELETE_ALL, DbUtils.paramsOf(
+                "name", entityKey.id,
+                "keys", keysAsHstore(keys)
+        ));
+    }
+
+    /**
+     * Add the delta to the value of the key, treating a missing key as 0. Values are stored as text, so this will
+     * fail with a {@link DatabaseException} if the current value of the key is not an integer.
+     *
+     * @return the value after the increment
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static long sqlIncrement(final DatabaseWrapper databaseWrapper, final HstoreKey entityKey,
+                                    final String key, final long delta) {
+        return databaseWrapper.selectSqlQuerySingleResult(SQL_INCREMENT, DbUtils.paramsOf(
+                "name", entityKey.id,
+                "key", key,
+                "delta", delta
+        ), Number.class).longValue();
+    }
+
+    /**
+     * Increment a value on the default hstore, see {@link Hstore#sqlIncrement(DatabaseWrapper, HstoreKey, String, long)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static long sqlIncrement(final DatabaseWrapper databaseWrapper, final String key, final long delta) {
+        return sqlIncrement(databaseWrapper, HstoreKey.DEFAULT, key, delta);
+    }
+
+    /**
+     * Read a single value of the named hstore. Only the value is transferred, not the whole hstore.
+     *
+     * @return the requested value, or the default value if either the hstore or the key don't exist
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public static String sqlGet(final DatabaseWrapper databaseWrapper, final HstoreKey entityKey, final String key,
+                                final String defaultValue) {
+        final List<String> result = databaseWrapper.selectSqlQuery(SQL_GET, DbUtils.paramsOf(
+                "name", entityKey.id,
+                "key", key
+        ));
+        if (result.isEmpty() || result.get(0) == null) {
+            return defaultValue;
+        }
+        return result.get(0);
+    }
+
+    /**
+     * Read a single value of the default hstore, see {@link Hstore#sqlGet(DatabaseWrapper, HstoreKey, String, String)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public static String sqlGet(final DatabaseWrapper databaseWrapper, final String key, final String defaultValue) {
+        return sqlGet(databaseWrapper, HstoreKey.DEFAULT, key, defaultValue);
+    }
+
+    /**
+     * Read many values of the named hstore in a single statement. Only the requested pairs are transferred.
+     *
+     * @return the requested keys that exist in the hstore, mapped to their values
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public static Map<String, String> sqlGetAll(final DatabaseWrapper databaseWrapper, final HstoreKey entityKey,
+                                                final Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        final List<String> result = databaseWrapper.selectSqlQuery(SQL_GET_ALL, DbUtils.paramsOf(
+                "name", entityKey.id,
+                "keys", keysAsHstore(keys)
+        ));
+        if (result.isEmpty() || result.get(0) == null) {
+            return new HashMap<>();
+        }
+        return HstoreCodec.decode(result.get(0));
+    }
+
+    private static String keysAsHstore(final Collection<String> keys) {
+        final Map<String, String> asMap = new HashMap<>(keys.size() * 4 / 3 + 1);
+        for (final String key : keys) {
+            asMap.put(key, "");
+        }
+        return HstoreCodec.encode(asMap);
+    }
+
+
     //################################################################################
     //                              Transformations
     //################################################################################
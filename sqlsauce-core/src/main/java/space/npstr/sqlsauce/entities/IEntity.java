@@ -34,9 +34,15 @@ import com.vladmihalcea.hibernate.type.json.JsonNodeStringType;
 import com.vladmihalcea.hibernate.type.json.JsonStringType;
 import org.hibernate.annotations.TypeDef;
 import space.npstr.sqlsauce.hibernate.types.ArrayListLongUserType;
+import space.npstr.sqlsauce.hibernate.types.CompressedLongSetType;
+import space.npstr.sqlsauce.hibernate.types.EnumSetBitmaskUserType;
+import space.npstr.sqlsauce.hibernate.types.EnumSetPostgreSQLEnumUserType;
 import space.npstr.sqlsauce.hibernate.types.HashSetBasicType;
 import space.npstr.sqlsauce.hibernate.types.HashSetPostgreSQLEnumUserType;
+import space.npstr.sqlsauce.hibernate.types.LazyJsonType;
+import space.npstr.sqlsauce.hibernate.types.LongArrayListType;
 import space.npstr.sqlsauce.hibernate.types.LongArrayType;
+import space.npstr.sqlsauce.hibernate.types.LongHashSetType;
 
 import javax.annotation.CheckReturnValue;
 import javax.persistence.MappedSuperclass;
@@ -62,12 +68,18 @@ import java.io.Serializable;
 @TypeDef(name = "jsonb-node",           typeClass = JsonNodeBinaryType.class)
 @TypeDef(name = "json",                 typeClass = JsonStringType.class)
 @TypeDef(name = "jsonb",                typeClass = JsonBinaryType.class)
+@TypeDef(name = "lazy-jsonb",           typeClass = LazyJsonType.class)
 @TypeDef(name = "pgsql_enum",           typeClass = PostgreSQLEnumType.class)
 @TypeDef(name = "nullable-char",        typeClass = NullableCharacterType.class)
 @TypeDef(name = "long-array",           typeClass = LongArrayType.class)
 @TypeDef(name = "array-list-long",      typeClass = ArrayListLongUserType.class)
 @TypeDef(name = "hash_set-pgsql_enum",  typeClass = HashSetPostgreSQLEnumUserType.class)
+@TypeDef(name = "enum_set-pgsql_enum",  typeClass = EnumSetPostgreSQLEnumUserType.class)
+@TypeDef(name = "enum_set-bitmask",     typeClass = EnumSetBitmaskUserType.class)
 @TypeDef(name = "hash-set-basic",       typeClass = HashSetBasicType.class)
+@TypeDef(name = "long-hash-set",        typeClass = LongHashSetType.class)
+@TypeDef(name = "long-array-list",      typeClass = LongArrayListType.class)
+@TypeDef(name = "compressed-long-set",  typeClass = CompressedLongSetType.class)
 //@formatter:on
 @MappedSuperclass
 public interface IEntity<I extends Serializable, S extends IEntity<I, S>> {
@@ -31,8 +31,14 @@ import javax.annotation.CheckReturnValue;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Transient;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -91,14 +97,40 @@ public abstract class SaucedEntity<I extends Serializable, S extends SaucedEntit
      */
     @CheckReturnValue
     public static Object getEntityLock(final EntityKey id) {
-        Object[] hashedClasslocks = ENTITY_LOCKS.computeIfAbsent(id.clazz, k -> createObjectArray(CONCURRENCY_LEVEL));
-        return hashedClasslocks[Math.floorMod(Objects.hash(id), hashedClasslocks.length)];
+        Object[] hashedClasslocks = getClassLocks(id.clazz);
+        return hashedClasslocks[lockIndex(id)];
+    }
+
+    /**
+     * @return The hashed locks of all provided ids without duplicates, in a globally consistent order: by class name,
+     * then by partition. Threads acquiring several of these locks in this order can not deadlock each other.
+     */
+    @CheckReturnValue
+    public static List<Object> getEntityLocks(final Collection<? extends EntityKey<?, ?>> ids) {
+        final List<EntityKey<?, ?>> sorted = new ArrayList<>(ids);
+        sorted.sort(Comparator.comparing((EntityKey<?, ?> id) -> id.clazz.getName())
+                .thenComparingInt(SaucedEntity::lockIndex));
+        final Set<Object> locks = new LinkedHashSet<>();
+        for (final EntityKey<?, ?> id : sorted) {
+            locks.add(getEntityLock(id));
+        }
+        return new ArrayList<>(locks);
     }
 
     //################################################################################
     //                                  Internals
     //################################################################################
 
+    @CheckReturnValue
+    private static Object[] getClassLocks(final Class<?> clazz) {
+        return ENTITY_LOCKS.computeIfAbsent(clazz, k -> createObjectArray(CONCURRENCY_LEVEL));
+    }
+
+    @CheckReturnValue
+    private static int lockIndex(final EntityKey<?, ?> id) {
+        return Math.floorMod(Objects.hash(id), CONCURRENCY_LEVEL);
+    }
+
     @CheckReturnValue
     private static Object[] createObjectArray(final int size) {
         final Object[] result = new Object[size];
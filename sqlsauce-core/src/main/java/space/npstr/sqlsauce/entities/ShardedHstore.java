@@ -0,0 +1,258 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.entities;
+
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+
+import javax.annotation.CheckReturnValue;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * A logical hstore whose keys are spread over several rows ("shards") of the {@link Hstore} table by the hash of the
+ * keys. Writers of unrelated keys will contend for different row locks and entity locks most of the time, and each
+ * update only rewrites the tuple of a single, smaller shard.
+ * <p>
+ * The shards are regular {@link Hstore} rows named {@code <name>#<shard>}. The routing depends on the amount of shards
+ * and {@link String#hashCode()}, which is stable across JVMs, so every user of a sharded hstore needs to agree on the
+ * amount of shards. Use {@link ShardedHstore#migrate(DatabaseWrapper, Hstore.HstoreKey, ShardedHstore, boolean)} to
+ * move the content of a single row hstore into a sharded one.
+ */
+public class ShardedHstore {
+
+    public static final String SHARD_SEPARATOR = "#";
+
+    private final String name;
+    private final Hstore.HstoreKey[] shardKeys;
+
+    /**
+     * @param name   name of the logical hstore
+     * @param shards amount of rows to spread the keys over
+     */
+    public static ShardedHstore of(final String name, final int shards) {
+        return new ShardedHstore(name, shards);
+    }
+
+    private ShardedHstore(final String name, final int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Sharded hstore needs at least one shard, got " + shards);
+        }
+        this.name = name;
+        this.shardKeys = new Hstore.HstoreKey[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shardKeys[i] = Hstore.HstoreKey.of(name + SHARD_SEPARATOR + i);
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getShards() {
+        return this.shardKeys.length;
+    }
+
+    /**
+     * @return key of the shard that the provided hstore key is stored in
+     */
+    @CheckReturnValue
+    public Hstore.HstoreKey shardOf(final String key) {
+        return this.shardKeys[Math.floorMod(key.hashCode(), this.shardKeys.length)];
+    }
+
+    //################################################################################
+    //                                Single keys
+    //################################################################################
+
+    /**
+     * See {@link Hstore#sqlGet(DatabaseWrapper, Hstore.HstoreKey, String, String)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public String get(final DatabaseWrapper databaseWrapper, final String key, final String defaultValue) {
+        return Hstore.sqlGet(databaseWrapper, shardOf(key), key, defaultValue);
+    }
+
+    /**
+     * See {@link Hstore#sqlSet(DatabaseWrapper, Hstore.HstoreKey, String, String)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public void set(final DatabaseWrapper databaseWrapper, final String key, final String value) {
+        Hstore.sqlSet(databaseWrapper, shardOf(key), key, value);
+    }
+
+    /**
+     * See {@link Hstore#sqlDelete(DatabaseWrapper, Hstore.HstoreKey, String)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public void delete(final DatabaseWrapper databaseWrapper, final String key) {
+        Hstore.sqlDelete(databaseWrapper, shardOf(key), key);
+    }
+
+    /**
+     * See {@link Hstore#sqlIncrement(DatabaseWrapper, Hstore.HstoreKey, String, long)}
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public long increment(final DatabaseWrapper databaseWrapper, final String key, final long delta) {
+        return Hstore.sqlIncrement(databaseWrapper, shardOf(key), key, delta);
+    }
+
+    /**
+     * Load the whole shard entity that the key is stored in, and read the key from it.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public String loadAndGet(final DatabaseWrapper databaseWrapper, final String key, final String defaultValue) {
+        return Hstore.loadAndGet(databaseWrapper, shardOf(key), key, defaultValue);
+    }
+
+    /**
+     * Load the shard entity that the key is stored in, set the value, and merge it back. Only the entity lock of that
+     * shard is held while doing so.
+     *
+     * @return the merged shard
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public Hstore loadSetAndSave(final DatabaseWrapper databaseWrapper, final String key, final String value) {
+        return Hstore.loadSetAndSave(databaseWrapper, shardOf(key), key, value);
+    }
+
+    //################################################################################
+    //                                  Bulk
+    //################################################################################
+
+    /**
+     * Set many values, with one statement per affected shard.
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public void setAll(final DatabaseWrapper databaseWrapper, final Map<String, String> values) {
+        final Map<Hstore.HstoreKey, Map<String, String>> byShard = new HashMap<>();
+        values.forEach((key, value) -> byShard.computeIfAbsent(shardOf(key), k -> new HashMap<>()).put(key, value));
+        byShard.forEach((shardKey, shardValues) -> Hstore.sqlSetAll(databaseWrapper, shardKey, shardValues));
+    }
+
+    /**
+     * Read many values, with one statement per affected shard.
+     *
+     * @return the requested keys that exist, mapped to their values
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public Map<String, String> getAll(final DatabaseWrapper databaseWrapper, final Collection<String> keys) {
+        final Map<Hstore.HstoreKey, List<String>> byShard = new HashMap<>();
+        keys.forEach(key -> byShard.computeIfAbsent(shardOf(key), k -> new ArrayList<>()).add(key));
+        final Map<String, String> result = new HashMap<>();
+        byShard.forEach((shardKey, shardKeys) -> result.putAll(Hstore.sqlGetAll(databaseWrapper, shardKey, shardKeys)));
+        return result;
+    }
+
+    /**
+     * Load all shards in a single query and gather their content.
+     *
+     * @return all keys and values of this sharded hstore
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    @CheckReturnValue
+    public Map<String, String> loadAll(final DatabaseWrapper databaseWrapper) {
+        final List<Hstore.HstoreKey> keys = new ArrayList<>(this.shardKeys.length);
+        for (final Hstore.HstoreKey shardKey : this.shardKeys) {
+            keys.add(shardKey);
+        }
+        final Map<String, String> result = new HashMap<>();
+        for (final Hstore shard : databaseWrapper.getEntities(new ArrayList<>(keys))) {
+            if (shard != null) {
+                result.putAll(shard.hstorex);
+            }
+        }
+        return result;
+    }
+
+    //################################################################################
+    //                                 Migration
+    //################################################################################
+
+    /**
+     * Move all keys of a single row hstore into the shards of a sharded hstore, in a single transaction. Keys that
+     * already exist in the sharded hstore are overwritten. The source row is locked for the duration of the migration,
+     * but writers to the shards are not, so make sure nobody writes to the sharded hstore until the migration is done.
+     *
+     * @param deleteSource whether to delete the source row after copying its content
+     *
+     * @return the amount of keys that were migrated
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link PersistenceException} that may be thrown.
+     */
+    public static int migrate(final DatabaseWrapper databaseWrapper, final Hstore.HstoreKey source,
+                              final ShardedHstore target, final boolean deleteSource) {
+        final Integer migrated = databaseWrapper.doInPersistenceContext(em -> {
+            final Hstore sourceHstore = em.find(Hstore.class, source.id, LockModeType.PESSIMISTIC_WRITE);
+            if (sourceHstore == null) {
+                return 0;
+            }
+            final Map<Hstore.HstoreKey, Hstore> shards = new HashMap<>();
+            sourceHstore.hstorex.forEach((key, value) -> {
+                final Hstore shard = shards.computeIfAbsent(target.shardOf(key), shardKey -> {
+                    final Hstore existing = em.find(Hstore.class, shardKey.id, LockModeType.PESSIMISTIC_WRITE);
+                    return existing != null ? existing : new Hstore().setId(shardKey.id);
+                });
+                shard.set(key, value);
+            });
+            shards.values().forEach(em::merge);
+            final int count = sourceHstore.hstorex.size();
+            if (deleteSource) {
+                em.remove(sourceHstore);
+            }
+            return count;
+        });
+        return migrated != null ? migrated : 0;
+    }
+}
@@ -27,6 +27,7 @@ import space.npstr.sqlsauce.entities.IEntity;
 import space.npstr.sqlsauce.entities.SaucedEntity;
 
 import java.io.Serializable;
+import java.util.Comparator;
 import java.util.Objects;
 
 /**
@@ -39,6 +40,19 @@ import java.util.Objects;
  * The relation between I and E is controlled by the publicly available constructors / factory methods.
  */
 public class EntityKey<I, E> {
+
+    /**
+     * A globally consistent order of entity keys: by class name, then by id. Ids of the same class are compared by
+     * their natural order if they have one, which matches the order of their index in the database for numeric ids,
+     * or else by their string representation.
+     * <p>
+     * Writers that lock and write the rows of several entities in this order can not deadlock each other in the
+     * database, and walk the id index of a table front to back instead of jumping around in it.
+     */
+    public static final Comparator<EntityKey<?, ?>> GLOBAL_ORDER = Comparator
+            .comparing((EntityKey<?, ?> key) -> key.clazz.getName())
+            .thenComparing((a, b) -> compareIds(a.id, b.id));
+
     public final I id;
     public final Class<E> clazz;
 
@@ -78,4 +92,12 @@ public class EntityKey<I, E> {
         EntityKey other = (EntityKey) obj;
         return clazz.equals(other.clazz) && id.equals(other.id);
     }
+
+    @SuppressWarnings("unchecked")
+    private static int compareIds(final Object a, final Object b) {
+        if (a instanceof Comparable && a.getClass().equals(b.getClass())) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
 }
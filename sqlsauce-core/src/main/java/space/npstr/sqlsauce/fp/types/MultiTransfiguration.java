@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.fp.types;
+
+import space.npstr.sqlsauce.entities.SaucedEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Describes a transformation that is applied to several entities together, like moving some currency from one user
+ * to another. The entities may be of different classes.
+ * <p>
+ * See {@link space.npstr.sqlsauce.DatabaseWrapper#findApplyAndMerge(MultiTransfiguration)}
+ */
+public class MultiTransfiguration {
+
+    public final List<EntityKey<?, ?>> keys;
+    public final Consumer<TransfiguredEntities> tf;
+
+
+    /**
+     * @param entityKeys
+     *         keys of the entities to transform, all of them need to describe {@link SaucedEntity}s
+     * @param transformation
+     *         the transformation to apply, receiving the entities of all keys
+     */
+    public static MultiTransfiguration of(final Collection<? extends EntityKey<?, ?>> entityKeys,
+                                          final Consumer<TransfiguredEntities> transformation) {
+        if (entityKeys.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one entity key to transform");
+        }
+        for (final EntityKey<?, ?> key : entityKeys) {
+            if (!SaucedEntity.class.isAssignableFrom(key.clazz)) {
+                throw new IllegalArgumentException("Entity key " + key + " does not describe a SaucedEntity");
+            }
+        }
+        return new MultiTransfiguration(new ArrayList<>(new LinkedHashSet<>(entityKeys)), transformation);
+    }
+
+    private MultiTransfiguration(final List<EntityKey<?, ?>> entityKeys,
+                                 final Consumer<TransfiguredEntities> transformation) {
+        this.keys = Collections.unmodifiableList(entityKeys);
+        this.tf = transformation;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.fp.types;
+
+import space.npstr.sqlsauce.entities.IEntity;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * The entities of a {@link MultiTransfiguration}, by their keys. Entities that did not exist yet are default
+ * constructed ones.
+ */
+public class TransfiguredEntities {
+
+    private final Map<EntityKey<?, ?>, Object> entities;
+
+    public TransfiguredEntities(final Map<EntityKey<?, ?>, Object> entities) {
+        this.entities = new LinkedHashMap<>(entities);
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *         if the key is not part of the transfiguration
+     */
+    public <I, E> E get(final EntityKey<I, E> key) {
+        final Object entity = this.entities.get(key);
+        if (entity == null) {
+            throw new IllegalArgumentException("Entity key " + key + " is not part of this transfiguration");
+        }
+        return key.clazz.cast(entity);
+    }
+
+    /**
+     * Replace an entity with another instance, for transformations that don't modify the entity in place.
+     *
+     * @throws IllegalArgumentException
+     *         if the key of the entity is not part of the transfiguration
+     */
+    public <I extends Serializable, E extends IEntity<I, E>> TransfiguredEntities put(final E entity) {
+        final EntityKey<I, E> key = new EntityKey<>(entity.getId(), entity.getClazz());
+        if (!this.entities.containsKey(key)) {
+            throw new IllegalArgumentException("Entity key " + key + " is not part of this transfiguration");
+        }
+        this.entities.put(key, entity);
+        return this;
+    }
+
+    public Collection<Object> values() {
+        return Collections.unmodifiableCollection(this.entities.values());
+    }
+
+    public int size() {
+        return this.entities.size();
+    }
+}
@@ -26,15 +26,14 @@ package space.npstr.sqlsauce.hibernate.types;
 
 
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import space.npstr.sqlsauce.collections.CowArrayList;
+import space.npstr.sqlsauce.converters.ArrayCodec;
 
 import javax.annotation.Nullable;
-import java.sql.Array;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * Created by napster on 27.12.17.
@@ -43,6 +42,9 @@ import java.util.Collections;
  * Cause Hibernates/JPAs ElementCollections are really, really slow, especially the bigger they get.
  * <p>
  * source: https://stackoverflow.com/a/41413296/
+ * <p>
+ * Loaded values are {@link CowArrayList}s, so the copies Hibernate keeps of them for dirty checking are made and
+ * compared in O(1) until a list is modified. Plain ArrayLists set by the user are copied into one.
  */
 public class ArrayListLongUserType extends CommonArrayType {
 
@@ -50,37 +52,37 @@ public class ArrayListLongUserType extends CommonArrayType {
     @Override
     public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
             throws SQLException {
-        Array array = rs.getArray(names[0]);
+        byte[] array = rs.getBytes(names[0]);
         if (array == null) {
             return null;
         }
-        Long[] javaArray = (Long[]) array.getArray();
-        ArrayList<Long> result = new ArrayList<>();
-        Collections.addAll(result, javaArray); //do not use Arrays.asList(), that method returns a fake ArrayList
+        CowArrayList<Long> result = new CowArrayList<>(ArrayCodec.countElements(array));
+        ArrayCodec.decodeLongs(array, result::add);
         return result;
     }
 
     @Override
     public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
             throws SQLException {
-        Connection connection = st.getConnection();
-
         if (value == null) {
             st.setNull(index, sqlTypes()[0]);
         } else {
             @SuppressWarnings("unchecked") ArrayList<Long> castObject = (ArrayList) value;
 
-            Long[] longs = castObject.toArray(new Long[0]);
-            Array array = connection.createArrayOf("bigint", longs);
-
-            st.setArray(index, array);
+            st.setObject(index, BinaryArrayParameter.ofLongs(castObject.size(), consumer -> castObject.forEach(consumer::accept)));
         }
     }
 
     @Nullable
     @Override
     public Object deepCopy(final Object o) {
-        return o == null ? null : ((ArrayList) o).clone();
+        if (o == null) {
+            return null;
+        }
+        if (o instanceof CowArrayList) {
+            return ((CowArrayList<?>) o).snapshot();
+        }
+        return new CowArrayList<>((ArrayList<?>) o);
     }
 
     @Override
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import javax.annotation.Nullable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * A statement parameter for a one dimensional array, holding the array in the postgres binary format.
+ * <p>
+ * The driver sends it as binary if binary transfer is enabled for the oid of the array type, which pgjdbc does by
+ * default for smallint[], integer[], bigint[], text[] and varchar[]. For other array types, like enum arrays, binary
+ * transfer can be enabled by adding their oids to the binaryTransferEnable connection property. Otherwise the driver
+ * falls back to sending the text representation.
+ */
+public class BinaryArrayParameter extends PGobject implements PGBinaryObject {
+
+    private static final long serialVersionUID = 3165063451898787347L;
+
+    private byte[] bytes;
+
+    /**
+     * @param arrayType name of the array type, like bigint[]
+     * @param bytes     array in the binary format, see {@link ArrayCodec}
+     */
+    public BinaryArrayParameter(final String arrayType, final byte[] bytes) {
+        setType(arrayType);
+        this.bytes = bytes;
+    }
+
+    public static BinaryArrayParameter ofLongs(final int size, final Consumer<LongConsumer> forEach) {
+        return new BinaryArrayParameter("int8[]", ArrayCodec.encodeLongsBinary(size, forEach, Oid.INT8));
+    }
+
+    public static BinaryArrayParameter ofInts(final int size, final Consumer<LongConsumer> forEach) {
+        return new BinaryArrayParameter("int4[]", ArrayCodec.encodeLongsBinary(size, forEach, Oid.INT4));
+    }
+
+    public static BinaryArrayParameter ofStrings(final Collection<String> strings) {
+        return new BinaryArrayParameter("text[]", ArrayCodec.encodeStringsBinary(strings, Oid.TEXT));
+    }
+
+    /**
+     * @param elementOid oid of the element type, see {@link #oidOf(PreparedStatement, String)}
+     */
+    public static BinaryArrayParameter ofStrings(final Collection<String> strings, final String elementType,
+                                                 final int elementOid) {
+        return new BinaryArrayParameter(elementType + "[]", ArrayCodec.encodeStringsBinary(strings, elementOid));
+    }
+
+    /**
+     * @return oid of the named type in the database of the statement, for example of an enum type
+     */
+    public static int oidOf(final PreparedStatement st, final String typeName) throws SQLException {
+        final int oid = st.getConnection().unwrap(BaseConnection.class).getTypeInfo().getPGType(typeName);
+        if (oid == Oid.UNSPECIFIED) {
+            throw new SQLException("Unknown type " + typeName);
+        }
+        return oid;
+    }
+
+    @Override
+    public void setByteValue(final byte[] value, final int offset) {
+        this.bytes = Arrays.copyOfRange(value, offset, value.length);
+        this.value = null;
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return this.bytes.length;
+    }
+
+    @Override
+    public void toBytes(final byte[] target, final int offset) {
+        System.arraycopy(this.bytes, 0, target, offset, this.bytes.length);
+    }
+
+    /**
+     * @return the text representation, only used when the driver does not send this array in binary
+     */
+    @Nullable
+    @Override
+    public String getValue() {
+        if (this.value == null) {
+            this.value = ArrayCodec.binaryToText(this.bytes);
+        }
+        return this.value;
+    }
+
+    @Override
+    public void setValue(@Nullable final String value) throws SQLException {
+        throw new SQLException("Binary array parameters can only be created from the binary format");
+    }
+}
@@ -32,6 +32,10 @@ import java.io.Serializable;
  * Created by napster on 26.04.18.
  * <p>
  * Common methods for our postgres array based types.
+ * <p>
+ * The values of these types are mutable collections, so Hibernate is told so and keeps a {@link #deepCopy(Object)} of
+ * each loaded value to detect modifications made in place. Implementations should make that copy, and comparing it to
+ * an unmodified value, cheap, like the copy on write collections in {@link space.npstr.sqlsauce.collections} do.
  */
 public abstract class CommonArrayType implements UserType {
 
@@ -40,12 +44,12 @@ public abstract class CommonArrayType implements UserType {
 
     @Override
     public Object assemble(final Serializable cached, final Object owner) {
-        return cached;
+        return deepCopy(cached);
     }
 
     @Override
     public Serializable disassemble(final Object o) {
-        return (Serializable) o;
+        return (Serializable) deepCopy(o);
     }
 
     @Override
@@ -60,12 +64,12 @@ public abstract class CommonArrayType implements UserType {
 
     @Override
     public boolean isMutable() {
-        return false;
+        return true;
     }
 
     @Override
     public Object replace(final Object original, final Object target, final Object owner) {
-        return original;
+        return deepCopy(original);
     }
 
     @Override
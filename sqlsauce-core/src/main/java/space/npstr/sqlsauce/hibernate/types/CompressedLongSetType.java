@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.collections.CompressedLongSet;
+import space.npstr.sqlsauce.collections.LongArrayList;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Maps bytea columns to a {@link CompressedLongSet}, registered as "compressed-long-set" on
+ * {@link space.npstr.sqlsauce.entities.IEntity}. Meant for id sets with hundreds of thousands of elements, which take
+ * 8 bytes per element as a bigint[]. The loaded bytes are wrapped without decoding them.
+ * <p>
+ * The sets are immutable, so Hibernate neither copies them nor compares them element by element. Replace the set of an
+ * entity with a modified copy to change it.
+ * <p>
+ * Existing bigint[] columns can be converted with
+ * {@link #convertArrayColumn(DatabaseWrapper, String, String, String, String)}.
+ */
+public class CompressedLongSetType implements UserType {
+
+    private static final int CONVERSION_BATCH_SIZE = 1000;
+
+    @Nullable
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        byte[] bytes = rs.getBytes(names[0]);
+        if (bytes == null) {
+            return null;
+        }
+        return CompressedLongSet.fromBytes(bytes);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.BINARY);
+        } else {
+            st.setBytes(index, ((CompressedLongSet) value).toBytes());
+        }
+    }
+
+    @Override
+    public int[] sqlTypes() {
+        return new int[]{Types.BINARY};
+    }
+
+    @Override
+    public Class<CompressedLongSet> returnedClass() {
+        return CompressedLongSet.class;
+    }
+
+    @Override
+    public boolean equals(final Object x, final Object y) {
+        return x == null ? y == null : x.equals(y);
+    }
+
+    @Override
+    public int hashCode(final Object o) {
+        return o == null ? 0 : o.hashCode();
+    }
+
+    @Override
+    public Object deepCopy(final Object o) {
+        return o;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(final Object o) {
+        return (Serializable) o;
+    }
+
+    @Override
+    public Object assemble(final Serializable cached, final Object owner) {
+        return cached;
+    }
+
+    @Override
+    public Object replace(final Object original, final Object target, final Object owner) {
+        return original;
+    }
+
+    /**
+     * Fills a bytea column with the compressed sets of the values of a bigint[] or integer[] column of the same table,
+     * for all rows where the bytea column is still NULL, in a single transaction. The table and column names are put
+     * into the queries as they are.
+     * <p>
+     * Add the bytea column first, for example:
+     * <pre>
+     * ALTER TABLE guild_settings ADD COLUMN blacklist_compressed BYTEA;
+     * </pre>
+     * and drop the array column once the entities have been switched over.
+     *
+     * @return the amount of converted rows
+     *
+     * @throws DatabaseException
+     *         Wraps any {@link javax.persistence.PersistenceException} that may be thrown.
+     */
+    public static int convertArrayColumn(final DatabaseWrapper databaseWrapper, final String table,
+                                         final String idColumn, final String arrayColumn, final String byteaColumn) {
+        //language=PostgreSQL
+        final String select = String.format("SELECT %s, %s FROM %s WHERE %s IS NULL AND %s IS NOT NULL FOR UPDATE",
+                idColumn, arrayColumn, table, byteaColumn, arrayColumn);
+        //language=PostgreSQL
+        final String update = String.format("UPDATE %s SET %s = ? WHERE %s = ?", table, byteaColumn, idColumn);
+
+        final Integer converted = databaseWrapper.doInPersistenceContext(em -> em.unwrap(Session.class)
+                .doReturningWork(connection -> {
+                    int rows = 0;
+                    try (PreparedStatement selectStatement = connection.prepareStatement(select);
+                         PreparedStatement updateStatement = connection.prepareStatement(update)) {
+                        //fetch in chunks instead of loading the whole table
+                        selectStatement.setFetchSize(CONVERSION_BATCH_SIZE);
+                        try (ResultSet rs = selectStatement.executeQuery()) {
+                            while (rs.next()) {
+                                byte[] array = rs.getBytes(2);
+                                LongArrayList values = new LongArrayList(ArrayCodec.countElements(array));
+                                ArrayCodec.decodeLongs(array, values::add);
+                                updateStatement.setBytes(1, CompressedLongSet.of(values.toLongArray()).toBytes());
+                                updateStatement.setObject(2, rs.getObject(1));
+                                updateStatement.addBatch();
+                                if (++rows % CONVERSION_BATCH_SIZE == 0) {
+                                    updateStatement.executeBatch();
+                                }
+                            }
+                        }
+                        updateStatement.executeBatch();
+                    }
+                    return rows;
+                }));
+        return converted != null ? converted : 0;
+    }
+}
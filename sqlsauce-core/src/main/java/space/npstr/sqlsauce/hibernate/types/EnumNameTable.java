@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Translates between the constants of an enum and their names in postgres enum arrays. The UTF-8 encoded names are
+ * computed once and kept in a sorted table, so raw array elements can be resolved with a binary search over their
+ * bytes, without creating a String or going through {@link Enum#valueOf(Class, String)} for each element.
+ */
+public class EnumNameTable<E extends Enum<E>> {
+
+    private final Class<E> enumClass;
+    private final byte[][] sortedNames;
+    private final E[] sortedConstants;
+    private final byte[][] namesByOrdinal;
+
+    public EnumNameTable(final Class<E> enumClass) {
+        this.enumClass = enumClass;
+        final E[] constants = enumClass.getEnumConstants();
+        this.namesByOrdinal = new byte[constants.length][];
+        for (final E constant : constants) {
+            this.namesByOrdinal[constant.ordinal()] = constant.name().getBytes(StandardCharsets.UTF_8);
+        }
+        this.sortedConstants = constants.clone();
+        Arrays.sort(this.sortedConstants, Comparator.comparing(
+                (E constant) -> this.namesByOrdinal[constant.ordinal()], EnumNameTable::compare));
+        this.sortedNames = new byte[constants.length][];
+        for (int i = 0; i < this.sortedConstants.length; i++) {
+            this.sortedNames[i] = this.namesByOrdinal[this.sortedConstants[i].ordinal()];
+        }
+    }
+
+    public Class<E> getEnumClass() {
+        return this.enumClass;
+    }
+
+    /**
+     * @return the enum constant with the name contained in the provided bytes
+     *
+     * @throws IllegalArgumentException
+     *         if there is no such constant
+     */
+    public E lookup(final byte[] bytes, final int offset, final int length) {
+        int low = 0;
+        int high = this.sortedNames.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compare(this.sortedNames[mid], bytes, offset, length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return this.sortedConstants[mid];
+            }
+        }
+        throw new IllegalArgumentException("No enum constant " + this.enumClass.getName() + "."
+                + new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the enum constants in the raw text representation or binary format of an enum array
+     */
+    public EnumSet<E> decode(final byte[] array) {
+        final EnumSet<E> result = EnumSet.noneOf(this.enumClass);
+        ArrayCodec.decodeRawElements(array, (bytes, offset, length) -> {
+            if (bytes == null) {
+                throw new IllegalArgumentException("NULL elements are not supported");
+            }
+            result.add(lookup(bytes, offset, length));
+        });
+        return result;
+    }
+
+    /**
+     * @return the binary format of an enum array of the provided constants
+     */
+    public byte[] encodeBinary(final Set<E> constants, final int elementOid) {
+        final byte[][] elements = new byte[constants.size()][];
+        int i = 0;
+        for (final E constant : constants) {
+            elements[i++] = this.namesByOrdinal[constant.ordinal()];
+        }
+        return ArrayCodec.encodeElementsBinary(elements, i, elementOid);
+    }
+
+    //unsigned lexicographic order
+    private static int compare(final byte[] a, final byte[] b) {
+        return compare(a, b, 0, b.length);
+    }
+
+    private static int compare(final byte[] name, final byte[] bytes, final int offset, final int length) {
+        final int min = Math.min(name.length, length);
+        for (int i = 0; i < min; i++) {
+            final int cmp = (name[i] & 0xff) - (bytes[offset + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return name.length - length;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.DynamicParameterizedType;
+import org.hibernate.usertype.UserType;
+import space.npstr.sqlsauce.DbUtils;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.EnumSet;
+import java.util.Properties;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Maps {@link EnumSet}s to a bigint column, as a bitmask of the ordinals of the contained enum constants. This is the
+ * most compact representation, but the ordinals of the enum constants become part of the persisted data: constants
+ * may only ever be appended to the enum, never reordered or removed. Supports enums with up to 64 constants.
+ * <p>
+ * Requires the field to be annotated with {@link PostgreSQLEnum}, of which only the enum class is used.
+ */
+public class EnumSetBitmaskUserType implements UserType, DynamicParameterizedType, Serializable {
+
+    private static final long serialVersionUID = -5180436478930779418L;
+
+    @Nullable
+    private Class<?> enumClass;
+
+    @Nullable
+    private Enum<?>[] constants;
+
+    @Override
+    public void setParameterValues(Properties parameters) {
+        final ParameterType reader = (ParameterType) parameters.get(PARAMETER_TYPE);
+        PostgreSQLEnum enumAnn = DbUtils.getAnnotation(reader.getAnnotationsMethod(), PostgreSQLEnum.class);
+        if (enumAnn == null) {
+            throw new IllegalStateException("Missing @" + PostgreSQLEnum.class.getSimpleName() + " annotation");
+        }
+        Enum<?>[] enumConstants = enumAnn.enumClass().getEnumConstants();
+        if (enumConstants.length > Long.SIZE) {
+            throw new IllegalStateException("Enum " + enumAnn.enumClass().getName() + " has more than "
+                    + Long.SIZE + " constants and does not fit into a bitmask");
+        }
+        this.enumClass = enumAnn.enumClass();
+        this.constants = enumConstants;
+    }
+
+    @Nullable
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        long bitmask = rs.getLong(names[0]);
+        if (rs.wasNull()) {
+            return null;
+        }
+        if (this.enumClass == null || this.constants == null) {
+            throw new IllegalStateException("Not properly initialized, missing the enum class");
+        }
+        return fromBitmask(this.enumClass, this.constants, bitmask);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> EnumSet<E> fromBitmask(Class<?> enumClass, Enum<?>[] constants, long bitmask) {
+        EnumSet<E> result = EnumSet.noneOf((Class<E>) enumClass);
+        while (bitmask != 0) {
+            int ordinal = Long.numberOfTrailingZeros(bitmask);
+            if (ordinal >= constants.length) {
+                throw new IllegalArgumentException("Bitmask contains unknown ordinal " + ordinal + " of enum "
+                        + enumClass.getName());
+            }
+            result.add((E) constants[ordinal]);
+            bitmask &= bitmask - 1;
+        }
+        return result;
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.BIGINT);
+        } else {
+            long bitmask = 0;
+            for (Object anEnum : (EnumSet<?>) value) {
+                bitmask |= 1L << ((Enum) anEnum).ordinal();
+            }
+            st.setLong(index, bitmask);
+        }
+    }
+
+    @Override
+    public int[] sqlTypes() {
+        return new int[]{Types.BIGINT};
+    }
+
+    @Override
+    public Class<EnumSet> returnedClass() {
+        return EnumSet.class;
+    }
+
+    @Override
+    public boolean equals(final Object x, final Object y) {
+        return x == null ? y == null : x.equals(y);
+    }
+
+    @Override
+    public int hashCode(final Object o) {
+        return o == null ? 0 : o.hashCode();
+    }
+
+    @Nullable
+    @Override
+    public Object deepCopy(final Object o) {
+        return o == null ? null : ((EnumSet<?>) o).clone();
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(final Object o) {
+        return (Serializable) deepCopy(o);
+    }
+
+    @Override
+    public Object assemble(final Serializable cached, final Object owner) {
+        return deepCopy(cached);
+    }
+
+    @Nullable
+    @Override
+    public Object replace(final Object original, final Object target, final Object owner) {
+        return deepCopy(original);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.DynamicParameterizedType;
+import space.npstr.sqlsauce.DbUtils;
+
+import javax.annotation.Nullable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.Properties;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Maps PostgreSQL enum type arrays to {@link EnumSet}s. Like {@link HashSetPostgreSQLEnumUserType}, this requires the
+ * field to be annotated with {@link PostgreSQLEnum}, but it resolves the elements through an {@link EnumNameTable}
+ * that is built once, and resolves the type name once.
+ */
+public class EnumSetPostgreSQLEnumUserType extends CommonArrayType implements DynamicParameterizedType {
+
+    @Nullable
+    private EnumNameTable<?> nameTable;
+
+    @Nullable
+    private String typeName;
+
+    @Nullable
+    private String arrayTypeName;
+
+    @Override
+    public void setParameterValues(Properties parameters) {
+        final ParameterType reader = (ParameterType) parameters.get(PARAMETER_TYPE);
+        PostgreSQLEnum enumAnn = DbUtils.getAnnotation(reader.getAnnotationsMethod(), PostgreSQLEnum.class);
+        if (enumAnn == null) {
+            throw new IllegalStateException("Missing @" + PostgreSQLEnum.class.getSimpleName() + " annotation");
+        }
+        this.nameTable = nameTable(enumAnn.enumClass());
+        this.typeName = enumAnn.typeName().isEmpty() ? enumAnn.enumClass().getSimpleName() : enumAnn.typeName();
+        this.arrayTypeName = this.typeName + "[]";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> EnumNameTable<E> nameTable(Class<?> enumClass) {
+        return new EnumNameTable<>((Class<E>) enumClass);
+    }
+
+    @Nullable
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        byte[] array = rs.getBytes(names[0]);
+        if (rs.wasNull() || array == null) {
+            return null;
+        }
+        if (this.nameTable == null) {
+            throw new IllegalStateException("Not properly initialized, missing the enum class");
+        }
+        return this.nameTable.decode(array);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, sqlTypes()[0]);
+        } else {
+            if (this.nameTable == null || this.typeName == null || this.arrayTypeName == null) {
+                throw new IllegalStateException("Not properly initialized, missing the enum class");
+            }
+            //the driver caches type oids per connection
+            byte[] array = encode(this.nameTable, (EnumSet<?>) value, BinaryArrayParameter.oidOf(st, this.typeName));
+
+            st.setObject(index, new BinaryArrayParameter(this.arrayTypeName, array));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> byte[] encode(EnumNameTable<E> table, EnumSet<?> value, int elementOid) {
+        return table.encodeBinary((EnumSet<E>) value, elementOid);
+    }
+
+    @Nullable
+    @Override
+    public Object deepCopy(final Object o) {
+        return o == null ? null : ((EnumSet<?>) o).clone();
+    }
+
+    @Override
+    public Class<EnumSet> returnedClass() {
+        return EnumSet.class;
+    }
+}
@@ -24,6 +24,9 @@
 
 package space.npstr.sqlsauce.hibernate.types;
 
+import space.npstr.sqlsauce.collections.CowHashSet;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
 import javax.annotation.Nullable;
 import java.util.HashSet;
 
@@ -31,13 +34,29 @@ import java.util.HashSet;
  * Created by napster on 26.04.18.
  * <p>
  * Common methods our hashset and postgres array based types.
+ * <p>
+ * Loaded values are {@link CowHashSet}s, so the copies Hibernate keeps of them for dirty checking are made and compared
+ * in O(1) until a set is modified. Plain HashSets set by the user are copied into one.
  */
 public abstract class HashSetArrayType extends CommonArrayType {
 
+    /**
+     * @return initial capacity of a HashSet that holds the elements of the raw array without resizing
+     */
+    protected static int capacityFor(final byte[] array) {
+        return (int) (ArrayCodec.countElements(array) / 0.75f) + 1;
+    }
+
     @Nullable
     @Override
     public Object deepCopy(final Object o) {
-        return o == null ? null : ((HashSet) o).clone();
+        if (o == null) {
+            return null;
+        }
+        if (o instanceof CowHashSet) {
+            return ((CowHashSet<?>) o).snapshot();
+        }
+        return new CowHashSet<>((HashSet<?>) o);
     }
 
 
@@ -27,14 +27,13 @@ package space.npstr.sqlsauce.hibernate.types;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.usertype.DynamicParameterizedType;
 import space.npstr.sqlsauce.DbUtils;
+import space.npstr.sqlsauce.collections.CowHashSet;
+import space.npstr.sqlsauce.converters.ArrayCodec;
 
 import javax.annotation.Nullable;
-import java.sql.Array;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Properties;
 
@@ -54,6 +53,8 @@ import java.util.Properties;
  * <p>
  * This requires using the {@link BasicType} annotation to retain the otherwise erased generics information.
  * <p>
+ * Arrays are written in the binary format and decoded from their raw bytes, see {@link BinaryArrayParameter}.
+ * <p>
  * For enum support, look at {@link HashSetPostgreSQLEnumUserType}
  */
 public class HashSetBasicType extends HashSetArrayType implements DynamicParameterizedType {
@@ -71,7 +72,7 @@ public class HashSetBasicType extends HashSetArrayType implements DynamicParamet
     @Override
     public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
             throws SQLException {
-        Array array = rs.getArray(names[0]);
+        byte[] array = rs.getBytes(names[0]);
         if (rs.wasNull() || array == null) {
             return null;
         }
@@ -80,11 +81,17 @@ public class HashSetBasicType extends HashSetArrayType implements DynamicParamet
         }
 
         if (basicType.equals(Integer.class)) {
-            return new HashSet<>(Arrays.asList((Integer[]) array.getArray()));
+            CowHashSet<Integer> result = new CowHashSet<>(capacityFor(array));
+            ArrayCodec.decodeLongs(array, value -> result.add((int) value));
+            return result;
         } else if (basicType.equals(Long.class)) {
-            return new HashSet<>(Arrays.asList((Long[]) array.getArray()));
+            CowHashSet<Long> result = new CowHashSet<>(capacityFor(array));
+            ArrayCodec.decodeLongs(array, result::add);
+            return result;
         } else if (basicType.equals(String.class)) {
-            return new HashSet<>(Arrays.asList((String[]) array.getArray()));
+            CowHashSet<String> result = new CowHashSet<>(capacityFor(array));
+            ArrayCodec.decodeStrings(array, result::add);
+            return result;
         } else {
             throw new IllegalArgumentException("Unsupported type: " + basicType.getSimpleName());
         }
@@ -100,23 +107,22 @@ public class HashSetBasicType extends HashSetArrayType implements DynamicParamet
                 throw new IllegalStateException("Not properly initialized, missing the basic type");
             }
 
-            Connection connection = st.getConnection();
-            Array array;
+            BinaryArrayParameter array;
 
             if (basicType.equals(Integer.class)) {
-                @SuppressWarnings("unchecked") Integer[] ints = ((HashSet<Integer>) value).toArray(new Integer[0]);
-                array = connection.createArrayOf("integer", ints);
+                @SuppressWarnings("unchecked") HashSet<Integer> ints = (HashSet<Integer>) value;
+                array = BinaryArrayParameter.ofInts(ints.size(), consumer -> ints.forEach(consumer::accept));
             } else if (basicType.equals(Long.class)) {
-                @SuppressWarnings("unchecked") Long[] longs = ((HashSet<Long>) value).toArray(new Long[0]);
-                array = connection.createArrayOf("bigint", longs);
+                @SuppressWarnings("unchecked") HashSet<Long> longs = (HashSet<Long>) value;
+                array = BinaryArrayParameter.ofLongs(longs.size(), consumer -> longs.forEach(consumer::accept));
             } else if (basicType.equals(String.class)) {
-                @SuppressWarnings("unchecked") String[] strings = ((HashSet<String>) value).toArray(new String[0]);
-                array = connection.createArrayOf("text", strings);
+                @SuppressWarnings("unchecked") HashSet<String> strings = (HashSet<String>) value;
+                array = BinaryArrayParameter.ofStrings(strings);
             } else {
                 throw new IllegalArgumentException("Unsupported type: " + basicType.getSimpleName());
             }
 
-            st.setArray(index, array);
+            st.setObject(index, array);
         }
     }
 
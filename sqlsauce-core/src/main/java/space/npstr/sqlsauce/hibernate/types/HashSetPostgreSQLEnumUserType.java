@@ -28,15 +28,16 @@ package space.npstr.sqlsauce.hibernate.types;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.usertype.DynamicParameterizedType;
 import space.npstr.sqlsauce.DbUtils;
+import space.npstr.sqlsauce.collections.CowHashSet;
+import space.npstr.sqlsauce.converters.ArrayCodec;
 
 import javax.annotation.Nullable;
-import java.sql.Array;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -46,6 +47,9 @@ import java.util.Properties;
  * Cause Hibernates/JPAs ElementCollections are really, really slow, especially the bigger they get.
  * <p>
  * Requires the field to be annotated with {@link PostgreSQLEnum} retaining the information of the enum class at runtime
+ * <p>
+ * Enum arrays are sent in the binary format only if binary transfer has been enabled for the oid of the enum array
+ * type, see {@link BinaryArrayParameter}.
  */
 public class HashSetPostgreSQLEnumUserType extends HashSetArrayType implements DynamicParameterizedType {
 
@@ -67,19 +71,19 @@ public class HashSetPostgreSQLEnumUserType extends HashSetArrayType implements D
     @Override
     public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
             throws SQLException {
-        Array array = rs.getArray(names[0]);
+        byte[] array = rs.getBytes(names[0]);
         if (rs.wasNull() || array == null) {
             return null;
         }
-        String[] javaArray = (String[]) array.getArray();
 
-        if (this.enumClass == null) {
+        Class<? extends Enum> clazz = this.enumClass;
+        if (clazz == null) {
             throw new IllegalStateException("Not properly initialized, missing the enum class");
         }
 
-        return Arrays.stream(javaArray)
-                .map(value -> stringToEnum(this.enumClass, value.trim()))
-                .<HashSet<Enum>>collect(HashSet::new, HashSet::add, HashSet::addAll);
+        CowHashSet<Enum> result = new CowHashSet<>(capacityFor(array));
+        ArrayCodec.decodeStrings(array, value -> result.add(stringToEnum(clazz, value)));
+        return result;
     }
 
     private static Enum stringToEnum(Class<? extends Enum> enumClass, String value) {
@@ -93,7 +97,6 @@ public class HashSetPostgreSQLEnumUserType extends HashSetArrayType implements D
         if (value == null) {
             st.setNull(index, sqlTypes()[0]);
         } else {
-            Connection connection = st.getConnection();
             @SuppressWarnings("unchecked") HashSet<? extends Enum> castObject = (HashSet) value;
 
             if (this.enumClass == null) {
@@ -103,11 +106,14 @@ public class HashSetPostgreSQLEnumUserType extends HashSetArrayType implements D
                 throw new IllegalStateException("Not properly initialized, missing the type name");
             }
 
-            Enum[] enums = castObject.toArray(new Enum[0]);
+            List<String> names = new ArrayList<>(castObject.size());
+            for (Enum anEnum : castObject) {
+                names.add(anEnum.name());
+            }
             String type = this.typeName.isEmpty() ? this.enumClass.getSimpleName() : this.typeName;
-            Array array = connection.createArrayOf(type, enums);
+            BinaryArrayParameter array = BinaryArrayParameter.ofStrings(names, type, BinaryArrayParameter.oidOf(st, type));
 
-            st.setArray(index, array);
+            st.setObject(index, array);
         }
     }
 
@@ -0,0 +1,361 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * A json object as a map, parsed on first access. Until then only the raw json text is kept, so loading an entity
+ * with a large json document that is not used costs next to nothing, see {@link LazyJsonType}.
+ * <p>
+ * {@link #getPath(String...)} extracts single values without parsing the whole document or changing its state. Any
+ * other map access parses the document into a tree of LinkedHashMaps, ArrayLists and boxed values, which may then be
+ * modified freely.
+ * <p>
+ * Equal raw json compares as equal without parsing. Once parsed, instances are compared by their trees.
+ */
+public class LazyJsonMap extends AbstractMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = -1738919281209596131L;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, Object>> TREE = new TypeReference<LinkedHashMap<String, Object>>() {
+    };
+
+    //utf-8 json text, never modified
+    @Nullable
+    private byte[] raw;
+    @Nullable
+    private LinkedHashMap<String, Object> parsed;
+
+    private LazyJsonMap(@Nullable final byte[] raw, @Nullable final LinkedHashMap<String, Object> parsed) {
+        this.raw = raw;
+        this.parsed = parsed;
+    }
+
+    public LazyJsonMap() {
+        this(null, new LinkedHashMap<>());
+    }
+
+    /**
+     * @param json text of a json object. It is not validated before its first access.
+     */
+    @CheckReturnValue
+    public static LazyJsonMap of(final String json) {
+        return new LazyJsonMap(json.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * @param json utf-8 text of a json object. It is not validated before its first access, and must not be modified.
+     */
+    @CheckReturnValue
+    public static LazyJsonMap wrap(final byte[] json) {
+        return new LazyJsonMap(json, null);
+    }
+
+    @CheckReturnValue
+    public static LazyJsonMap copyOf(final Map<String, ?> map) {
+        return new LazyJsonMap(null, new LinkedHashMap<>(map));
+    }
+
+    /**
+     * @return true if the json has been parsed into a tree, after which changes may have been made to it
+     */
+    public boolean isParsed() {
+        return this.parsed != null;
+    }
+
+    /**
+     * @return the current content as json text
+     */
+    public String toJson() {
+        return new String(toJsonBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the current content as utf-8 json text, which must not be modified
+     */
+    public byte[] toJsonBytes() {
+        final LinkedHashMap<String, Object> tree = this.parsed;
+        if (tree == null && this.raw != null) {
+            return this.raw;
+        }
+        try {
+            return MAPPER.writeValueAsBytes(tree);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to write json", e);
+        }
+    }
+
+    /**
+     * @return an independent copy of this map. If this map has not been parsed, the copy shares the raw json with it
+     * and is made in O(1).
+     */
+    @CheckReturnValue
+    public LazyJsonMap snapshot() {
+        return new LazyJsonMap(toJsonBytes(), null);
+    }
+
+    /**
+     * Extract a single value without parsing the whole document. Array elements are addressed by their index.
+     * <p>
+     * Example: {@code getPath("guild", "roles", "0")} returns the first element of the roles array of the guild
+     * object.
+     *
+     * @return the value at the path, as a String, Number, Boolean, or a List or Map for arrays and objects. Null if
+     * the path does not exist or the value is json null.
+     */
+    @Nullable
+    public Object getPath(final String... path) {
+        return getPath(Object.class, path);
+    }
+
+    /**
+     * Same as {@link #getPath(String...)}, but binds the value to the provided type, like a POJO.
+     */
+    @Nullable
+    public <T> T getPath(final Class<T> type, final String... path) {
+        final LinkedHashMap<String, Object> tree = this.parsed;
+        final byte[] json = this.raw;
+        try {
+            if (tree != null || json == null) {
+                return MAPPER.convertValue(navigate(tree, path), type);
+            }
+            try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+                parser.nextToken();
+                for (final String segment : path) {
+                    if (!descend(parser, segment)) {
+                        return null;
+                    }
+                }
+                if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                    return null;
+                }
+                return MAPPER.readValue(parser, type);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to extract " + Arrays.toString(path) + " from json", e);
+        }
+    }
+
+    /**
+     * Moves the parser from the start of an object or array to the start of the value of the provided field or index.
+     *
+     * @return false if there is no such value
+     */
+    private static boolean descend(final JsonParser parser, final String segment) throws IOException {
+        final JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final boolean match = segment.equals(parser.getCurrentName());
+                parser.nextToken();
+                if (match) {
+                    return true;
+                }
+                parser.skipChildren();
+            }
+            return false;
+        } else if (token == JsonToken.START_ARRAY) {
+            final int index = parseIndex(segment);
+            int i = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (i++ == index) {
+                    return true;
+                }
+                parser.skipChildren();
+            }
+            return false;
+        } else {
+            return false;
+        }
+    }
+
+    @Nullable
+    private static Object navigate(@Nullable final Object tree, final String... path) {
+        Object current = tree;
+        for (final String segment : path) {
+            if (current instanceof Map) {
+                current = ((Map<?, ?>) current).get(segment);
+            } else if (current instanceof List) {
+                final List<?> list = (List<?>) current;
+                final int index = parseIndex(segment);
+                current = index >= 0 && index < list.size() ? list.get(index) : null;
+            } else {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    private static int parseIndex(final String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private LinkedHashMap<String, Object> tree() {
+        LinkedHashMap<String, Object> tree = this.parsed;
+        if (tree == null) {
+            tree = parse(this.raw);
+            this.parsed = tree;
+            //the tree may be modified from now on
+            this.raw = null;
+        }
+        return tree;
+    }
+
+    //a tree without changing the state of this map
+    private Map<String, Object> view() {
+        final LinkedHashMap<String, Object> tree = this.parsed;
+        return tree != null ? tree : parse(this.raw);
+    }
+
+    private static LinkedHashMap<String, Object> parse(@Nullable final byte[] json) {
+        if (json == null) {
+            return new LinkedHashMap<>();
+        }
+        try {
+            final LinkedHashMap<String, Object> tree = MAPPER.readValue(json, TREE);
+            return tree != null ? tree : new LinkedHashMap<>();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to parse json", e);
+        }
+    }
+
+    //################################################################################
+    //                                Map methods
+    //################################################################################
+
+    @Override
+    public int size() {
+        return tree().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return tree().containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(final Object value) {
+        return tree().containsValue(value);
+    }
+
+    @Nullable
+    @Override
+    public Object get(final Object key) {
+        return tree().get(key);
+    }
+
+    @Nullable
+    @Override
+    public Object put(final String key, @Nullable final Object value) {
+        return tree().put(key, value);
+    }
+
+    @Nullable
+    @Override
+    public Object remove(final Object key) {
+        return tree().remove(key);
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ?> m) {
+        tree().putAll(m);
+    }
+
+    @Override
+    public void clear() {
+        this.raw = null;
+        this.parsed = new LinkedHashMap<>();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return tree().keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return tree().values();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return tree().entrySet();
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof LazyJsonMap) {
+            final LazyJsonMap other = (LazyJsonMap) o;
+            if (this.raw != null && other.raw != null
+                    && (this.raw == other.raw || Arrays.equals(this.raw, other.raw))) {
+                return true;
+            }
+            return view().equals(other.view());
+        }
+        return view().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return view().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
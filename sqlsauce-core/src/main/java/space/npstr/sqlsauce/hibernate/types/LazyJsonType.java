@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Maps json and jsonb columns to a {@link LazyJsonMap}, registered as "lazy-jsonb" on
+ * {@link space.npstr.sqlsauce.entities.IEntity}. Unlike the "json"/"jsonb" types, the document is not parsed when the
+ * entity is loaded, but when it is first accessed.
+ * <p>
+ * The copy Hibernate keeps for dirty checking shares the raw json with an unparsed value and compares equal to it
+ * without parsing either of them. Requires jackson-databind on the class path.
+ */
+public class LazyJsonType implements UserType {
+
+    //version of the binary jsonb format, which is followed by the json text
+    private static final byte JSONB_VERSION = 1;
+
+    @Nullable
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        byte[] json = rs.getBytes(names[0]);
+        if (json == null) {
+            return null;
+        }
+        if (json.length > 0 && json[0] == JSONB_VERSION) {
+            json = Arrays.copyOfRange(json, 1, json.length);
+        }
+        return LazyJsonMap.wrap(json);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.OTHER);
+        } else {
+            //untyped, so the server casts it to either json or jsonb
+            st.setObject(index, new String(((LazyJsonMap) value).toJsonBytes(), StandardCharsets.UTF_8), Types.OTHER);
+        }
+    }
+
+    @Override
+    public int[] sqlTypes() {
+        return new int[]{Types.OTHER};
+    }
+
+    @Override
+    public Class<LazyJsonMap> returnedClass() {
+        return LazyJsonMap.class;
+    }
+
+    @Override
+    public boolean equals(final Object x, final Object y) {
+        return x == null ? y == null : x.equals(y);
+    }
+
+    @Override
+    public int hashCode(final Object o) {
+        return o == null ? 0 : o.hashCode();
+    }
+
+    @Nullable
+    @Override
+    public Object deepCopy(final Object o) {
+        return o == null ? null : ((LazyJsonMap) o).snapshot();
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(final Object o) {
+        return (Serializable) deepCopy(o);
+    }
+
+    @Override
+    public Object assemble(final Serializable cached, final Object owner) {
+        return deepCopy(cached);
+    }
+
+    @Nullable
+    @Override
+    public Object replace(final Object original, final Object target, final Object owner) {
+        return deepCopy(original);
+    }
+}
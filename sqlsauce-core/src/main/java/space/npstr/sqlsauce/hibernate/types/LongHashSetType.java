@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import space.npstr.sqlsauce.collections.LongHashSet;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+
+import javax.annotation.Nullable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Maps bigint[] and integer[] columns to an open addressing {@link LongHashSet} of primitive longs, registered as "long-hash-set" on
+ * {@link space.npstr.sqlsauce.entities.IEntity}.
+ * <p>
+ * Unlike the boxed array types, this decodes the raw array, in the text representation or the binary format, straight
+ * into the primitive collection, and writes it back in the binary format, so no Long objects are created in either
+ * direction. Arrays with NULL elements are not supported.
+ */
+public class LongHashSetType extends CommonArrayType {
+
+    @Nullable
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        byte[] array = rs.getBytes(names[0]);
+        if (array == null) {
+            return null;
+        }
+        LongHashSet result = new LongHashSet(ArrayCodec.countElements(array));
+        ArrayCodec.decodeLongs(array, result::add);
+        return result;
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, sqlTypes()[0]);
+        } else {
+            LongHashSet longs = (LongHashSet) value;
+            //integer[] columns accept the bigint[] through an assignment cast
+            st.setObject(index, BinaryArrayParameter.ofLongs(longs.size(), longs::forEachLong));
+        }
+    }
+
+    @Nullable
+    @Override
+    public Object deepCopy(final Object o) {
+        return o == null ? null : new LongHashSet((LongHashSet) o);
+    }
+
+    @Override
+    public Class<LongHashSet> returnedClass() {
+        return LongHashSet.class;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.jdbc;
+
+import space.npstr.sqlsauce.collections.LongArrayList;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+import space.npstr.sqlsauce.converters.CompactHstoreMap;
+import space.npstr.sqlsauce.converters.HstoreCodec;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Row mappers generated from the public constructor of a class. The columns of a row are passed to the constructor
+ * with the most parameters by position: the first column to the first parameter, and so on. Each column is read with
+ * the getter matching the type of its parameter, so primitives are never boxed. Mappers are generated once per class,
+ * as a method handle that composes the column getters with the constructor, and cached.
+ * <p>
+ * Besides what the driver supports with {@link ResultSet#getObject(int, Class)}, the following parameter types are
+ * decoded with the codecs of SqlSauce:
+ * <ul>
+ * <li>{@code Map<String, String>}, {@link HashMap} and {@link CompactHstoreMap} from hstore columns</li>
+ * <li>{@code long[]}, {@link LongArrayList} and {@code List<Long>} from integer array columns</li>
+ * <li>{@code String[]} and {@code List<String>} from text, varchar and enum array columns</li>
+ * </ul>
+ * SQL NULLs are mapped to null, or to 0 / false for primitives.
+ */
+public final class RowMappers {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<RowMapper<?>> CONSTRUCTOR_MAPPERS = new ClassValue<RowMapper<?>>() {
+        @Override
+        protected RowMapper<?> computeValue(final Class<?> type) {
+            return constructorMapper(type);
+        }
+    };
+
+    private static final ClassValue<RowMapper<?>> SCALAR_MAPPERS = new ClassValue<RowMapper<?>>() {
+        @Override
+        protected RowMapper<?> computeValue(final Class<?> type) {
+            final MethodHandle reader = reader(type, type, 1);
+            return new HandleRowMapper<>(reader.asType(MethodType.methodType(Object.class, ResultSet.class)));
+        }
+    };
+
+    private RowMappers() {
+    }
+
+    /**
+     * @return the cached mapper of the class, that passes the columns of a row to its public constructor with the most
+     * parameters
+     *
+     * @throws IllegalArgumentException
+     *         if the class has no such constructor, or a parameter of it can't be read from a column
+     */
+    @CheckReturnValue
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> of(final Class<T> clazz) {
+        return (RowMapper<T>) CONSTRUCTOR_MAPPERS.get(clazz);
+    }
+
+    /**
+     * @return the cached mapper of the first column of a row, read as the provided type. Primitive types are returned
+     * boxed.
+     *
+     * @throws IllegalArgumentException
+     *         if the type can't be read from a column
+     */
+    @CheckReturnValue
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> scalar(final Class<T> type) {
+        return (RowMapper<T>) SCALAR_MAPPERS.get(type);
+    }
+
+    private static RowMapper<?> constructorMapper(final Class<?> clazz) {
+        if (!Modifier.isPublic(clazz.getModifiers())) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " is not public");
+        }
+        Constructor<?> constructor = null;
+        boolean ambiguous = false;
+        for (final Constructor<?> candidate : clazz.getConstructors()) {
+            if (constructor == null || candidate.getParameterCount() > constructor.getParameterCount()) {
+                constructor = candidate;
+                ambiguous = false;
+            } else if (candidate.getParameterCount() == constructor.getParameterCount()) {
+                ambiguous = true;
+            }
+        }
+        if (constructor == null) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " has no public constructor");
+        }
+        if (ambiguous) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " has several public constructors with "
+                    + constructor.getParameterCount() + " parameters");
+        }
+
+        final MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflectConstructor(constructor);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't access the constructor of class " + clazz.getName(), e);
+        }
+        final Class<?>[] parameterTypes = constructor.getParameterTypes();
+        final Type[] genericTypes = constructor.getGenericParameterTypes();
+        final MethodHandle[] readers = new MethodHandle[parameterTypes.length];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = reader(parameterTypes[i], genericTypes[i], i + 1);
+        }
+        //(P1, ..., Pn) -> (ResultSet, ..., ResultSet) -> (ResultSet), the result set being passed to every reader
+        final MethodHandle mapper = MethodHandles.permuteArguments(
+                MethodHandles.filterArguments(handle, 0, readers),
+                MethodType.methodType(clazz, ResultSet.class),
+                new int[readers.length]);
+        return new HandleRowMapper<>(mapper.asType(MethodType.methodType(Object.class, ResultSet.class)));
+    }
+
+    /**
+     * @return a handle of type (ResultSet) -> type that reads the column
+     */
+    private static MethodHandle reader(final Class<?> type, final Type genericType, final int column) {
+        try {
+            final MethodHandle reader;
+            if (type.isPrimitive()) {
+                reader = primitiveReader(type);
+            } else if (type == String.class) {
+                reader = LOOKUP.findVirtual(ResultSet.class, "getString", MethodType.methodType(String.class, int.class));
+            } else if (type == Map.class || type == HashMap.class) {
+                requireTypeArguments(genericType, String.class, String.class);
+                reader = codecReader("readHstore", HashMap.class);
+            } else if (type == CompactHstoreMap.class) {
+                reader = codecReader("readCompactHstore", CompactHstoreMap.class);
+            } else if (type == long[].class) {
+                reader = codecReader("readLongArray", long[].class);
+            } else if (type == LongArrayList.class) {
+                reader = codecReader("readLongArrayList", LongArrayList.class);
+            } else if (type == String[].class) {
+                reader = codecReader("readStringArray", String[].class);
+            } else if (type == List.class && isListOf(genericType, Long.class)) {
+                reader = codecReader("readLongArrayList", LongArrayList.class);
+            } else if (type == List.class) {
+                requireTypeArguments(genericType, String.class);
+                reader = codecReader("readStringList", List.class);
+            } else {
+                reader = MethodHandles.insertArguments(LOOKUP.findVirtual(ResultSet.class, "getObject",
+                        MethodType.methodType(Object.class, int.class, Class.class)), 2, type);
+            }
+            return MethodHandles.insertArguments(reader, 1, column)
+                    .asType(MethodType.methodType(type, ResultSet.class));
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Failed to look up the reader of type " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle primitiveReader(final Class<?> type) throws NoSuchMethodException, IllegalAccessException {
+        final String getter;
+        if (type == long.class) {
+            getter = "getLong";
+        } else if (type == int.class) {
+            getter = "getInt";
+        } else if (type == short.class) {
+            getter = "getShort";
+        } else if (type == byte.class) {
+            getter = "getByte";
+        } else if (type == double.class) {
+            getter = "getDouble";
+        } else if (type == float.class) {
+            getter = "getFloat";
+        } else if (type == boolean.class) {
+            getter = "getBoolean";
+        } else {
+            throw new IllegalArgumentException("Unsupported primitive type " + type.getName());
+        }
+        return LOOKUP.findVirtual(ResultSet.class, getter, MethodType.methodType(type, int.class));
+    }
+
+    private static MethodHandle codecReader(final String name, final Class<?> returnType)
+            throws NoSuchMethodException, IllegalAccessException {
+        return LOOKUP.findStatic(RowMappers.class, name, MethodType.methodType(returnType, ResultSet.class, int.class));
+    }
+
+    private static boolean isListOf(final Type genericType, final Class<?> elementType) {
+        return genericType instanceof ParameterizedType
+                && ((ParameterizedType) genericType).getActualTypeArguments()[0] == elementType;
+    }
+
+    private static void requireTypeArguments(final Type genericType, final Class<?>... typeArguments) {
+        if (genericType instanceof ParameterizedType) {
+            final Type[] actual = ((ParameterizedType) genericType).getActualTypeArguments();
+            for (int i = 0; i < actual.length; i++) {
+                if (actual[i] != typeArguments[i]) {
+                    throw new IllegalArgumentException("Unsupported column type " + genericType.getTypeName());
+                }
+            }
+        }
+    }
+
+    //################################################################################
+    //                                Codec readers
+    //################################################################################
+
+    @Nullable
+    private static HashMap<String, String> readHstore(final ResultSet resultSet, final int column) throws SQLException {
+        final String hstore = resultSet.getString(column);
+        return hstore == null ? null : HstoreCodec.decode(hstore);
+    }
+
+    @Nullable
+    private static CompactHstoreMap readCompactHstore(final ResultSet resultSet, final int column) throws SQLException {
+        final String hstore = resultSet.getString(column);
+        return hstore == null ? null : HstoreCodec.decodeCompact(hstore);
+    }
+
+    @Nullable
+    private static long[] readLongArray(final ResultSet resultSet, final int column) throws SQLException {
+        final LongArrayList longs = readLongArrayList(resultSet, column);
+        return longs == null ? null : longs.toLongArray();
+    }
+
+    @Nullable
+    private static LongArrayList readLongArrayList(final ResultSet resultSet, final int column) throws SQLException {
+        final byte[] array = resultSet.getBytes(column);
+        if (array == null) {
+            return null;
+        }
+        final LongArrayList longs = new LongArrayList(ArrayCodec.countElements(array));
+        ArrayCodec.decodeLongs(array, longs::add);
+        return longs;
+    }
+
+    @Nullable
+    private static String[] readStringArray(final ResultSet resultSet, final int column) throws SQLException {
+        final List<String> strings = readStringList(resultSet, column);
+        return strings == null ? null : strings.toArray(new String[0]);
+    }
+
+    @Nullable
+    private static List<String> readStringList(final ResultSet resultSet, final int column) throws SQLException {
+        final byte[] array = resultSet.getBytes(column);
+        if (array == null) {
+            return null;
+        }
+        final List<String> strings = new ArrayList<>(ArrayCodec.countElements(array));
+        ArrayCodec.decodeStrings(array, strings::add);
+        return strings;
+    }
+
+    private static final class HandleRowMapper<T> implements RowMapper<T> {
+
+        //(ResultSet) -> Object
+        private final MethodHandle handle;
+
+        private HandleRowMapper(final MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T map(final ResultSet resultSet) throws SQLException {
+            try {
+                return (T) (Object) this.handle.invokeExact(resultSet);
+            } catch (final SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new IllegalStateException("Unexpected checked exception while mapping a row", t);
+            }
+        }
+    }
+}
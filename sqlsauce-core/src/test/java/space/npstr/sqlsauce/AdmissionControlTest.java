@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.AdmissionControl.OperationClass;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 19.10.26.
+ */
+public class AdmissionControlTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String SLEEP = "SELECT 1 FROM pg_sleep(1)";
+    //language=PostgreSQL
+    private static final String SELECT_ONE = "SELECT 1";
+
+    private AdmissionControl admissionControl;
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareWrapper() {
+        this.admissionControl = new AdmissionControl.Builder()
+                .setLimit(1, 1, 1)
+                .build();
+        this.wrapper = new DatabaseWrapper(requireConnection().getEntityManagerFactory(), "AdmissionControlTest",
+                false, new RetryPolicy.Builder().build(), this.admissionControl);
+    }
+
+    @Test
+    public void rejectOverLimit() throws Exception {
+        final CompletableFuture<List<Integer>> sleeping = CompletableFuture.supplyAsync(
+                () -> this.wrapper.query(SLEEP, null, rs -> rs.getInt(1)));
+        while (this.admissionControl.getInFlight(OperationClass.READ) == 0) {
+            Thread.sleep(10);
+        }
+
+        assertThrows(OverloadedException.class, () -> this.wrapper.query(SELECT_ONE, null, rs -> rs.getInt(1)));
+        assertEquals(1, this.admissionControl.getRejections(OperationClass.READ));
+        //other operation classes have their own limits, plain SQL selects are read write by default
+        assertEquals(1, this.wrapper.selectSqlQuery(SELECT_ONE, null).size());
+
+        assertEquals(1, sleeping.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, this.wrapper.query(SELECT_ONE, null, rs -> rs.getInt(1)).size());
+    }
+
+    @Test
+    public void shedAsyncOperations() throws Exception {
+        //one operation running, one waiting
+        final AsyncDatabaseWrapper async = new BasicAsyncDatabaseWrapper(this.wrapper, 1, 1);
+        final List<CompletableFuture<List<Integer>>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(async.<List<Integer>>execute(w -> w.query(SLEEP, null, rs -> rs.getInt(1)))
+                    .toCompletableFuture());
+        }
+
+        final CompletableFuture<List<Integer>> shed = futures.get(2);
+        assertTrue(shed.isCompletedExceptionally(), "the operation was not rejected right away");
+        final ExecutionException e = assertThrows(ExecutionException.class, shed::get);
+        assertTrue(e.getCause() instanceof OverloadedException);
+        assertEquals(1, futures.get(0).get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, futures.get(1).get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void countTimedOutAsyncOperationsUntilTheyLetGo() throws Exception {
+        final AsyncDatabaseWrapper async = new BasicAsyncDatabaseWrapper(this.wrapper, 1, 1);
+        final CompletableFuture<List<Integer>> sleeping = async.<List<Integer>>execute(
+                w -> w.query(SLEEP, null, rs -> rs.getInt(1))).toCompletableFuture();
+        final CompletableFuture<List<Integer>> queued = async.<List<Integer>>execute(
+                w -> w.query(SELECT_ONE, null, rs -> rs.getInt(1)), 10, TimeUnit.MILLISECONDS).toCompletableFuture();
+        assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+
+        //the timed out operation still takes up the backlog, until the thread gets to it
+        final CompletableFuture<List<Integer>> shed = async.<List<Integer>>execute(
+                w -> w.query(SELECT_ONE, null, rs -> rs.getInt(1))).toCompletableFuture();
+        final ExecutionException e = assertThrows(ExecutionException.class, shed::get);
+        assertTrue(e.getCause() instanceof OverloadedException);
+
+        assertEquals(1, sleeping.get(5, TimeUnit.SECONDS).size());
+        Thread.sleep(100);
+        assertEquals(1, async.<List<Integer>>execute(w -> w.query(SELECT_ONE, null, rs -> rs.getInt(1)))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void decreaseLimitOnLatency() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl.Builder()
+                .setLimit(10, 1, 100)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            admissionControl.execute(OperationClass.READ, () -> sleep(1));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            admissionControl.execute(OperationClass.READ, () -> sleep(30));
+        }
+
+        assertTrue(admissionControl.getLimit(OperationClass.READ) < 10, "the limit did not decrease");
+        assertEquals(10, admissionControl.getLimit(OperationClass.WRITE));
+    }
+
+    @Test
+    public void decreaseLimitOnOverload() {
+        final AdmissionControl admissionControl = new AdmissionControl.Builder()
+                .setLimit(10, 1, 100)
+                .build();
+
+        assertThrows(DatabaseException.class, () -> admissionControl.execute(OperationClass.WRITE, () -> {
+            throw new DatabaseException("Pool exhausted", new SQLTransientConnectionException("timeout"));
+        }));
+
+        assertEquals(9, admissionControl.getLimit(OperationClass.WRITE));
+    }
+
+    @Test
+    public void increaseLimitWhenSaturated() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl.Builder()
+                .setLimit(4, 1, 100)
+                .build();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    int admitted = 0;
+                    while (admitted < 50) {
+                        try {
+                            admissionControl.execute(OperationClass.READ, () -> sleep(2));
+                            admitted++;
+                        } catch (final OverloadedException e) {
+                            //expected while the limit is low
+                            sleep(1);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(admissionControl.getLimit(OperationClass.READ) > 4, "the limit did not increase");
+    }
+
+    private static Object sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return millis;
+    }
+}
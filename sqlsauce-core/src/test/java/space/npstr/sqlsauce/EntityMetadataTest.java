@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class EntityMetadataTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_METADATA_ROWS
+            = "CREATE TABLE entity_metadata_rows "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    name     TEXT NOT NULL, "
+            + "    CONSTRAINT entity_metadata_rows_pkey PRIMARY KEY (id) "
+            + ");";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "entity_metadata_rows"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_METADATA_ROWS);
+    }
+
+    @Test
+    public void registryIsBuiltOnBoot() {
+        final EntityMetadataRegistry registry = requireConnection().getEntityMetadata();
+        final EntityMetadata<MetadataRow> metadata = registry.get(MetadataRow.class);
+
+        assertSame(metadata, registry.get(MetadataRow.class));
+        assertSame(metadata.keyQuery(), metadata.keyQuery());
+        assertSame(metadata.attributeUpdate("name"), metadata.attributeUpdate("name"));
+        assertThrows(DatabaseException.class, () -> registry.get(String.class));
+    }
+
+    @Test
+    public void instantiators() {
+        final EntityMetadataRegistry registry = requireConnection().getEntityMetadata();
+
+        final MetadataRow row = registry.get(MetadataRow.class).newInstance();
+        assertEquals("Squanchy", row.getName());
+        assertNotSame(row, registry.get(MetadataRow.class).newInstance());
+        //jpa allows protected default constructors
+        assertEquals("Birdperson", registry.get(ProtectedMetadataRow.class).newInstance().getName());
+    }
+
+    @Test
+    public void standardQueriesOfNestedEntities() {
+        this.wrapper.merge(new MetadataRow().setId(1L));
+        this.wrapper.merge(new MetadataRow().setId(2L));
+
+        final List<MetadataRow> all = this.wrapper.loadAll(MetadataRow.class);
+        assertEquals(2, all.size());
+        assertEquals(2, this.wrapper.applyAndMergeAll(MetadataRow.class, r -> r.setName("Tammy")));
+        assertEquals(Collections.singletonList("Tammy"), this.wrapper.selectSqlQuery(
+                "SELECT DISTINCT name FROM entity_metadata_rows", null));
+        assertEquals("Tammy", this.wrapper.getOrCreate(EntityKey.of(1L, MetadataRow.class)).getName());
+    }
+
+    @Entity
+    @Table(name = "entity_metadata_rows")
+    public static class MetadataRow extends SaucedEntity<Long, MetadataRow> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "name", nullable = false)
+        private String name = "Squanchy";
+
+        //for jpa / wrapper
+        public MetadataRow() {
+        }
+
+        @Override
+        public MetadataRow setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public MetadataRow setName(final String name) {
+            this.name = name;
+            return this;
+        }
+    }
+
+    @Entity
+    @Table(name = "entity_metadata_rows")
+    public static class ProtectedMetadataRow extends SaucedEntity<Long, ProtectedMetadataRow> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "name", nullable = false)
+        private String name = "Birdperson";
+
+        //for jpa / wrapper
+        protected ProtectedMetadataRow() {
+        }
+
+        @Override
+        public ProtectedMetadataRow setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.jdbc.ParameterBinder;
+
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 19.10.26.
+ */
+public class RetryPolicyTest extends BaseTest {
+
+    //fails with the SQLState on the first call only, as sequences are not rolled back
+    //language=PostgreSQL
+    private static final String CREATE_FUNCTION_FAIL_ONCE
+            = "CREATE OR REPLACE FUNCTION retry_policy_fail_once(state TEXT) RETURNS INT AS $$ "
+            + "BEGIN "
+            + "    IF nextval('retry_policy_seq') = 1 THEN "
+            + "        RAISE EXCEPTION 'transient failure' USING ERRCODE = state; "
+            + "    END IF; "
+            + "    RETURN 1; "
+            + "END $$ LANGUAGE plpgsql;";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareFunction() {
+        final RetryPolicy retryPolicy = new RetryPolicy.Builder()
+                .setBackoff(1, 10, TimeUnit.MILLISECONDS)
+                .build();
+        this.wrapper = new DatabaseWrapper(requireConnection().getEntityManagerFactory(), "RetryPolicyTest", false,
+                retryPolicy);
+        this.wrapper.executeSqlQuery("DROP SEQUENCE IF EXISTS retry_policy_seq;");
+        this.wrapper.executeSqlQuery("CREATE SEQUENCE retry_policy_seq;");
+        this.wrapper.executeSqlQuery(CREATE_FUNCTION_FAIL_ONCE);
+    }
+
+    @Test
+    public void classify() {
+        final RetryPolicy retryPolicy = new RetryPolicy.Builder()
+                .setSqlState("23505", RetryPolicy.Failure.ABORTED)
+                .build();
+
+        assertEquals(RetryPolicy.Failure.ABORTED, retryPolicy.classify(sqlFailure("40P01")));
+        assertEquals(RetryPolicy.Failure.ABORTED, retryPolicy.classify(sqlFailure("40001")));
+        assertEquals(RetryPolicy.Failure.UNKNOWN_OUTCOME, retryPolicy.classify(sqlFailure("40003")));
+        assertEquals(RetryPolicy.Failure.ABORTED, retryPolicy.classify(sqlFailure("08001")));
+        assertEquals(RetryPolicy.Failure.UNKNOWN_OUTCOME, retryPolicy.classify(sqlFailure("08006")));
+        assertEquals(RetryPolicy.Failure.UNKNOWN_OUTCOME, retryPolicy.classify(sqlFailure("57P01")));
+        assertEquals(RetryPolicy.Failure.ABORTED, retryPolicy.classify(sqlFailure("23505")));
+        assertEquals(RetryPolicy.Failure.PERMANENT, retryPolicy.classify(sqlFailure("23503")));
+        assertEquals(RetryPolicy.Failure.PERMANENT, retryPolicy.classify(new PersistenceException("no sql state")));
+        //pool timeout
+        assertEquals(RetryPolicy.Failure.ABORTED, retryPolicy.classify(new PersistenceException(
+                new SQLTransientConnectionException("Connection is not available, request timed out after 10000ms."))));
+    }
+
+    @Test
+    public void dontRetryUnknownStatementCompletion() {
+        final RetryPolicy retryPolicy = new RetryPolicy.Builder()
+                .setBackoff(0, 0, TimeUnit.MILLISECONDS)
+                .build();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(PersistenceException.class, () -> retryPolicy.execute("persist", false, () -> {
+            attempts.incrementAndGet();
+            throw sqlFailure("40003");
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, retryPolicy.getRetryCount("persist"));
+    }
+
+    @Test
+    public void retryUnknownOutcomeOnlyIfIdempotent() {
+        final RetryPolicy retryPolicy = new RetryPolicy.Builder()
+                .setBackoff(0, 0, TimeUnit.MILLISECONDS)
+                .build();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(PersistenceException.class, () -> retryPolicy.execute("write", false, () -> {
+            attempts.incrementAndGet();
+            throw sqlFailure("08006");
+        }));
+        assertEquals(1, attempts.get());
+
+        attempts.set(0);
+        assertThrows(PersistenceException.class, () -> retryPolicy.execute("read", true, () -> {
+            attempts.incrementAndGet();
+            throw sqlFailure("08006");
+        }));
+        assertEquals(4, attempts.get());
+        assertEquals(0, retryPolicy.getRetryCount("write"));
+        assertEquals(3, retryPolicy.getRetryCount("read"));
+    }
+
+    @Test
+    public void respectDeadline() {
+        final RetryPolicy retryPolicy = new RetryPolicy.Builder()
+                .setMaxAttempts(100)
+                .setBackoff(20, 20, TimeUnit.MILLISECONDS)
+                .setDeadline(100, TimeUnit.MILLISECONDS)
+                .build();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(PersistenceException.class, () -> retryPolicy.execute("read", true, () -> {
+            attempts.incrementAndGet();
+            throw sqlFailure("40001");
+        }));
+
+        //pauses of 10 to 20 ms each
+        assertTrue(attempts.get() > 1 && attempts.get() <= 11, "attempts: " + attempts.get());
+    }
+
+    @Test
+    public void retryRawSqlOnlyIfOptedIn() {
+        //language=PostgreSQL
+        final String failOnce = "DO $$ BEGIN PERFORM retry_policy_fail_once('40001'); END $$;";
+
+        assertThrows(DatabaseException.class, () -> this.wrapper.executeSqlQuery(failOnce, null));
+        assertEquals(0, this.wrapper.getRetryPolicy().getRetryCount("executeSqlQuery"));
+
+        this.wrapper.executeSqlQuery("ALTER SEQUENCE retry_policy_seq RESTART;");
+        this.wrapper.executeSqlQuery(failOnce, null, true);
+        assertEquals(1, this.wrapper.getRetryPolicy().getRetryCount("executeSqlQuery"));
+    }
+
+    @Test
+    public void retryReadsAfterConnectionFailures() {
+        final List<Integer> result = this.wrapper.query("SELECT retry_policy_fail_once(?)",
+                ParameterBinder.of("08006"), resultSet -> resultSet.getInt(1));
+
+        assertEquals(Collections.singletonList(1), result);
+        assertEquals(1, this.wrapper.getRetryPolicy().getRetryCount("query"));
+    }
+
+    private static PersistenceException sqlFailure(final String sqlState) {
+        return new PersistenceException(new SQLException("failure", sqlState));
+    }
+}
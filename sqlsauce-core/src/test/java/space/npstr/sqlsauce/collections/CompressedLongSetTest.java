@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class CompressedLongSetTest {
+
+    //discord epoch in milliseconds, shifted into a snowflake
+    private static final long SNOWFLAKE_2018 = (1514764800000L - 1420070400000L) << 22;
+
+    @Test
+    public void behavesLikeTreeSet() {
+        Random random = new Random(42);
+        TreeSet<Long> expected = new TreeSet<>(Arrays.asList(Long.MIN_VALUE, Long.MAX_VALUE, 0L, -1L, 1L));
+        for (int i = 0; i < 10_000; i++) {
+            expected.add(random.nextBoolean() ? random.nextLong() : random.nextInt(20_000) - 10_000L);
+        }
+        long[] values = expected.stream().mapToLong(Long::longValue).toArray();
+        CompressedLongSet set = CompressedLongSet.of(values);
+
+        assertEquals(expected.size(), set.size());
+        assertArrayEquals(values, set.toLongArray());
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected.hashCode(), set.hashCode());
+
+        for (int i = 0; i < 10_000; i++) {
+            long probe = random.nextBoolean() ? random.nextLong() : random.nextInt(20_000) - 10_000L;
+            assertEquals(expected.contains(probe), set.contains(probe), "contains " + probe);
+        }
+        for (long value : values) {
+            assertTrue(set.contains(value), "missing " + value);
+        }
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        CompressedLongSet set = CompressedLongSet.of(5, 3, 3, 1, -7);
+        CompressedLongSet copy = CompressedLongSet.fromBytes(set.toBytes());
+        assertEquals(set, copy);
+        assertArrayEquals(new long[]{-7, 1, 3, 5}, copy.toLongArray());
+
+        assertEquals(CompressedLongSet.empty(), CompressedLongSet.fromBytes(CompressedLongSet.of().toBytes()));
+        assertTrue(CompressedLongSet.empty().isEmpty());
+        assertFalse(CompressedLongSet.empty().contains(0L));
+
+        assertThrows(IllegalArgumentException.class, () -> CompressedLongSet.fromBytes(new byte[]{1, 2}));
+        assertThrows(IllegalArgumentException.class, () -> CompressedLongSet.fromBytes(new byte[]{1, 0, 0, 1, 0}));
+    }
+
+    @Test
+    public void withAndWithout() {
+        CompressedLongSet set = CompressedLongSet.of(1, 2, 3);
+        CompressedLongSet more = set.with(4, 2, 0);
+        assertArrayEquals(new long[]{1, 2, 3}, set.toLongArray());
+        assertArrayEquals(new long[]{0, 1, 2, 3, 4}, more.toLongArray());
+        assertArrayEquals(new long[]{0, 4}, more.without(1, 2, 3, 5).toLongArray());
+        assertSame(set, set.without(7));
+    }
+
+    @Test
+    public void snowflakesTakeLessThanEightBytes() {
+        Random random = new Random(42);
+        List<Long> snowflakes = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            //ids created over roughly a year
+            long millis = (long) (random.nextDouble() * 365 * 24 * 60 * 60 * 1000);
+            snowflakes.add(SNOWFLAKE_2018 + (millis << 22) + random.nextInt(1 << 22));
+        }
+        CompressedLongSet set = CompressedLongSet.copyOf(snowflakes);
+        //a bigint[] takes 8 bytes per element
+        assertTrue(set.byteLength() < set.size() * 7, "took " + set.byteLength() + " bytes for " + set.size());
+    }
+}
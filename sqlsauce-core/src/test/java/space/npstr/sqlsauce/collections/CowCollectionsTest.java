@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Checks that snapshots of the copy on write collections are isolated from modifications made through any method.
+ */
+public class CowCollectionsTest {
+
+    @Test
+    public void hashSetSnapshotIsIsolated() {
+        CowHashSet<Integer> set = new CowHashSet<>(Arrays.asList(1, 2, 3));
+        CowHashSet<Integer> snapshot = set.snapshot();
+        assertTrue(set.sharesStorageWith(snapshot));
+        assertEquals(set, snapshot);
+
+        //no-op modifications do not copy
+        assertFalse(set.add(1));
+        assertFalse(set.remove(4));
+        assertTrue(set.sharesStorageWith(snapshot));
+
+        assertTrue(set.add(4));
+        assertFalse(set.sharesStorageWith(snapshot));
+        assertNotEquals(set, snapshot);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), snapshot);
+
+        //reverting the modification makes them equal again
+        set.remove(4);
+        assertEquals(set, snapshot);
+        assertEquals(snapshot, set);
+        assertEquals(snapshot.hashCode(), set.hashCode());
+
+        //writes to the snapshot do not leak back either
+        snapshot.clear();
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void hashSetIteratorRemovalCopies() {
+        CowHashSet<Integer> set = new CowHashSet<>(Arrays.asList(1, 2, 3, 4, 5));
+        CowHashSet<Integer> snapshot = set.snapshot();
+
+        Iterator<Integer> iterator = set.iterator();
+        int seen = 0;
+        while (iterator.hasNext()) {
+            int value = iterator.next();
+            seen++;
+            if (value % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(5, seen);
+        assertEquals(new HashSet<>(Arrays.asList(1, 3, 5)), set);
+        assertEquals(5, snapshot.size());
+
+        set.removeIf(value -> value == 1);
+        assertEquals(new HashSet<>(Arrays.asList(3, 5)), set);
+        assertEquals(5, snapshot.size());
+    }
+
+    @Test
+    public void arrayListSnapshotIsIsolated() {
+        CowArrayList<Long> list = new CowArrayList<>(Arrays.asList(1L, 2L, 3L));
+        CowArrayList<Long> snapshot = list.snapshot();
+        assertTrue(list.sharesStorageWith(snapshot));
+        assertEquals(list, snapshot);
+
+        list.set(0, 5L);
+        assertFalse(list.sharesStorageWith(snapshot));
+        assertEquals(Arrays.asList(5L, 2L, 3L), list);
+        assertEquals(Arrays.asList(1L, 2L, 3L), snapshot);
+
+        snapshot = list.snapshot();
+        list.sort(null);
+        list.add(0, 0L);
+        assertEquals(Arrays.asList(0L, 2L, 3L, 5L), list);
+        assertEquals(Arrays.asList(5L, 2L, 3L), snapshot);
+
+        @SuppressWarnings("unchecked") CowArrayList<Long> clone = (CowArrayList<Long>) list.clone();
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(4, clone.size());
+    }
+
+    @Test
+    public void arrayListViewsWriteThrough() {
+        CowArrayList<Long> list = new CowArrayList<>(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L));
+        CowArrayList<Long> snapshot = list.snapshot();
+
+        ListIterator<Long> iterator = list.listIterator();
+        while (iterator.hasNext()) {
+            long value = iterator.next();
+            if (value == 2L) {
+                iterator.remove();
+            } else if (value == 3L) {
+                iterator.set(33L);
+            } else if (value == 4L) {
+                iterator.add(44L);
+            }
+        }
+        assertEquals(Arrays.asList(1L, 33L, 4L, 44L, 5L, 6L), list);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), snapshot);
+
+        snapshot = list.snapshot();
+        List<Long> subList = list.subList(1, 4);
+        subList.clear();
+        assertEquals(Arrays.asList(1L, 5L, 6L), list);
+        assertEquals(Arrays.asList(1L, 33L, 4L, 44L, 5L, 6L), snapshot);
+
+        Iterator<Long> stale = list.iterator();
+        stale.next();
+        list.add(7L);
+        assertThrows(ConcurrentModificationException.class, stale::next);
+    }
+}
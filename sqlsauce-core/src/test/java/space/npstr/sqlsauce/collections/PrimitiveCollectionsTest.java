@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Compares the primitive collections against their boxed counterparts with random operations.
+ */
+public class PrimitiveCollectionsTest {
+
+    @Test
+    public void longHashSetBehavesLikeHashSet() {
+        Random random = new Random(42);
+        LongHashSet primitive = new LongHashSet();
+        Set<Long> boxed = new HashSet<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            //small range to get plenty of collisions and removals of present values
+            long value = random.nextInt(2000) - 1000;
+            if (random.nextBoolean()) {
+                assertEquals(boxed.add(value), primitive.add(value));
+            } else {
+                assertEquals(boxed.remove(value), primitive.removeLong(value));
+            }
+        }
+        assertEquals(boxed.size(), primitive.size());
+        assertEquals(boxed, primitive);
+        assertEquals(primitive, boxed);
+        assertEquals(boxed.hashCode(), primitive.hashCode());
+        for (long value = -1000; value < 1000; value++) {
+            assertEquals(boxed.contains(value), primitive.contains(value));
+        }
+
+        primitive.removeIf(value -> value % 2 == 0);
+        boxed.removeIf(value -> value % 2 == 0);
+        assertEquals(boxed, primitive);
+        assertEquals(boxed, new LongHashSet(primitive));
+    }
+
+    @Test
+    public void longArrayListBehavesLikeArrayList() {
+        Random random = new Random(42);
+        LongArrayList primitive = new LongArrayList();
+        List<Long> boxed = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong();
+            int op = random.nextInt(4);
+            if (op < 2 || boxed.isEmpty()) {
+                boxed.add(value);
+                primitive.add(value);
+            } else if (op == 2) {
+                int index = random.nextInt(boxed.size());
+                assertEquals(boxed.remove(index), primitive.remove(index));
+            } else {
+                int index = random.nextInt(boxed.size() + 1);
+                boxed.add(index, value);
+                primitive.add(index, value);
+            }
+        }
+        assertEquals(boxed, primitive);
+        assertEquals(primitive, boxed);
+        assertEquals(boxed.hashCode(), primitive.hashCode());
+        assertTrue(primitive.contains(boxed.get(boxed.size() / 2).longValue()));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.converters;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.core.Oid;
+import space.npstr.sqlsauce.collections.LongArrayList;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class ArrayCodecTest {
+
+    private static LongArrayList decodeLongs(byte[] array) {
+        LongArrayList result = new LongArrayList();
+        ArrayCodec.decodeLongs(array, result::add);
+        return result;
+    }
+
+    private static List<String> decodeStrings(byte[] array) {
+        List<String> result = new ArrayList<>();
+        ArrayCodec.decodeStrings(array, result::add);
+        return result;
+    }
+
+    @Test
+    public void longs() {
+        LongArrayList longs = LongArrayList.of(0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE);
+
+        String text = ArrayCodec.encodeLongs(longs.size(), longs::forEachLong);
+        assertEquals("{0,1,-1,9223372036854775807,-9223372036854775808}", text);
+        assertEquals(longs, decodeLongs(text.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] binary = ArrayCodec.encodeLongsBinary(longs.size(), longs::forEachLong, Oid.INT8);
+        assertTrue(ArrayCodec.isBinary(binary));
+        assertEquals(5, ArrayCodec.countElements(binary));
+        assertEquals(longs, decodeLongs(binary));
+        assertEquals(text, ArrayCodec.binaryToText(binary));
+
+        LongArrayList ints = LongArrayList.of(Integer.MIN_VALUE, 7);
+        assertEquals(ints, decodeLongs(ArrayCodec.encodeLongsBinary(ints.size(), ints::forEachLong, Oid.INT4)));
+        assertThrows(IllegalArgumentException.class,
+                () -> ArrayCodec.encodeLongsBinary(longs.size(), longs::forEachLong, Oid.INT4));
+
+        LongArrayList empty = new LongArrayList();
+        byte[] emptyBinary = ArrayCodec.encodeLongsBinary(0, empty::forEachLong, Oid.INT8);
+        assertTrue(ArrayCodec.isBinary(emptyBinary));
+        assertEquals(empty, decodeLongs(emptyBinary));
+        assertEquals(empty, decodeLongs("{}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, ArrayCodec.countElements("{}"));
+
+        assertEquals(LongArrayList.of(1, 2), decodeLongs("[0:1]={1,2}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> decodeLongs("{1,NULL}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> decodeLongs("{{1},{2}}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class,
+                () -> decodeLongs("{9223372036854775808}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void strings() {
+        List<String> strings = Arrays.asList("plain", "with \"quotes\" and \\ backslashes", "", "NULL", null,
+                " spaces ", "comma, {braces}", "ünïcödé ✓");
+
+        String text = ArrayCodec.encodeStrings(strings);
+        assertEquals(strings, decodeStrings(text.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] binary = ArrayCodec.encodeStringsBinary(strings, Oid.TEXT);
+        assertTrue(ArrayCodec.isBinary(binary));
+        assertEquals(strings, decodeStrings(binary));
+        assertEquals(text, ArrayCodec.binaryToText(binary));
+
+        //as postgres outputs them, only quoting where needed
+        assertEquals(Arrays.asList("a", "b c", null, "x\"y"),
+                decodeStrings("{a,\"b c\",NULL,\"x\\\"y\"}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(ArrayCodec.isBinary("{a}".getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 25},
+                ArrayCodec.encodeStringsBinary(new ArrayList<>(), Oid.TEXT));
+    }
+}
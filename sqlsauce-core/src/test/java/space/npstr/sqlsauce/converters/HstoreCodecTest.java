@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.converters;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.util.HStoreConverter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Checks that the codec stays compatible with pgjdbc's HStoreConverter.
+ */
+public class HstoreCodecTest {
+
+    private static Map<String, String> sample() {
+        Map<String, String> map = new HashMap<>();
+        map.put("plain", "value");
+        map.put("with \"quotes\"", "and \\ backslashes \\\"");
+        map.put("", "empty key");
+        map.put("empty value", "");
+        map.put("null value", null);
+        map.put("arrow=>, comma", "  spaces  ");
+        map.put("unicode ✓", "ünïcödé");
+        return map;
+    }
+
+    @Test
+    public void roundTrip() {
+        Map<String, String> map = sample();
+
+        assertEquals(map, HstoreCodec.decode(HstoreCodec.encode(map)));
+        assertEquals(map, HstoreCodec.decodeCompact(HstoreCodec.encode(map)));
+        assertEquals(new HashMap<>(), HstoreCodec.decode(HstoreCodec.encode(new HashMap<>())));
+    }
+
+    @Test
+    public void compatibleWithPgjdbc() {
+        Map<String, String> map = sample();
+
+        assertEquals(map, HstoreCodec.decode(HStoreConverter.toString(map)));
+        assertEquals(map, HStoreConverter.fromString(HstoreCodec.encode(map)));
+    }
+
+    @Test
+    public void decodeUnquotedAndWhitespace() {
+        Map<String, String> decoded = HstoreCodec.decode(" a=>1 ,\"b\" => NULL,c=>null ");
+
+        assertEquals(3, decoded.size());
+        assertEquals("1", decoded.get("a"));
+        assertTrue(decoded.containsKey("b"));
+        assertNull(decoded.get("b"));
+        assertNull(decoded.get("c"));
+
+        assertThrows(IllegalArgumentException.class, () -> HstoreCodec.decode("\"a\"=>\"unterminated"));
+        assertThrows(IllegalArgumentException.class, () -> HstoreCodec.decode("\"a\" \"b\""));
+    }
+
+    @Test
+    public void compactMap() {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, i % 10 == 0 ? null : "value" + i);
+        }
+        CompactHstoreMap compact = CompactHstoreMap.copyOf(map);
+
+        assertEquals(map, compact);
+        assertEquals(map.hashCode(), compact.hashCode());
+        assertEquals("value1", compact.get("key1"));
+        assertTrue(compact.containsKey("key0"));
+        assertEquals("default", compact.getOrDefault("missing", "default"));
+        assertNull(compact.getOrDefault("key0", "default"));
+        assertFalse(compact.containsKey("missing"));
+        assertThrows(UnsupportedOperationException.class, () -> compact.put("foo", "bar"));
+        assertTrue(CompactHstoreMap.empty().isEmpty());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class HstoreTest extends BaseTest {
+
+    //language=PostgreSQL
+    protected static final String CREATE_EXTENSION_HSTORE = "CREATE EXTENSION IF NOT EXISTS hstore;";
+    //language=PostgreSQL
+    protected static final String CREATE_TABLE_HSTOREX
+            = "CREATE TABLE hstorex "
+            + "( "
+            + "    name    TEXT COLLATE pg_catalog.\"default\" NOT NULL, "
+            + "    hstorex HSTORE, "
+            + "    CONSTRAINT hstorex_pkey PRIMARY KEY (name) "
+            + ");";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(CREATE_EXTENSION_HSTORE);
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "hstorex"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_HSTOREX);
+    }
+
+    @Test
+    public void sqlSetAndGet() {
+        Hstore.HstoreKey key = Hstore.HstoreKey.of("sqlSetAndGet");
+
+        assertEquals("nope", Hstore.sqlGet(wrapper, key, "foo", "nope"), "missing hstore should return the default");
+
+        Hstore.sqlSet(wrapper, key, "foo", "bar");
+        Hstore.sqlSet(wrapper, key, "baz", "qux \"quoted\" \\ backslashed");
+        assertEquals("bar", Hstore.sqlGet(wrapper, key, "foo", "nope"));
+        assertEquals("qux \"quoted\" \\ backslashed", Hstore.sqlGet(wrapper, key, "baz", "nope"));
+        assertEquals("nope", Hstore.sqlGet(wrapper, key, "missing", "nope"), "missing key should return the default");
+
+        //the loaded entity sees the server side changes
+        Hstore loaded = wrapper.getOrCreate(key);
+        assertEquals(2, loaded.hstorex.size());
+        assertEquals("bar", loaded.get("foo"));
+
+        //untouched by writes to other hstores
+        Hstore.sqlSet(wrapper, Hstore.HstoreKey.of("other"), "foo", "other");
+        assertEquals("bar", Hstore.sqlGet(wrapper, key, "foo", "nope"));
+    }
+
+    @Test
+    public void sqlSetAllDeleteAndGetAll() {
+        Hstore.HstoreKey key = Hstore.HstoreKey.of("sqlSetAll");
+
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        Hstore.sqlSetAll(wrapper, key, values);
+        assertEquals(values, wrapper.getOrCreate(key).hstorex);
+
+        Map<String, String> some = Hstore.sqlGetAll(wrapper, key, Arrays.asList("key1", "key42", "missing"));
+        assertEquals(2, some.size());
+        assertEquals("value1", some.get("key1"));
+        assertEquals("value42", some.get("key42"));
+
+        Hstore.sqlDelete(wrapper, key, "key1");
+        assertEquals("nope", Hstore.sqlGet(wrapper, key, "key1", "nope"));
+
+        Hstore.sqlDeleteAll(wrapper, key, Arrays.asList("key2", "key3", "missing"));
+        Map<String, String> remaining = wrapper.getOrCreate(key).hstorex;
+        assertEquals(97, remaining.size());
+        assertFalse(remaining.containsKey("key2"));
+        assertFalse(remaining.containsKey("key3"));
+        assertTrue(remaining.containsKey("key4"));
+    }
+
+    @Test
+    public void sqlIncrement() {
+        Hstore.HstoreKey key = Hstore.HstoreKey.of("sqlIncrement");
+
+        assertEquals(5, Hstore.sqlIncrement(wrapper, key, "counter", 5));
+        assertEquals(3, Hstore.sqlIncrement(wrapper, key, "counter", -2));
+        assertEquals("3", Hstore.sqlGet(wrapper, key, "counter", "nope"));
+
+        Hstore.sqlSet(wrapper, key, "text", "not a number");
+        assertThrows(DatabaseException.class, () -> Hstore.sqlIncrement(wrapper, key, "text", 1));
+    }
+}
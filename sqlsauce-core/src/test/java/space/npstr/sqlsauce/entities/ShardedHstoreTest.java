@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class ShardedHstoreTest extends BaseTest {
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(HstoreTest.CREATE_EXTENSION_HSTORE);
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "hstorex"));
+        this.wrapper.executeSqlQuery(HstoreTest.CREATE_TABLE_HSTOREX);
+    }
+
+    @Test
+    public void keysAreSpreadOverShards() {
+        ShardedHstore sharded = ShardedHstore.of("spread", 8);
+
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        sharded.setAll(wrapper, values);
+        sharded.set(wrapper, "single", "one");
+        values.put("single", "one");
+
+        assertEquals(values, sharded.loadAll(wrapper));
+        assertEquals("one", sharded.get(wrapper, "single", "nope"));
+        assertEquals("value7", sharded.loadAndGet(wrapper, "key7", "nope"));
+
+        Set<String> usedShards = new HashSet<>();
+        for (String key : values.keySet()) {
+            Hstore shard = wrapper.getOrCreate(sharded.shardOf(key));
+            assertEquals(values.get(key), shard.get(key), "key must be stored in the shard it routes to");
+            usedShards.add(shard.name);
+        }
+        assertEquals(8, usedShards.size());
+
+        Map<String, String> some = sharded.getAll(wrapper, Arrays.asList("key1", "key100", "missing"));
+        assertEquals(2, some.size());
+        assertEquals("value100", some.get("key100"));
+
+        sharded.delete(wrapper, "key1");
+        assertEquals("nope", sharded.get(wrapper, "key1", "nope"));
+        assertEquals(5, sharded.increment(wrapper, "counter", 5));
+    }
+
+    @Test
+    public void migrateFromSingleRow() {
+        Hstore.HstoreKey source = Hstore.HstoreKey.of("migrate");
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        Hstore.sqlSetAll(wrapper, source, values);
+
+        ShardedHstore sharded = ShardedHstore.of("migrate", 4);
+        assertEquals(100, ShardedHstore.migrate(wrapper, source, sharded, true));
+
+        assertEquals(values, sharded.loadAll(wrapper));
+        assertNull(wrapper.getEntity(source), "source row should have been deleted");
+        assertTrue(sharded.loadAll(wrapper).containsKey("key99"));
+    }
+}
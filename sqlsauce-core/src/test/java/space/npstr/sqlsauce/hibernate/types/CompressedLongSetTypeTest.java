@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.annotations.Type;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.collections.CompressedLongSet;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class CompressedLongSetTypeTest extends BaseTest {
+
+    private static final String DROP_TABLE_BLACKLISTS = String.format(DROP_TABLE_IF_EXISTS, "blacklists");
+    private static final String CREATE_TABLE_BLACKLISTS
+            = "CREATE TABLE blacklists "
+            + "( "
+            + "    id           BIGINT NOT NULL, "
+            + "    user_ids     BIGINT[], "
+            + "    users        BYTEA, "
+            + "    CONSTRAINT blacklists_pkey PRIMARY KEY (id) "
+            + ");";
+    //language=PostgreSQL
+    private static final String INSERT_ARRAYS
+            = "INSERT INTO blacklists (id, user_ids) VALUES "
+            + "(1, '{3, 1, 2, 9223372036854775807}'), "
+            + "(2, '{}'), "
+            + "(3, NULL)";
+
+    @Test
+    public void convertAndLoad() {
+        DatabaseWrapper wrapper = new DatabaseWrapper(requireConnection());
+
+        wrapper.executeSqlQuery(DROP_TABLE_BLACKLISTS);
+        wrapper.executeSqlQuery(CREATE_TABLE_BLACKLISTS);
+        wrapper.executeSqlQuery(INSERT_ARRAYS);
+
+        assertEquals(2, CompressedLongSetType.convertArrayColumn(wrapper, "blacklists", "id", "user_ids", "users"));
+        //converted rows are skipped
+        assertEquals(0, CompressedLongSetType.convertArrayColumn(wrapper, "blacklists", "id", "user_ids", "users"));
+
+        Blacklist blacklist = wrapper.getEntity(EntityKey.of(1L, Blacklist.class));
+        assertNotNull(blacklist);
+        assertArrayEquals(new long[]{1, 2, 3, Long.MAX_VALUE}, blacklist.users.toLongArray());
+
+        Blacklist empty = wrapper.getEntity(EntityKey.of(2L, Blacklist.class));
+        assertNotNull(empty);
+        assertTrue(empty.users.isEmpty());
+
+        wrapper.findApplyAndMerge(EntityKey.of(1L, Blacklist.class), b -> {
+            b.users = b.users.with(4).without(Long.MAX_VALUE);
+            return b;
+        });
+        blacklist = wrapper.getEntity(EntityKey.of(1L, Blacklist.class));
+        assertNotNull(blacklist);
+        assertArrayEquals(new long[]{1, 2, 3, 4}, blacklist.users.toLongArray());
+    }
+
+    @Entity
+    @Table(name = "blacklists")
+    public static class Blacklist extends SaucedEntity<Long, Blacklist> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Type(type = "compressed-long-set")
+        @Column(name = "users")
+        private CompressedLongSet users = CompressedLongSet.empty();
+
+        Blacklist() {
+        }
+
+        @Override
+        public Blacklist setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        @Override
+        public Class<Blacklist> getClazz() {
+            return Blacklist.class;
+        }
+    }
+}
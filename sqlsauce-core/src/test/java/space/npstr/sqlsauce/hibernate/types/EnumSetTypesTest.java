@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.annotations.Type;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class EnumSetTypesTest extends BaseTest {
+
+    private static final String DROP_TABLE_STAR_SYSTEMS = String.format(DROP_TABLE_IF_EXISTS, "star_systems");
+    private static final String DROP_TYPE_PLANET = "DROP TYPE IF EXISTS planet;";
+    private static final String CREATE_TYPE_PLANET
+            = "CREATE TYPE planet AS ENUM ('MERCURY', 'VENUS', 'EARTH', 'MARS', 'JUPITER', 'SATURN', 'NULL');";
+    private static final String CREATE_TABLE_STAR_SYSTEMS
+            = "CREATE TABLE star_systems "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    planets  planet[] NOT NULL, "
+            + "    visited  BIGINT NOT NULL, "
+            + "    CONSTRAINT star_systems_pkey PRIMARY KEY (id) "
+            + ");";
+
+    @Test
+    public void enumSetTypes() {
+        DatabaseWrapper wrapper = new DatabaseWrapper(requireConnection());
+
+        wrapper.executeSqlQuery(DROP_TABLE_STAR_SYSTEMS);
+        wrapper.executeSqlQuery(DROP_TYPE_PLANET);
+        wrapper.executeSqlQuery(CREATE_TYPE_PLANET);
+        wrapper.executeSqlQuery(CREATE_TABLE_STAR_SYSTEMS);
+
+        StarSystem system = new StarSystem();
+        system.id = 1;
+        system.planets = EnumSet.of(Planet.EARTH, Planet.MARS, Planet.NULL);
+        system.visited = EnumSet.of(Planet.MERCURY, Planet.NULL);
+        wrapper.persist(system);
+
+        List<String> raw = wrapper.selectSqlQuery("SELECT cast(planets AS TEXT) FROM star_systems", null);
+        assertEquals("{EARTH,MARS,\"NULL\"}", raw.get(0), "enum values should be stored in the enum array");
+        List<Number> bitmask = wrapper.selectSqlQuery("SELECT visited FROM star_systems", null);
+        assertEquals((1L << Planet.MERCURY.ordinal()) | (1L << Planet.NULL.ordinal()), bitmask.get(0).longValue());
+
+        EntityKey<Long, StarSystem> key = EntityKey.of(1L, StarSystem.class);
+        StarSystem loaded = wrapper.getEntity(key);
+        assertNotNull(loaded);
+        assertEquals(system.planets, loaded.planets);
+        assertEquals(system.visited, loaded.visited);
+
+        //modifications in place are picked up
+        wrapper.findApplyAndMerge(key, s -> {
+            s.planets.remove(Planet.NULL);
+            s.planets.add(Planet.SATURN);
+            s.visited.clear();
+            return s;
+        });
+        loaded = wrapper.getEntity(key);
+        assertNotNull(loaded);
+        assertEquals(EnumSet.of(Planet.EARTH, Planet.MARS, Planet.SATURN), loaded.planets);
+        assertEquals(EnumSet.noneOf(Planet.class), loaded.visited);
+    }
+
+    @Test
+    public void nameTable() {
+        EnumNameTable<Planet> table = new EnumNameTable<>(Planet.class);
+        for (Planet planet : Planet.values()) {
+            byte[] name = ("  " + planet.name()).getBytes(StandardCharsets.UTF_8);
+            assertEquals(planet, table.lookup(name, 2, name.length - 2));
+        }
+        byte[] pluto = "PLUTO".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () -> table.lookup(pluto, 0, pluto.length));
+
+        assertEquals(EnumSet.of(Planet.VENUS, Planet.NULL),
+                table.decode("{VENUS, \"NULL\"}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(EnumSet.allOf(Planet.class), table.decode(table.encodeBinary(EnumSet.allOf(Planet.class), 0)));
+    }
+
+    @Entity
+    @Table(name = "star_systems")
+    public static class StarSystem extends SaucedEntity<Long, StarSystem> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Type(type = "enum_set-pgsql_enum")
+        @PostgreSQLEnum(enumClass = Planet.class)
+        @Column(name = "planets", nullable = false)
+        private EnumSet<Planet> planets = EnumSet.noneOf(Planet.class);
+
+        @Type(type = "enum_set-bitmask")
+        @PostgreSQLEnum(enumClass = Planet.class)
+        @Column(name = "visited", nullable = false)
+        private EnumSet<Planet> visited = EnumSet.noneOf(Planet.class);
+
+        StarSystem() {
+        }
+
+        @Override
+        public StarSystem setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        @Override
+        public Class<StarSystem> getClazz() {
+            return StarSystem.class;
+        }
+    }
+
+    private enum Planet {
+        MERCURY,
+        VENUS,
+        EARTH,
+        MARS,
+        JUPITER,
+        SATURN,
+        NULL,
+    }
+}
@@ -29,7 +29,9 @@ import org.junit.jupiter.api.Test;
 import space.npstr.sqlsauce.BaseTest;
 import space.npstr.sqlsauce.DatabaseConnection;
 import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.collections.CowHashSet;
 import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -40,6 +42,7 @@ import java.util.Collection;
 import java.util.HashSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -127,6 +130,31 @@ public class HashSetBasicTypeTest extends BaseTest {
         assertTrue(entity.getStrings().isEmpty());
     }
 
+    @Test
+    public void modificationsInPlaceAreDetected() {
+        DatabaseConnection connection = requireConnection();
+        DatabaseWrapper wrapper = new DatabaseWrapper(connection);
+
+        wrapper.executeSqlQuery(DROP_TABLE_HASH_SET_STRINGS);
+        wrapper.executeSqlQuery(CREATE_TABLE_HASH_SET_STRINGS);
+
+        HashSetBasic entity = new HashSetBasic(42L, Arrays.asList(1, 2), Arrays.asList(3L, 4L),
+                Arrays.asList("foo", "bar"));
+        wrapper.persist(entity);
+
+        HashSetBasic loaded = wrapper.findApplyAndMerge(EntityKey.of(42L, HashSetBasic.class), basic -> {
+            assertTrue(basic.getInts() instanceof CowHashSet, "loaded set is not copy on write");
+            return basic.addInt(3).removeLong(4L);
+        });
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), loaded.getInts());
+
+        loaded = wrapper.getEntity(EntityKey.of(42L, HashSetBasic.class));
+        assertNotNull(loaded);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), loaded.getInts());
+        assertEquals(new HashSet<>(Arrays.asList(3L)), loaded.getLongs());
+        assertEquals(new HashSet<>(Arrays.asList("foo", "bar")), loaded.getStrings());
+    }
+
     @Entity
     @Table(name = "hash_set_basics")
     public static class HashSetBasic extends SaucedEntity<Long, HashSetBasic> {
@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.annotations.Type;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class LazyJsonTypeTest extends BaseTest {
+
+    private static final String DROP_TABLE_LAZY_SETTINGS = String.format(DROP_TABLE_IF_EXISTS, "lazy_settings");
+    private static final String CREATE_TABLE_LAZY_SETTINGS
+            = "CREATE TABLE lazy_settings "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    settings JSONB NOT NULL, "
+            + "    CONSTRAINT lazy_settings_pkey PRIMARY KEY (id) "
+            + ");";
+
+    private static final String JSON = "{\"prefix\": \"!\", \"guild\": {\"roles\": [\"admin\", \"mod\"], \"owner\": 42},"
+            + " \"volume\": 100, \"nothing\": null}";
+
+    @Test
+    public void pathsAreExtractedWithoutParsing() {
+        LazyJsonMap json = LazyJsonMap.of(JSON);
+
+        assertEquals("!", json.getPath("prefix"));
+        assertEquals("mod", json.getPath("guild", "roles", "1"));
+        assertEquals(Arrays.asList("admin", "mod"), json.getPath("guild", "roles"));
+        assertEquals(42L, (long) json.getPath(Long.class, "guild", "owner"));
+        assertNull(json.getPath("nothing"));
+        assertNull(json.getPath("guild", "roles", "2"));
+        assertNull(json.getPath("prefix", "deeper"));
+        assertNull(json.getPath("missing"));
+        assertFalse(json.isParsed());
+
+        assertEquals(100, json.get("volume"));
+        assertTrue(json.isParsed());
+        assertEquals("mod", json.getPath("guild", "roles", "1"));
+    }
+
+    @Test
+    public void equality() {
+        LazyJsonMap json = LazyJsonMap.of(JSON);
+        LazyJsonMap snapshot = json.snapshot();
+        assertEquals(json, snapshot);
+        assertFalse(json.isParsed());
+        assertFalse(snapshot.isParsed());
+
+        //same content, different formatting
+        LazyJsonMap parsed = LazyJsonMap.of(JSON);
+        parsed.size();
+        assertEquals(LazyJsonMap.of(parsed.toJson()), json);
+
+        parsed.put("volume", 50);
+        assertNotEquals(json, parsed);
+        assertEquals(LazyJsonMap.of(parsed.toJson()), parsed);
+
+        @SuppressWarnings("unchecked") Map<String, Object> guild = (Map<String, Object>) parsed.get("guild");
+        LazyJsonMap beforeNestedChange = parsed.snapshot();
+        guild.put("owner", 43);
+        assertNotEquals(beforeNestedChange, parsed);
+    }
+
+    @Test
+    public void lazyJsonType() {
+        DatabaseWrapper wrapper = new DatabaseWrapper(requireConnection());
+        wrapper.executeSqlQuery(DROP_TABLE_LAZY_SETTINGS);
+        wrapper.executeSqlQuery(CREATE_TABLE_LAZY_SETTINGS);
+
+        LazySettings settings = new LazySettings();
+        settings.id = 1;
+        settings.settings = LazyJsonMap.of(JSON);
+        wrapper.persist(settings);
+
+        EntityKey<Long, LazySettings> key = EntityKey.of(1L, LazySettings.class);
+        LazySettings loaded = wrapper.getEntity(key);
+        assertNotNull(loaded);
+        assertFalse(loaded.settings.isParsed());
+        assertEquals("admin", loaded.settings.getPath("guild", "roles", "0"));
+
+        wrapper.findApplyAndMerge(key, s -> {
+            @SuppressWarnings("unchecked") List<Object> roles = (List<Object>) s.settings.getPath("guild", "roles");
+            assertNotNull(roles);
+            s.settings.put("roles", roles.size());
+            s.settings.remove("nothing");
+            return s;
+        });
+
+        loaded = wrapper.getEntity(key);
+        assertNotNull(loaded);
+        assertEquals(2, loaded.settings.get("roles"));
+        assertFalse(loaded.settings.containsKey("nothing"));
+        assertEquals("mod", loaded.settings.getPath("guild", "roles", "1"));
+
+        List<String> raw = wrapper.selectSqlQuery("SELECT settings ->> 'volume' FROM lazy_settings", null);
+        assertEquals(Collections.singletonList("100"), raw);
+    }
+
+    @Entity
+    @Table(name = "lazy_settings")
+    public static class LazySettings extends SaucedEntity<Long, LazySettings> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Type(type = "lazy-jsonb")
+        @Column(name = "settings", nullable = false, columnDefinition = "jsonb")
+        private LazyJsonMap settings = new LazyJsonMap();
+
+        LazySettings() {
+        }
+
+        @Override
+        public LazySettings setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        @Override
+        public Class<LazySettings> getClazz() {
+            return LazySettings.class;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package space.npstr.sqlsauce.hibernate.types;
+
+import org.hibernate.annotations.Type;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseConnection;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.collections.LongArrayList;
+import space.npstr.sqlsauce.collections.LongHashSet;
+import space.npstr.sqlsauce.converters.ArrayCodec;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class LongCollectionTypesTest extends BaseTest {
+
+    private static final String DROP_TABLE_LONG_COLLECTIONS = String.format(DROP_TABLE_IF_EXISTS, "long_collections");
+    private static final String CREATE_TABLE_LONG_COLLECTIONS
+            = "CREATE TABLE long_collections "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    ints     INTEGER[] NOT NULL, "
+            + "    longs    BIGINT[] NOT NULL, "
+            + "    list     BIGINT[] NOT NULL, "
+            + "    CONSTRAINT long_collections_pkey PRIMARY KEY (id) "
+            + ");";
+
+    @Test
+    public void longCollectionTypes() {
+        DatabaseWrapper wrapper = new DatabaseWrapper(requireConnection());
+
+        wrapper.executeSqlQuery(DROP_TABLE_LONG_COLLECTIONS);
+        wrapper.executeSqlQuery(CREATE_TABLE_LONG_COLLECTIONS);
+
+        LongCollections entity = new LongCollections();
+        entity.id = 1;
+        entity.ints = LongHashSet.of(0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE);
+        entity.longs = LongHashSet.of(0, Long.MAX_VALUE, Long.MIN_VALUE, 400000000000000000L);
+        entity.list = LongArrayList.of(3, 1, 2, 1, Long.MIN_VALUE);
+        wrapper.persist(entity);
+
+        EntityKey<Long, LongCollections> key = EntityKey.of(1L, LongCollections.class);
+        LongCollections loaded = wrapper.getEntity(key);
+        assertNotNull(loaded);
+        assertEquals(entity.ints, loaded.ints);
+        assertEquals(entity.longs, loaded.longs);
+        assertEquals(entity.list, loaded.list, "list should keep order and duplicates");
+
+        //modifications in place are picked up
+        wrapper.findApplyAndMerge(key, e -> {
+            e.longs.add(42);
+            e.longs.removeLong(Long.MIN_VALUE);
+            e.list.removeLongAt(0);
+            e.ints.clear();
+            return e;
+        });
+        loaded = wrapper.getEntity(key);
+        assertNotNull(loaded);
+        assertTrue(loaded.longs.contains(42));
+        assertFalse(loaded.longs.contains(Long.MIN_VALUE));
+        assertEquals(LongArrayList.of(1, 2, 1, Long.MIN_VALUE), loaded.list);
+        assertTrue(loaded.ints.isEmpty());
+
+        //and so are modifications of detached entities
+        loaded.list.add(7);
+        loaded = wrapper.merge(loaded);
+        assertEquals(7, wrapper.getOrCreate(key).list.getLong(4));
+    }
+
+    @Test
+    public void binaryTransfer() throws SQLException {
+        //prepareThreshold=-1 makes the driver receive arrays in the binary format right away
+        String jdbc = getTestJdbcUrl();
+        jdbc += (jdbc.contains("?") ? "&" : "?") + "prepareThreshold=-1";
+        DatabaseConnection binaryConnection = new DatabaseConnection.Builder("binaryTransfer", jdbc)
+                .setHibernateProperty("hibernate.hbm2ddl.auto", "none")
+                .build();
+        try {
+            DatabaseWrapper wrapper = new DatabaseWrapper(binaryConnection);
+            wrapper.executeSqlQuery(DROP_TABLE_LONG_COLLECTIONS);
+            wrapper.executeSqlQuery(CREATE_TABLE_LONG_COLLECTIONS);
+
+            LongCollections entity = new LongCollections();
+            entity.id = 2;
+            entity.ints = LongHashSet.of(0, -1, Integer.MAX_VALUE);
+            entity.longs = LongHashSet.of(Long.MIN_VALUE, 400000000000000000L);
+            entity.list = LongArrayList.of(5, 5, Long.MAX_VALUE);
+            wrapper.persist(entity);
+
+            try (Connection connection = binaryConnection.getDataSource().getConnection();
+                 PreparedStatement st = connection.prepareStatement("SELECT ints, longs FROM long_collections");
+                 ResultSet rs = st.executeQuery()) {
+                assertTrue(rs.next());
+                assertTrue(ArrayCodec.isBinary(rs.getBytes("ints")), "integer[] should be received in binary");
+                assertTrue(ArrayCodec.isBinary(rs.getBytes("longs")), "bigint[] should be received in binary");
+            }
+
+            LongCollections loaded = wrapper.getEntity(EntityKey.of(2L, LongCollections.class));
+            assertNotNull(loaded);
+            assertEquals(entity.ints, loaded.ints);
+            assertEquals(entity.longs, loaded.longs);
+            assertEquals(entity.list, loaded.list);
+        } finally {
+            binaryConnection.shutdown();
+        }
+    }
+
+    @Entity
+    @Table(name = "long_collections")
+    public static class LongCollections extends SaucedEntity<Long, LongCollections> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Type(type = "long-hash-set")
+        @Column(name = "ints", nullable = false)
+        private LongHashSet ints = new LongHashSet();
+
+        @Type(type = "long-hash-set")
+        @Column(name = "longs", nullable = false)
+        private LongHashSet longs = new LongHashSet();
+
+        @Type(type = "long-array-list")
+        @Column(name = "list", nullable = false)
+        private LongArrayList list = new LongArrayList();
+
+        LongCollections() {
+        }
+
+        @Override
+        public LongCollections setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        @Override
+        public Class<LongCollections> getClazz() {
+            return LongCollections.class;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.jdbc;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.collections.LongArrayList;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class JdbcQueryTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_JDBC_QUERY_ROWS
+            = "CREATE TABLE jdbc_query_rows "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    name     TEXT, "
+            + "    score    INT NOT NULL, "
+            + "    parent   BIGINT, "
+            + "    settings HSTORE, "
+            + "    members  BIGINT[], "
+            + "    tags     TEXT[], "
+            + "    CONSTRAINT jdbc_query_rows_pkey PRIMARY KEY (id) "
+            + ");";
+
+    //language=PostgreSQL
+    private static final String INSERT_ROWS
+            = "INSERT INTO jdbc_query_rows (id, name, score, parent, settings, members, tags) VALUES "
+            + "(1, 'Rick', 100, NULL, 'prefix => \"!\", \"quote\" => \"a \\\"b\\\"\"', '{1,2,3}', '{\"Wubba lubba\",dub}'), "
+            + "(2, NULL, 7, 1, NULL, NULL, NULL);";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery("CREATE EXTENSION IF NOT EXISTS hstore;");
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "jdbc_query_rows"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_JDBC_QUERY_ROWS);
+        this.wrapper.executeSqlQuery(INSERT_ROWS);
+    }
+
+    @Test
+    public void constructorMapper() {
+        final List<Row> rows = this.wrapper.query("SELECT id, name, score, parent, settings, members, tags "
+                + "FROM jdbc_query_rows ORDER BY id", null, Row.class);
+
+        assertEquals(2, rows.size());
+        final Row rick = rows.get(0);
+        assertEquals(1L, rick.id);
+        assertEquals("Rick", rick.name);
+        assertEquals(100, rick.score);
+        assertNull(rick.parent);
+        assertEquals("!", rick.settings.get("prefix"));
+        assertEquals("a \"b\"", rick.settings.get("quote"));
+        assertArrayEquals(new long[]{1, 2, 3}, rick.members);
+        assertEquals(Arrays.asList("Wubba lubba", "dub"), rick.tags);
+
+        final Row nulls = rows.get(1);
+        assertNull(nulls.name);
+        assertEquals(1L, (long) nulls.parent);
+        assertNull(nulls.settings);
+        assertNull(nulls.members);
+        assertNull(nulls.tags);
+    }
+
+    @Test
+    public void bindersAndScalars() {
+        assertEquals(Collections.singletonList("Rick"), this.wrapper.query(
+                "SELECT name FROM jdbc_query_rows WHERE score > ?", ParameterBinder.of(50), RowMappers.scalar(String.class)));
+        assertEquals(Collections.singletonList(7), this.wrapper.query(
+                "SELECT score FROM jdbc_query_rows WHERE id = ?", statement -> statement.setLong(1, 2L),
+                RowMappers.scalar(int.class)));
+        assertEquals(LongArrayList.of(1, 2, 3), this.wrapper.query(
+                "SELECT members FROM jdbc_query_rows WHERE id = 1", ParameterBinder.NONE,
+                RowMappers.scalar(LongArrayList.class)).get(0));
+    }
+
+    @Test
+    public void mappersAreCached() {
+        assertSame(RowMappers.of(Row.class), RowMappers.of(Row.class));
+        assertSame(RowMappers.scalar(String.class), RowMappers.scalar(String.class));
+    }
+
+    @Test
+    public void insideUnitOfWork() {
+        this.wrapper.unitOfWork(db -> {
+            db.executeSqlQuery("UPDATE jdbc_query_rows SET score = 101 WHERE id = 1");
+            assertEquals(Collections.singletonList(101), db.query(
+                    "SELECT score FROM jdbc_query_rows WHERE id = 1", null, RowMappers.scalar(Integer.class)));
+        });
+    }
+
+    @Test
+    public void unsupportedClasses() {
+        assertThrows(IllegalArgumentException.class, () -> RowMappers.of(Ambiguous.class));
+        assertThrows(IllegalArgumentException.class, () -> RowMappers.of(Unsupported.class));
+    }
+
+    public static class Row {
+        private final long id;
+        @Nullable
+        private final String name;
+        private final int score;
+        @Nullable
+        private final Long parent;
+        @Nullable
+        private final Map<String, String> settings;
+        @Nullable
+        private final long[] members;
+        @Nullable
+        private final List<String> tags;
+
+        public Row(final long id, @Nullable final String name, final int score, @Nullable final Long parent,
+                   @Nullable final Map<String, String> settings, @Nullable final long[] members,
+                   @Nullable final List<String> tags) {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+            this.parent = parent;
+            this.settings = settings;
+            this.members = members;
+            this.tags = tags;
+        }
+    }
+
+    public static class Ambiguous {
+        public Ambiguous(final long id) {
+        }
+
+        public Ambiguous(final String name) {
+        }
+    }
+
+    public static class Unsupported {
+        public Unsupported(final Map<String, Long> counts) {
+        }
+    }
+}
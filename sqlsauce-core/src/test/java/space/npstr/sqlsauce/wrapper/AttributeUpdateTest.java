@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class AttributeUpdateTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_COUNTERS
+            = "CREATE TABLE attribute_update_counters "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    name     TEXT NOT NULL, "
+            + "    hits     BIGINT NOT NULL, "
+            + "    enabled  BOOLEAN NOT NULL, "
+            + "    CONSTRAINT attribute_update_counters_pkey PRIMARY KEY (id) "
+            + ");";
+
+    //language=PostgreSQL
+    private static final String CHECK_ID_BELOW_100
+            = "ALTER TABLE attribute_update_counters ADD CONSTRAINT attribute_update_counters_id_check CHECK (id < 100);";
+
+    //language=PostgreSQL
+    private static final String INSERT_FLEEB
+            = "INSERT INTO attribute_update_counters (id, name, hits, enabled) VALUES (2, 'Fleeb', 5, TRUE);";
+
+    //language=PostgreSQL
+    private static final String COUNT_LOCK_WAITS
+            = "SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock';";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "attribute_update_counters"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_COUNTERS);
+    }
+
+    @Test
+    public void updateExistingAndMissing() {
+        this.wrapper.merge(new Counter().setId(1L).setName("Plumbus"));
+
+        this.wrapper.update(key(1), "enabled", false);
+        this.wrapper.update(key(2), "name", "Fleeb");
+
+        final Counter existing = this.wrapper.getEntity(key(1));
+        assertNotNull(existing);
+        assertFalse(existing.isEnabled());
+        assertEquals("Plumbus", existing.getName());
+
+        final Counter created = this.wrapper.getEntity(key(2));
+        assertNotNull(created);
+        assertEquals("Fleeb", created.getName());
+        assertTrue(created.isEnabled());
+    }
+
+    @Test
+    public void incrementExistingAndMissing() {
+        this.wrapper.merge(new Counter().setId(1L));
+
+        assertEquals(5L, (long) this.wrapper.increment(key(1), "hits", 5L));
+        assertEquals(3, (int) this.wrapper.increment(key(1), "hits", -2));
+        assertEquals(1L, (long) this.wrapper.increment(key(2), "hits", 1L));
+
+        final Counter created = this.wrapper.getEntity(key(2));
+        assertNotNull(created);
+        assertEquals(1L, created.getHits());
+    }
+
+    @Test
+    public void batchVariants() {
+        this.wrapper.merge(new Counter().setId(1L));
+        this.wrapper.merge(new Counter().setId(2L));
+
+        this.wrapper.updateAll(Arrays.asList(key(1), key(3)), "name", "Schleem");
+        final Map<EntityKey<Long, Counter>, Integer> deltas = new HashMap<>();
+        deltas.put(key(1), 10);
+        deltas.put(key(2), 20);
+        deltas.put(key(4), 40);
+        this.wrapper.incrementAll(deltas, "hits");
+
+        assertEquals(4, this.wrapper.selectSqlQuerySingleResult(
+                "SELECT count(*) FROM attribute_update_counters", null, Number.class).intValue());
+        assertEquals("Schleem", hitsAndName(3).getName());
+        assertEquals("", hitsAndName(2).getName());
+        assertEquals(10L, hitsAndName(1).getHits());
+        assertEquals(20L, hitsAndName(2).getHits());
+        assertEquals(0L, hitsAndName(3).getHits());
+        assertEquals(40L, hitsAndName(4).getHits());
+    }
+
+    @Test
+    public void batchWritesAreAtomic() {
+        this.wrapper.merge(new Counter().setId(1L));
+        //default entities can't be created for ids from 100 on
+        this.wrapper.executeSqlQuery(CHECK_ID_BELOW_100);
+        final Map<EntityKey<Long, Counter>, Long> deltas = new HashMap<>();
+        deltas.put(key(1), 10L);
+        deltas.put(key(100), 1L);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(DatabaseException.class, () -> this.wrapper.incrementAll(deltas, "hits"));
+            assertThrows(DatabaseException.class,
+                    () -> this.wrapper.updateAll(Arrays.asList(key(1), key(100)), "name", "Schleem"));
+        }
+
+        assertEquals(0L, hitsAndName(1).getHits());
+        assertEquals("", hitsAndName(1).getName());
+        assertFalse(this.wrapper.exists(key(100)));
+    }
+
+    @Test
+    public void rowCreatedConcurrentlyByOthers() throws Exception {
+        this.wrapper.merge(new Counter().setId(1L));
+        final Map<EntityKey<Long, Counter>, Long> deltas = new HashMap<>();
+        deltas.put(key(1), 10L);
+        deltas.put(key(2), 2L);
+        final ExecutorService pool = Executors.newSingleThreadExecutor(
+                r -> new Thread(r, AttributeUpdateTest.class.getSimpleName() + "-worker"));
+        try (Connection other = requireConnection().getDataSource().getConnection()) {
+            other.setAutoCommit(false);
+            try (Statement statement = other.createStatement()) {
+                statement.execute(INSERT_FLEEB);
+            }
+            final Future<?> increment = pool.submit(() -> this.wrapper.incrementAll(deltas, "hits"));
+            //wait for the creation of the missing row to block on the uncommitted insert of the same row
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (this.wrapper.selectSqlQuerySingleResult(COUNT_LOCK_WAITS, null, Number.class).intValue() == 0) {
+                assertTrue(System.nanoTime() < deadline, "Creation of the missing row did not block");
+                Thread.sleep(10);
+            }
+            other.commit();
+            increment.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(10L, hitsAndName(1).getHits());
+        assertEquals(7L, hitsAndName(2).getHits());
+        assertEquals("Fleeb", hitsAndName(2).getName());
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(8,
+                r -> new Thread(r, AttributeUpdateTest.class.getSimpleName() + "-worker"));
+        final int increments = 2000;
+        for (int i = 0; i < increments; i++) {
+            final long id = i % 2;
+            pool.execute(() -> this.wrapper.increment(key(id), "hits", 1));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "Increments took too long to finish");
+
+        assertEquals(increments / 2, hitsAndName(0).getHits());
+        assertEquals(increments / 2, hitsAndName(1).getHits());
+    }
+
+    @Test
+    public void insideUnitOfWork() {
+        this.wrapper.unitOfWork(db -> {
+            db.merge(new Counter().setId(1L).setName("Plumbus"));
+            assertEquals(1L, (long) db.increment(key(1), "hits", 1L));
+        });
+        assertEquals(1L, hitsAndName(1).getHits());
+        assertEquals("Plumbus", hitsAndName(1).getName());
+    }
+
+    @Test
+    public void invalidAttributes() {
+        assertThrows(IllegalArgumentException.class, () -> this.wrapper.update(key(1), "doesNotExist", 1));
+        assertThrows(IllegalArgumentException.class, () -> this.wrapper.increment(key(1), "name", 1));
+    }
+
+    private static EntityKey<Long, Counter> key(final long id) {
+        return EntityKey.of(id, Counter.class);
+    }
+
+    private Counter hitsAndName(final long id) {
+        final Counter counter = this.wrapper.getEntity(key(id));
+        assertNotNull(counter);
+        return counter;
+    }
+
+    @Entity
+    @Table(name = "attribute_update_counters")
+    public static class Counter extends SaucedEntity<Long, Counter> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "name", nullable = false)
+        private String name = "";
+
+        @Column(name = "hits", nullable = false)
+        private long hits;
+
+        @Column(name = "enabled", nullable = false)
+        private boolean enabled = true;
+
+        //for jpa / wrapper
+        public Counter() {
+        }
+
+        @Override
+        public Counter setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public Counter setName(final String name) {
+            this.name = name;
+            return this;
+        }
+
+        public long getHits() {
+            return this.hits;
+        }
+
+        public boolean isEnabled() {
+            return this.enabled;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+import space.npstr.sqlsauce.test.entities.Fetching;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class AutoCommitReadsTest extends BaseTest {
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection(), true);
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "public.fetching_test"), null);
+        this.wrapper.executeSqlQuery(String.format(CREATE_SIMPLE_TABLE, "fetching_test"), null);
+        this.wrapper.merge(new Fetching().setId(1L).setName("Rick"));
+        this.wrapper.merge(new Fetching().setId(2L).setName("Morty"));
+    }
+
+    @Test
+    public void reads() {
+        assertTrue(this.wrapper.isAutoCommitReads());
+
+        final Fetching rick = this.wrapper.getEntity(EntityKey.of(1L, Fetching.class));
+        assertNotNull(rick);
+        assertEquals("Rick", rick.getName());
+        assertNull(this.wrapper.getEntity(EntityKey.of(3L, Fetching.class)));
+
+        assertEquals(2, this.wrapper.loadAll(Fetching.class).size());
+        final List<Fetching> morties = this.wrapper.selectJpqlQuery("SELECT f FROM Fetching f WHERE f.name = 'Morty'",
+                null, Fetching.class);
+        assertEquals(1, morties.size());
+        assertEquals(2L, (long) this.wrapper.selectJpqlQuerySingleResult("SELECT count(f) FROM Fetching f",
+                null, Long.class));
+
+        this.wrapper.merge(rick.setName("Pickle Rick"));
+        final Fetching pickleRick = this.wrapper.getEntity(EntityKey.of(1L, Fetching.class));
+        assertNotNull(pickleRick);
+        assertEquals("Pickle Rick", pickleRick.getName());
+    }
+
+    @Test
+    public void connectionsAreReturnedWithoutAutoCommit() {
+        //exhaust the pool with autocommit reads
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(this.wrapper.getEntity(EntityKey.of(1L, Fetching.class)));
+        }
+
+        //if any connection was left in autocommit mode, the first merge would stick
+        assertThrows(IllegalStateException.class, () -> this.wrapper.unitOfWork(db -> {
+            db.merge(new Fetching().setId(3L).setName("Summer"));
+            db.executeSqlQuery("UPDATE fetching_test SET name = 'Beth' WHERE id = 1");
+            throw new IllegalStateException("Rollback!");
+        }));
+        assertNull(this.wrapper.getEntity(EntityKey.of(3L, Fetching.class)));
+        final Fetching rick = this.wrapper.getEntity(EntityKey.of(1L, Fetching.class));
+        assertNotNull(rick);
+        assertEquals("Rick", rick.getName());
+        assertFalse(this.wrapper.isInUnitOfWork());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class BulkLoadTest extends BaseTest {
+
+    private static final int ROWS = 100000;
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_BULK_LOAD_ROWS
+            = "CREATE TABLE bulk_load_rows "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    name     TEXT NOT NULL, "
+            + "    CONSTRAINT bulk_load_rows_pkey PRIMARY KEY (id) "
+            + ");";
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_BULK_LOAD_NAMES
+            = "CREATE TABLE bulk_load_names "
+            + "( "
+            + "    name     TEXT NOT NULL, "
+            + "    CONSTRAINT bulk_load_names_pkey PRIMARY KEY (name) "
+            + ");";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTables() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "bulk_load_rows"));
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "bulk_load_names"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_BULK_LOAD_ROWS);
+        this.wrapper.executeSqlQuery(CREATE_TABLE_BULK_LOAD_NAMES);
+        //odd ids only
+        this.wrapper.executeSqlQuery("INSERT INTO bulk_load_rows (id, name) "
+                + "SELECT i * 2 - 1, 'row ' || (i * 2 - 1) FROM generate_series(1, " + ROWS + ") AS i;");
+        this.wrapper.merge(new BulkLoadName().setId("Squanchy"));
+    }
+
+    @Test
+    public void largeLoadKeepsInputOrder() {
+        final List<EntityKey<Long, BulkLoadRow>> keys = new ArrayList<>();
+        for (long id = 1; id <= ROWS * 2; id++) {
+            keys.add(key(id));
+        }
+        Collections.shuffle(keys, new Random(42));
+        //duplicates
+        keys.add(keys.get(0));
+        keys.add(key(1));
+
+        final List<BulkLoadRow> entities = this.wrapper.getEntities(keys);
+
+        assertEquals(keys.size(), entities.size());
+        for (int i = 0; i < keys.size(); i++) {
+            final long id = keys.get(i).id;
+            final BulkLoadRow entity = entities.get(i);
+            if (id % 2 == 0) {
+                assertNull(entity, "expected no entity for id " + id);
+            } else {
+                assertNotNull(entity, "expected an entity for id " + id);
+                assertEquals(id, (long) entity.getId());
+                assertEquals("row " + id, entity.getName());
+            }
+        }
+    }
+
+    @Test
+    public void mixedClasses() {
+        final List<Object> entities = this.wrapper.getMixedEntities(Arrays.asList(
+                EntityKey.of("Birdperson", BulkLoadName.class),
+                key(3),
+                EntityKey.of("Squanchy", BulkLoadName.class),
+                key(4)
+        ));
+
+        assertEquals(4, entities.size());
+        assertNull(entities.get(0));
+        assertEquals(3L, (long) ((BulkLoadRow) entities.get(1)).getId());
+        assertEquals("Squanchy", ((BulkLoadName) entities.get(2)).getId());
+        assertNull(entities.get(3));
+    }
+
+    @Test
+    public void insideUnitOfWork() {
+        this.wrapper.unitOfWork(db -> {
+            final BulkLoadRow merged = db.merge(new BulkLoadRow().setId(2L).setName("Tammy"));
+            final List<BulkLoadRow> entities = db.getEntities(Arrays.asList(key(1), key(2)));
+            assertEquals("row 1", entities.get(0).getName());
+            //served from the persistence context of the unit of work
+            assertSame(merged, entities.get(1));
+        });
+    }
+
+    private static EntityKey<Long, BulkLoadRow> key(final long id) {
+        return EntityKey.of(id, BulkLoadRow.class);
+    }
+
+    @Entity
+    @Table(name = "bulk_load_rows")
+    public static class BulkLoadRow extends SaucedEntity<Long, BulkLoadRow> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "name", nullable = false)
+        private String name = "";
+
+        //for jpa / wrapper
+        public BulkLoadRow() {
+        }
+
+        @Override
+        public BulkLoadRow setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public BulkLoadRow setName(final String name) {
+            this.name = name;
+            return this;
+        }
+    }
+
+    @Entity
+    @Table(name = "bulk_load_names")
+    public static class BulkLoadName extends SaucedEntity<String, BulkLoadName> {
+
+        @Id
+        @Column(name = "name", nullable = false)
+        private String name = "";
+
+        //for jpa / wrapper
+        public BulkLoadName() {
+        }
+
+        @Override
+        public BulkLoadName setId(final String name) {
+            this.name = name;
+            return this;
+        }
+
+        @Override
+        public String getId() {
+            return this.name;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.CounterAccumulator;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+import space.npstr.sqlsauce.wrapper.AttributeUpdateTest.Counter;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class CounterAccumulatorTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_COUNTERS
+            = "CREATE TABLE attribute_update_counters "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    name     TEXT NOT NULL, "
+            + "    hits     BIGINT NOT NULL, "
+            + "    enabled  BOOLEAN NOT NULL, "
+            + "    CONSTRAINT attribute_update_counters_pkey PRIMARY KEY (id) "
+            + ");";
+
+    //language=PostgreSQL
+    private static final String ADD_CHECK_ID_BELOW_100
+            = "ALTER TABLE attribute_update_counters ADD CONSTRAINT attribute_update_counters_id_check CHECK (id < 100);";
+
+    //language=PostgreSQL
+    private static final String DROP_CHECK_ID_BELOW_100
+            = "ALTER TABLE attribute_update_counters DROP CONSTRAINT attribute_update_counters_id_check;";
+
+    private DatabaseWrapper wrapper;
+    @Nullable
+    private CounterAccumulator accumulator;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "attribute_update_counters"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_COUNTERS);
+    }
+
+    @AfterEach
+    public void closeAccumulator() {
+        if (this.accumulator != null) {
+            this.accumulator.close();
+        }
+    }
+
+    @Test
+    public void concurrentAdds() throws InterruptedException {
+        final CounterAccumulator counters = accumulator(1, TimeUnit.HOURS, 1000);
+        this.wrapper.merge(new Counter().setId(1L));
+
+        final ExecutorService pool = Executors.newFixedThreadPool(8,
+                r -> new Thread(r, CounterAccumulatorTest.class.getSimpleName() + "-worker"));
+        final int adds = 100000;
+        for (int i = 0; i < adds; i++) {
+            final long id = i % 4;
+            pool.execute(() -> counters.increment(key(id), "hits"));
+            if (i % 10000 == 0) {
+                pool.execute(counters::flush);
+            }
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "Adding took too long to finish");
+        assertEquals(adds, counters.getPendingDelta() + sumOfHits());
+
+        counters.flush();
+        assertEquals(0, counters.getPendingCounters());
+        assertEquals(0, counters.getFlushLag(TimeUnit.MILLISECONDS));
+        for (long id = 0; id < 4; id++) {
+            assertEquals(adds / 4, hits(id));
+        }
+    }
+
+    @Test
+    public void thresholdTriggersFlush() throws InterruptedException {
+        final CounterAccumulator counters = accumulator(1, TimeUnit.HOURS, 10);
+        for (long id = 0; id < 10; id++) {
+            counters.add(key(id), "hits", id + 1);
+        }
+
+        final long started = System.currentTimeMillis();
+        while (counters.getPendingCounters() > 0) {
+            assertTrue(System.currentTimeMillis() - started < 10000, "Threshold did not trigger a flush");
+            Thread.sleep(10);
+        }
+        assertEquals(55, sumOfHits());
+    }
+
+    @Test
+    public void failedFlushesKeepTheirDeltas() {
+        final CounterAccumulator counters = accumulator(1, TimeUnit.HOURS, 1000);
+        counters.add(key(1), "hits", 5);
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "attribute_update_counters"));
+
+        assertThrows(DatabaseException.class, counters::flush);
+        assertEquals(1, counters.getFailedFlushes());
+        assertEquals(5, counters.getPendingDelta());
+
+        this.wrapper.executeSqlQuery(CREATE_TABLE_COUNTERS);
+        counters.add(key(1), "hits", 2);
+        counters.flush();
+        assertEquals(7, hits(1));
+    }
+
+    @Test
+    public void failedCreationDoesNotAddExistingDeltasTwice() {
+        final CounterAccumulator counters = accumulator(1, TimeUnit.HOURS, 1000);
+        this.wrapper.merge(new Counter().setId(1L));
+        //default entities can't be created for ids from 100 on
+        this.wrapper.executeSqlQuery(ADD_CHECK_ID_BELOW_100);
+        counters.add(key(1), "hits", 5);
+        counters.add(key(100), "hits", 1);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(DatabaseException.class, counters::flush);
+        }
+        assertEquals(3, counters.getFailedFlushes());
+        assertEquals(6, counters.getPendingDelta());
+        assertEquals(0, hits(1));
+
+        this.wrapper.executeSqlQuery(DROP_CHECK_ID_BELOW_100);
+        counters.flush();
+        assertEquals(0, counters.getPendingDelta());
+        assertEquals(5, hits(1));
+        assertEquals(1, hits(100));
+    }
+
+    @Test
+    public void idleCountersAreEvictedWithoutLosingDeltas() {
+        final CounterAccumulator counters = accumulator(1, TimeUnit.HOURS, 1000);
+        counters.add(key(1), "hits", 1);
+        counters.flush();
+        counters.flush();
+        counters.flush();
+        counters.add(key(1), "hits", 1);
+        counters.flush();
+        assertEquals(2, hits(1));
+    }
+
+    @Test
+    public void closeFlushes() {
+        final CounterAccumulator counters = accumulator(1, TimeUnit.HOURS, 1000);
+        counters.add(key(1), "hits", 3);
+        counters.close();
+
+        assertEquals(3, hits(1));
+        assertThrows(IllegalStateException.class, () -> counters.add(key(1), "hits", 1));
+    }
+
+    private CounterAccumulator accumulator(final long flushInterval, final TimeUnit timeUnit, final int threshold) {
+        final CounterAccumulator counters = new CounterAccumulator(this.wrapper, flushInterval, timeUnit, threshold);
+        this.accumulator = counters;
+        return counters;
+    }
+
+    private static EntityKey<Long, Counter> key(final long id) {
+        return EntityKey.of(id, Counter.class);
+    }
+
+    private long hits(final long id) {
+        final Counter counter = this.wrapper.getEntity(key(id));
+        assertNotNull(counter);
+        return counter.getHits();
+    }
+
+    private long sumOfHits() {
+        return this.wrapper.selectSqlQuerySingleResult("SELECT coalesce(sum(hits), 0) FROM attribute_update_counters",
+                null, Number.class).longValue();
+    }
+}
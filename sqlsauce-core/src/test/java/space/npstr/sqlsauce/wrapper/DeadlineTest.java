@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.AsyncDatabaseWrapper;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.BasicAsyncDatabaseWrapper;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.Deadline;
+import space.npstr.sqlsauce.DeadlineExceededException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 19.10.26.
+ */
+public class DeadlineTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String SLEEP = "SELECT 1 FROM pg_sleep(5)";
+    //language=PostgreSQL
+    private static final String SELECT_ONE = "SELECT 1";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareWrapper() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+    }
+
+    @Test
+    public void timeoutRunningStatement() {
+        final long start = System.nanoTime();
+
+        final DeadlineExceededException e = assertThrows(DeadlineExceededException.class,
+                () -> this.wrapper.withDeadline(200, TimeUnit.MILLISECONDS, w -> w.selectSqlQuery(SLEEP, null)));
+
+        assertTrue(elapsedMillis(start) < 2000, "the statement was not cancelled");
+        //the database cancelled the statement
+        assertNotNull(e.getCause());
+        //the connection is usable again, without the timeout
+        assertEquals(1, (int) this.wrapper.selectSqlQuery(SELECT_ONE, null).size());
+    }
+
+    @Test
+    public void timeoutJdbcStatement() {
+        final long start = System.nanoTime();
+
+        assertThrows(DeadlineExceededException.class, () -> this.wrapper.withDeadline(200, TimeUnit.MILLISECONDS,
+                w -> w.query(SLEEP, null, rs -> rs.getInt(1))));
+
+        assertTrue(elapsedMillis(start) < 2000, "the statement was not cancelled");
+    }
+
+    @Test
+    public void expiredDeadlineFailsFast() {
+        final Deadline deadline = Deadline.after(0, TimeUnit.MILLISECONDS);
+
+        assertThrows(DeadlineExceededException.class,
+                () -> this.wrapper.withDeadline(deadline, w -> w.selectSqlQuery(SELECT_ONE, null)));
+        assertThrows(DeadlineExceededException.class,
+                () -> this.wrapper.withDeadline(deadline, w -> w.query(SELECT_ONE, null, rs -> rs.getInt(1))));
+    }
+
+    @Test
+    public void earliestNestedDeadlineApplies() {
+        final long start = System.nanoTime();
+
+        assertThrows(DeadlineExceededException.class, () -> this.wrapper.withDeadline(10, TimeUnit.SECONDS,
+                outer -> outer.withDeadline(200, TimeUnit.MILLISECONDS, w -> w.selectSqlQuery(SLEEP, null))));
+
+        assertTrue(elapsedMillis(start) < 2000, "the statement was not cancelled");
+    }
+
+    @Test
+    public void cancelAsyncOperation() throws Exception {
+        //a single thread, the next operation can only run once the cancelled one has let go of it
+        final AsyncDatabaseWrapper async = new BasicAsyncDatabaseWrapper(this.wrapper, 1);
+        final CompletableFuture<List<Integer>> sleeping = async.<List<Integer>>execute(
+                w -> w.selectSqlQuery(SLEEP, null)).toCompletableFuture();
+        Thread.sleep(200);
+        final long start = System.nanoTime();
+
+        sleeping.cancel(true);
+        final List<Integer> result = async.<List<Integer>>execute(w -> w.selectSqlQuery(SELECT_ONE, null))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, result.size());
+        assertTrue(elapsedMillis(start) < 2000, "the statement was not cancelled");
+    }
+
+    @Test
+    public void timeoutAsyncOperation() {
+        final AsyncDatabaseWrapper async = new BasicAsyncDatabaseWrapper(this.wrapper, 1);
+        final long start = System.nanoTime();
+
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> async.<List<Integer>>execute(w -> w.selectSqlQuery(SLEEP, null), 200, TimeUnit.MILLISECONDS)
+                        .toCompletableFuture().get(5, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof DeadlineExceededException);
+        assertTrue(elapsedMillis(start) < 2000, "the future did not time out");
+    }
+
+    @Test
+    public void timeoutQueuedAsyncOperation() throws Exception {
+        //the only thread is busy, the operation stays queued past its deadline
+        final AsyncDatabaseWrapper async = new BasicAsyncDatabaseWrapper(this.wrapper, 1);
+        final CompletableFuture<List<Integer>> sleeping = async.<List<Integer>>execute(
+                w -> w.selectSqlQuery(SLEEP, null)).toCompletableFuture();
+        final long start = System.nanoTime();
+
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> async.<List<Integer>>execute(w -> w.selectSqlQuery(SELECT_ONE, null), 200, TimeUnit.MILLISECONDS)
+                        .toCompletableFuture().get(5, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof DeadlineExceededException);
+        assertTrue(elapsedMillis(start) < 2000, "the future did not time out");
+        assertFalse(sleeping.isDone(), "the pool was not saturated");
+        sleeping.cancel(true);
+    }
+
+    private static long elapsedMillis(final long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
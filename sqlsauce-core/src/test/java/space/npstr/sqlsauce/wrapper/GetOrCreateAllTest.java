@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class GetOrCreateAllTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_BULK_CREATED
+            = "CREATE TABLE get_or_create_all "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    name     TEXT NOT NULL, "
+            + "    CONSTRAINT get_or_create_all_pkey PRIMARY KEY (id) "
+            + ");";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "get_or_create_all"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_BULK_CREATED);
+    }
+
+    @Test
+    public void inputOrderWithoutDuplicates() {
+        this.wrapper.merge(new BulkCreated().setId(2L).setName("Plumbus"));
+
+        final List<BulkCreated> entities = this.wrapper.getOrCreateAll(Arrays.asList(key(3), key(2), key(1), key(3)));
+
+        assertEquals(3, entities.size());
+        assertEquals(3L, (long) entities.get(0).getId());
+        assertEquals(2L, (long) entities.get(1).getId());
+        assertEquals("Plumbus", entities.get(1).getName());
+        assertEquals(1L, (long) entities.get(2).getId());
+        assertEquals("", entities.get(2).getName());
+
+        //not persisted unless requested
+        assertNull(this.wrapper.getEntity(key(1)));
+        assertNull(this.wrapper.getEntity(key(3)));
+    }
+
+    @Test
+    public void persistMissing() {
+        this.wrapper.merge(new BulkCreated().setId(2L).setName("Plumbus"));
+
+        final List<BulkCreated> entities = this.wrapper.getOrCreateAll(Arrays.asList(key(1), key(2), key(3)), true);
+
+        assertEquals(3, entities.size());
+        assertEquals(3, this.wrapper.selectSqlQuerySingleResult(
+                "SELECT count(*) FROM get_or_create_all", null, Number.class).intValue());
+        final BulkCreated existing = this.wrapper.getEntity(key(2));
+        assertNotNull(existing);
+        assertEquals("Plumbus", existing.getName());
+
+        //nothing left to create
+        this.wrapper.getOrCreateAll(Arrays.asList(key(1), key(2), key(3)), true);
+        assertEquals(3, this.wrapper.selectSqlQuerySingleResult(
+                "SELECT count(*) FROM get_or_create_all", null, Number.class).intValue());
+    }
+
+    private static EntityKey<Long, BulkCreated> key(final long id) {
+        return EntityKey.of(id, BulkCreated.class);
+    }
+
+    @Entity
+    @Table(name = "get_or_create_all")
+    public static class BulkCreated extends SaucedEntity<Long, BulkCreated> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "name", nullable = false)
+        private String name = "";
+
+        //for jpa / wrapper
+        public BulkCreated() {
+        }
+
+        @Override
+        public BulkCreated setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public BulkCreated setName(final String name) {
+            this.name = name;
+            return this;
+        }
+    }
+}
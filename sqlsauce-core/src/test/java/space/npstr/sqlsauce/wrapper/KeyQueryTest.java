@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class KeyQueryTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_KEY_QUERY_ROWS
+            = "CREATE TABLE key_query_rows "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    score    INT NOT NULL, "
+            + "    CONSTRAINT key_query_rows_pkey PRIMARY KEY (id) "
+            + ");";
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_KEY_QUERY_NAMES
+            = "CREATE TABLE key_query_names "
+            + "( "
+            + "    name     TEXT NOT NULL, "
+            + "    CONSTRAINT key_query_names_pkey PRIMARY KEY (name) "
+            + ");";
+
+    //language=PostgreSQL
+    private static final String INSERT_ROWS
+            = "INSERT INTO key_query_rows (id, score) SELECT i, i % 10 FROM generate_series(1, 25000) AS i;";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTables() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "key_query_rows"));
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "key_query_names"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_KEY_QUERY_ROWS);
+        this.wrapper.executeSqlQuery(CREATE_TABLE_KEY_QUERY_NAMES);
+        this.wrapper.executeSqlQuery(INSERT_ROWS);
+        this.wrapper.merge(new KeyQueryName().setId("Squanchy"));
+    }
+
+    @Test
+    public void exists() {
+        assertTrue(this.wrapper.exists(EntityKey.of(1L, KeyQueryRow.class)));
+        assertFalse(this.wrapper.exists(EntityKey.of(0L, KeyQueryRow.class)));
+        assertTrue(this.wrapper.exists(EntityKey.of("Squanchy", KeyQueryName.class)));
+        assertFalse(this.wrapper.exists(EntityKey.of("Birdperson", KeyQueryName.class)));
+    }
+
+    @Test
+    public void existsAll() {
+        final BitSet existing = this.wrapper.existsAll(Arrays.asList(
+                EntityKey.of(0L, KeyQueryRow.class),
+                EntityKey.of("Squanchy", KeyQueryName.class),
+                EntityKey.of(25000L, KeyQueryRow.class),
+                EntityKey.of("Birdperson", KeyQueryName.class),
+                EntityKey.of(25001L, KeyQueryRow.class),
+                EntityKey.of(25000L, KeyQueryRow.class)
+        ));
+
+        final BitSet expected = new BitSet();
+        expected.set(1);
+        expected.set(2);
+        expected.set(5);
+        assertEquals(expected, existing);
+        assertTrue(this.wrapper.existsAll(new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    public void count() {
+        assertEquals(25000L, this.wrapper.count(KeyQueryRow.class));
+        assertEquals(2500L, this.wrapper.count(KeyQueryRow.class, "score = ?", 3));
+        assertEquals(1L, this.wrapper.count(KeyQueryName.class));
+    }
+
+    @Test
+    public void selectIds() {
+        final long[] ids = this.wrapper.selectIds(KeyQueryRow.class);
+        assertEquals(25000, ids.length);
+        Arrays.sort(ids);
+        assertEquals(1L, ids[0]);
+        assertEquals(25000L, ids[ids.length - 1]);
+
+        assertArrayEquals(new long[]{10L, 20L, 30L},
+                this.wrapper.selectIds(KeyQueryRow.class, "score = ? AND id <= ? ORDER BY id", 0, 30));
+    }
+
+    @Test
+    public void forEachIdInsideUnitOfWork() {
+        final List<Long> ids = new ArrayList<>();
+        this.wrapper.unitOfWork(db -> {
+            db.merge(new KeyQueryRow().setId(25001L));
+            db.forEachId(KeyQueryRow.class, ids::add, "id > ? ORDER BY id", 24999L);
+        });
+        //sees the pending merge of the unit of work
+        assertEquals(Arrays.asList(25000L, 25001L), ids);
+    }
+
+    @Test
+    public void nonIntegralIds() {
+        assertThrows(IllegalArgumentException.class, () -> this.wrapper.selectIds(KeyQueryName.class));
+    }
+
+    @Entity
+    @Table(name = "key_query_rows")
+    public static class KeyQueryRow extends SaucedEntity<Long, KeyQueryRow> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "score", nullable = false)
+        private int score;
+
+        //for jpa / wrapper
+        public KeyQueryRow() {
+        }
+
+        @Override
+        public KeyQueryRow setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+    }
+
+    @Entity
+    @Table(name = "key_query_names")
+    public static class KeyQueryName extends SaucedEntity<String, KeyQueryName> {
+
+        @Id
+        @Column(name = "name", nullable = false)
+        private String name = "";
+
+        //for jpa / wrapper
+        public KeyQueryName() {
+        }
+
+        @Override
+        public KeyQueryName setId(final String name) {
+            this.name = name;
+            return this;
+        }
+
+        @Override
+        public String getId() {
+            return this.name;
+        }
+    }
+}
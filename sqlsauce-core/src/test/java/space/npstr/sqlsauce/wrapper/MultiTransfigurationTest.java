@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+import space.npstr.sqlsauce.fp.types.MultiTransfiguration;
+import space.npstr.sqlsauce.fp.types.TransfiguredEntities;
+import space.npstr.sqlsauce.test.entities.Fetching;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ * <p>
+ * Move flurbos between accounts concurrently, and make sure none of them get lost
+ */
+public class MultiTransfigurationTest extends BaseTest {
+
+    private static final int ACCOUNTS = 10;
+    private static final long INITIAL_BALANCE = 1000;
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_ACCOUNTS
+            = "CREATE TABLE multi_transfiguration_accounts "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    balance  BIGINT NOT NULL, "
+            + "    CONSTRAINT multi_transfiguration_accounts_pkey PRIMARY KEY (id) "
+            + ");";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTables() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "multi_transfiguration_accounts"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_ACCOUNTS);
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "public.fetching_test"));
+        this.wrapper.executeSqlQuery(String.format(CREATE_SIMPLE_TABLE, "fetching_test"));
+    }
+
+    @Test
+    public void createsAndMergesEntitiesOfSeveralClasses() {
+        final EntityKey<Long, Account> accountKey = EntityKey.of(1L, Account.class);
+        final EntityKey<Long, Fetching> fetchingKey = EntityKey.of(1L, Fetching.class);
+
+        final TransfiguredEntities merged = this.wrapper.findApplyAndMerge(MultiTransfiguration.of(
+                Arrays.asList(accountKey, fetchingKey),
+                entities -> {
+                    entities.get(accountKey).deposit(42);
+                    entities.put(new Fetching().setId(1L).setName("Unity"));
+                }));
+        assertEquals(2, merged.size());
+        assertEquals(42, merged.get(accountKey).getBalance());
+        assertEquals("Unity", merged.get(fetchingKey).getName());
+
+        final Account account = this.wrapper.getEntity(accountKey);
+        assertNotNull(account);
+        assertEquals(42, account.getBalance());
+        final Fetching fetching = this.wrapper.getEntity(fetchingKey);
+        assertNotNull(fetching);
+        assertEquals("Unity", fetching.getName());
+    }
+
+    @Test
+    public void failedTransformationChangesNothing() {
+        final EntityKey<Long, Account> from = EntityKey.of(1L, Account.class);
+        final EntityKey<Long, Account> to = EntityKey.of(2L, Account.class);
+        this.wrapper.merge(new Account().setId(1L).deposit(10));
+
+        assertThrows(IllegalStateException.class, () -> this.wrapper.findApplyAndMerge(MultiTransfiguration.of(
+                Arrays.asList(from, to),
+                entities -> {
+                    entities.get(to).deposit(100);
+                    entities.get(from).withdraw(100);
+                })));
+
+        final Account account = this.wrapper.getEntity(from);
+        assertNotNull(account);
+        assertEquals(10, account.getBalance());
+        assertEquals(null, this.wrapper.getEntity(to));
+    }
+
+    @Test
+    public void keysNeedToDescribeSaucedEntities() {
+        assertThrows(IllegalArgumentException.class, () -> MultiTransfiguration.of(Collections.emptyList(), entities -> {
+        }));
+    }
+
+    @Test
+    public void concurrentTransfers() throws InterruptedException {
+        for (long id = 0; id < ACCOUNTS; id++) {
+            this.wrapper.merge(new Account().setId(id).deposit(INITIAL_BALANCE));
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(16,
+                r -> new Thread(r, MultiTransfigurationTest.class.getSimpleName() + "-worker"));
+        final AtomicInteger transfers = new AtomicInteger(0);
+        final AtomicInteger exceptions = new AtomicInteger(0);
+        final int tests = 5000;
+
+        final long started = System.nanoTime();
+        for (int i = 0; i < tests; i++) {
+            pool.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final long fromId = random.nextInt(ACCOUNTS);
+                final long toId = (fromId + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                final long amount = random.nextInt(100);
+                final EntityKey<Long, Account> from = EntityKey.of(fromId, Account.class);
+                final EntityKey<Long, Account> to = EntityKey.of(toId, Account.class);
+                try {
+                    this.wrapper.findApplyAndMerge(MultiTransfiguration.of(Arrays.asList(from, to), entities -> {
+                        final Account fromAccount = entities.get(from);
+                        if (fromAccount.getBalance() >= amount) {
+                            fromAccount.withdraw(amount);
+                            entities.get(to).deposit(amount);
+                        }
+                    }));
+                    transfers.incrementAndGet();
+                } catch (final DatabaseException e) {
+                    //deadlocks in the database or lost updates would show up here
+                    log.error("Exception in {}", MultiTransfigurationTest.class.getSimpleName(), e);
+                    exceptions.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "Transfers took too long to finish");
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        log.info("{} transfers between {} accounts took {}ms, {} per second", tests, ACCOUNTS, millis,
+                tests * 1000L / Math.max(1, millis));
+
+        assertEquals(0, exceptions.get(), "Exceptions in " + MultiTransfigurationTest.class.getSimpleName());
+        assertEquals(tests, transfers.get());
+        final List<Account> accounts = this.wrapper.selectSqlQuery("SELECT * FROM multi_transfiguration_accounts",
+                null, Account.class);
+        assertEquals(ACCOUNTS, accounts.size());
+        assertEquals(ACCOUNTS * INITIAL_BALANCE, accounts.stream().mapToLong(Account::getBalance).sum(),
+                "flurbos were lost or created");
+    }
+
+    @Entity
+    @Table(name = "multi_transfiguration_accounts")
+    public static class Account extends SaucedEntity<Long, Account> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "balance", nullable = false)
+        private long balance;
+
+        //for jpa / wrapper
+        public Account() {
+        }
+
+        @Override
+        public Account setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public long getBalance() {
+            return this.balance;
+        }
+
+        public Account deposit(final long amount) {
+            this.balance += amount;
+            return this;
+        }
+
+        public Account withdraw(final long amount) {
+            if (amount > this.balance) {
+                throw new IllegalStateException("Insufficient flurbos");
+            }
+            this.balance -= amount;
+            return this;
+        }
+    }
+}
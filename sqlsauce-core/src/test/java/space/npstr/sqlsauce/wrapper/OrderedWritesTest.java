@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.entities.SaucedEntity;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PersistenceException;
+import javax.persistence.Table;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class OrderedWritesTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String CREATE_TABLE_ORDERED_WRITES
+            = "CREATE TABLE ordered_writes "
+            + "( "
+            + "    id       BIGINT NOT NULL, "
+            + "    counter  BIGINT NOT NULL, "
+            + "    CONSTRAINT ordered_writes_pkey PRIMARY KEY (id) "
+            + ");";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "ordered_writes"));
+        this.wrapper.executeSqlQuery(CREATE_TABLE_ORDERED_WRITES);
+    }
+
+    @Test
+    public void globalOrder() {
+        final List<EntityKey<?, ?>> keys = new ArrayList<>(Arrays.asList(key(10), EntityKey.of(1L, OtherRow.class),
+                key(9), key(-1)));
+
+        keys.sort(EntityKey.GLOBAL_ORDER);
+
+        //by class name, then numerically by id
+        assertEquals(Arrays.asList(key(-1), key(9), key(10), EntityKey.of(1L, OtherRow.class)), keys);
+    }
+
+    @Test
+    public void incrementInOppositeOrders() {
+        final int rows = 200;
+        final int rounds = 20;
+        final Map<EntityKey<Long, OrderedRow>, Long> ascending = new LinkedHashMap<>();
+        final Map<EntityKey<Long, OrderedRow>, Long> descending = new LinkedHashMap<>();
+        for (int i = 0; i < rows; i++) {
+            ascending.put(key(i), 1L);
+            descending.put(key(rows - 1 - i), 1L);
+        }
+        //create the rows, so both writers only update
+        this.wrapper.incrementAll(ascending, "counter");
+
+        final CompletableFuture<?> up = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < rounds; i++) {
+                this.wrapper.incrementAll(ascending, "counter");
+            }
+        });
+        final CompletableFuture<?> down = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < rounds; i++) {
+                this.wrapper.incrementAll(descending, "counter");
+            }
+        });
+        CompletableFuture.allOf(up, down).join();
+
+        assertEquals(rows * (2L * rounds + 1), this.wrapper.selectSqlQuerySingleResult(
+                "SELECT sum(counter) FROM ordered_writes", null, Number.class).longValue());
+    }
+
+    @Test
+    public void retryConflicts() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        this.wrapper.findApplyAndMerge(key(1), row -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new PersistenceException(new SQLException("deadlock detected", "40P01"));
+            }
+            return row.setCounter(42);
+        });
+
+        assertEquals(2, attempts.get());
+        final OrderedRow row = this.wrapper.getEntity(key(1));
+        assertNotNull(row);
+        assertEquals(42, row.getCounter());
+    }
+
+    @Test
+    public void dontRetryOtherFailures() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DatabaseException.class, () -> this.wrapper.findApplyAndMerge(key(1), row -> {
+            attempts.incrementAndGet();
+            throw new PersistenceException(new SQLException("unique violation", "23505"));
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void dontRetryUnknownOutcomes() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        //the transformation may have been committed before the connection broke
+        assertThrows(DatabaseException.class, () -> this.wrapper.findApplyAndMerge(key(1), row -> {
+            attempts.incrementAndGet();
+            throw new PersistenceException(new SQLException("connection failure", "08006"));
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    private static EntityKey<Long, OrderedRow> key(final long id) {
+        return EntityKey.of(id, OrderedRow.class);
+    }
+
+    @Entity
+    @Table(name = "ordered_writes")
+    public static class OrderedRow extends SaucedEntity<Long, OrderedRow> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        @Column(name = "counter", nullable = false)
+        private long counter;
+
+        //for jpa / wrapper
+        public OrderedRow() {
+        }
+
+        @Override
+        public OrderedRow setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        public long getCounter() {
+            return this.counter;
+        }
+
+        public OrderedRow setCounter(final long counter) {
+            this.counter = counter;
+            return this;
+        }
+    }
+
+    //sorts after OrderedRow by class name, never stored
+    @Entity
+    @Table(name = "ordered_writes_other")
+    public static class OtherRow extends SaucedEntity<Long, OtherRow> {
+
+        @Id
+        @Column(name = "id", nullable = false)
+        private long id;
+
+        //for jpa / wrapper
+        public OtherRow() {
+        }
+
+        @Override
+        public OtherRow setId(final Long id) {
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+import space.npstr.sqlsauce.test.entities.Fetching;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class ReadOnlyTest extends BaseTest {
+
+    //language=PostgreSQL
+    private static final String INSERT_RETURNING = "INSERT INTO fetching_test (id, name) VALUES (42, 'Jerry') RETURNING id;";
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "public.fetching_test"), null);
+        this.wrapper.executeSqlQuery(String.format(CREATE_SIMPLE_TABLE, "fetching_test"), null);
+        this.wrapper.merge(new Fetching().setId(1L).setName("Rick"));
+    }
+
+    @Test
+    public void readOnlySqlQueriesCannotWrite() {
+        assertThrows(DatabaseException.class,
+                () -> this.wrapper.selectSqlQuery(INSERT_RETURNING, null, true));
+        assertEquals(1, this.wrapper.loadAll(Fetching.class).size());
+
+        //the default stays read write, as plain SQL may do anything
+        final List<Object> ids = this.wrapper.selectSqlQuery(INSERT_RETURNING, null);
+        assertEquals(1, ids.size());
+        assertEquals(2, this.wrapper.loadAll(Fetching.class).size());
+    }
+
+    @Test
+    public void readOnlyResultsCanBeMerged() {
+        final List<Fetching> fetched = this.wrapper.selectJpqlQuery("SELECT f FROM Fetching f", null, Fetching.class, true);
+        assertEquals(1, fetched.size());
+
+        this.wrapper.merge(fetched.get(0).setName("Pickle Rick"));
+        final Fetching merged = this.wrapper.getEntity(EntityKey.of(1L, Fetching.class));
+        assertNotNull(merged);
+        assertEquals("Pickle Rick", merged.getName());
+    }
+
+    @Test
+    public void readOnlyResultsAreNotFlushedInUnitOfWork() {
+        this.wrapper.unitOfWork(db -> {
+            final List<Fetching> readOnly = db.selectJpqlQuery("SELECT f FROM Fetching f", null, Fetching.class, true);
+            readOnly.get(0).setName("Pickle Rick");
+        });
+        Fetching fetched = this.wrapper.getEntity(EntityKey.of(1L, Fetching.class));
+        assertNotNull(fetched);
+        assertEquals("Rick", fetched.getName());
+
+        //by default, entities loaded inside of a unit of work are managed as usual
+        this.wrapper.unitOfWork(db -> {
+            final List<Fetching> managed = db.selectJpqlQuery("SELECT f FROM Fetching f", null, Fetching.class);
+            managed.get(0).setName("Pickle Rick");
+        });
+        fetched = this.wrapper.getEntity(EntityKey.of(1L, Fetching.class));
+        assertNotNull(fetched);
+        assertEquals("Pickle Rick", fetched.getName());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018, Dennis Neufeld
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package space.npstr.sqlsauce.wrapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.npstr.sqlsauce.BaseTest;
+import space.npstr.sqlsauce.DatabaseException;
+import space.npstr.sqlsauce.DatabaseWrapper;
+import space.npstr.sqlsauce.fp.types.EntityKey;
+import space.npstr.sqlsauce.test.entities.Fetching;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Created by napster on 18.10.26.
+ */
+public class UnitOfWorkTest extends BaseTest {
+
+    private DatabaseWrapper wrapper;
+
+    @BeforeEach
+    public void prepareTable() {
+        this.wrapper = new DatabaseWrapper(requireConnection());
+        this.wrapper.executeSqlQuery(String.format(DROP_TABLE_IF_EXISTS, "public.fetching_test"), null);
+        this.wrapper.executeSqlQuery(String.format(CREATE_SIMPLE_TABLE, "fetching_test"), null);
+    }
+
+    @Test
+    public void callsShareThePersistenceContext() {
+        this.wrapper.merge(new Fetching().setId(1L).setName("Squanchy"));
+
+        this.wrapper.unitOfWork(db -> {
+            assertTrue(db.isInUnitOfWork());
+            final Fetching first = db.getEntity(EntityKey.of(1L, Fetching.class));
+            final Fetching second = db.getEntity(EntityKey.of(1L, Fetching.class));
+            assertSame(first, second, "entities loaded in the same unit of work should be the same instance");
+        });
+        assertFalse(this.wrapper.isInUnitOfWork());
+    }
+
+    @Test
+    public void failedWorkIsRolledBack() {
+        assertThrows(IllegalStateException.class, () -> this.wrapper.unitOfWork(db -> {
+            db.merge(new Fetching().setId(2L).setName("Birdperson"));
+            db.merge(new Fetching().setId(3L).setName("Tammy"));
+            throw new IllegalStateException("wubba lubba dub dub");
+        }));
+
+        assertNull(this.wrapper.getEntity(EntityKey.of(2L, Fetching.class)));
+        assertNull(this.wrapper.getEntity(EntityKey.of(3L, Fetching.class)));
+        assertFalse(this.wrapper.isInUnitOfWork());
+    }
+
+    @Test
+    public void failedNestedWorkIsRolledBackToSavepoint() {
+        this.wrapper.unitOfWork(db -> {
+            db.merge(new Fetching().setId(4L).setName("Morty"));
+            assertThrows(IllegalStateException.class, () -> db.unitOfWork(nested -> {
+                nested.merge(new Fetching().setId(5L).setName("Evil Morty"));
+                throw new IllegalStateException("Nobody exists on purpose");
+            }));
+            db.unitOfWork(nested -> nested.merge(new Fetching().setId(6L).setName("Summer")));
+        });
+
+        final Fetching morty = this.wrapper.getEntity(EntityKey.of(4L, Fetching.class));
+        assertEquals("Morty", morty == null ? null : morty.getName());
+        assertNull(this.wrapper.getEntity(EntityKey.of(5L, Fetching.class)));
+        assertEquals(2, this.wrapper.loadAll(Fetching.class).size());
+    }
+
+    @Test
+    public void failedDatabaseOperationFailsTheUnit() {
+        assertThrows(DatabaseException.class, () -> this.wrapper.unitOfWork(db -> {
+            db.merge(new Fetching().setId(7L).setName("Mr. Poopybutthole"));
+            try {
+                db.executeSqlQuery("SELECT * FROM this_table_does_not_exist", null);
+            } catch (final DatabaseException ignored) {
+                //the transaction is doomed anyways
+            }
+        }));
+
+        assertNull(this.wrapper.getEntity(EntityKey.of(7L, Fetching.class)));
+    }
+}